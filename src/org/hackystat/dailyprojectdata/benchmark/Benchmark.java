@@ -0,0 +1,87 @@
+package org.hackystat.dailyprojectdata.benchmark;
+
+/**
+ * A benchmark of one DPD computation kernel, run by the BenchmarkRunner. Benchmarks are
+ * named Bench*, and live in the package of the kernel they measure, just as the JUnit tests
+ * are named Test*.
+ * <p>
+ * For each of its variants and workload sizes, the runner calls setUp, then calls run
+ * repeatedly to warm up and then to measure throughput and allocation, then calls tearDown.
+ * Only run is measured, so setUp should build the whole workload (typically with a
+ * SensorDataWorkload) and run should do nothing but exercise the kernel on it.
+ *
+ * @author Philip Johnson
+ */
+public abstract class Benchmark {
+
+  /** The default workload sizes, in numbers of sensor data instances. */
+  public static final int[] DEFAULT_SIZES = {1000, 10000, 100000, 1000000};
+
+  /** The variant being run, or null. */
+  private String variant = null;
+
+  /**
+   * Returns the name of this benchmark, which is its class name without the "Bench" prefix.
+   * @return The name.
+   */
+  public String getName() {
+    String name = getClass().getName();
+    name = name.substring(name.lastIndexOf('.') + 1);
+    return name.startsWith("Bench") ? name.substring("Bench".length()) : name;
+  }
+
+  /**
+   * Returns the variants of this benchmark, such as alternative implementations to be
+   * compared. By default there is a single, unnamed variant.
+   * @return The variant names, or an array containing only null.
+   */
+  public String[] getVariants() {
+    return new String[] {null};
+  }
+
+  /**
+   * Returns the workload sizes to run. Defaults to DEFAULT_SIZES.
+   * @return The sizes, in increasing order.
+   */
+  public int[] getSizes() {
+    return DEFAULT_SIZES.clone();
+  }
+
+  /**
+   * Returns the variant being run.
+   * @return The variant, or null if this benchmark has no named variants.
+   */
+  protected String getVariant() {
+    return this.variant;
+  }
+
+  /**
+   * Sets the variant to be run. Called by the runner before setUp.
+   * @param variant The variant.
+   */
+  void setVariant(String variant) {
+    this.variant = variant;
+  }
+
+  /**
+   * Builds the workload of the given size.
+   * @param size The workload size.
+   * @throws Exception If problems occur.
+   */
+  public abstract void setUp(int size) throws Exception;
+
+  /**
+   * Runs the kernel once over the whole workload.
+   * @return A value derived from the kernel's result, so that it cannot be optimized away.
+   * @throws Exception If problems occur.
+   */
+  public abstract long run() throws Exception;
+
+  /**
+   * Releases the workload. Does nothing by default.
+   * @throws Exception If problems occur.
+   */
+  public void tearDown() throws Exception {
+    // Do nothing.
+  }
+}
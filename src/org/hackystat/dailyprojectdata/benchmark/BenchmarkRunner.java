@@ -0,0 +1,246 @@
+package org.hackystat.dailyprojectdata.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs Benchmarks, printing the throughput and allocation rate of each variant and workload
+ * size, and optionally saving the results and comparing them with a saved baseline.
+ * <p>
+ * Invocation: java BenchmarkRunner [benchmark class name]...
+ * <p>
+ * The following system properties are recognized:
+ * <ul>
+ * <li> benchmark.millis: The approximate milliseconds spent warming up, and then measuring,
+ * each case. Defaults to 2000.
+ * <li> benchmark.maxsize: Workload sizes larger than this are skipped. Defaults to 1000000.
+ * <li> benchmark.results: A file in which to save the results as properties.
+ * <li> benchmark.baseline: A results file from an earlier run to compare against.
+ * </ul>
+ * Allocation is measured with com.sun.management.ThreadMXBean when the JVM provides it
+ * (Sun JVMs from 1.6.0_25); otherwise it is reported as "n/a".
+ *
+ * @author Philip Johnson
+ */
+public final class BenchmarkRunner {
+
+  /** The results key suffix for operations per second. */
+  private static final String OPS_PER_SECOND = ".opsPerSecond";
+
+  /** The results key suffix for bytes allocated per operation. */
+  private static final String BYTES_PER_OP = ".bytesPerOp";
+
+  /** The ThreadMXBean.getThreadAllocatedBytes(long) method, or null if unavailable. */
+  private static final Method ALLOCATED_BYTES = findAllocatedBytesMethod();
+
+  /** Accumulates the values returned by the benchmarks so they cannot be optimized away. */
+  private static long sink = 0;
+
+  /** The milliseconds spent warming up and measuring each case. */
+  private final long millis;
+
+  /** The largest workload size run. */
+  private final int maxSize;
+
+  /** The results of this run, keyed by case and measure, in sorted order. */
+  private final Map<String, String> results = new TreeMap<String, String>();
+
+  /** The baseline results, or null. */
+  private final Properties baseline;
+
+  /**
+   * Creates a runner.
+   * @param millis The milliseconds spent warming up and measuring each case.
+   * @param maxSize The largest workload size run.
+   * @param baseline The baseline results, or null.
+   */
+  public BenchmarkRunner(long millis, int maxSize, Properties baseline) {
+    this.millis = millis;
+    this.maxSize = maxSize;
+    this.baseline = baseline;
+  }
+
+  /**
+   * Runs the named benchmark classes.
+   * @param args The fully qualified names of the Benchmark classes.
+   * @throws Exception If a benchmark fails.
+   */
+  public static void main(String[] args) throws Exception {
+    long millis = Long.parseLong(System.getProperty("benchmark.millis", "2000"));
+    int maxSize = Integer.parseInt(System.getProperty("benchmark.maxsize", "1000000"));
+    String baselineFile = System.getProperty("benchmark.baseline", "");
+    Properties baseline = (baselineFile.length() == 0) ? null : load(new File(baselineFile));
+    BenchmarkRunner runner = new BenchmarkRunner(millis, maxSize, baseline);
+    for (String className : args) {
+      runner.run((Benchmark) Class.forName(className).newInstance());
+    }
+    String resultsFile = System.getProperty("benchmark.results", "");
+    if (resultsFile.length() > 0) {
+      runner.save(new File(resultsFile));
+    }
+    System.out.println("(sink " + sink + ")");
+  }
+
+  /**
+   * Runs every variant and size of benchmark, printing and recording the results.
+   * @param benchmark The benchmark.
+   * @throws Exception If the benchmark fails.
+   */
+  public void run(Benchmark benchmark) throws Exception {
+    for (String variant : benchmark.getVariants()) {
+      benchmark.setVariant(variant);
+      for (int size : benchmark.getSizes()) {
+        if (size > this.maxSize) {
+          continue;
+        }
+        String name = benchmark.getName() + ((variant == null) ? "" : "." + variant) + "." + size;
+        benchmark.setUp(size);
+        try {
+          measure(benchmark);
+          long[] result = measure(benchmark);
+          record(name, size, result);
+        }
+        finally {
+          benchmark.tearDown();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs benchmark repeatedly for about millis milliseconds.
+   * @param benchmark The benchmark.
+   * @return The operation count, the elapsed nanoseconds, and the bytes allocated (or -1).
+   * @throws Exception If the benchmark fails.
+   */
+  private long[] measure(Benchmark benchmark) throws Exception {
+    System.gc();
+    long bytesBefore = getAllocatedBytes();
+    long start = System.nanoTime();
+    long end = start + (this.millis * 1000000L);
+    long count = 0;
+    long now = start;
+    while ((now < end) || (count == 0)) {
+      sink += benchmark.run();
+      count++;
+      now = System.nanoTime();
+    }
+    long bytesAfter = getAllocatedBytes();
+    long bytes = ((bytesBefore < 0) || (bytesAfter < 0)) ? -1 : bytesAfter - bytesBefore;
+    return new long[] {count, now - start, bytes};
+  }
+
+  /**
+   * Prints and records the result of one case, along with its change from the baseline.
+   * @param name The case name.
+   * @param size The workload size.
+   * @param result The operation count, elapsed nanoseconds, and bytes allocated.
+   */
+  private void record(String name, int size, long[] result) {
+    double opsPerSecond = result[0] / (result[1] / 1e9);
+    String bytesPerOp = (result[2] < 0) ? "n/a" : String.valueOf(result[2] / result[0]);
+    this.results.put(name + OPS_PER_SECOND, String.format("%.3f", opsPerSecond));
+    this.results.put(name + BYTES_PER_OP, bytesPerOp);
+    String change = "";
+    String baselineOps = (this.baseline == null) ? null :
+      this.baseline.getProperty(name + OPS_PER_SECOND);
+    if (baselineOps != null) {
+      double percent = 100.0 * ((opsPerSecond / Double.parseDouble(baselineOps)) - 1.0);
+      change = String.format("  %+6.1f%% vs baseline", percent);
+    }
+    System.out.println(String.format("%-45s %14.1f ops/s %16.0f items/s %14s B/op%s", name,
+        opsPerSecond, opsPerSecond * size, bytesPerOp, change));
+  }
+
+  /**
+   * Writes the recorded results to file as sorted properties.
+   * @param file The results file.
+   * @throws IOException If the file cannot be written.
+   */
+  public void save(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null) {
+      dir.mkdirs();
+    }
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    try {
+      writer.write("# DailyProjectData benchmark results, java " +
+          System.getProperty("java.version") + ", " + System.getProperty("os.arch"));
+      writer.newLine();
+      for (Map.Entry<String, String> entry : this.results.entrySet()) {
+        writer.write(entry.getKey() + "=" + entry.getValue());
+        writer.newLine();
+      }
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Loads a results file.
+   * @param file The file.
+   * @return The results.
+   * @throws IOException If the file cannot be read.
+   */
+  private static Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream stream = new FileInputStream(file);
+    try {
+      properties.load(stream);
+    }
+    finally {
+      stream.close();
+    }
+    return properties;
+  }
+
+  /**
+   * Returns the number of bytes allocated so far by the current thread.
+   * @return The byte count, or -1 if the JVM cannot measure it.
+   */
+  private static long getAllocatedBytes() {
+    if (ALLOCATED_BYTES == null) {
+      return -1;
+    }
+    try {
+      Object bytes = ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(),
+          Long.valueOf(Thread.currentThread().getId()));
+      return ((Long) bytes).longValue();
+    }
+    catch (Exception e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long) method if the
+   * JVM provides it and it is enabled.
+   * @return The method, or null.
+   */
+  private static Method findAllocatedBytesMethod() {
+    try {
+      Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+      Method method = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+      Object bean = ManagementFactory.getThreadMXBean();
+      if (!beanClass.isInstance(bean) ||
+          (((Long) method.invoke(bean, Long.valueOf(Thread.currentThread().getId())))
+          .longValue() < 0)) {
+        return null;
+      }
+      return method;
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package org.hackystat.dailyprojectdata.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Properties;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Generates synthetic, reproducible SensorData workloads for the benchmarks. All of the data
+ * is timestamped within a single day, DAY. As in real projects, the data is skewed: a few
+ * members send most of the data, and a few tools account for most of it.
+ *
+ * @author Philip Johnson
+ */
+public class SensorDataWorkload {
+
+  /** The day in which all of the generated data is timestamped. */
+  public static final String DAY = "2008-01-15";
+
+  /** The number of project members. */
+  public static final int NUM_MEMBERS = 50;
+
+  /** The number of milliseconds in a day. */
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  /** The CodeIssue tools. */
+  private static final String[] CODE_ISSUE_TOOLS = {"Checkstyle", "PMD", "FindBugs", "Javac"};
+
+  /** The CodeIssue types. */
+  private static final String[] CODE_ISSUE_TYPES = {"JavadocStyle", "LineLength", "UnusedImports",
+    "MagicNumber", "EmptyBlock", "NullAssignment", "DLS_DEAD_LOCAL_STORE", "Unchecked"};
+
+  /** The DevEvent tools. */
+  private static final String[] DEV_EVENT_TOOLS = {"Eclipse", "Emacs", "VisualStudio", "Vim"};
+
+  /** The issue statuses, in the order issues usually move through them. */
+  private static final String[] ISSUE_STATUSES = {"New", "Accepted", "Started", "Fixed",
+    "Verified", "WontFix"};
+
+  /** The random number generator. */
+  private final Random random;
+
+  /** The start of DAY in milliseconds. */
+  private final long dayStart;
+
+  /** The members' email addresses. */
+  private final String[] members = new String[NUM_MEMBERS];
+
+  /**
+   * Creates a workload generator. Generators created with the same seed generate the same
+   * data.
+   * @param seed The random seed.
+   * @throws Exception If DAY cannot be parsed.
+   */
+  public SensorDataWorkload(long seed) throws Exception {
+    this.random = new Random(seed);
+    this.dayStart = Tstamp.makeTimestamp(DAY).toGregorianCalendar().getTimeInMillis();
+    for (int i = 0; i < NUM_MEMBERS; i++) {
+      this.members[i] = "member" + i + "@hackystat.org";
+    }
+  }
+
+  /**
+   * Returns size DevEvents, sent by skewed members and tools at random times during DAY.
+   * @param size The number of instances.
+   * @return The DevEvents.
+   */
+  public List<SensorData> makeDevEvents(int size) {
+    List<SensorData> dataList = new ArrayList<SensorData>(size);
+    for (int i = 0; i < size; i++) {
+      long time = randomTime();
+      SensorData data = makeData("DevEvent", pick(DEV_EVENT_TOOLS), pickMember(), time, time);
+      addProperty(data, "Type", "Edit");
+      dataList.add(data);
+    }
+    return dataList;
+  }
+
+  /**
+   * Returns size CodeIssue instances from skewed tools. Each tool's data was sent in one of
+   * several runs during DAY, and each instance counts a few skewed issue types.
+   * @param size The number of instances.
+   * @return The CodeIssue instances.
+   */
+  public List<SensorData> makeCodeIssues(int size) {
+    List<SensorData> dataList = new ArrayList<SensorData>(size);
+    for (int i = 0; i < size; i++) {
+      long runtime = this.dayStart + ((1 + this.random.nextInt(4)) * (MILLIS_PER_DAY / 5));
+      SensorData data = makeData("CodeIssue", pick(CODE_ISSUE_TOOLS), pickMember(),
+          runtime + this.random.nextInt(60000), runtime);
+      int numTypes = 1 + this.random.nextInt(3);
+      for (int j = 0; j < numTypes; j++) {
+        addProperty(data, "Type_" + pick(CODE_ISSUE_TYPES),
+            String.valueOf(1 + this.random.nextInt(20)));
+      }
+      dataList.add(data);
+    }
+    return dataList;
+  }
+
+  /**
+   * Returns size Commit instances from skewed members.
+   * @param size The number of instances.
+   * @return The Commit instances.
+   */
+  public List<SensorData> makeCommits(int size) {
+    List<SensorData> dataList = new ArrayList<SensorData>(size);
+    for (int i = 0; i < size; i++) {
+      long time = randomTime();
+      SensorData data = makeData("Commit", "Subversion", pickMember(), time, time);
+      addProperty(data, "author", data.getOwner());
+      addProperty(data, "linesAdded", String.valueOf(this.random.nextInt(200)));
+      addProperty(data, "linesDeleted", String.valueOf(this.random.nextInt(100)));
+      addProperty(data, "linesModified", String.valueOf(this.random.nextInt(50)));
+      addProperty(data, "totalLines", String.valueOf(this.random.nextInt(5000)));
+      dataList.add(data);
+    }
+    return dataList;
+  }
+
+  /**
+   * Returns size UnitTest instances from skewed members, about one in ten of which fail.
+   * @param size The number of instances.
+   * @return The UnitTest instances.
+   */
+  public List<SensorData> makeUnitTests(int size) {
+    List<SensorData> dataList = new ArrayList<SensorData>(size);
+    for (int i = 0; i < size; i++) {
+      long time = randomTime();
+      SensorData data = makeData("UnitTest", "JUnit", pickMember(), time, time);
+      addProperty(data, "Name", "testCase" + (i % 500));
+      addProperty(data, "Result", (this.random.nextInt(10) == 0) ? "fail" : "pass");
+      addProperty(data, "ElapsedTime", String.valueOf(this.random.nextInt(3000)));
+      dataList.add(data);
+    }
+    return dataList;
+  }
+
+  /**
+   * Returns size Issue instances, each with a history of type, status, priority, milestone,
+   * and owner changes made during the days before DAY, in the "value--timestamp" property
+   * format of the issue sensor.
+   * @param size The number of instances.
+   * @return The Issue instances.
+   */
+  public List<SensorData> makeIssues(int size) {
+    List<SensorData> dataList = new ArrayList<SensorData>(size);
+    for (int i = 0; i < size; i++) {
+      long time = randomTime();
+      SensorData data = makeData("Issue", "GoogleProjectHosting", pickMember(), time, time);
+      addProperty(data, "Id", String.valueOf(i + 1));
+      long changeTime = this.dayStart - (30 * MILLIS_PER_DAY);
+      addHistory(data, "Type", this.random.nextBoolean() ? "Defect" : "Enhancement", changeTime);
+      addHistory(data, "Priority", "Medium", changeTime);
+      addHistory(data, "Milestone", "8.4", changeTime);
+      int numChanges = 1 + this.random.nextInt(ISSUE_STATUSES.length);
+      for (int j = 0; j < numChanges; j++) {
+        changeTime += this.random.nextInt((int) (5 * MILLIS_PER_DAY));
+        addHistory(data, "Status", ISSUE_STATUSES[j], changeTime);
+        addHistory(data, "Owner", pickMember(), changeTime);
+      }
+      dataList.add(data);
+    }
+    return dataList;
+  }
+
+  /**
+   * Returns size FileMetric instances owned by owner, from a few runs of skewed tools
+   * during DAY.
+   * @param size The number of instances.
+   * @param owner The owner of all of the instances.
+   * @return The FileMetric instances.
+   */
+  public List<SensorData> makeFileMetrics(int size, String owner) {
+    List<SensorData> dataList = new ArrayList<SensorData>(size);
+    String[] tools = {"SCLC", "LOCC", "JavaNCSS"};
+    for (int i = 0; i < size; i++) {
+      long runtime = this.dayStart + ((1 + this.random.nextInt(4)) * (MILLIS_PER_DAY / 5));
+      SensorData data = makeData("FileMetric", pick(tools), owner, runtime + i, runtime);
+      data.setResource("file://C:/svn/project/src/org/hackystat/File" + i + ".java");
+      addProperty(data, "TotalLines", String.valueOf(this.random.nextInt(2000)));
+      dataList.add(data);
+    }
+    return dataList;
+  }
+
+  /**
+   * Returns the start of the day on which the generated sensor data falls.
+   * @return The start of the day, in epoch milliseconds.
+   */
+  public long getDayStart() {
+    return this.dayStart;
+  }
+
+  /**
+   * Returns one of the members, skewed so that low-numbered members are chosen more often.
+   * @return A member's email address.
+   */
+  public String pickMember() {
+    return pick(this.members);
+  }
+
+  /**
+   * Returns one of values, skewed so that values near the start of the array are chosen
+   * far more often than those near the end. Cubing a uniform random number gives the first
+   * tenth of the values almost half of the picks.
+   * @param values The values.
+   * @return A value.
+   */
+  private String pick(String[] values) {
+    double uniform = this.random.nextDouble();
+    return values[(int) (values.length * uniform * uniform * uniform)];
+  }
+
+  /**
+   * Returns a random time during DAY.
+   * @return The time in milliseconds.
+   */
+  private long randomTime() {
+    return this.dayStart + (long) (this.random.nextDouble() * MILLIS_PER_DAY);
+  }
+
+  /**
+   * Returns a SensorData instance with an empty property list.
+   * @param sdt The sensor data type.
+   * @param tool The tool.
+   * @param owner The owner.
+   * @param timestamp The timestamp in milliseconds.
+   * @param runtime The runtime in milliseconds.
+   * @return The instance.
+   */
+  private SensorData makeData(String sdt, String tool, String owner, long timestamp,
+      long runtime) {
+    SensorData data = new SensorData();
+    XMLGregorianCalendar tstamp = Tstamp.makeTimestamp(timestamp);
+    data.setSensorDataType(sdt);
+    data.setTool(tool);
+    data.setOwner(owner);
+    data.setTimestamp(tstamp);
+    data.setRuntime((timestamp == runtime) ? tstamp : Tstamp.makeTimestamp(runtime));
+    data.setResource("file://C:/svn/project/src/org/hackystat/Resource.java");
+    data.setProperties(new Properties());
+    return data;
+  }
+
+  /**
+   * Adds a property to data.
+   * @param data The instance.
+   * @param key The property key.
+   * @param value The property value.
+   */
+  private static void addProperty(SensorData data, String key, String value) {
+    Property property = new Property();
+    property.setKey(key);
+    property.setValue(value);
+    data.getProperties().getProperty().add(property);
+  }
+
+  /**
+   * Adds a property recording that key changed to value at time, as the issue sensor does.
+   * @param data The instance.
+   * @param key The property key.
+   * @param value The new value.
+   * @param time The time of the change in milliseconds.
+   */
+  private static void addHistory(SensorData data, String key, String value, long time) {
+    addProperty(data, key, value + "--" + Tstamp.makeTimestamp(time));
+  }
+}
@@ -1,13 +1,18 @@
 package org.hackystat.dailyprojectdata.client;
 
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.hackystat.dailyprojectdata.resource.build.jaxb.BuildDailyProjectData;
 import org.hackystat.dailyprojectdata.resource.codeissue.jaxb.CodeIssueDailyProjectData;
@@ -35,6 +40,9 @@ import org.restlet.data.Request;
 import org.restlet.data.Response;
 import org.restlet.data.Status;
 import org.restlet.resource.Representation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 
 /**
  * Provides a client to support access to the DailyProjectData service.
@@ -75,6 +83,11 @@ public class DailyProjectDataClient {
   private JAXBContext issueJAXB;
   /** IssueChange JAXB Context. */
   private JAXBContext issuechangeJAXB;
+  /** 
+   * The Unmarshallers created so far, one per JAXBContext. Unmarshallers are not thread-safe, 
+   * but they are only used while holding this client's lock.
+   */
+  private Map<JAXBContext, Unmarshaller> unmarshallers = new HashMap<JAXBContext, Unmarshaller>();
   /** The http authentication approach. */
   private ChallengeScheme scheme = ChallengeScheme.HTTP_BASIC;
   /** The preferred representation type. */
@@ -235,6 +248,22 @@ public class DailyProjectDataClient {
     return response;
   }
 
+  /**
+   * Returns the Unmarshaller for jaxb, creating it on first use. Must only be called while 
+   * holding this client's lock, and the Unmarshaller must not be used after releasing it.
+   * @param jaxb The JAXBContext.
+   * @return The Unmarshaller.
+   * @throws JAXBException If the Unmarshaller cannot be created.
+   */
+  private Unmarshaller getUnmarshaller(JAXBContext jaxb) throws JAXBException {
+    Unmarshaller unmarshaller = this.unmarshallers.get(jaxb);
+    if (unmarshaller == null) {
+      unmarshaller = jaxb.createUnmarshaller();
+      this.unmarshallers.put(jaxb, unmarshaller);
+    }
+    return unmarshaller;
+  }
+
   /**
    * Takes a String encoding of a DevTimeDailyProjectData in XML format and converts it.
    * 
@@ -243,7 +272,7 @@ public class DailyProjectDataClient {
    * @throws Exception If problems occur during unmarshalling.
    */
   private DevTimeDailyProjectData makeDevTimeDailyProjectData(String xmlString) throws Exception {
-    Unmarshaller unmarshaller = this.devTimeJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.devTimeJAXB);
     return (DevTimeDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -374,7 +403,7 @@ public class DailyProjectDataClient {
    * @throws Exception If problems occur during unmarshalling.
    */
   private UnitTestDailyProjectData makeUnitTestDailyProjectData(String xmlString) throws Exception {
-    Unmarshaller unmarshaller = this.unitTestJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.unitTestJAXB);
     return (UnitTestDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -579,7 +608,7 @@ public class DailyProjectDataClient {
    */
   private FileMetricDailyProjectData makeFileMetricDailyProjectData(String xmlString)
       throws Exception {
-    Unmarshaller unmarshaller = this.fileMetricJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.fileMetricJAXB);
     return (FileMetricDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -592,7 +621,7 @@ public class DailyProjectDataClient {
    */
   private ComplexityDailyProjectData makeComplexityDailyProjectData(String xmlString)
       throws Exception {
-    Unmarshaller unmarshaller = this.complexityJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.complexityJAXB);
     return (ComplexityDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -604,7 +633,7 @@ public class DailyProjectDataClient {
    * @throws Exception If problems occur during unmarshalling.
    */
   private CouplingDailyProjectData makeCouplingDailyProjectData(String xmlString) throws Exception {
-    Unmarshaller unmarshaller = this.couplingJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.couplingJAXB);
     return (CouplingDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -748,7 +777,7 @@ public class DailyProjectDataClient {
    * @throws Exception If problems occur during unmarshalling.
    */
   private CoverageDailyProjectData makeCoverageDailyProjectData(String xmlString) throws Exception {
-    Unmarshaller unmarshaller = this.coverageJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.coverageJAXB);
     return (CoverageDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -814,7 +843,7 @@ public class DailyProjectDataClient {
    * @throws Exception If problems occur during unmarshalling.
    */
   private CommitDailyProjectData makeCommitDailyProjectData(String xmlString) throws Exception {
-    Unmarshaller unmarshaller = this.commitJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.commitJAXB);
     return (CommitDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -827,7 +856,7 @@ public class DailyProjectDataClient {
    */
   private CodeIssueDailyProjectData makeCodeIssueDailyProjectData(String xmlString)
       throws Exception {
-    Unmarshaller unmarshaller = this.codeIssueJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.codeIssueJAXB);
     return (CodeIssueDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
 
@@ -917,7 +946,7 @@ public class DailyProjectDataClient {
    * @throws Exception If problems occur during unmarshalling.
    */
   private BuildDailyProjectData makeBuildDailyProjectData(String xmlString) throws Exception {
-    Unmarshaller unmarshaller = this.buildJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.buildJAXB);
     return (BuildDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlString));
   }
   
@@ -1004,7 +1033,7 @@ public class DailyProjectDataClient {
    * @throws JAXBException If problems occur during unmarshalling.
    */
   private IssueDailyProjectData makeIssueDailyProjectData(String xmlData) throws JAXBException {
-    Unmarshaller unmarshaller = this.issueJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.issueJAXB);
     return (IssueDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlData));
   }
 
@@ -1068,7 +1097,7 @@ public class DailyProjectDataClient {
    */
   private IssueChangeDailyProjectData makeIssueChangeDailyProjectData(String xmlData) 
       throws JAXBException {
-    Unmarshaller unmarshaller = this.issuechangeJAXB.createUnmarshaller();
+    Unmarshaller unmarshaller = getUnmarshaller(this.issuechangeJAXB);
     return (IssueChangeDailyProjectData) unmarshaller.unmarshal(new StringReader(xmlData));
   }
   
@@ -1150,6 +1179,286 @@ public class DailyProjectDataClient {
     return size;
   }
 
+  /**
+   * Returns the DevTimeDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @return The DevTimeDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If the credentials associated with this instance are
+   *         not valid, or if the underlying SensorBase service cannot be reached, or if one or more
+   *         of the supplied user, password, start, or end is not valid.
+   */
+  public synchronized List<DevTimeDailyProjectData> getDevTimes(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end) 
+      throws DailyProjectDataClientException {
+    return getRange("devtime/" + user + "/" + project + "/", "", start, end, user + project, 
+        this.devTimeJAXB, DevTimeDailyProjectData.class);
+  }
+
+  /**
+   * Returns the UnitTestDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @return The UnitTestDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<UnitTestDailyProjectData> getUnitTests(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end) 
+      throws DailyProjectDataClientException {
+    return getRange("unittest/" + user + "/" + project + "/", "", start, end, user + project, 
+        this.unitTestJAXB, UnitTestDailyProjectData.class);
+  }
+
+  /**
+   * Returns the FileMetricDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param sizeMetric The size metric to be retrieved.
+   * @param tool The tool whose data is to be retrieved, or null for no tool.
+   * @return The FileMetricDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<FileMetricDailyProjectData> getFileMetrics(String user, 
+      String project, XMLGregorianCalendar start, XMLGregorianCalendar end, String sizeMetric, 
+      String tool) throws DailyProjectDataClientException {
+    String param = (tool == null) ? "" : "?Tool=" + tool;
+    return getRange("filemetric/" + user + "/" + project + "/", "/" + sizeMetric + param, start,
+        end, user + project, this.fileMetricJAXB, FileMetricDailyProjectData.class);
+  }
+
+  /**
+   * Returns the ComplexityDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param type The type of complexity, such as "Cyclomatic".
+   * @param tool The tool that provided the complexity data, such as "JavaNCSS".
+   * @return The ComplexityDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<ComplexityDailyProjectData> getComplexities(String user, 
+      String project, XMLGregorianCalendar start, XMLGregorianCalendar end, String type, 
+      String tool) throws DailyProjectDataClientException {
+    return getRange("complexity/" + user + "/" + project + "/", "/" + type + "?Tool=" + tool, 
+        start, end, user + project, this.complexityJAXB, ComplexityDailyProjectData.class);
+  }
+
+  /**
+   * Returns the CouplingDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param type The type of coupling, such as "class".
+   * @param tool The tool that provided the coupling data, such as "DependencyFinder".
+   * @return The CouplingDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<CouplingDailyProjectData> getCouplings(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end, String type, String tool) 
+      throws DailyProjectDataClientException {
+    return getRange("coupling/" + user + "/" + project + "/", "/" + type + "?Tool=" + tool, 
+        start, end, user + project, this.couplingJAXB, CouplingDailyProjectData.class);
+  }
+
+  /**
+   * Returns the CodeIssueDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param tool An optional tool for which data will be retrieved, or null.
+   * @param type An optional type for which data will be retrieved, or null.
+   * @return The CodeIssueDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<CodeIssueDailyProjectData> getCodeIssues(String user, 
+      String project, XMLGregorianCalendar start, XMLGregorianCalendar end, String tool, 
+      String type) throws DailyProjectDataClientException {
+    StringBuilder params = new StringBuilder();
+    if (tool != null) {
+      params.append("?Tool=").append(tool);
+    }
+    if (type != null) {
+      params.append((tool == null) ? "?" : "&").append("Type=").append(type);
+    }
+    return getRange("codeissue/" + user + "/" + project + "/", params.toString(), start, end, 
+        user + project, this.codeIssueJAXB, CodeIssueDailyProjectData.class);
+  }
+
+  /**
+   * Returns the CoverageDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param granularity The granularity of the coverage data, which is required: without it, 
+   * the range URI would name the single day DPD of start with granularity end.
+   * @return The CoverageDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If granularity is null, or if problems occur.
+   */
+  public synchronized List<CoverageDailyProjectData> getCoverages(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end, String granularity) 
+      throws DailyProjectDataClientException {
+    if (granularity == null) {
+      throw new DailyProjectDataClientException("A granularity is required for coverage ranges");
+    }
+    return getRange("coverage/" + user + "/" + project + "/", "/" + granularity, start, end, 
+        user + project, this.coverageJAXB, CoverageDailyProjectData.class);
+  }
+
+  /**
+   * Returns the CommitDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @return The CommitDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<CommitDailyProjectData> getCommits(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end) 
+      throws DailyProjectDataClientException {
+    return getRange("commit/" + user + "/" + project + "/", "", start, end, user + project, 
+        this.commitJAXB, CommitDailyProjectData.class);
+  }
+
+  /**
+   * Returns the BuildDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param type The type of build to retrieve data for, or null for all builds.
+   * @return The BuildDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<BuildDailyProjectData> getBuilds(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end, String type) 
+      throws DailyProjectDataClientException {
+    String param = (type == null) ? "" : "?Type=" + type;
+    return getRange("build/" + user + "/" + project + "/", param, start, end, user + project, 
+        this.buildJAXB, BuildDailyProjectData.class);
+  }
+
+  /**
+   * Returns the IssueDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @param status The status of the issues to retrieve, or null for all issues.
+   * @return The IssueDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<IssueDailyProjectData> getIssues(String user, String project,
+      XMLGregorianCalendar start, XMLGregorianCalendar end, String status) 
+      throws DailyProjectDataClientException {
+    String param = (status == null) ? "" : "?Status=" + status;
+    return getRange("issue/" + user + "/" + project + "/", param, start, end, user + project, 
+        this.issueJAXB, IssueDailyProjectData.class);
+  }
+
+  /**
+   * Returns the IssueChangeDailyProjectData instances for each day from start through end, 
+   * inclusive, using a single request to this server.
+   * 
+   * @param user The user that owns the project.
+   * @param project The project owned by user.
+   * @param start The Timestamp indicating the start of the first day.
+   * @param end The Timestamp indicating the start of the last day.
+   * @return The IssueChangeDailyProjectData instances, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  public synchronized List<IssueChangeDailyProjectData> getIssueChanges(String user, 
+      String project, XMLGregorianCalendar start, XMLGregorianCalendar end) 
+      throws DailyProjectDataClientException {
+    return getRange("issuechange/" + user + "/" + project + "/", "", start, end, 
+        user + project, this.issuechangeJAXB, IssueChangeDailyProjectData.class);
+  }
+
+  /**
+   * Requests the DPDs for each day from start through end from this server, and converts 
+   * them. The URI of the range request is prefix + start + "/" + end + suffix, and the URI of 
+   * the equivalent single day request is prefix + day + suffix.  If caching is enabled, the DPD 
+   * for each day before yesterday is added to the cache under its single day URI.
+   * 
+   * @param <T> The DPD class.
+   * @param prefix The URI up to the timestamp. 
+   * @param suffix The URI following the timestamp.
+   * @param start The start of the first day.
+   * @param end The start of the last day.
+   * @param cacheGroup The cache group for the DPDs.
+   * @param jaxb The JAXBContext for the DPD class.
+   * @param dpdClass The DPD class.
+   * @return The DPDs, one per day, in increasing day order.
+   * @throws DailyProjectDataClientException If problems occur.
+   */
+  private <T> List<T> getRange(String prefix, String suffix, XMLGregorianCalendar start, 
+      XMLGregorianCalendar end, String cacheGroup, JAXBContext jaxb, Class<T> dpdClass) 
+      throws DailyProjectDataClientException {
+    Date startTime = new Date();
+    String uri = prefix + start + "/" + end + suffix;
+    Response response = makeRequest(Method.GET, uri, null);
+    if (!response.getStatus().isSuccess()) {
+      logElapsedTime(uri, startTime);
+      throw new DailyProjectDataClientException(response.getStatus());
+    }
+    List<T> dpds = new ArrayList<T>();
+    try {
+      String xmlData = response.getEntity().getText();
+      DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+      dbf.setNamespaceAware(true);
+      Document doc = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xmlData)));
+      Unmarshaller unmarshaller = getUnmarshaller(jaxb);
+      XMLGregorianCalendar day = start;
+      for (Node node = doc.getDocumentElement().getFirstChild(); node != null; 
+           node = node.getNextSibling()) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+          T dpd = dpdClass.cast(unmarshaller.unmarshal(node));
+          dpds.add(dpd);
+          if (this.isCacheEnabled && !Tstamp.isYesterdayOrLater(day)) {
+            this.uriCache.putInGroup(prefix + day + suffix, cacheGroup, dpd);
+          }
+          day = Tstamp.incrementDays(day, 1);
+        }
+      }
+    }
+    catch (Exception e) {
+      logElapsedTime(uri, startTime, e);
+      throw new DailyProjectDataClientException(response.getStatus(), e);
+    }
+    logElapsedTime(uri, startTime);
+    return dpds;
+  }
+
   /**
    * Clears the (front side) DPD cache associated with this user on the DailyProjectData server
    * to which this DailyProjectDataClient instance is connected.
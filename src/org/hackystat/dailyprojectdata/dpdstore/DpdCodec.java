@@ -0,0 +1,688 @@
+package org.hackystat.dailyprojectdata.dpdstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Encodes DPD instances in a compact binary form and decodes them again, without going
+ * through XML. The DPD classes are the JAXB classes generated with field access, so an
+ * instance is fully described by its fields: each field is written in order of field name,
+ * with no names or tags. Integers are written as variable length integers, and each distinct
+ * String is written once per instance and referred to by number afterwards, so that the
+ * owner, project, and member URIs repeated throughout a DPD take a byte or two each.
+ * <p>
+ * The supported field types are the primitive and boxed int, long, double, and boolean,
+ * String, BigInteger, BigDecimal, XMLGregorianCalendar, Lists of any of these, and other
+ * classes whose fields are themselves supported, such as the nested JAXB classes. Each
+ * encoding starts with the class name and a fingerprint of the field names and types of the
+ * class and the classes it contains, so that an instance encoded before a DPD class changed
+ * is rejected when decoded rather than decoded incorrectly.
+ * <p>
+ * A DpdCodec is thread safe.
+ *
+ * @author Philip Johnson
+ */
+public class DpdCodec {
+
+  /** The marker preceding a null reference. */
+  private static final int NULL = 0;
+
+  /** The marker preceding a non-null reference. */
+  private static final int PRESENT = 1;
+
+  /** The kinds of field values. */
+  private static enum Kind { INT, LONG, DOUBLE, BOOLEAN, STRING, BIG_INTEGER, BIG_DECIMAL,
+    CALENDAR, LIST, OBJECT }
+
+  /** The layout of each class encoded or decoded so far. */
+  private final ConcurrentMap<Class<?>, Layout> layouts =
+    new ConcurrentHashMap<Class<?>, Layout>();
+
+  /** Creates the XMLGregorianCalendar instances when decoding. */
+  private final DatatypeFactory datatypeFactory;
+
+  /**
+   * Creates a codec.
+   */
+  public DpdCodec() {
+    try {
+      this.datatypeFactory = DatatypeFactory.newInstance();
+    }
+    catch (DatatypeConfigurationException e) {
+      throw new IllegalStateException("Cannot create a DatatypeFactory", e);
+    }
+  }
+
+  /**
+   * Returns the encoding of dpd.
+   * @param dpd The DPD instance.
+   * @return The encoded bytes.
+   * @throws IllegalArgumentException If the class of dpd has a field of an unsupported type.
+   */
+  public byte[] encode(Object dpd) {
+    Layout layout = getLayout(dpd.getClass());
+    Writer writer = new Writer();
+    writer.writeString(dpd.getClass().getName());
+    writer.writeVarLong(layout.getFingerprint());
+    writeFields(writer, layout, dpd);
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns the DPD instance encoded in bytes.
+   * @param bytes The encoded bytes, as returned by encode.
+   * @return The DPD instance.
+   * @throws IOException If bytes is not a valid encoding, or if the class of the DPD has
+   * changed since it was encoded.
+   */
+  public Object decode(byte[] bytes) throws IOException {
+    Reader reader = new Reader(bytes);
+    String className = reader.readString();
+    Layout layout;
+    try {
+      layout = getLayout(Class.forName(className, true, DpdCodec.class.getClassLoader()));
+    }
+    catch (ClassNotFoundException e) {
+      throw new IOException("Unknown DPD class: " + className);
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException("Unsupported DPD class: " + className);
+    }
+    if (reader.readVarLong() != layout.getFingerprint()) {
+      throw new IOException("The fields of " + className + " have changed since it was stored");
+    }
+    Object dpd = readFields(reader, layout);
+    if (reader.hasRemaining()) {
+      throw new IOException("Extra bytes after " + className);
+    }
+    return dpd;
+  }
+
+  /**
+   * Returns the layout of type, creating it if necessary.
+   * @param type The class.
+   * @return The layout.
+   * @throws IllegalArgumentException If type has a field of an unsupported type.
+   */
+  private Layout getLayout(Class<?> type) {
+    Layout layout = this.layouts.get(type);
+    if (layout == null) {
+      layout = new Layout(type);
+      this.layouts.putIfAbsent(type, layout);
+    }
+    return layout;
+  }
+
+  /**
+   * Writes the fields of object.
+   * @param writer The writer.
+   * @param layout The layout of object's class.
+   * @param object The object.
+   */
+  private void writeFields(Writer writer, Layout layout, Object object) {
+    for (int i = 0; i < layout.fields.length; i++) {
+      Object value;
+      try {
+        value = layout.fields[i].get(object);
+      }
+      catch (IllegalAccessException e) {
+        throw new IllegalArgumentException("Cannot read " + layout.fields[i], e);
+      }
+      if (layout.fields[i].getType().isPrimitive()) {
+        writeValue(writer, layout.kinds[i], layout.types[i], value);
+      }
+      else {
+        writeReference(writer, layout.kinds[i], layout.types[i], value);
+      }
+    }
+  }
+
+  /**
+   * Writes a possibly null value, preceded by its null marker.
+   * @param writer The writer.
+   * @param kind The kind of value.
+   * @param type The class of an OBJECT value, or the element class of a LIST value.
+   * @param value The value, or null.
+   */
+  private void writeReference(Writer writer, Kind kind, Class<?> type, Object value) {
+    if (value == null) {
+      writer.writeVarLong(NULL);
+    }
+    else {
+      writer.writeVarLong(PRESENT);
+      writeValue(writer, kind, type, value);
+    }
+  }
+
+  /**
+   * Writes a non-null value.
+   * @param writer The writer.
+   * @param kind The kind of value.
+   * @param type The class of an OBJECT value, or the element class of a LIST value.
+   * @param value The value.
+   */
+  private void writeValue(Writer writer, Kind kind, Class<?> type, Object value) {
+    switch (kind) {
+    case INT:
+      writer.writeVarLong(((Integer) value).intValue());
+      break;
+    case LONG:
+      writer.writeVarLong(((Long) value).longValue());
+      break;
+    case DOUBLE:
+      writer.writeLong(Double.doubleToLongBits(((Double) value).doubleValue()));
+      break;
+    case BOOLEAN:
+      writer.writeVarLong(((Boolean) value).booleanValue() ? 1 : 0);
+      break;
+    case STRING:
+      writer.writeString((String) value);
+      break;
+    case BIG_INTEGER:
+      writer.writeBytes(((BigInteger) value).toByteArray());
+      break;
+    case BIG_DECIMAL:
+      writer.writeVarLong(((BigDecimal) value).scale());
+      writer.writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+      break;
+    case CALENDAR:
+      writer.writeString(((XMLGregorianCalendar) value).toXMLFormat());
+      break;
+    case LIST:
+      List<?> list = (List<?>) value;
+      Kind elementKind = getKind(type);
+      writer.writeVarLong(list.size());
+      for (Object element : list) {
+        writeReference(writer, elementKind, type, element);
+      }
+      break;
+    default:
+      writeFields(writer, getLayout(type), value);
+    }
+  }
+
+  /**
+   * Creates an instance of the class of layout and reads its fields.
+   * @param reader The reader.
+   * @param layout The layout.
+   * @return The instance.
+   * @throws IOException If the encoding is not valid.
+   */
+  private Object readFields(Reader reader, Layout layout) throws IOException {
+    Object object = layout.newInstance();
+    for (int i = 0; i < layout.fields.length; i++) {
+      Object value = layout.fields[i].getType().isPrimitive()
+          ? readValue(reader, layout.kinds[i], layout.types[i])
+          : readReference(reader, layout.kinds[i], layout.types[i]);
+      try {
+        layout.fields[i].set(object, value);
+      }
+      catch (IllegalAccessException e) {
+        throw new IllegalArgumentException("Cannot set " + layout.fields[i], e);
+      }
+    }
+    return object;
+  }
+
+  /**
+   * Reads a possibly null value, preceded by its null marker.
+   * @param reader The reader.
+   * @param kind The kind of value.
+   * @param type The class of an OBJECT value, or the element class of a LIST value.
+   * @return The value, or null.
+   * @throws IOException If the encoding is not valid.
+   */
+  private Object readReference(Reader reader, Kind kind, Class<?> type) throws IOException {
+    long marker = reader.readVarLong();
+    if (marker == NULL) {
+      return null;
+    }
+    if (marker != PRESENT) {
+      throw new IOException("Invalid null marker: " + marker);
+    }
+    return readValue(reader, kind, type);
+  }
+
+  /**
+   * Reads a non-null value.
+   * @param reader The reader.
+   * @param kind The kind of value.
+   * @param type The class of an OBJECT value, or the element class of a LIST value.
+   * @return The value.
+   * @throws IOException If the encoding is not valid.
+   */
+  private Object readValue(Reader reader, Kind kind, Class<?> type) throws IOException {
+    switch (kind) {
+    case INT:
+      return Integer.valueOf((int) reader.readVarLong());
+    case LONG:
+      return Long.valueOf(reader.readVarLong());
+    case DOUBLE:
+      return Double.valueOf(Double.longBitsToDouble(reader.readLong()));
+    case BOOLEAN:
+      return Boolean.valueOf(reader.readVarLong() != 0);
+    case STRING:
+      return reader.readString();
+    case BIG_INTEGER:
+      return new BigInteger(reader.readBytes());
+    case BIG_DECIMAL:
+      int scale = (int) reader.readVarLong();
+      return new BigDecimal(new BigInteger(reader.readBytes()), scale);
+    case CALENDAR:
+      try {
+        return this.datatypeFactory.newXMLGregorianCalendar(reader.readString());
+      }
+      catch (IllegalArgumentException e) {
+        throw new IOException("Invalid timestamp: " + e.getMessage());
+      }
+    case LIST:
+      int size = reader.readLength();
+      Kind elementKind = getKind(type);
+      List<Object> list = new ArrayList<Object>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(readReference(reader, elementKind, type));
+      }
+      return list;
+    default:
+      return readFields(reader, getLayout(type));
+    }
+  }
+
+  /**
+   * Returns the kind of values of type, which must not be a List.
+   * @param type The class.
+   * @return The kind.
+   * @throws IllegalArgumentException If type is not supported.
+   */
+  private static Kind getKind(Class<?> type) {
+    if ((type == int.class) || (type == Integer.class)) {
+      return Kind.INT;
+    }
+    if ((type == long.class) || (type == Long.class)) {
+      return Kind.LONG;
+    }
+    if ((type == double.class) || (type == Double.class)) {
+      return Kind.DOUBLE;
+    }
+    if ((type == boolean.class) || (type == Boolean.class)) {
+      return Kind.BOOLEAN;
+    }
+    if (type == String.class) {
+      return Kind.STRING;
+    }
+    if (type == BigInteger.class) {
+      return Kind.BIG_INTEGER;
+    }
+    if (type == BigDecimal.class) {
+      return Kind.BIG_DECIMAL;
+    }
+    if (type == XMLGregorianCalendar.class) {
+      return Kind.CALENDAR;
+    }
+    if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum()
+        || Modifier.isAbstract(type.getModifiers()) || type.getName().startsWith("java")) {
+      throw new IllegalArgumentException("Unsupported DPD field type: " + type.getName());
+    }
+    return Kind.OBJECT;
+  }
+
+  /**
+   * Returns the fields of type that are encoded, in order of name.
+   * @param type The class.
+   * @return The non-static, non-transient fields.
+   */
+  private static Field[] getFields(Class<?> type) {
+    List<Field> fields = new ArrayList<Field>();
+    for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+            && !field.isSynthetic()) {
+          fields.add(field);
+        }
+      }
+    }
+    Field[] sorted = fields.toArray(new Field[fields.size()]);
+    Arrays.sort(sorted, new Comparator<Field>() {
+      public int compare(Field field1, Field field2) {
+        int order = field1.getName().compareTo(field2.getName());
+        return (order == 0)
+            ? field1.getDeclaringClass().getName().compareTo(field2.getDeclaringClass().getName())
+            : order;
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * The fields of a class, and how each one is encoded.
+   */
+  private final class Layout {
+    /** The no-argument constructor. */
+    private final Constructor<?> constructor;
+    /** The fields, in order of name. */
+    private final Field[] fields;
+    /** The kind of each field. */
+    private final Kind[] kinds;
+    /** The class of each field, or the element class of each LIST field. */
+    private final Class<?>[] types;
+    /** The fingerprint, computed when first needed. */
+    private volatile long fingerprint = 0;
+
+    /**
+     * Creates the layout of type.
+     * @param type The class.
+     * @throws IllegalArgumentException If type has no no-argument constructor, or has a
+     * field of an unsupported type.
+     */
+    private Layout(Class<?> type) {
+      try {
+        this.constructor = type.getDeclaredConstructor();
+      }
+      catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException(type.getName() + " has no no-argument constructor");
+      }
+      this.constructor.setAccessible(true);
+      this.fields = getFields(type);
+      this.kinds = new Kind[this.fields.length];
+      this.types = new Class<?>[this.fields.length];
+      for (int i = 0; i < this.fields.length; i++) {
+        Field field = this.fields[i];
+        field.setAccessible(true);
+        if (List.class.equals(field.getType())) {
+          this.kinds[i] = Kind.LIST;
+          this.types[i] = getElementType(field);
+          getKind(this.types[i]);
+        }
+        else {
+          this.kinds[i] = getKind(field.getType());
+          this.types[i] = field.getType();
+        }
+      }
+    }
+
+    /**
+     * Returns the element class of a List field.
+     * @param field The field.
+     * @return The element class.
+     * @throws IllegalArgumentException If the element type is not a class.
+     */
+    private Class<?> getElementType(Field field) {
+      Type type = field.getGenericType();
+      if (type instanceof ParameterizedType) {
+        Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if ((element instanceof Class) && !List.class.equals(element)) {
+          return (Class<?>) element;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported DPD list field: " + field);
+    }
+
+    /**
+     * Returns a new instance of the class.
+     * @return The instance.
+     * @throws IOException If the instance cannot be created.
+     */
+    private Object newInstance() throws IOException {
+      try {
+        return this.constructor.newInstance();
+      }
+      catch (Exception e) {
+        IOException ioe = new IOException("Cannot create " + this.constructor.getName());
+        ioe.initCause(e);
+        throw ioe;
+      }
+    }
+
+    /**
+     * Returns the fingerprint of the field names and types of the class, and of the classes
+     * of its OBJECT fields and List elements.
+     * @return The fingerprint.
+     */
+    private long getFingerprint() {
+      if (this.fingerprint == 0) {
+        StringBuilder description = new StringBuilder();
+        describe(description, new HashSet<Class<?>>());
+        long hash = 1125899906842597L;
+        for (int i = 0; i < description.length(); i++) {
+          hash = 31 * hash + description.charAt(i);
+        }
+        this.fingerprint = (hash == 0) ? 1 : hash;
+      }
+      return this.fingerprint;
+    }
+
+    /**
+     * Appends the field names and types of the class, and of the classes it contains, to
+     * description.
+     * @param description The description.
+     * @param described The classes already described, which are not described again.
+     */
+    private void describe(StringBuilder description, Set<Class<?>> described) {
+      description.append(this.constructor.getDeclaringClass().getName()).append('{');
+      described.add(this.constructor.getDeclaringClass());
+      for (int i = 0; i < this.fields.length; i++) {
+        description.append(this.fields[i].getName()).append(':');
+        description.append(this.fields[i].getType().getName());
+        if (this.types[i] != this.fields[i].getType()) {
+          description.append('<').append(this.types[i].getName()).append('>');
+        }
+        description.append(';');
+      }
+      description.append('}');
+      for (Class<?> type : this.types) {
+        if ((getKind(type) == Kind.OBJECT) && !described.contains(type)) {
+          getLayout(type).describe(description, described);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes variable length integers, Strings, and bytes to a growing buffer.
+   */
+  private static final class Writer {
+    /** The buffer. */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    /** The number of each String already written. */
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * Writes value in 1 to 10 bytes, using fewer bytes for values closer to 0.
+     * @param value The value.
+     */
+    private void writeVarLong(long value) {
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        this.bytes.write((int) ((zigzag & 0x7F) | 0x80));
+        zigzag >>>= 7;
+      }
+      this.bytes.write((int) zigzag);
+    }
+
+    /**
+     * Writes value in 8 bytes.
+     * @param value The value.
+     */
+    private void writeLong(long value) {
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        this.bytes.write((int) (value >>> shift));
+      }
+    }
+
+    /**
+     * Writes the length of data followed by data.
+     * @param data The bytes.
+     */
+    private void writeBytes(byte[] data) {
+      writeVarLong(data.length);
+      this.bytes.write(data, 0, data.length);
+    }
+
+    /**
+     * Writes the number of value if it has already been written, and otherwise writes 0
+     * followed by its UTF-8 bytes.
+     * @param value The String.
+     */
+    private void writeString(String value) {
+      Integer number = this.strings.get(value);
+      if (number == null) {
+        this.strings.put(value, this.strings.size() + 1);
+        writeVarLong(0);
+        try {
+          writeBytes(value.getBytes("UTF-8"));
+        }
+        catch (IOException e) {
+          throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+      }
+      else {
+        writeVarLong(number.intValue());
+      }
+    }
+
+    /**
+     * Returns the bytes written.
+     * @return The bytes.
+     */
+    private byte[] toByteArray() {
+      return this.bytes.toByteArray();
+    }
+  }
+
+  /**
+   * Reads what a Writer writes.
+   */
+  private static final class Reader {
+    /** The encoded bytes. */
+    private final byte[] bytes;
+    /** The position of the next byte to read. */
+    private int position = 0;
+    /** The Strings read so far, in order. */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Creates a reader.
+     * @param bytes The encoded bytes.
+     */
+    private Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns true if there are bytes left to read.
+     * @return True if not at the end.
+     */
+    private boolean hasRemaining() {
+      return this.position < this.bytes.length;
+    }
+
+    /**
+     * Reads the next byte.
+     * @return The byte, from 0 to 255.
+     * @throws EOFException If there are no bytes left.
+     */
+    private int read() throws EOFException {
+      if (this.position >= this.bytes.length) {
+        throw new EOFException("Truncated DPD encoding");
+      }
+      return this.bytes[this.position++] & 0xFF;
+    }
+
+    /**
+     * Reads a value written by writeVarLong.
+     * @return The value.
+     * @throws IOException If the encoding is not valid.
+     */
+    private long readVarLong() throws IOException {
+      long zigzag = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = read();
+        zigzag |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+      }
+      throw new IOException("Invalid variable length integer");
+    }
+
+    /**
+     * Reads a value written by writeLong.
+     * @return The value.
+     * @throws EOFException If there are fewer than 8 bytes left.
+     */
+    private long readLong() throws EOFException {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | read();
+      }
+      return value;
+    }
+
+    /**
+     * Reads a length, which must not exceed the number of bytes left.
+     * @return The length.
+     * @throws IOException If the length is not valid.
+     */
+    private int readLength() throws IOException {
+      long length = readVarLong();
+      if ((length < 0) || (length > this.bytes.length - this.position)) {
+        throw new IOException("Invalid length: " + length);
+      }
+      return (int) length;
+    }
+
+    /**
+     * Reads bytes written by writeBytes.
+     * @return The bytes.
+     * @throws IOException If the encoding is not valid.
+     */
+    private byte[] readBytes() throws IOException {
+      int length = readLength();
+      byte[] data = new byte[length];
+      System.arraycopy(this.bytes, this.position, data, 0, length);
+      this.position += length;
+      return data;
+    }
+
+    /**
+     * Reads a String written by writeString.
+     * @return The String.
+     * @throws IOException If the encoding is not valid.
+     */
+    private String readString() throws IOException {
+      long number = readVarLong();
+      if (number == 0) {
+        String value = new String(readBytes(), "UTF-8");
+        this.strings.add(value);
+        return value;
+      }
+      if ((number < 0) || (number > this.strings.size())) {
+        throw new IOException("Invalid String number: " + number);
+      }
+      return this.strings.get((int) number - 1);
+    }
+  }
+}
@@ -0,0 +1,934 @@
+package org.hackystat.dailyprojectdata.dpdstore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A persistent store of the DPD instances of days that have ended, so that a DPD computed
+ * once is served from disk after the server restarts, and so that the instance itself,
+ * rather than its XML, is what is kept. Each DPD is encoded with a DpdCodec, optionally
+ * compressed, and looked up by DPD type, project owner, project, day, and the remaining
+ * request parameters (such as the tool or size metric). A lookup decodes the instance
+ * without parsing XML; the XML is produced only when the instance is written to a response.
+ * <p>
+ * The store is a directory of segment files, to which records are only ever appended. A
+ * record either adds a DPD, replacing any DPD with the same key, or clears the DPDs of an
+ * owner or of one of the owner's projects. Each record carries its length and a CRC32 of its
+ * contents, so that a record only partly written when the server stopped is detected and
+ * discarded. When the store is opened, the records of all segments are replayed in order to
+ * rebuild the in-memory index, which maps each key to the location of its latest record.
+ * <p>
+ * Once the active segment reaches the segment size, a new one is started. The oldest segment
+ * is deleted once none of its records are in the index; if fewer than half of them are when
+ * a new segment is started, its remaining records are first copied to the new segment.
+ * Segments are only deleted from the oldest onwards, so that a clear or replacement record
+ * is never deleted while the record it supersedes remains.
+ * <p>
+ * The store's monitor guards only the index and the segment bookkeeping, and is never held
+ * while a file is read or written. Records are appended, and segments started and
+ * compacted, by one thread at a time, holding a separate write lock; it takes the monitor
+ * only to update the index once the bytes are on disk. Lookups take the monitor just long
+ * enough to find the location of a record, and then read it through the segment's own 
+ * read-only file, so that they proceed in parallel with each other and with appends. A 
+ * lookup whose segment is deleted under it, because compaction moved its record, retries 
+ * at the record's new location.
+ * <p>
+ * Only the DPDs of days that have ended should be added, since later data may still change
+ * the others. Clearing the DPD cache with DELETE {host}/cache/{user} or
+ * DELETE {host}/cache/{user}/{project} also clears the corresponding stored DPDs.
+ *
+ * @author Philip Johnson
+ */
+public class DpdStore {
+
+  /** The first four bytes of each segment file. */
+  private static final int MAGIC = 0x44504453;
+
+  /** The format version, which follows the magic number. */
+  private static final byte VERSION = 1;
+
+  /** The number of bytes in the segment header. */
+  private static final int HEADER_BYTES = 5;
+
+  /** The number of bytes preceding each record's contents: its length and CRC32. */
+  private static final int RECORD_HEADER_BYTES = 8;
+
+  /** The prefix of the segment file names, which is followed by the segment number. */
+  private static final String SEGMENT_PREFIX = "segment-";
+
+  /** The suffix of the segment file names. */
+  private static final String SEGMENT_SUFFIX = ".dpd";
+
+  /** The type of a record that adds a DPD. */
+  private static final byte PUT = 1;
+
+  /** The type of a record that clears the DPDs of an owner or project. */
+  private static final byte CLEAR = 2;
+
+  /** The encoding of a DPD stored as encoded by the DpdCodec. */
+  private static final byte RAW = 0;
+
+  /** The encoding of a DPD stored deflated. */
+  private static final byte DEFLATED = 1;
+
+  /** The directory holding the segment files. */
+  private final File dir;
+
+  /** The size in bytes at which a new segment is started. */
+  private final long segmentBytes;
+
+  /** True if DPDs are deflated when that makes them smaller. */
+  private final boolean compress;
+
+  /** The logger to get warnings. */
+  private final Logger logger;
+
+  /** Encodes and decodes the DPD instances. */
+  private final DpdCodec codec = new DpdCodec();
+
+  /** The location of the latest record of each DPD held. */
+  private final Map<Key, Location> index = new HashMap<Key, Location>();
+
+  /** The segments, by number. */
+  private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+  /** The segment that records are appended to. */
+  private Segment active = null;
+
+  /** Held while appending records, starting segments, and compacting them. */
+  private final Object writeLock = new Object();
+
+  /** The number of lookups that found a DPD. */
+  private long hits = 0;
+
+  /** The number of lookups that did not find a DPD. */
+  private long misses = 0;
+
+  /**
+   * Opens the store in dir, creating the directory if necessary and replaying any segments
+   * already in it.
+   * @param dir The directory holding the segment files.
+   * @param segmentBytes The size in bytes at which a new segment is started.
+   * @param compress True if DPDs are deflated when that makes them smaller.
+   * @param logger The logger to get warnings.
+   * @throws IOException If the directory or its segments cannot be opened.
+   */
+  public DpdStore(File dir, long segmentBytes, boolean compress, Logger logger)
+      throws IOException {
+    this.dir = dir;
+    this.segmentBytes = Math.max(HEADER_BYTES + 1, segmentBytes);
+    this.compress = compress;
+    this.logger = logger;
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create DPD store directory " + dir);
+    }
+    File[] files = dir.listFiles();
+    for (int i = 0; (files != null) && (i < files.length); i++) {
+      String name = files[i].getName();
+      if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+        try {
+          int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+              name.length() - SEGMENT_SUFFIX.length()));
+          this.segments.put(number, new Segment(number, files[i]));
+        }
+        catch (NumberFormatException e) {
+          this.logger.warning("Ignoring DPD store file " + files[i]);
+        }
+      }
+    }
+    for (Segment segment : this.segments.values()) {
+      replay(segment);
+    }
+    if (this.segments.isEmpty()) {
+      startSegment(1);
+    }
+    else {
+      this.active = this.segments.get(this.segments.lastKey());
+    }
+    removeUnusedSegments();
+  }
+
+  /**
+   * Returns the stored DPD with the specified key, or null if it is not held. A DPD that
+   * can no longer be decoded, for example because its class has changed, is discarded.
+   * @param type The type of DPD, such as "DevTime".
+   * @param owner The project owner.
+   * @param project The project name.
+   * @param day The start of the day, in epoch milliseconds.
+   * @param params The remaining parameters of the DPD request, in a canonical form.
+   * @return The DPD, or null.
+   */
+  public Entry get(String type, String owner, String project, long day, String params) {
+    Key key = new Key(type, owner, project, day, params);
+    Location location;
+    synchronized (this) {
+      location = this.index.get(key);
+      if (location == null) {
+        this.misses++;
+        return null;
+      }
+    }
+    byte[] payload = null;
+    for (int attempt = 0; payload == null; attempt++) {
+      try {
+        payload = location.readPayload();
+      }
+      catch (IOException e) {
+        synchronized (this) {
+          Location current = this.index.get(key);
+          if ((attempt > 0) || (current == null) || (current == location)) {
+            discard(key, location, e);
+            return null;
+          }
+          // Compaction moved the record, and its old segment was deleted while being read.
+          location = current;
+        }
+      }
+    }
+    try {
+      byte[] encoded = (location.encoding == DEFLATED)
+          ? inflate(payload, location.rawLength) : payload;
+      Entry entry = new Entry(location.contextName, this.codec.decode(encoded));
+      synchronized (this) {
+        this.hits++;
+      }
+      return entry;
+    }
+    catch (IOException e) {
+      synchronized (this) {
+        discard(key, location, e);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Adds the DPD with the specified key, replacing any DPD already held for it.
+   * @param type The type of DPD, such as "DevTime".
+   * @param owner The project owner.
+   * @param project The project name.
+   * @param day The start of the day, in epoch milliseconds.
+   * @param params The remaining parameters of the DPD request, in a canonical form.
+   * @param contextName The name of the JAXBContext that marshals dpd, such as "DevTimeJAXB".
+   * @param dpd The DPD instance, which must be of a class supported by DpdCodec.
+   * @throws IOException If the DPD cannot be written.
+   */
+  public void put(String type, String owner, String project, long day, String params,
+      String contextName, Object dpd) throws IOException {
+    byte[] payload = this.codec.encode(dpd);
+    int rawLength = payload.length;
+    byte encoding = RAW;
+    if (this.compress) {
+      byte[] deflated = deflate(payload);
+      if (deflated.length < payload.length) {
+        payload = deflated;
+        encoding = DEFLATED;
+      }
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 200);
+    DataOutputStream body = new DataOutputStream(bytes);
+    body.writeByte(PUT);
+    body.writeUTF(type);
+    body.writeUTF(owner);
+    body.writeUTF(project);
+    body.writeLong(day);
+    body.writeUTF(params);
+    body.writeUTF(contextName);
+    body.writeByte(encoding);
+    body.writeInt(rawLength);
+    int payloadStart = body.size();
+    body.write(payload);
+    body.flush();
+    synchronized (this.writeLock) {
+      if (this.active.length >= this.segmentBytes) {
+        startSegment(this.active.number + 1);
+        compactOldestSegment();
+      }
+      long offset = this.active.append(bytes.toByteArray());
+      synchronized (this) {
+        add(new Key(type, owner, project, day, params), new Location(this.active, offset,
+            bytes.size(), payloadStart, encoding, rawLength, contextName));
+        removeUnusedSegments();
+      }
+    }
+  }
+
+  /**
+   * Discards the DPDs of all projects owned by owner.
+   * @param owner The project owner.
+   */
+  public void clear(String owner) {
+    clear(owner, null);
+  }
+
+  /**
+   * Discards the DPDs of the specified project.
+   * @param owner The project owner.
+   * @param project The project name, or null to discard those of all of owner's projects.
+   */
+  public void clear(String owner, String project) {
+    synchronized (this.writeLock) {
+      synchronized (this) {
+        if (remove(owner, project) == 0) {
+          return;
+        }
+      }
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(100);
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(CLEAR);
+        body.writeUTF(owner);
+        body.writeBoolean(project != null);
+        body.writeUTF((project == null) ? "" : project);
+        body.flush();
+        this.active.append(bytes.toByteArray());
+      }
+      catch (IOException e) {
+        this.logger.warning("Error recording DPD store clear: " + e.getMessage());
+      }
+      synchronized (this) {
+        removeUnusedSegments();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of DPDs held.
+   * @return The number of DPDs.
+   */
+  public synchronized int size() {
+    return this.index.size();
+  }
+
+  /**
+   * Returns the number of segment files.
+   * @return The number of segments.
+   */
+  public synchronized int getNumberOfSegments() {
+    return this.segments.size();
+  }
+
+  /**
+   * Returns the total size of the segment files.
+   * @return The size in bytes.
+   */
+  public synchronized long getNumberOfBytes() {
+    long total = 0;
+    for (Segment segment : this.segments.values()) {
+      total += segment.length;
+    }
+    return total;
+  }
+
+  /**
+   * Returns the number of lookups that found a DPD.
+   * @return The number of hits.
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Returns the number of lookups that did not find a DPD.
+   * @return The number of misses.
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Closes the segment files. The store must not be used afterwards.
+   */
+  public void close() {
+    synchronized (this.writeLock) {
+      synchronized (this) {
+        for (Segment segment : this.segments.values()) {
+          segment.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Replays the records of segment into the index. If the segment ends with an incomplete
+   * or corrupted record, that record and anything after it are discarded.
+   * @param segment The segment.
+   * @throws IOException If the segment cannot be read.
+   */
+  private void replay(Segment segment) throws IOException {
+    long fileLength = segment.length;
+    long offset = 0;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(segment.file)));
+    try {
+      if ((fileLength >= HEADER_BYTES) && (in.readInt() == MAGIC)
+          && (in.readByte() == VERSION)) {
+        offset = HEADER_BYTES;
+        while (fileLength - offset >= RECORD_HEADER_BYTES) {
+          int length = in.readInt();
+          long crc = in.readInt() & 0xFFFFFFFFL;
+          if ((length <= 0) || (length > fileLength - offset - RECORD_HEADER_BYTES)) {
+            break;
+          }
+          byte[] body = new byte[length];
+          in.readFully(body);
+          if ((getCrc(body) != crc) || !apply(segment, offset, body)) {
+            break;
+          }
+          offset += RECORD_HEADER_BYTES + length;
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    if (offset == 0) {
+      this.logger.warning("Reinitializing DPD store segment " + segment.file);
+      segment.truncate(0);
+      segment.writeHeader();
+    }
+    else if (offset < fileLength) {
+      this.logger.warning("Discarding " + (fileLength - offset) + " bytes at the end of "
+          + segment.file);
+      segment.truncate(offset);
+    }
+  }
+
+  /**
+   * Applies a record read from a segment to the index.
+   * @param segment The segment.
+   * @param offset The offset of the record in the segment.
+   * @param body The record's contents.
+   * @return True if the record is valid.
+   */
+  private boolean apply(Segment segment, long offset, byte[] body) {
+    ByteArrayInputStream bytes = new ByteArrayInputStream(body);
+    DataInputStream in = new DataInputStream(bytes);
+    try {
+      byte recordType = in.readByte();
+      if (recordType == PUT) {
+        Key key = new Key(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readUTF());
+        String contextName = in.readUTF();
+        byte encoding = in.readByte();
+        int rawLength = in.readInt();
+        int payloadStart = body.length - bytes.available();
+        add(key, new Location(segment, offset, body.length, payloadStart, encoding, rawLength,
+            contextName));
+        return true;
+      }
+      if (recordType == CLEAR) {
+        String owner = in.readUTF();
+        boolean hasProject = in.readBoolean();
+        String project = in.readUTF();
+        remove(owner, hasProject ? project : null);
+        return true;
+      }
+      return false;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Makes location the location of the DPD with key.
+   * @param key The key.
+   * @param location The location of its latest record.
+   */
+  private void add(Key key, Location location) {
+    Location old = this.index.put(key, location);
+    if (old != null) {
+      old.segment.live--;
+    }
+    location.segment.live++;
+    location.segment.records++;
+  }
+
+  /**
+   * Removes the DPDs of the specified project from the index.
+   * @param owner The project owner.
+   * @param project The project name, or null to remove those of all of owner's projects.
+   * @return The number of DPDs removed.
+   */
+  private int remove(String owner, String project) {
+    int removed = 0;
+    for (Iterator<Map.Entry<Key, Location>> i = this.index.entrySet().iterator();
+         i.hasNext();) {
+      Map.Entry<Key, Location> entry = i.next();
+      Key key = entry.getKey();
+      if (key.owner.equals(owner) && ((project == null) || key.project.equals(project))) {
+        entry.getValue().segment.live--;
+        i.remove();
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Removes the DPD with key from the index, if location is still its location, because it
+   * could not be read or decoded.
+   * @param key The key.
+   * @param location The location of the DPD's record.
+   * @param e The reason.
+   */
+  private void discard(Key key, Location location, IOException e) {
+    this.logger.info("Discarding stored DPD: " + e.getMessage());
+    this.misses++;
+    if (this.index.get(key) == location) {
+      this.index.remove(key);
+      location.segment.live--;
+      removeUnusedSegments();
+    }
+  }
+
+  /**
+   * Creates a new, empty segment and makes it the active one. The caller must hold the
+   * write lock.
+   * @param number The number of the new segment.
+   * @throws IOException If the segment cannot be created.
+   */
+  private void startSegment(int number) throws IOException {
+    Segment segment = new Segment(number, new File(this.dir, SEGMENT_PREFIX + number
+        + SEGMENT_SUFFIX));
+    segment.truncate(0);
+    segment.writeHeader();
+    synchronized (this) {
+      this.segments.put(number, segment);
+      this.active = segment;
+    }
+  }
+
+  /**
+   * Copies the records still in the index from the oldest segment to the active one, if
+   * fewer than half of the oldest segment's records are still in the index, so that the
+   * oldest segment can be deleted. The caller must hold the write lock. The records to copy
+   * are listed under the monitor, but copied outside it; a record whose DPD is discarded
+   * meanwhile is left where it is.
+   * @throws IOException If the records cannot be copied.
+   */
+  private void compactOldestSegment() throws IOException {
+    Segment oldest;
+    List<Key> keys = new ArrayList<Key>();
+    List<Location> locations = new ArrayList<Location>();
+    synchronized (this) {
+      oldest = this.segments.get(this.segments.firstKey());
+      if ((oldest == this.active) || (oldest.live == 0) 
+          || (oldest.live * 2 > oldest.records)) {
+        return;
+      }
+      for (Map.Entry<Key, Location> entry : this.index.entrySet()) {
+        if (entry.getValue().segment == oldest) {
+          keys.add(entry.getKey());
+          locations.add(entry.getValue());
+        }
+      }
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      Key key = keys.get(i);
+      Location location = locations.get(i);
+      byte[] record;
+      try {
+        record = oldest.read(location.offset, RECORD_HEADER_BYTES + location.length);
+      }
+      catch (IOException e) {
+        synchronized (this) {
+          if (this.index.get(key) == location) {
+            throw e;
+          }
+        }
+        continue;
+      }
+      long offset = this.active.write(record);
+      synchronized (this) {
+        this.active.records++;
+        if (this.index.get(key) == location) {
+          this.index.put(key, new Location(this.active, offset, location.length,
+              location.payloadStart, location.encoding, location.rawLength, 
+              location.contextName));
+          oldest.live--;
+          this.active.live++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the oldest segments, other than the active one, while none of their records
+   * are in the index.
+   */
+  private void removeUnusedSegments() {
+    while (!this.segments.isEmpty()) {
+      Segment oldest = this.segments.get(this.segments.firstKey());
+      if ((oldest == this.active) || (oldest.live > 0)) {
+        return;
+      }
+      oldest.close();
+      if (!oldest.file.delete()) {
+        this.logger.warning("Could not delete DPD store segment " + oldest.file);
+      }
+      this.segments.remove(oldest.number);
+    }
+  }
+
+  /**
+   * Returns the CRC32 of bytes.
+   * @param bytes The bytes.
+   * @return The CRC32.
+   */
+  private static long getCrc(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return crc.getValue();
+  }
+
+  /**
+   * Returns the deflated form of bytes.
+   * @param bytes The bytes.
+   * @return The deflated bytes.
+   */
+  private static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length / 2 + 64);
+      byte[] buffer = new byte[4096];
+      while (!deflater.finished()) {
+        deflated.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return deflated.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Returns the inflated form of bytes.
+   * @param bytes The deflated bytes.
+   * @param length The length of the inflated bytes.
+   * @return The inflated bytes.
+   * @throws IOException If bytes are not deflated bytes of the given length.
+   */
+  private static byte[] inflate(byte[] bytes, int length) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      byte[] inflated = new byte[length];
+      int count = 0;
+      while (!inflater.finished()) {
+        int n = inflater.inflate(inflated, count, length - count);
+        if ((n == 0) && (inflater.needsInput() || (count == length))) {
+          throw new IOException("Truncated deflated DPD");
+        }
+        count += n;
+      }
+      if (count != length) {
+        throw new IOException("Deflated DPD has the wrong length");
+      }
+      return inflated;
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Invalid deflated DPD: " + e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * A DPD held by the store.
+   */
+  public static final class Entry {
+    /** The name of the JAXBContext that marshals the DPD. */
+    private final String contextName;
+    /** The DPD instance. */
+    private final Object data;
+
+    /**
+     * Creates the entry.
+     * @param contextName The name of the JAXBContext that marshals the DPD.
+     * @param data The DPD instance.
+     */
+    private Entry(String contextName, Object data) {
+      this.contextName = contextName;
+      this.data = data;
+    }
+
+    /**
+     * Returns the name of the JAXBContext that marshals the DPD, such as "DevTimeJAXB".
+     * @return The context name.
+     */
+    public String getContextName() {
+      return this.contextName;
+    }
+
+    /**
+     * Returns the DPD instance, which is newly decoded for each lookup.
+     * @return The DPD.
+     */
+    public Object getData() {
+      return this.data;
+    }
+  }
+
+  /**
+   * One segment file.
+   */
+  private static final class Segment {
+    /** The segment number. */
+    private final int number;
+    /** The file. */
+    private final File file;
+    /** The open file, to which records are written. */
+    private final RandomAccessFile access;
+    /** The file opened again for reading, so that lookups do not wait for appends. */
+    private final RandomAccessFile reader;
+    /** The length of the valid part of the file, where the next record is appended. */
+    private volatile long length;
+    /** The number of records adding a DPD, including those since superseded. */
+    private int records = 0;
+    /** The number of records that are in the index. */
+    private int live = 0;
+
+    /**
+     * Opens the segment file, creating it if necessary.
+     * @param number The segment number.
+     * @param file The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    private Segment(int number, File file) throws IOException {
+      this.number = number;
+      this.file = file;
+      this.access = new RandomAccessFile(file, "rw");
+      this.reader = new RandomAccessFile(file, "r");
+      this.length = this.access.length();
+    }
+
+    /**
+     * Writes the segment header at the start of an empty segment.
+     * @throws IOException If the header cannot be written.
+     */
+    private void writeHeader() throws IOException {
+      this.access.seek(0);
+      this.access.writeInt(MAGIC);
+      this.access.writeByte(VERSION);
+      this.length = HEADER_BYTES;
+    }
+
+    /**
+     * Appends a record with the specified contents.
+     * @param body The contents of the record.
+     * @return The offset of the record in this segment.
+     * @throws IOException If the record cannot be written.
+     */
+    private long append(byte[] body) throws IOException {
+      return write(makeRecord(body));
+    }
+
+    /**
+     * Returns the record holding body, preceded by its length and CRC32.
+     * @param body The contents of the record.
+     * @return The record.
+     */
+    private static byte[] makeRecord(byte[] body) {
+      byte[] record = new byte[RECORD_HEADER_BYTES + body.length];
+      long crc = getCrc(body);
+      for (int i = 0; i < 4; i++) {
+        record[i] = (byte) (body.length >>> (24 - 8 * i));
+        record[4 + i] = (byte) (crc >>> (24 - 8 * i));
+      }
+      System.arraycopy(body, 0, record, RECORD_HEADER_BYTES, body.length);
+      return record;
+    }
+
+    /**
+     * Writes a complete record, such as one copied from another segment, at the end of the
+     * valid part of the file.
+     * @param record The record.
+     * @return The offset of the record.
+     * @throws IOException If the record cannot be written.
+     */
+    private long write(byte[] record) throws IOException {
+      long offset = this.length;
+      this.access.seek(offset);
+      this.access.write(record);
+      this.length = offset + record.length;
+      return offset;
+    }
+
+    /**
+     * Reads bytes from the file. Reads of one segment are made one at a time, but do not
+     * wait for appends to it.
+     * @param offset The offset of the first byte.
+     * @param count The number of bytes.
+     * @return The bytes.
+     * @throws IOException If the bytes cannot be read, for example because the segment has
+     * been deleted.
+     */
+    private byte[] read(long offset, int count) throws IOException {
+      byte[] bytes = new byte[count];
+      synchronized (this.reader) {
+        this.reader.seek(offset);
+        this.reader.readFully(bytes);
+      }
+      return bytes;
+    }
+
+    /**
+     * Discards everything in the file after length bytes.
+     * @param length The new length.
+     * @throws IOException If the file cannot be truncated.
+     */
+    private void truncate(long length) throws IOException {
+      this.access.setLength(length);
+      this.length = length;
+    }
+
+    /**
+     * Closes the file.
+     */
+    private void close() {
+      for (RandomAccessFile open : new RandomAccessFile[] { this.access, this.reader }) {
+        try {
+          open.close();
+        }
+        catch (IOException e) {
+          // The file is being closed, so there is nothing more to do with it.
+          continue;
+        }
+      }
+    }
+  }
+
+  /**
+   * The location of the latest record of a DPD.
+   */
+  private static final class Location {
+    /** The segment holding the record. */
+    private final Segment segment;
+    /** The offset of the record in the segment. */
+    private final long offset;
+    /** The length of the record's contents. */
+    private final int length;
+    /** The offset of the encoded DPD within the record's contents. */
+    private final int payloadStart;
+    /** How the DPD is encoded: RAW or DEFLATED. */
+    private final byte encoding;
+    /** The length of the DPD as encoded by the DpdCodec. */
+    private final int rawLength;
+    /** The name of the JAXBContext that marshals the DPD. */
+    private final String contextName;
+
+    /**
+     * Creates the location.
+     * @param segment The segment holding the record.
+     * @param offset The offset of the record in the segment.
+     * @param length The length of the record's contents.
+     * @param payloadStart The offset of the encoded DPD within the record's contents.
+     * @param encoding How the DPD is encoded.
+     * @param rawLength The length of the DPD as encoded by the DpdCodec.
+     * @param contextName The name of the JAXBContext that marshals the DPD.
+     */
+    private Location(Segment segment, long offset, int length, int payloadStart,
+        byte encoding, int rawLength, String contextName) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.payloadStart = payloadStart;
+      this.encoding = encoding;
+      this.rawLength = rawLength;
+      this.contextName = contextName;
+    }
+
+    /**
+     * Reads the encoded DPD.
+     * @return The encoded, and possibly deflated, DPD.
+     * @throws IOException If it cannot be read.
+     */
+    private byte[] readPayload() throws IOException {
+      return this.segment.read(this.offset + RECORD_HEADER_BYTES + this.payloadStart,
+          this.length - this.payloadStart);
+    }
+  }
+
+  /**
+   * Identifies one DPD.
+   */
+  private static final class Key {
+    /** The type of DPD. */
+    private final String type;
+    /** The project owner. */
+    private final String owner;
+    /** The project name. */
+    private final String project;
+    /** The start of the day in epoch milliseconds. */
+    private final long day;
+    /** The remaining request parameters. */
+    private final String params;
+
+    /**
+     * Creates the key.
+     * @param type The type of DPD.
+     * @param owner The project owner.
+     * @param project The project name.
+     * @param day The start of the day in epoch milliseconds.
+     * @param params The remaining request parameters.
+     */
+    private Key(String type, String owner, String project, long day, String params) {
+      this.type = type;
+      this.owner = owner;
+      this.project = project;
+      this.day = day;
+      this.params = params;
+    }
+
+    /**
+     * Returns true if obj is a Key for the same DPD.
+     * @param obj The other object.
+     * @return True if equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return (this.day == other.day) && this.type.equals(other.type)
+          && this.owner.equals(other.owner) && this.project.equals(other.project)
+          && this.params.equals(other.params);
+    }
+
+    /**
+     * Returns the hash code of this key.
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+      int hash = this.type.hashCode();
+      hash = 31 * hash + this.owner.hashCode();
+      hash = 31 * hash + this.project.hashCode();
+      hash = 31 * hash + this.params.hashCode();
+      return 31 * hash + (int) (this.day ^ (this.day >>> 32));
+    }
+  }
+}
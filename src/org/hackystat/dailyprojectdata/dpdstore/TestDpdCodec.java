@@ -0,0 +1,125 @@
+package org.hackystat.dailyprojectdata.dpdstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import javax.xml.bind.JAXBContext;
+
+import org.hackystat.dailyprojectdata.resource.codeissue.jaxb.CodeIssueDailyProjectData;
+import org.hackystat.dailyprojectdata.resource.codeissue.jaxb.CodeIssueData;
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.DevTimeDailyProjectData;
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.MemberData;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests that DpdCodec decodes DPDs that marshal to exactly the same XML as the originals.
+ *
+ * @author Philip Johnson
+ */
+public class TestDpdCodec {
+
+  /** The owner of the project. */
+  private static final String OWNER = "TestDpdCodec@hackystat.org";
+
+  /**
+   * Tests the round trip of a DevTime DPD, whose members repeat the same Strings.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testDevTime() throws Exception {
+    DevTimeDailyProjectData devTime = new DevTimeDailyProjectData();
+    devTime.setOwner(OWNER);
+    devTime.setProject("Default");
+    devTime.setUriPattern("**");
+    devTime.setStartTime(Tstamp.makeTimestamp("2008-01-15T00:00:00.000-10:00"));
+    devTime.setTotalDevTime(new BigInteger("123456789012345678901234567890"));
+    for (int i = 0; i < 20; i++) {
+      MemberData member = new MemberData();
+      member.setMemberUri("http://localhost/sensorbase/users/" + OWNER);
+      member.setDevTime(BigInteger.valueOf(i * 5));
+      devTime.getMemberData().add(member);
+    }
+    DpdCodec codec = new DpdCodec();
+    byte[] bytes = codec.encode(devTime);
+    DevTimeDailyProjectData decoded = (DevTimeDailyProjectData) codec.decode(bytes);
+    assertEquals("Checking members", 20, decoded.getMemberData().size());
+    assertEquals("Checking XML", marshal(devTime), marshal(decoded));
+    assertTrue("Checking compact", bytes.length < marshal(devTime).length() / 4);
+  }
+
+  /**
+   * Tests the round trip of a CodeIssue DPD with primitive fields and unset fields.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testCodeIssue() throws Exception {
+    CodeIssueDailyProjectData codeIssue = new CodeIssueDailyProjectData();
+    codeIssue.setOwner(OWNER);
+    codeIssue.setProject("Default");
+    CodeIssueData data = new CodeIssueData();
+    data.setTool("PMD");
+    data.setIssueType("UnusedImports");
+    data.setNumIssues(-42);
+    codeIssue.getCodeIssueData().add(data);
+    CodeIssueData untyped = new CodeIssueData();
+    untyped.setTool("Checkstyle");
+    codeIssue.getCodeIssueData().add(untyped);
+    DpdCodec codec = new DpdCodec();
+    CodeIssueDailyProjectData decoded =
+      (CodeIssueDailyProjectData) codec.decode(codec.encode(codeIssue));
+    assertNull("Checking unset start time", decoded.getStartTime());
+    assertEquals("Checking negative count", -42,
+        decoded.getCodeIssueData().get(0).getNumIssues());
+    assertEquals("Checking XML", marshal(codeIssue), marshal(decoded));
+  }
+
+  /**
+   * Tests that truncated and unknown encodings are rejected.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testInvalid() throws Exception {
+    DevTimeDailyProjectData devTime = new DevTimeDailyProjectData();
+    devTime.setOwner(OWNER);
+    devTime.setTotalDevTime(BigInteger.valueOf(30));
+    DpdCodec codec = new DpdCodec();
+    byte[] bytes = codec.encode(devTime);
+    byte[] truncated = new byte[bytes.length - 1];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    try {
+      codec.decode(truncated);
+      fail("Truncated encoding was decoded");
+    }
+    catch (IOException e) {
+      assertTrue("Checking message", e.getMessage().length() > 0);
+    }
+    try {
+      // A new String (0), of 6 bytes (zigzag encoded as 12), naming no class.
+      codec.decode(new byte[] {0, 12, 'j', 'a', 'v', 'a', 'x', '.'});
+      fail("Unknown class was decoded");
+    }
+    catch (IOException e) {
+      assertTrue("Checking message", e.getMessage().startsWith("Unknown DPD class"));
+    }
+  }
+
+  /**
+   * Returns the XML of a DPD.
+   * @param dpd The DPD.
+   * @return The XML.
+   * @throws Exception If problems occur.
+   */
+  private static String marshal(Object dpd) throws Exception {
+    JAXBContext context = JAXBContext.newInstance(dpd.getClass().getPackage().getName());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    context.createMarshaller().marshal(dpd, out);
+    return out.toString("UTF-8");
+  }
+}
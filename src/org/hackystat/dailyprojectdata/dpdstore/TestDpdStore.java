@@ -0,0 +1,243 @@
+package org.hackystat.dailyprojectdata.dpdstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.DevTimeDailyProjectData;
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.MemberData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the DpdStore keeps its DPDs across restarts, replaces, clears, and compacts
+ * them, recovers from a partly written record, and serves lookups while DPDs are added.
+ *
+ * @author Philip Johnson
+ */
+public class TestDpdStore {
+
+  /** The owner of the projects. */
+  private static final String OWNER = "TestDpdStore@hackystat.org";
+
+  /** The type of the DPDs. */
+  private static final String TYPE = "DevTime";
+
+  /** The JAXBContext name of the DPDs. */
+  private static final String CONTEXT = "DevTimeJAXB";
+
+  /** The small segment size used to exercise segment rollover. */
+  private static final long SEGMENT_BYTES = 2000;
+
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.dailyprojectdata");
+
+  /** The directory of the store. */
+  private File dir;
+
+  /**
+   * Creates an empty directory for the store.
+   * @throws IOException If the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    this.dir = File.createTempFile("dpdstore", "");
+    assertTrue("Checking temp file deleted", this.dir.delete());
+    assertTrue("Checking directory created", this.dir.mkdir());
+  }
+
+  /**
+   * Deletes the directory of the store.
+   */
+  @After
+  public void tearDown() {
+    for (File file : this.dir.listFiles()) {
+      file.delete();
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Tests that DPDs, replacements, and clears survive reopening the store, and that the
+   * segments of replaced DPDs are deleted.
+   * @throws IOException If problems occur.
+   */
+  @Test
+  public void testReopen() throws IOException {
+    DpdStore store = new DpdStore(this.dir, SEGMENT_BYTES, true, this.logger);
+    for (int day = 0; day < 50; day++) {
+      store.put(TYPE, OWNER, "Default", day, "", CONTEXT, makeDevTime(day));
+    }
+    store.put(TYPE, OWNER, "Default", 0, "Tool=Eclipse", CONTEXT, makeDevTime(7));
+    store.put(TYPE, OWNER, "Other", 0, "", CONTEXT, makeDevTime(3));
+    int segments = store.getNumberOfSegments();
+    assertTrue("Checking rollover", segments > 1);
+    for (int day = 0; day < 50; day++) {
+      store.put(TYPE, OWNER, "Default", day, "", CONTEXT, makeDevTime(day + 1));
+    }
+    assertEquals("Checking size", 52, store.size());
+    assertTrue("Checking segments deleted", store.getNumberOfSegments() < 2 * segments);
+    store.clear(OWNER, "Other");
+    store.close();
+
+    store = new DpdStore(this.dir, SEGMENT_BYTES, true, this.logger);
+    assertEquals("Checking reopened size", 51, store.size());
+    for (int day = 0; day < 50; day++) {
+      DpdStore.Entry entry = store.get(TYPE, OWNER, "Default", day, "");
+      assertNotNull("Checking day " + day, entry);
+      assertEquals("Checking context", CONTEXT, entry.getContextName());
+      assertEquals("Checking replaced", day + 1, getTotal(entry));
+    }
+    assertEquals("Checking params", 7, getTotal(store.get(TYPE, OWNER, "Default", 0,
+        "Tool=Eclipse")));
+    assertNull("Checking cleared", store.get(TYPE, OWNER, "Other", 0, ""));
+    assertNull("Checking other type", store.get("Build", OWNER, "Default", 0, ""));
+    assertEquals("Checking hits", 51, store.getHits());
+    assertEquals("Checking misses", 2, store.getMisses());
+    store.clear(OWNER);
+    assertEquals("Checking owner clear", 0, store.size());
+    assertEquals("Checking segments", 1, store.getNumberOfSegments());
+    store.close();
+    store = new DpdStore(this.dir, SEGMENT_BYTES, false, this.logger);
+    assertEquals("Checking reopened owner clear", 0, store.size());
+    store.close();
+  }
+
+  /**
+   * Tests that a partly written record at the end of a segment is discarded on reopening,
+   * and that later records are appended in its place.
+   * @throws IOException If problems occur.
+   */
+  @Test
+  public void testPartialRecord() throws IOException {
+    DpdStore store = new DpdStore(this.dir, SEGMENT_BYTES, false, this.logger);
+    store.put(TYPE, OWNER, "Default", 0, "", CONTEXT, makeDevTime(2));
+    store.put(TYPE, OWNER, "Default", 1, "", CONTEXT, makeDevTime(3));
+    store.close();
+    File[] files = this.dir.listFiles();
+    Arrays.sort(files);
+    RandomAccessFile file = new RandomAccessFile(files[files.length - 1], "rw");
+    file.setLength(file.length() - 3);
+    file.close();
+
+    store = new DpdStore(this.dir, SEGMENT_BYTES, false, this.logger);
+    assertEquals("Checking partial record discarded", 1, store.size());
+    assertNull("Checking partial DPD", store.get(TYPE, OWNER, "Default", 1, ""));
+    store.put(TYPE, OWNER, "Default", 2, "", CONTEXT, makeDevTime(4));
+    store.close();
+    store = new DpdStore(this.dir, SEGMENT_BYTES, false, this.logger);
+    assertEquals("Checking size", 2, store.size());
+    assertEquals("Checking appended", 4, getTotal(store.get(TYPE, OWNER, "Default", 2, "")));
+    store.close();
+  }
+
+  /**
+   * Tests that lookups made while other threads add DPDs, starting, compacting, and deleting
+   * segments as they go, always find either nothing or a complete DPD, and that the last
+   * DPD added for each key is the one held afterwards.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testConcurrentGetPut() throws Exception {
+    final DpdStore store = new DpdStore(this.dir, SEGMENT_BYTES, false, this.logger);
+    final int days = 10;
+    final int rounds = 30;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    List<Future<Object>> results = new ArrayList<Future<Object>>();
+    for (int i = 0; i < 2; i++) {
+      final String project = "Project" + i;
+      results.add(executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          start.await();
+          for (int round = 1; round <= rounds; round++) {
+            for (int day = 0; day < days; day++) {
+              store.put(TYPE, OWNER, project, day, "", CONTEXT, makeDevTime(round));
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    for (int i = 0; i < 4; i++) {
+      results.add(executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          start.await();
+          for (int lookup = 0; lookup < rounds * days * 4; lookup++) {
+            DpdStore.Entry entry = store.get(TYPE, OWNER, "Project" + (lookup % 2), 
+                lookup % days, "");
+            if (entry != null) {
+              int total = getTotal(entry);
+              assertTrue("Checking complete DPD", (total >= 1) && (total <= rounds));
+              assertEquals("Checking members", total, 
+                  ((DevTimeDailyProjectData) entry.getData()).getMemberData().size());
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    start.countDown();
+    for (Future<Object> result : results) {
+      result.get();
+    }
+    executor.shutdown();
+    
+    assertEquals("Checking size", 2 * days, store.size());
+    for (int day = 0; day < days; day++) {
+      assertEquals("Checking last put", rounds, getTotal(store.get(TYPE, OWNER, "Project1", 
+          day, "")));
+    }
+    store.close();
+    DpdStore reopened = new DpdStore(this.dir, SEGMENT_BYTES, false, this.logger);
+    assertEquals("Checking reopened size", 2 * days, reopened.size());
+    assertEquals("Checking reopened DPD", rounds, getTotal(reopened.get(TYPE, OWNER, 
+        "Project0", days - 1, "")));
+    reopened.close();
+  }
+
+  /**
+   * Returns a DevTime DPD with the given number of members.
+   * @param members The number of members, which is also the total DevTime.
+   * @return The DPD.
+   */
+  private static DevTimeDailyProjectData makeDevTime(int members) {
+    DevTimeDailyProjectData devTime = new DevTimeDailyProjectData();
+    devTime.setOwner(OWNER);
+    devTime.setProject("Default");
+    devTime.setUriPattern("**");
+    devTime.setTotalDevTime(BigInteger.valueOf(members));
+    for (int i = 0; i < members; i++) {
+      MemberData member = new MemberData();
+      member.setMemberUri("http://localhost/sensorbase/users/" + OWNER);
+      member.setDevTime(BigInteger.ONE);
+      devTime.getMemberData().add(member);
+    }
+    return devTime;
+  }
+
+  /**
+   * Returns the total DevTime of a stored DevTime DPD.
+   * @param entry The stored DPD.
+   * @return The total DevTime.
+   */
+  private static int getTotal(DpdStore.Entry entry) {
+    return ((DevTimeDailyProjectData) entry.getData()).getTotalDevTime().intValue();
+  }
+}
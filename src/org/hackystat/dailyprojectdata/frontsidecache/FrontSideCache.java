@@ -1,7 +1,8 @@
 package org.hackystat.dailyprojectdata.frontsidecache;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hackystat.dailyprojectdata.server.Server;
 import org.hackystat.utilities.stacktrace.StackTrace;
@@ -24,6 +25,16 @@ import org.hackystat.utilities.uricache.UriCache;
  * The FrontSideCache currently has hard-coded maxLife of 1000 hours and each UriCache has
  * a capacity of 1M instances. We could set these via ServerProperties values if necessary. 
  * <p>
+ * The FrontSideCache is accessed by all of the threads serving DPD requests. Lookups of a 
+ * user's UriCache go through a ConcurrentHashMap and never block. Creation of a new UriCache
+ * is guarded by one of a fixed set of lock stripes chosen by the user's hash code, so that 
+ * each user's UriCache is created exactly once while first requests for different users 
+ * generally proceed in parallel.
+ * <p>
+ * Recently used DPD instances are also held in a byte-bounded, in-memory MemoryCache, which 
+ * is checked before the disk-backed UriCache. Its size is set by the 
+ * dailyprojectdata.cache.frontside.memory.kb server property.
+ * <p>
  * There is one important component missing from the FrontSideCache, and that is access
  * control.  The FrontSideCache does not check to see if the client checking the cache has 
  * the right to retrieve the cached data.  To perform access control, you should use 
@@ -53,12 +64,27 @@ public class FrontSideCache {
   /** The total capacity of this cache. */
   private long capacity = 1000000L;
   
+  /** The number of lock stripes guarding UriCache creation. Must be a power of two. */
+  private static final int NUM_STRIPES = 32;
+  
   /** Maps user names to their associated UriCache instance. */
-  private Map<String, UriCache> user2cache = new HashMap<String, UriCache>();
+  private ConcurrentMap<String, UriCache> user2cache = new ConcurrentHashMap<String, UriCache>();
+  
+  /** The locks guarding UriCache creation, indexed by the user's hash code. */
+  private final Object[] stripes = new Object[NUM_STRIPES];
+  
+  /** The in-memory tier, checked before the UriCache instances. */
+  private MemoryCache memoryCache;
   
   /** The server that holds this FrontSideCache. */
   private Server server = null;
   
+  /** The number of gets that found a DPD in either tier. */
+  private final AtomicLong hits = new AtomicLong(0);
+  
+  /** The number of gets that found no DPD. */
+  private final AtomicLong misses = new AtomicLong(0);
+  
   /** 
    * Creates a new front-side cache, which stores the DPD instances recently created.
    * There should be only one of these created for a given DPD server.  Note that 
@@ -67,6 +93,11 @@ public class FrontSideCache {
    */
   public FrontSideCache(Server server) { 
     this.server = server;
+    long memoryBytes = 1024L * server.getServerProperties().getFrontSideCacheMemoryKb();
+    this.memoryCache = new MemoryCache(memoryBytes);
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      this.stripes[i] = new Object();
+    }
   }
   
   /**
@@ -85,6 +116,7 @@ public class FrontSideCache {
     try {
       UriCache uriCache = getCache(user);
       uriCache.putInGroup(uri, project, dpdRepresentation);
+      this.memoryCache.put(user, project, uri, dpdRepresentation);
     }
     catch (Exception e) {
       this.server.getLogger().warning("Error during DPD front-side cache add: " +
@@ -104,8 +136,22 @@ public class FrontSideCache {
     if (isDisabled()) {
       return null;
     }
+    String dpd = this.memoryCache.get(user, project, uri);
+    if (dpd != null) {
+      this.hits.incrementAndGet();
+      return dpd;
+    }
+    long generation = this.memoryCache.getGeneration();
     UriCache uriCache = getCache(user);
-    return (String)uriCache.getFromGroup(uri, project);
+    dpd = (String)uriCache.getFromGroup(uri, project);
+    if (dpd != null) {
+      this.memoryCache.putIfCurrent(user, project, uri, dpd, generation);
+      this.hits.incrementAndGet();
+    }
+    else {
+      this.misses.incrementAndGet();
+    }
+    return dpd;
   }
   
   /**
@@ -120,6 +166,8 @@ public class FrontSideCache {
     try {
       UriCache uriCache = getCache(user);
       uriCache.clear();
+      // Clear the memory tier second so that concurrent gets cannot promote stale values.
+      this.memoryCache.clear(user);
     }
     catch (Exception e) {
       this.server.getLogger().warning("Error during DPD front-side cache clear: " +
@@ -139,6 +187,7 @@ public class FrontSideCache {
     try {
       UriCache uriCache = getCache(user);
       uriCache.clearGroup(project);
+      this.memoryCache.clear(user, project);
     }
     catch (Exception e) {
       this.server.getLogger().warning("Error during DPD front-side cache clear: " +
@@ -147,27 +196,67 @@ public class FrontSideCache {
   }
   
   
+  /**
+   * Returns the in-memory tier of this cache, which provides hit, miss, and eviction counts.
+   * @return The MemoryCache.
+   */
+  public MemoryCache getMemoryCache() {
+    return this.memoryCache;
+  }
+  
+  /**
+   * Returns the number of gets that found a DPD in either tier.
+   * @return The number of hits.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+  
+  /**
+   * Returns the number of gets, while enabled, that found no DPD in either tier.
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+  
   /**
    * Returns true if frontsidecaching is disabled.
    * @return True if disabled.
    */
-  private boolean isDisabled() {
+  boolean isDisabled() {
     return !this.server.getServerProperties().isFrontSideCacheEnabled();
   }
 
   /**
    * Gets the UriCache associated with this project owner from the in-memory map.
-   * Instantiates it if necessary.
+   * Instantiates it if necessary, holding only the lock stripe for this user so that
+   * the (expensive) UriCache construction happens exactly once per user.
    * @param user The user email (project owner) associated with this UriCache.
    * @return A UriCache instance for this user. 
    */
-  private UriCache getCache(String user) {
+  UriCache getCache(String user) {
     UriCache uriCache = user2cache.get(user);
-    if (uriCache == null) {
-      uriCache = new UriCache(user, subDir, maxLife, capacity);
-      user2cache.put(user, uriCache);
+    if (uriCache != null) {
+      return uriCache;
+    }
+    synchronized (this.stripes[user.hashCode() & (NUM_STRIPES - 1)]) {
+      uriCache = user2cache.get(user);
+      if (uriCache == null) {
+        uriCache = makeCache(user);
+        user2cache.put(user, uriCache);
+      }
     }
     return uriCache;
   }
+  
+  /**
+   * Creates the UriCache for this user. Called at most once per user.
+   * @param user The user email (project owner).
+   * @return A new UriCache instance for this user.
+   */
+  UriCache makeCache(String user) {
+    return new UriCache(user, subDir, maxLife, capacity);
+  }
 
 }
@@ -0,0 +1,402 @@
+package org.hackystat.dailyprojectdata.frontsidecache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory, least recently used cache of DPD string representations that sits in front of
+ * the disk-backed UriCaches of the FrontSideCache. It is bounded by the (approximate) number
+ * of bytes held by its entries rather than by the number of entries, since DPD representations
+ * vary in size from a few hundred bytes to several hundred kilobytes.
+ * <p>
+ * Entries are keyed by (owner, project, uri) so that the clear operations of the
+ * FrontSideCache can be mirrored here. Every clear increments a generation number; a value
+ * read from the disk-backed tier is only promoted into this cache if no clear occurred
+ * since the read began, so a concurrent clear can never be undone by a stale promotion.
+ * <p>
+ * Every request thread checks this cache, so it is split into up to 32 stripes, chosen by 
+ * the hash code of the key, like the lock stripes of the FrontSideCache. Each stripe is an
+ * access-ordered LinkedHashMap, which must be locked even for reads, with its own share of 
+ * the byte limit, and evicts its own least recently used entries; lookups of different 
+ * stripes therefore proceed in parallel. A cache is given fewer stripes if it is too small 
+ * for each to hold at least a megabyte, so that large DPDs still fit. The generation and the
+ * hit, miss, and eviction counts are atomic and need no lock. Clears, which are rare, lock
+ * each stripe in turn.
+ *
+ * @author Philip Johnson
+ */
+public class MemoryCache {
+
+  /** The approximate per-entry overhead in bytes of the map entry, key, and strings. */
+  private static final int ENTRY_OVERHEAD = 128;
+
+  /** The maximum number of stripes. Must be a power of two. */
+  private static final int MAX_STRIPES = 32;
+
+  /** The smallest byte limit given to each stripe when there is more than one. */
+  private static final long MIN_STRIPE_BYTES = 1024L * 1024L;
+
+  /** The maximum number of bytes held by the entries in this cache. */
+  private final long maxBytes;
+
+  /** The stripes, indexed by the hash code of the key. */
+  private final Stripe[] stripes;
+
+  /** Incremented on each clear. */
+  private final AtomicLong generation = new AtomicLong(0);
+
+  /** The number of gets that found their entry. */
+  private final AtomicLong hits = new AtomicLong(0);
+
+  /** The number of gets that did not find their entry. */
+  private final AtomicLong misses = new AtomicLong(0);
+
+  /** The number of entries removed to make room for new ones. */
+  private final AtomicLong evictions = new AtomicLong(0);
+
+  /**
+   * Creates a new, empty cache with as many stripes, up to 32, as its size allows.
+   * @param maxBytes The maximum number of bytes to hold. Zero disables caching.
+   */
+  public MemoryCache(long maxBytes) {
+    this(maxBytes, getNumberOfStripes(maxBytes));
+  }
+
+  /**
+   * Creates a new, empty cache with the specified number of stripes.
+   * @param maxBytes The maximum number of bytes to hold. Zero disables caching.
+   * @param numStripes The number of stripes, which must be a power of two.
+   */
+  MemoryCache(long maxBytes, int numStripes) {
+    this.maxBytes = maxBytes;
+    this.stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      this.stripes[i] = new Stripe(maxBytes / numStripes);
+    }
+  }
+
+  /**
+   * Returns the number of stripes for a cache of maxBytes: the largest power of two, up to
+   * MAX_STRIPES, that leaves each stripe at least MIN_STRIPE_BYTES.
+   * @param maxBytes The maximum number of bytes to hold.
+   * @return The number of stripes.
+   */
+  private static int getNumberOfStripes(long maxBytes) {
+    int numStripes = 1;
+    while ((numStripes < MAX_STRIPES) && (maxBytes / (2 * numStripes) >= MIN_STRIPE_BYTES)) {
+      numStripes *= 2;
+    }
+    return numStripes;
+  }
+
+  /**
+   * Returns the stripe holding key.
+   * @param key The key.
+   * @return The stripe.
+   */
+  private Stripe getStripe(Key key) {
+    int hash = key.hashCode();
+    return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+  }
+
+  /**
+   * Returns the cached DPD representation, or null if not in the cache.
+   * @param user The project owner.
+   * @param project The project.
+   * @param uri The URI naming the DPD.
+   * @return The DPD representation, or null.
+   */
+  public String get(String user, String project, String uri) {
+    Key key = new Key(user, project, uri);
+    String value = getStripe(key).get(key);
+    if (value == null) {
+      this.misses.incrementAndGet();
+    }
+    else {
+      this.hits.incrementAndGet();
+    }
+    return value;
+  }
+
+  /**
+   * Returns the current generation, to be passed to putIfCurrent when promoting a value
+   * read from a slower tier.
+   * @return The current generation.
+   */
+  public long getGeneration() {
+    return this.generation.get();
+  }
+
+  /**
+   * Adds the DPD representation to the cache, evicting the least recently used entries of
+   * its stripe as needed to stay within the stripe's share of the byte limit.
+   * @param user The project owner.
+   * @param project The project.
+   * @param uri The URI naming the DPD.
+   * @param value The DPD representation.
+   */
+  public void put(String user, String project, String uri, String value) {
+    Key key = new Key(user, project, uri);
+    getStripe(key).put(key, value, -1);
+  }
+
+  /**
+   * Adds the DPD representation to the cache, unless a clear has occurred since generation
+   * was obtained from getGeneration.
+   * @param user The project owner.
+   * @param project The project.
+   * @param uri The URI naming the DPD.
+   * @param value The DPD representation.
+   * @param generation The generation at which the value was known to be current.
+   */
+  public void putIfCurrent(String user, String project, String uri, String value,
+      long generation) {
+    Key key = new Key(user, project, uri);
+    getStripe(key).put(key, value, generation);
+  }
+
+  /**
+   * Removes all of the entries for projects owned by user.
+   * @param user The project owner.
+   */
+  public void clear(String user) {
+    clear(user, null);
+  }
+
+  /**
+   * Removes all of the entries for the project owned by user. The generation is incremented
+   * before any stripe is swept, so a promotion that checked the old generation has already
+   * added its entry by the time the sweep of its stripe removes it.
+   * @param user The project owner.
+   * @param project The project, or null to remove entries for all of user's projects.
+   */
+  public void clear(String user, String project) {
+    this.generation.incrementAndGet();
+    for (Stripe stripe : this.stripes) {
+      stripe.clear(user, project);
+    }
+  }
+
+  /**
+   * Returns the number of gets that found their entry.
+   * @return The hit count.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * Returns the number of gets that did not find their entry.
+   * @return The miss count.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  /**
+   * Returns the number of entries removed to stay within the byte limit.
+   * @return The eviction count.
+   */
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  /**
+   * Returns the number of entries in the cache.
+   * @return The entry count.
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        size += stripe.entries.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns the approximate number of bytes held by the entries in the cache.
+   * @return The byte count.
+   */
+  public long getBytes() {
+    long bytes = 0;
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        bytes += stripe.bytes;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the maximum number of bytes held by this cache.
+   * @return The byte limit.
+   */
+  public long getMaxBytes() {
+    return this.maxBytes;
+  }
+
+  /**
+   * Returns the number of stripes of this cache.
+   * @return The stripe count.
+   */
+  public int getStripes() {
+    return this.stripes.length;
+  }
+
+  /**
+   * Returns a one line summary of the cache statistics, suitable for logging.
+   * @return The cache statistics.
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        "[MemoryCache entries=%d bytes=%d/%d stripes=%d hits=%d misses=%d evictions=%d]",
+        size(), getBytes(), this.maxBytes, this.stripes.length, getHits(), getMisses(), 
+        getEvictions());
+  }
+
+  /**
+   * Returns the approximate number of heap bytes used by this entry.
+   * @param key The key.
+   * @param value The value.
+   * @return The entry size in bytes.
+   */
+  private static long sizeOf(Key key, String value) {
+    return ENTRY_OVERHEAD +
+    (2L * (key.user.length() + key.project.length() + key.uri.length() + value.length()));
+  }
+
+  /**
+   * One stripe: a least recently used map with its own share of the byte limit. All of its
+   * methods are synchronized on the stripe.
+   */
+  private final class Stripe {
+    /** The maximum number of bytes held by the entries in this stripe. */
+    private final long maxBytes;
+
+    /** The entries, in least to most recently accessed order. */
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<Key, String>(16, 
+        0.75F, true);
+
+    /** The approximate number of bytes currently held. */
+    private long bytes = 0;
+
+    /**
+     * Creates an empty stripe.
+     * @param maxBytes The maximum number of bytes to hold.
+     */
+    Stripe(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the value of key, making it the most recently used entry.
+     * @param key The key.
+     * @return The value, or null.
+     */
+    synchronized String get(Key key) {
+      return this.entries.get(key);
+    }
+
+    /**
+     * Adds the entry, unless a clear has occurred since generation, evicting the least
+     * recently used entries as needed to stay within the byte limit.
+     * @param key The key.
+     * @param value The value.
+     * @param generation The generation at which the value was known to be current, or -1
+     * if it is current whatever the generation.
+     */
+    synchronized void put(Key key, String value, long generation) {
+      if ((generation >= 0) && (generation != MemoryCache.this.generation.get())) {
+        return;
+      }
+      long size = sizeOf(key, value);
+      String old = (size > this.maxBytes) ? this.entries.remove(key) 
+          : this.entries.put(key, value);
+      if (old != null) {
+        this.bytes -= sizeOf(key, old);
+      }
+      if (size > this.maxBytes) {
+        return;
+      }
+      this.bytes += size;
+      Iterator<Map.Entry<Key, String>> iterator = this.entries.entrySet().iterator();
+      while (this.bytes > this.maxBytes && iterator.hasNext()) {
+        Map.Entry<Key, String> eldest = iterator.next();
+        this.bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        MemoryCache.this.evictions.incrementAndGet();
+      }
+    }
+
+    /**
+     * Removes the entries for the project owned by user.
+     * @param user The project owner.
+     * @param project The project, or null to remove entries for all of user's projects.
+     */
+    synchronized void clear(String user, String project) {
+      for (Iterator<Map.Entry<Key, String>> i = this.entries.entrySet().iterator(); 
+           i.hasNext();) {
+        Map.Entry<Key, String> entry = i.next();
+        Key key = entry.getKey();
+        if (key.user.equals(user) && ((project == null) || key.project.equals(project))) {
+          this.bytes -= sizeOf(key, entry.getValue());
+          i.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * The (owner, project, uri) key of a cached DPD.
+   */
+  private static final class Key {
+    /** The project owner. */
+    private final String user;
+    /** The project. */
+    private final String project;
+    /** The URI naming the DPD. */
+    private final String uri;
+
+    /**
+     * Creates the key.
+     * @param user The project owner.
+     * @param project The project.
+     * @param uri The URI naming the DPD.
+     */
+    Key(String user, String project, String uri) {
+      this.user = user;
+      this.project = project;
+      this.uri = uri;
+    }
+
+    /**
+     * Keys are equal if their owner, project, and uri are equal.
+     * @param obj The other object.
+     * @return True if equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return this.uri.equals(other.uri) && this.project.equals(other.project) &&
+      this.user.equals(other.user);
+    }
+
+    /**
+     * Returns the hash code of this key.
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+      return (31 * ((31 * this.user.hashCode()) + this.project.hashCode())) +
+      this.uri.hashCode();
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package org.hackystat.dailyprojectdata.frontsidecache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hackystat.dailyprojectdata.server.Server;
+import org.hackystat.dailyprojectdata.test.DailyProjectDataTestHelper;
+import org.hackystat.utilities.uricache.UriCache;
+import org.junit.Test;
+
+/**
+ * Stress tests the FrontSideCache and its MemoryCache with many threads and many project 
+ * owners. 
+ * @author Philip Johnson
+ */
+public class TestFrontSideCacheConcurrency extends DailyProjectDataTestHelper {
+  
+  /** The number of distinct project owners. */
+  private static final int NUM_OWNERS = 2000;
+  
+  /** The number of threads hammering the cache. */
+  private static final int NUM_THREADS = 16;
+  
+  /** The number of operations per thread. */
+  private static final int NUM_OPS = 5000;
+
+  /**
+   * Checks that concurrent put/get/clear calls across many owners create each owner's 
+   * UriCache exactly once and always hand out the same UriCache for a given owner.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    final CountingFrontSideCache cache = new CountingFrontSideCache(getDpdServer());
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      final int thread = i;
+      results.add(executor.submit(new Callable<Integer>() {
+        public Integer call() throws Exception {
+          start.await();
+          int hits = 0;
+          for (int op = 0; op < NUM_OPS; op++) {
+            String owner = "owner" + ((op * 7 + thread) % NUM_OWNERS);
+            String project = owner + "-project";
+            String uri = owner + "/uri/" + thread;
+            switch (op % 4) {
+            case 0: 
+              cache.put(owner, project, uri, uri);
+              break;
+            case 3:
+              cache.clear(owner, project);
+              break;
+            default:
+              Object value = cache.get(owner, project, uri);
+              if (value != null) {
+                assertEquals("Checking cached value", uri, value);
+                hits++;
+              }
+            }
+          }
+          return hits;
+        }
+      }));
+    }
+    start.countDown();
+    for (Future<Integer> result : results) {
+      result.get();
+    }
+    executor.shutdown();
+    
+    assertEquals("Checking owners", NUM_OWNERS, cache.creations.size());
+    for (AtomicInteger count : cache.creations.values()) {
+      assertEquals("Checking single creation", 1, count.get());
+    }
+    assertSame("Checking same cache", cache.getCache("owner1"), cache.getCache("owner1"));
+    
+    cache.put("owner1", "owner1-project", "final", "final");
+    assertEquals("Checking final put", "final", cache.get("owner1", "owner1-project", "final"));
+    cache.clear("owner1", "owner1-project");
+    assertNull("Checking final clear", cache.get("owner1", "owner1-project", "final"));
+    assertTrue("Checking no extra creations", cache.creations.get("owner1").get() == 1);
+    cache.shared.clear();
+  }
+  
+  /**
+   * Checks that many threads getting, promoting, putting, and clearing entries of the 
+   * striped MemoryCache at once always see the values that were put, that its counts and 
+   * byte accounting stay consistent, and that every stripe stays within its byte limit.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testMemoryCacheContention() throws Exception {
+    // Small enough that evictions occur, large enough for all 32 stripes.
+    final MemoryCache cache = new MemoryCache(32L * 1024L * 1024L);
+    assertEquals("Checking stripes", 32, cache.getStripes());
+    final String padding = new String(new char[20000]).replace('\0', 'x');
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      final int thread = i;
+      results.add(executor.submit(new Callable<Integer>() {
+        public Integer call() throws Exception {
+          start.await();
+          int gets = 0;
+          for (int op = 0; op < NUM_OPS * 4; op++) {
+            String owner = "owner" + ((op + thread) % 20);
+            String project = owner + "-project";
+            String uri = owner + "/uri/" + ((op * 31 + thread) % 1000);
+            long generation = cache.getGeneration();
+            String value = cache.get(owner, project, uri);
+            gets++;
+            if (value != null) {
+              assertTrue("Checking cached value", value.startsWith(uri + ":"));
+            }
+            else if (op % 2 == 0) {
+              cache.putIfCurrent(owner, project, uri, uri + ":" + padding, generation);
+            }
+            else {
+              cache.put(owner, project, uri, uri + ":" + padding);
+            }
+            if (op % 997 == 0) {
+              cache.clear(owner, project);
+            }
+          }
+          return gets;
+        }
+      }));
+    }
+    start.countDown();
+    int gets = 0;
+    for (Future<Integer> result : results) {
+      gets += result.get();
+    }
+    executor.shutdown();
+    
+    assertEquals("Checking hits and misses", gets, cache.getHits() + cache.getMisses());
+    assertTrue("Checking hits", cache.getHits() > 0);
+    assertTrue("Checking evictions", cache.getEvictions() > 0);
+    assertTrue("Checking byte limit", cache.getBytes() <= cache.getMaxBytes());
+    for (int i = 0; i < 20; i++) {
+      cache.clear("owner" + i);
+    }
+    assertEquals("Checking cleared size", 0, cache.size());
+    assertEquals("Checking cleared bytes", 0, cache.getBytes());
+  }
+  
+  /**
+   * A FrontSideCache that is always enabled and that counts UriCache creations per owner.
+   * All owners share a single underlying UriCache, since the test keys are disjoint per owner
+   * and creating thousands of persistent caches would dominate the test time. 
+   */
+  private static class CountingFrontSideCache extends FrontSideCache {
+    /** The number of times a UriCache was requested for each owner. */
+    private ConcurrentHashMap<String, AtomicInteger> creations = 
+      new ConcurrentHashMap<String, AtomicInteger>();
+    /** The UriCache shared by all owners. */
+    private UriCache shared = 
+      new UriCache("stresstest", "dailyprojectdata/frontsidecache", 1.0, 100000L);
+    
+    /**
+     * Creates the cache. 
+     * @param server The DPD server.
+     */
+    CountingFrontSideCache(Server server) {
+      super(server);
+    }
+    
+    /**
+     * Front side caching is always enabled for this test.
+     * @return False.
+     */
+    @Override
+    boolean isDisabled() {
+      return false;
+    }
+    
+    /**
+     * Records the creation and returns the shared cache. 
+     * @param user The owner.
+     * @return The shared UriCache.
+     */
+    @Override
+    UriCache makeCache(String user) {
+      AtomicInteger count = this.creations.putIfAbsent(user, new AtomicInteger(1));
+      if (count != null) {
+        count.incrementAndGet();
+      }
+      return this.shared;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package org.hackystat.dailyprojectdata.frontsidecache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the byte-bounded LRU behavior and the counters of the MemoryCache. 
+ * @author Philip Johnson
+ */
+public class TestMemoryCache {
+  
+  /** A 1000 character DPD representation. */
+  private static final String DPD = makeString(1000);
+  
+  /** The owner. */
+  private static final String USER = "user";
+  
+  /** A project. */
+  private static final String PROJECT = "project";
+
+  /**
+   * Checks that the least recently used entries are evicted once the byte limit is reached.
+   */
+  @Test
+  public void testEviction() {
+    // Each entry is a little over 2000 bytes, so three fit but four do not.
+    MemoryCache cache = new MemoryCache(7000);
+    cache.put(USER, PROJECT, "uri1", DPD);
+    cache.put(USER, PROJECT, "uri2", DPD);
+    cache.put(USER, PROJECT, "uri3", DPD);
+    assertEquals("Checking size", 3, cache.size());
+    // Touch uri1 so that uri2 becomes the least recently used.
+    assertEquals("Checking hit", DPD, cache.get(USER, PROJECT, "uri1"));
+    cache.put(USER, PROJECT, "uri4", DPD);
+    assertEquals("Checking size after eviction", 3, cache.size());
+    assertNull("Checking uri2 evicted", cache.get(USER, PROJECT, "uri2"));
+    assertEquals("Checking uri1 kept", DPD, cache.get(USER, PROJECT, "uri1"));
+    assertEquals("Checking evictions", 1, cache.getEvictions());
+    assertEquals("Checking hits", 2, cache.getHits());
+    assertEquals("Checking misses", 1, cache.getMisses());
+    assertTrue("Checking bytes", cache.getBytes() <= cache.getMaxBytes());
+    
+    // Entries larger than the whole cache are never stored. 
+    cache.put(USER, PROJECT, "huge", makeString(10000));
+    assertNull("Checking huge", cache.get(USER, PROJECT, "huge"));
+    assertEquals("Checking size after huge", 3, cache.size());
+  }
+  
+  /**
+   * Checks that clears remove only the matching entries and block stale promotions.
+   */
+  @Test
+  public void testClear() {
+    MemoryCache cache = new MemoryCache(100000);
+    cache.put(USER, PROJECT, "uri1", DPD);
+    cache.put(USER, "other", "uri2", DPD);
+    cache.put("user2", PROJECT, "uri3", DPD);
+    cache.clear(USER, PROJECT);
+    assertNull("Checking project clear", cache.get(USER, PROJECT, "uri1"));
+    assertEquals("Checking other project", DPD, cache.get(USER, "other", "uri2"));
+    cache.clear(USER);
+    assertNull("Checking user clear", cache.get(USER, "other", "uri2"));
+    assertEquals("Checking other user", DPD, cache.get("user2", PROJECT, "uri3"));
+    
+    long generation = cache.getGeneration();
+    cache.clear("user2");
+    cache.putIfCurrent(USER, PROJECT, "uri1", DPD, generation);
+    assertNull("Checking stale promotion", cache.get(USER, PROJECT, "uri1"));
+    assertEquals("Checking size", 0, cache.size());
+    assertEquals("Checking bytes", 0, cache.getBytes());
+  }
+  
+  /**
+   * Returns a string of the given length.
+   * @param length The length. 
+   * @return The string.
+   */
+  private static String makeString(int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append('x');
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,136 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one type of DPD request: how long the requests took, how many SensorBase
+ * calls and bytes each needed, how many failed, and how many are in progress. For the
+ * requests that were traced, it also keeps the time each spent in each kind of span.
+ *
+ * @author Philip Johnson
+ */
+public class DpdMetrics {
+
+  /** The request type, such as "DevTime" or "DevTimeRange". */
+  private final String type;
+
+  /** The latencies of the finished requests, in microseconds. */
+  private final Histogram latency = new Histogram();
+
+  /** The number of SensorBase calls made by each finished request. */
+  private final Histogram sensorBaseCalls = new Histogram();
+
+  /** The number of bytes transferred to and from the SensorBase by each finished request. */
+  private final Histogram sensorBaseBytes = new Histogram();
+
+  /** The number of requests in progress. */
+  private final AtomicInteger inFlight = new AtomicInteger(0);
+
+  /** The number of finished requests that did not succeed. */
+  private final AtomicLong errors = new AtomicLong(0);
+
+  /** The microseconds spent in each kind of span by each traced request, by span ordinal. */
+  private final Histogram[] spans = new Histogram[RequestTrace.Span.values().length];
+
+  /**
+   * Creates the metrics of a request type.
+   * @param type The request type.
+   */
+  public DpdMetrics(String type) {
+    this.type = type;
+    for (int i = 0; i < this.spans.length; i++) {
+      this.spans[i] = new Histogram();
+    }
+  }
+
+  /**
+   * Records that a request has started.
+   * @param trace The trace of the request, or null if it is not traced.
+   * @return The metrics to make current while the request is handled.
+   */
+  public RequestMetrics start(RequestTrace trace) {
+    this.inFlight.incrementAndGet();
+    return new RequestMetrics(trace);
+  }
+
+  /**
+   * Records that a request has finished.
+   * @param request The metrics returned by start.
+   * @param micros The number of microseconds the request took.
+   * @param success False if the request failed.
+   */
+  public void finish(RequestMetrics request, long micros, boolean success) {
+    this.inFlight.decrementAndGet();
+    this.latency.record(micros);
+    this.sensorBaseCalls.record(request.getSensorBaseCalls());
+    this.sensorBaseBytes.record(request.getSensorBaseBytes());
+    if (!success) {
+      this.errors.incrementAndGet();
+    }
+    RequestTrace trace = request.getTrace();
+    if (trace != null) {
+      for (RequestTrace.Span span : RequestTrace.Span.values()) {
+        this.spans[span.ordinal()].record(trace.getMicros(span));
+      }
+    }
+  }
+
+  /**
+   * Returns the request type.
+   * @return The type.
+   */
+  public String getType() {
+    return this.type;
+  }
+
+  /**
+   * Returns the latencies of the finished requests, in microseconds.
+   * @return The histogram, whose count is the number of finished requests.
+   */
+  public Histogram getLatency() {
+    return this.latency;
+  }
+
+  /**
+   * Returns the number of SensorBase calls made by each finished request.
+   * @return The histogram, whose sum is the total number of calls.
+   */
+  public Histogram getSensorBaseCalls() {
+    return this.sensorBaseCalls;
+  }
+
+  /**
+   * Returns the number of bytes transferred to and from the SensorBase by each request.
+   * @return The histogram, whose sum is the total number of bytes.
+   */
+  public Histogram getSensorBaseBytes() {
+    return this.sensorBaseBytes;
+  }
+
+  /**
+   * Returns the number of requests in progress.
+   * @return The number in flight.
+   */
+  public int getInFlight() {
+    return this.inFlight.get();
+  }
+
+  /**
+   * Returns the number of finished requests that did not succeed.
+   * @return The number of errors.
+   */
+  public long getErrors() {
+    return this.errors.get();
+  }
+
+  /**
+   * Returns the microseconds spent in a kind of span by each traced request, excluding
+   * nested spans.
+   * @param span The kind of span.
+   * @return The histogram, whose count is the number of traced requests.
+   */
+  public Histogram getSpan(RequestTrace.Span span) {
+    return this.spans[span.ordinal()];
+  }
+}
@@ -0,0 +1,148 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, such as latencies in microseconds, that can be recorded
+ * from many threads at once without locking. Like an HDR histogram, it has a fixed number of
+ * buckets whose width grows with the value: each power of two is divided into SUB_BUCKETS
+ * buckets, so percentiles are accurate to within 1/SUB_BUCKETS of the value, whatever its
+ * magnitude. Values below SUB_BUCKETS are counted exactly, and values of MAX_VALUE or more
+ * are counted as MAX_VALUE.
+ * <p>
+ * Recording a value increments three counters and usually reads a fourth, so histograms can
+ * be left on in production. Reads are not atomic with respect to concurrent recordings, so a
+ * percentile may not yet reflect a value that is already included in the count.
+ *
+ * @author Philip Johnson
+ */
+public class Histogram {
+
+  /** The number of bits that select the bucket within a power of two. */
+  private static final int SUB_BUCKET_BITS = 4;
+
+  /** The number of buckets within each power of two. */
+  public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** The exponent of the largest power of two that is counted. */
+  private static final int MAX_EXPONENT = 40;
+
+  /** The largest value counted, about 12.7 days in microseconds or 1 TB in bytes. */
+  public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  /** The number of values in each bucket. */
+  private final AtomicLongArray counts =
+    new AtomicLongArray(SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+  /** The number of values recorded. */
+  private final AtomicLong count = new AtomicLong(0);
+
+  /** The sum of the values recorded. */
+  private final AtomicLong sum = new AtomicLong(0);
+
+  /** The largest value recorded. */
+  private final AtomicLong max = new AtomicLong(0);
+
+  /**
+   * Records a value.
+   * @param value The value, which is taken to be 0 if negative.
+   */
+  public void record(long value) {
+    long clamped = Math.min(Math.max(value, 0L), MAX_VALUE);
+    this.counts.incrementAndGet(getIndex(clamped));
+    this.count.incrementAndGet();
+    this.sum.addAndGet(clamped);
+    long currentMax = this.max.get();
+    while ((clamped > currentMax) && !this.max.compareAndSet(currentMax, clamped)) {
+      currentMax = this.max.get();
+    }
+  }
+
+  /**
+   * Returns the number of values recorded.
+   * @return The count.
+   */
+  public long getCount() {
+    return this.count.get();
+  }
+
+  /**
+   * Returns the sum of the values recorded.
+   * @return The sum.
+   */
+  public long getSum() {
+    return this.sum.get();
+  }
+
+  /**
+   * Returns the largest value recorded.
+   * @return The maximum, or 0 if none have been recorded.
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Returns the mean of the values recorded.
+   * @return The mean, or 0 if none have been recorded.
+   */
+  public double getMean() {
+    long n = this.count.get();
+    return (n == 0) ? 0 : (double) this.sum.get() / n;
+  }
+
+  /**
+   * Returns the value below or at which the given percentage of the recorded values lie,
+   * to within the width of its bucket. It is never more than the maximum recorded.
+   * @param percentile The percentage, such as 99.9.
+   * @return The value, or 0 if none have been recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long n = 0;
+    for (int i = 0; i < this.counts.length(); i++) {
+      n += this.counts.get(i);
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * n));
+    long seen = 0;
+    for (int i = 0; i < this.counts.length(); i++) {
+      seen += this.counts.get(i);
+      if (seen >= rank) {
+        return Math.min(getUpperBound(i), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+
+  /**
+   * Returns the index of the bucket counting value.
+   * @param value A value between 0 and MAX_VALUE.
+   * @return The index.
+   */
+  static int getIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the largest value counted by a bucket.
+   * @param index The index of the bucket.
+   * @return The upper bound of its values.
+   */
+  static long getUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+}
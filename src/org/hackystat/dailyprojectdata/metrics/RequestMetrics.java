@@ -0,0 +1,105 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the SensorBase calls made on behalf of one DPD request, and the bytes they
+ * transferred. The request's thread makes its RequestMetrics current with setCurrent, and
+ * code that calls the SensorBase reports each call with recordSensorBaseCall, wherever it is.
+ * Threads that do part of the request's work, such as the sensor data fetchers, make the
+ * request's RequestMetrics current while they do so.
+ * <p>
+ * Bytes are only known for the batch calls made by the BatchSensorDataFetcher; calls made 
+ * through a SensorBaseClient are counted, but record no bytes.
+ *
+ * @author Philip Johnson
+ */
+public class RequestMetrics {
+
+  /** The RequestMetrics of the request each thread is working on, if any. */
+  private static final ThreadLocal<RequestMetrics> current = new ThreadLocal<RequestMetrics>();
+
+  /** The number of SensorBase calls made. */
+  private final AtomicLong sensorBaseCalls = new AtomicLong(0);
+
+  /** The number of bytes sent to and received from the SensorBase. */
+  private final AtomicLong sensorBaseBytes = new AtomicLong(0);
+
+  /** The breakdown of the request's time, or null if it is not traced. */
+  private final RequestTrace trace;
+
+  /**
+   * Creates the metrics of a request that is not traced.
+   */
+  public RequestMetrics() {
+    this(null);
+  }
+
+  /**
+   * Creates the metrics of a request.
+   * @param trace The breakdown of the request's time, or null if it is not traced.
+   */
+  public RequestMetrics(RequestTrace trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * Returns the RequestMetrics of the request the current thread is working on.
+   * @return The RequestMetrics, or null if there is none.
+   */
+  public static RequestMetrics getCurrent() {
+    return current.get();
+  }
+
+  /**
+   * Makes metrics the RequestMetrics of the current thread.
+   * @param metrics The RequestMetrics, or null if the thread has finished the request's work.
+   * @return The RequestMetrics previously current, to be restored when the work is done.
+   */
+  public static RequestMetrics setCurrent(RequestMetrics metrics) {
+    RequestMetrics previous = current.get();
+    if (metrics == null) {
+      current.remove();
+    }
+    else {
+      current.set(metrics);
+    }
+    return previous;
+  }
+
+  /**
+   * Reports a SensorBase call to the current thread's RequestMetrics, if any.
+   * @param bytes The number of bytes transferred, or 0 if unknown.
+   */
+  public static void recordSensorBaseCall(long bytes) {
+    RequestMetrics metrics = current.get();
+    if (metrics != null) {
+      metrics.sensorBaseCalls.incrementAndGet();
+      metrics.sensorBaseBytes.addAndGet(bytes);
+    }
+  }
+
+  /**
+   * Returns the number of SensorBase calls made.
+   * @return The number of calls.
+   */
+  public long getSensorBaseCalls() {
+    return this.sensorBaseCalls.get();
+  }
+
+  /**
+   * Returns the number of bytes sent to and received from the SensorBase.
+   * @return The number of bytes.
+   */
+  public long getSensorBaseBytes() {
+    return this.sensorBaseBytes.get();
+  }
+
+  /**
+   * Returns the breakdown of the request's time into spans.
+   * @return The trace, or null if the request is not traced.
+   */
+  public RequestTrace getTrace() {
+    return this.trace;
+  }
+}
@@ -0,0 +1,203 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+/**
+ * Breaks down the time taken by one DPD request into spans: retrieving the sensor data index,
+ * fetching the sensor data instances, aggregating them into the DPD, marshalling it, and
+ * putting it in the caches. Only a sample of requests is traced; the others have no
+ * RequestTrace, and each span then costs a single ThreadLocal lookup.
+ * <p>
+ * Spans are begun and ended by the request's thread, and may nest: the time of a span
+ * excludes the time of the spans within it, so that an aggregation that fetches further
+ * sensor data is not charged for the fetch. The time not covered by any span, such as
+ * authentication and cache lookups, is reported as "other". Work done on behalf of the
+ * request by other threads, such as the sensor data fetchers, is covered by the span in
+ * which the request's thread waits for it; spans begun by those threads are ignored.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * RequestTrace trace = RequestTrace.begin();
+ * try {
+ *   ...
+ * }
+ * finally {
+ *   RequestTrace.end(trace, RequestTrace.Span.INDEX);
+ * }
+ * </pre>
+ *
+ * @author Philip Johnson
+ */
+public class RequestTrace {
+
+  /** The kinds of span. */
+  public enum Span {
+    /** Retrieving a sensor data index or snapshot, or the project. */
+    INDEX("index"),
+    /** Fetching sensor data instances. */
+    FETCH("fetch"),
+    /** Computing the DPD from the sensor data. */
+    AGGREGATE("aggregate"),
+    /** Marshalling the DPD to XML. */
+    MARSHAL("marshal"),
+    /** Putting the DPD in the front side cache or the DPD store. */
+    CACHE_PUT("cachePut");
+
+    /** The name of the span in traces. */
+    private final String label;
+
+    /**
+     * Creates a kind of span.
+     * @param label The name of the span in traces.
+     */
+    private Span(String label) {
+      this.label = label;
+    }
+
+    /**
+     * Returns the name of the span in traces, such as "cachePut".
+     * @return The name.
+     */
+    public String getLabel() {
+      return this.label;
+    }
+  }
+
+  /** The maximum depth to which spans may nest; deeper spans are ignored. */
+  private static final int MAX_DEPTH = 16;
+
+  /** The time at which the request started, as a System.nanoTime(). */
+  private final long startTime;
+
+  /** The thread handling the request, the only one whose spans are recorded. */
+  private final Thread owner = Thread.currentThread();
+
+  /** The number of nanoseconds spent in each kind of span, excluding nested spans. */
+  private final long[] nanos = new long[Span.values().length];
+
+  /** The number of spans of each kind. */
+  private final int[] counts = new int[Span.values().length];
+
+  /** The start times of the spans in progress, outermost first. */
+  private final long[] starts = new long[MAX_DEPTH];
+
+  /** The time spent in the spans nested within each span in progress. */
+  private final long[] nested = new long[MAX_DEPTH];
+
+  /** The number of spans in progress. */
+  private int depth = 0;
+
+  /**
+   * Creates a trace of a request that started at startTime, handled by the current thread.
+   * @param startTime The start of the request, as a System.nanoTime().
+   */
+  public RequestTrace(long startTime) {
+    this.startTime = startTime;
+  }
+
+  /**
+   * Begins a span of the request the current thread is working on, if it is traced.
+   * @return The trace, to be passed to end, or null if the request is not traced.
+   */
+  public static RequestTrace begin() {
+    RequestMetrics metrics = RequestMetrics.getCurrent();
+    RequestTrace trace = (metrics == null) ? null : metrics.getTrace();
+    if ((trace == null) || (trace.owner != Thread.currentThread())) {
+      return null;
+    }
+    trace.push();
+    return trace;
+  }
+
+  /**
+   * Ends the span begun by the call to begin that returned trace.
+   * @param trace The trace returned by begin, or null.
+   * @param span The kind of span.
+   */
+  public static void end(RequestTrace trace, Span span) {
+    if (trace != null) {
+      trace.pop(span);
+    }
+  }
+
+  /**
+   * Starts a span.
+   */
+  private void push() {
+    if (this.depth < MAX_DEPTH) {
+      this.starts[this.depth] = System.nanoTime();
+      this.nested[this.depth] = 0;
+    }
+    this.depth++;
+  }
+
+  /**
+   * Ends the innermost span, charging it with its time less that of its nested spans.
+   * @param span The kind of span.
+   */
+  private void pop(Span span) {
+    this.depth--;
+    if (this.depth >= MAX_DEPTH) {
+      return;
+    }
+    long elapsed = System.nanoTime() - this.starts[this.depth];
+    this.nanos[span.ordinal()] += elapsed - this.nested[this.depth];
+    this.counts[span.ordinal()]++;
+    if (this.depth > 0) {
+      this.nested[this.depth - 1] += elapsed;
+    }
+  }
+
+  /**
+   * Returns the number of microseconds spent in spans of the given kind.
+   * @param span The kind of span.
+   * @return The time, excluding nested spans.
+   */
+  public long getMicros(Span span) {
+    return this.nanos[span.ordinal()] / 1000;
+  }
+
+  /**
+   * Returns the number of spans of the given kind.
+   * @param span The kind of span.
+   * @return The number of spans.
+   */
+  public int getCount(Span span) {
+    return this.counts[span.ordinal()];
+  }
+
+  /**
+   * Returns the trace as a single line, such as
+   * "total=812.4ms index=20.1ms/1 fetch=700.0ms/1 aggregate=80.2ms/1 other=12.1ms calls=2
+   * bytes=48210", listing only the kinds of span that occurred.
+   * @param endTime The end of the request, as a System.nanoTime().
+   * @param metrics The SensorBase calls and bytes of the request.
+   * @return The trace.
+   */
+  public String format(long endTime, RequestMetrics metrics) {
+    long total = endTime - this.startTime;
+    long other = total;
+    StringBuilder builder = new StringBuilder(160);
+    appendMillis(builder.append("total="), total);
+    for (Span span : Span.values()) {
+      if (this.counts[span.ordinal()] > 0) {
+        builder.append(' ').append(span.getLabel()).append('=');
+        appendMillis(builder, this.nanos[span.ordinal()]);
+        builder.append('/').append(this.counts[span.ordinal()]);
+        other -= this.nanos[span.ordinal()];
+      }
+    }
+    appendMillis(builder.append(" other="), Math.max(0L, other));
+    builder.append(" calls=").append(metrics.getSensorBaseCalls());
+    builder.append(" bytes=").append(metrics.getSensorBaseBytes());
+    return builder.toString();
+  }
+
+  /**
+   * Appends a time in milliseconds, to a tenth of a millisecond.
+   * @param builder The builder.
+   * @param nanos The time, in nanoseconds.
+   */
+  private static void appendMillis(StringBuilder builder, long nanos) {
+    long tenths = nanos / 100000;
+    builder.append(tenths / 10).append('.').append(tenths % 10).append("ms");
+  }
+}
@@ -0,0 +1,88 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The request metrics of a DailyProjectData server, one DpdMetrics per request type, created
+ * the first time a request of that type arrives. It also decides which requests are traced:
+ * one in every traceInterval.
+ *
+ * @author Philip Johnson
+ */
+public class ServerMetrics {
+
+  /** The metrics of each request type. */
+  private final ConcurrentMap<String, DpdMetrics> dpds =
+    new ConcurrentHashMap<String, DpdMetrics>();
+
+  /** The time at which recording started. */
+  private final long startTime = System.currentTimeMillis();
+
+  /** The number of requests per traced request, or 0 if none are traced unless asked. */
+  private final int traceInterval;
+
+  /** The number of requests considered for tracing. */
+  private final AtomicLong traceCandidates = new AtomicLong(0);
+
+  /**
+   * Creates the metrics of a server.
+   * @param traceInterval Trace one request in every traceInterval, or none if 0.
+   */
+  public ServerMetrics(int traceInterval) {
+    this.traceInterval = traceInterval;
+  }
+
+  /**
+   * Returns true if the next request should be traced.
+   * @return True for one request in every traceInterval.
+   */
+  public boolean shouldTrace() {
+    return (this.traceInterval > 0) && 
+      (this.traceCandidates.getAndIncrement() % this.traceInterval == 0);
+  }
+
+  /**
+   * Returns the metrics of a request type, creating them if necessary.
+   * @param type The request type, such as "DevTime".
+   * @return The DpdMetrics.
+   */
+  public DpdMetrics getDpdMetrics(String type) {
+    DpdMetrics metrics = this.dpds.get(type);
+    if (metrics == null) {
+      DpdMetrics created = new DpdMetrics(type);
+      metrics = this.dpds.putIfAbsent(type, created);
+      if (metrics == null) {
+        metrics = created;
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Returns the metrics of all request types seen so far, ordered by type.
+   * @return The DpdMetrics.
+   */
+  public List<DpdMetrics> getAllDpdMetrics() {
+    List<DpdMetrics> all = new ArrayList<DpdMetrics>(this.dpds.values());
+    Collections.sort(all, new Comparator<DpdMetrics>() {
+      public int compare(DpdMetrics m1, DpdMetrics m2) {
+        return m1.getType().compareTo(m2.getType());
+      }
+    });
+    return all;
+  }
+
+  /**
+   * Returns the time at which recording started.
+   * @return The time, in milliseconds.
+   */
+  public long getStartTime() {
+    return this.startTime;
+  }
+}
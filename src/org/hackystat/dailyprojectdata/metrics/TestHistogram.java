@@ -0,0 +1,70 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the Histogram reports counts, means, and percentiles to within its precision.
+ *
+ * @author Philip Johnson
+ */
+public class TestHistogram {
+
+  /**
+   * Tests the statistics of an empty histogram and of small exact values.
+   */
+  @Test
+  public void testSmallValues() {
+    Histogram histogram = new Histogram();
+    assertEquals("Checking empty percentile", 0, histogram.getValueAtPercentile(50));
+    assertEquals("Checking empty mean", 0.0, histogram.getMean(), 0.0);
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+    histogram.record(-5);
+    assertEquals("Checking count", 11, histogram.getCount());
+    assertEquals("Checking sum", 55, histogram.getSum());
+    assertEquals("Checking max", 10, histogram.getMax());
+    assertEquals("Checking median", 5, histogram.getValueAtPercentile(50));
+    assertEquals("Checking p100", 10, histogram.getValueAtPercentile(100));
+    assertEquals("Checking p0", 0, histogram.getValueAtPercentile(0));
+  }
+
+  /**
+   * Tests that percentiles of large values are within the bucket precision.
+   */
+  @Test
+  public void testPrecision() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100000; i++) {
+      histogram.record(i);
+    }
+    double[] percentiles = {50, 90, 99, 99.9};
+    for (double p : percentiles) {
+      long expected = (long) (p * 1000);
+      long actual = histogram.getValueAtPercentile(p);
+      assertTrue("Checking p" + p + " " + actual, actual >= expected);
+      assertTrue("Checking p" + p + " " + actual,
+          actual <= expected + expected / Histogram.SUB_BUCKETS);
+    }
+    assertEquals("Checking max", 100000, histogram.getValueAtPercentile(100));
+    histogram.record(Long.MAX_VALUE);
+    assertEquals("Checking clamp", Histogram.MAX_VALUE, histogram.getMax());
+  }
+
+  /**
+   * Tests that each value falls in a bucket whose bounds contain it.
+   */
+  @Test
+  public void testBuckets() {
+    long[] values = {0, 15, 16, 17, 31, 32, 1000, 65535, 65536, Histogram.MAX_VALUE};
+    for (long value : values) {
+      int index = Histogram.getIndex(value);
+      assertTrue("Checking upper " + value, value <= Histogram.getUpperBound(index));
+      long lower = (index == 0) ? 0 : Histogram.getUpperBound(index - 1) + 1;
+      assertTrue("Checking lower " + value, value >= lower);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.hackystat.dailyprojectdata.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that the RequestTrace charges nested spans only to themselves, ignores other threads
+ * and untraced requests, and formats its breakdown.
+ *
+ * @author Philip Johnson
+ */
+public class TestRequestTrace {
+
+  /**
+   * Clears the current thread's request.
+   */
+  @After
+  public void tearDown() {
+    RequestMetrics.setCurrent(null);
+  }
+
+  /**
+   * Tests that the time of a nested span is excluded from the span around it.
+   * @throws InterruptedException If interrupted while sleeping.
+   */
+  @Test
+  public void testNesting() throws InterruptedException {
+    RequestTrace trace = new RequestTrace(System.nanoTime());
+    RequestMetrics.setCurrent(new RequestMetrics(trace));
+    RequestTrace outer = RequestTrace.begin();
+    Thread.sleep(20);
+    RequestTrace inner = RequestTrace.begin();
+    Thread.sleep(100);
+    RequestTrace.end(inner, RequestTrace.Span.FETCH);
+    RequestTrace.end(outer, RequestTrace.Span.AGGREGATE);
+    long fetch = trace.getMicros(RequestTrace.Span.FETCH);
+    long aggregate = trace.getMicros(RequestTrace.Span.AGGREGATE);
+    assertTrue("Checking fetch " + fetch, fetch >= 100000);
+    assertTrue("Checking aggregate " + aggregate, (aggregate >= 20000) && (aggregate < 90000));
+    assertEquals("Checking fetch count", 1, trace.getCount(RequestTrace.Span.FETCH));
+    assertEquals("Checking index count", 0, trace.getCount(RequestTrace.Span.INDEX));
+    RequestMetrics.recordSensorBaseCall(512);
+    String line = trace.format(System.nanoTime(), RequestMetrics.getCurrent());
+    assertTrue("Checking format " + line, line.startsWith("total="));
+    assertTrue("Checking format " + line, line.contains(" fetch=") && line.contains("ms/1"));
+    assertTrue("Checking format " + line, !line.contains("index="));
+    assertTrue("Checking format " + line, line.endsWith(" calls=1 bytes=512"));
+  }
+
+  /**
+   * Tests that spans are not begun for untraced requests or by other threads.
+   * @throws InterruptedException If interrupted while waiting for the other thread.
+   */
+  @Test
+  public void testUntraced() throws InterruptedException {
+    assertNull("Checking no request", RequestTrace.begin());
+    RequestMetrics.setCurrent(new RequestMetrics());
+    assertNull("Checking untraced request", RequestTrace.begin());
+    final RequestMetrics traced = new RequestMetrics(new RequestTrace(System.nanoTime()));
+    RequestMetrics.setCurrent(traced);
+    final RequestTrace[] worker = new RequestTrace[1];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        RequestMetrics.setCurrent(traced);
+        worker[0] = RequestTrace.begin();
+      }
+    };
+    thread.start();
+    thread.join();
+    assertNull("Checking other thread", worker[0]);
+  }
+}
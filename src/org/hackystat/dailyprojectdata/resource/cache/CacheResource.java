@@ -50,6 +50,11 @@ public class CacheResource extends DailyProjectDataResource {
       if (this.uriUser == null) {
         // Invoke the clear operation on the entire user's cache. 
         super.server.getFrontSideCache().clear(authUser);
+        super.server.clearIssueStateIndexes(authUser);
+        super.server.getSnapshotMemo().clear(authUser);
+        if (super.server.getDpdStore() != null) {
+          super.server.getDpdStore().clear(authUser);
+        }
         logger.info(String.format("All DPD cache entries deleted for %s ", authUser));
         getResponse().setStatus(Status.SUCCESS_OK);
         return;
@@ -66,6 +71,11 @@ public class CacheResource extends DailyProjectDataResource {
       
       // If we're here, we are OK to delete the cache associated with the user and project. 
       super.server.getFrontSideCache().clear(uriUser, project);
+      super.server.clearIssueStateIndex(uriUser, project);
+      super.server.getSnapshotMemo().clear(uriUser, project);
+      if (super.server.getDpdStore() != null) {
+        super.server.getDpdStore().clear(uriUser, project);
+      }
       logger.info(String.format("All DPD cache entries deleted for %s/%s. ", uriUser, project));
       return; 
     }
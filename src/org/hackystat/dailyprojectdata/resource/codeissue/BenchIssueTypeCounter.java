@@ -0,0 +1,51 @@
+package org.hackystat.dailyprojectdata.resource.codeissue;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Benchmarks IssueTypeCounter on a set of CodeIssue instances with skewed issue types.
+ * @author Philip Johnson
+ */
+public class BenchIssueTypeCounter extends Benchmark {
+
+  /** The logger passed to the counter. */
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+  /** The CodeIssue instances. */
+  private List<SensorData> codeIssues;
+
+  /**
+   * Generates the CodeIssue instances.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.codeIssues = new SensorDataWorkload(size).makeCodeIssues(size);
+  }
+
+  /**
+   * Counts the issues of each type.
+   * @return The total number of issues.
+   */
+  @Override
+  public long run() {
+    IssueTypeCounter counter = new IssueTypeCounter(this.codeIssues, this.logger);
+    long result = 0;
+    for (String type : counter.getTypes()) {
+      result += counter.getCount(type);
+    }
+    return result;
+  }
+
+  /** Releases the CodeIssue instances. */
+  @Override
+  public void tearDown() {
+    this.codeIssues = null;
+  }
+}
@@ -0,0 +1,50 @@
+package org.hackystat.dailyprojectdata.resource.codeissue;
+
+import java.util.List;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Benchmarks MultiToolSnapshot on CodeIssue instances from several runs of skewed tools.
+ * @author Philip Johnson
+ */
+public class BenchMultiToolSnapshot extends Benchmark {
+
+  /** The CodeIssue instances. */
+  private List<SensorData> codeIssues;
+
+  /**
+   * Generates the CodeIssue instances.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.codeIssues = new SensorDataWorkload(size).makeCodeIssues(size);
+  }
+
+  /**
+   * Builds the snapshot of each tool's latest run.
+   * @return The number of instances in the snapshots.
+   */
+  @Override
+  public long run() {
+    MultiToolSnapshot snapshot = new MultiToolSnapshot();
+    for (SensorData data : this.codeIssues) {
+      snapshot.add(data);
+    }
+    long result = 0;
+    for (String tool : snapshot.getTools()) {
+      result += snapshot.getSensorData(tool).size();
+    }
+    return result;
+  }
+
+  /** Releases the CodeIssue instances. */
+  @Override
+  public void tearDown() {
+    this.codeIssues = null;
+  }
+}
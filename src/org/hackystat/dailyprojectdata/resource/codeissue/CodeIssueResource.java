@@ -1,34 +1,24 @@
 package org.hackystat.dailyprojectdata.resource.codeissue;
 
-import java.io.StringWriter;
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.hackystat.dailyprojectdata.resource.codeissue.jaxb.CodeIssueDailyProjectData;
 import org.hackystat.dailyprojectdata.resource.codeissue.jaxb.CodeIssueData;
-import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdRepresentation;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdResource;
+import org.hackystat.dailyprojectdata.server.ServerProperties;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
-import org.hackystat.utilities.tstamp.Tstamp;
 import org.restlet.Context;
-import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.resource.Representation;
-import org.restlet.resource.Variant;
-import org.w3c.dom.Document;
 
 /**
  * Implements the Resource for processing GET {host}/codeissue/{user}/{project}/{timestamp}
@@ -38,7 +28,7 @@ import org.w3c.dom.Document;
  * 
  * @author Philip Johnson, Julie Sakuda.
  */
-public class CodeIssueResource extends DailyProjectDataResource {
+public class CodeIssueResource extends DpdResource {
 
   /** The optional code issue tool. */
   private String tool;
@@ -64,119 +54,113 @@ public class CodeIssueResource extends DailyProjectDataResource {
   }
 
   /**
-   * Returns a CodeIssueDailyProjectData instance representing the CodeIssues associated with
-   * the Project data, or null if not authorized.
-   * 
-   * @param variant The representational variant requested.
-   * @return The representation.
+   * Returns the tool and type of this request, which are logged after its type.
+   * @return The parameters.
+   */
+  @Override
+  protected String[] getLogParameters() {
+    return new String[] {this.tool, this.type};
+  }
+
+  /**
+   * Returns the representation of the CodeIssue DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param refs The refs to the sensor data for the day.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
    */
   @Override
-  public Representation represent(Variant variant) {
+  protected DpdRepresentation makeDpd(SensorBaseClient client, XMLGregorianCalendar startTime,
+      List<SensorDataRef> refs) throws Exception {
     Logger logger = this.server.getLogger();
-    logger.fine("CodeIssue DPD: Starting");
-    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
-      try {
-        // [1] get the SensorBaseClient for the user making this request.
-        SensorBaseClient client = super.getSensorBaseClient();
-        // [2] Check the front side cache and return if the DPD is found and is OK to access.
-        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, uriString);
-        if ((cachedDpd != null) && client.inProject(uriUser, project)) {
-          return super.getStringRepresentation(cachedDpd);
-        }
-        // [2] get a SensorDataIndex of all CodeIssue data for this Project on the requested day.
-        XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
-        XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
-        logger.fine("CodeIssue DPD: Requesting index: " + uriUser + " " + project);
-        SensorDataIndex index = client.getProjectSensorData(uriUser, project, startTime,
-            endTime, "CodeIssue");
-        logger.fine("CodeIssue DPD: Got index: " + index.getSensorDataRef().size() + " instances");
-
-        // [3] Create a MultiToolSnapshot generated from all CodeIssue sensor data for this day.
-        MultiToolSnapshot snapshot = new MultiToolSnapshot();
-        for (SensorDataRef ref : index.getSensorDataRef()) {
-          SensorData data = client.getSensorData(ref);
-          snapshot.add(data);
-        }
-        logger.fine("CodeIssue DPD: retrieved all instances. Now building DPD.");
-        // [4] Create the codeIssue DPD. 
-        CodeIssueDailyProjectData codeIssue = new CodeIssueDailyProjectData();
-        
-        // [4.1] Case 1: tool and type are null. Add an entry for all CodeIssueTypes in all tools.
-        if ((this.tool == null ) && (this.type == null)) {
-          for (String tool : snapshot.getTools()) {
-            Set<SensorData> toolSnapshot = snapshot.getSensorData(tool);
-            IssueTypeCounter counter = new IssueTypeCounter(toolSnapshot, logger);
-            for (String issueType : counter.getTypes()) {
-              codeIssue.getCodeIssueData().add(makeCodeIssueData(tool, issueType, counter));
-            }
-            // Add a zero entry if necessary.
-            if (counter.getTypes().isEmpty()) { //NOPMD
-              codeIssue.getCodeIssueData().add(makeZeroCodeIssueData(tool));
-            }
-          }
-        }
-        
-        // [4.2] Case 2: tool is specified, type is null. Add entry for all types for this tool.
-        if ((this.tool != null ) && (this.type == null)) {
-          Set<SensorData> toolSnapshot = snapshot.getSensorData(this.tool);
-          IssueTypeCounter counter = new IssueTypeCounter(toolSnapshot, this.getLogger());
-          for (String issueType : counter.getTypes()) {
-            codeIssue.getCodeIssueData().add(makeCodeIssueData(this.tool, issueType, counter));
-          }
-          // Add a zero entry if we have data for this tool, but no issues.
-          if (!toolSnapshot.isEmpty() && counter.getTypes().isEmpty()) { //NOPMD
-            codeIssue.getCodeIssueData().add(makeZeroCodeIssueData(tool));
-          }
+    // [1] Create a MultiToolSnapshot generated from all CodeIssue sensor data for this day.
+    MultiToolSnapshot snapshot = new MultiToolSnapshot();
+    for (SensorData data : fetchSensorData(client, refs)) {
+      snapshot.add(data);
+    }
+    logger.fine("CodeIssue DPD: retrieved all instances. Now building DPD.");
+    // Count the issue types of the requested tools, in parallel for large snapshots.
+    Collection<String> tools = (this.tool == null) ? snapshot.getTools() 
+        : Collections.singletonList(this.tool);
+    ServerProperties properties = this.server.getServerProperties();
+    IssueTypeAggregator aggregator = new IssueTypeAggregator(this.server.getAggregationExecutor(),
+        properties.getCodeIssueParallelThreshold(), properties.getCodeIssueParallelChunk(), logger);
+    Map<String, IssueTypeCounter> counters = aggregator.count(snapshot, tools);
+    // [2] Create the codeIssue DPD. 
+    CodeIssueDailyProjectData codeIssue = new CodeIssueDailyProjectData();
+
+    // [2.1] Case 1: tool and type are null. Add an entry for all CodeIssueTypes in all tools.
+    if ((this.tool == null ) && (this.type == null)) {
+      for (String tool : snapshot.getTools()) {
+        IssueTypeCounter counter = counters.get(tool);
+        for (String issueType : counter.getTypes()) {
+          codeIssue.getCodeIssueData().add(makeCodeIssueData(tool, issueType, counter));
         }
-        
-        // [4.3] Case 3: type is specified, tool is null. Add entry for all occurrences of this type
-        if ((this.tool == null ) && (this.type != null)) {
-          for (String tool : snapshot.getTools()) {
-            Set<SensorData> toolSnapshot = snapshot.getSensorData(tool);
-            IssueTypeCounter counter = new IssueTypeCounter(toolSnapshot, this.getLogger());
-            for (String issueType : counter.getTypes()) {
-              if (issueType.equals(this.type)) { //NOPMD
-                codeIssue.getCodeIssueData().add(makeCodeIssueData(tool, issueType, counter));
-              }
-            }
-          }
-          // Not sure how to indicate 'zero' in this case.  So don't try.
+        // Add a zero entry if necessary.
+        if (counter.getTypes().isEmpty()) { //NOPMD
+          codeIssue.getCodeIssueData().add(makeZeroCodeIssueData(tool));
         }
-        
-        // [4.4] Case 4: tool and type are specified.  Add entry for this tool and this type.
-        if ((this.tool != null ) && (this.type != null)) {
-          Set<SensorData> toolSnapshot = snapshot.getSensorData(this.tool);
-          IssueTypeCounter counter = new IssueTypeCounter(toolSnapshot, this.getLogger());
-          for (String issueType : counter.getTypes()) {
-            if (this.type.equals(issueType)) { //NOPMD
-              codeIssue.getCodeIssueData().add(makeCodeIssueData(this.tool, issueType, counter));
-            }
-          }
-          // Add a zero entry if we have data for this tool, but no issues of that type
-          if (!toolSnapshot.isEmpty() && !counter.getTypes().contains(this.type)) { //NOPMD
-            codeIssue.getCodeIssueData().add(makeZeroCodeIssueData(tool));
+      }
+    }
+
+    // [2.2] Case 2: tool is specified, type is null. Add entry for all types for this tool.
+    if ((this.tool != null ) && (this.type == null)) {
+      List<SensorData> toolSnapshot = snapshot.getSensorData(this.tool);
+      IssueTypeCounter counter = counters.get(this.tool);
+      for (String issueType : counter.getTypes()) {
+        codeIssue.getCodeIssueData().add(makeCodeIssueData(this.tool, issueType, counter));
+      }
+      // Add a zero entry if we have data for this tool, but no issues.
+      if (!toolSnapshot.isEmpty() && counter.getTypes().isEmpty()) { //NOPMD
+        codeIssue.getCodeIssueData().add(makeZeroCodeIssueData(tool));
+      }
+    }
+
+    // [2.3] Case 3: type is specified, tool is null. Add entry for all occurrences of this type
+    if ((this.tool == null ) && (this.type != null)) {
+      for (String tool : snapshot.getTools()) {
+        IssueTypeCounter counter = counters.get(tool);
+        for (String issueType : counter.getTypes()) {
+          if (issueType.equals(this.type)) { //NOPMD
+            codeIssue.getCodeIssueData().add(makeCodeIssueData(tool, issueType, counter));
           }
         }
-        
-        // Now finish building the structure
-        codeIssue.setStartTime(startTime);
-        codeIssue.setOwner(uriUser);
-        codeIssue.setProject(project);
-        codeIssue.setUriPattern("**"); // we don't support UriPatterns yet.
-
-        String xmlData = this.makeCodeIssue(codeIssue);
-        if (!Tstamp.isTodayOrLater(startTime)) {
-          this.server.getFrontSideCache().put(uriUser, project, uriString, xmlData);
+      }
+      // Not sure how to indicate 'zero' in this case.  So don't try.
+    }
+
+    // [2.4] Case 4: tool and type are specified.  Add entry for this tool and this type.
+    if ((this.tool != null ) && (this.type != null)) {
+      List<SensorData> toolSnapshot = snapshot.getSensorData(this.tool);
+      IssueTypeCounter counter = counters.get(this.tool);
+      for (String issueType : counter.getTypes()) {
+        if (this.type.equals(issueType)) { //NOPMD
+          codeIssue.getCodeIssueData().add(makeCodeIssueData(this.tool, issueType, counter));
         }
-        logRequest("CodeIssue", this.tool, this.type);
-        return super.getStringRepresentation(xmlData);
       }
-      catch (Exception e) {
-        setStatusError("Error creating CodeIssue DPD.", e);
-        return null;
+      // Add a zero entry if we have data for this tool, but no issues of that type
+      if (!toolSnapshot.isEmpty() && !counter.getTypes().contains(this.type)) { //NOPMD
+        codeIssue.getCodeIssueData().add(makeZeroCodeIssueData(tool));
       }
     }
-    return null;
+
+    // Now finish building the structure
+    codeIssue.setStartTime(startTime);
+    codeIssue.setOwner(uriUser);
+    codeIssue.setProject(project);
+    codeIssue.setUriPattern("**"); // we don't support UriPatterns yet.
+
+    return super.makeRepresentation(codeIssue, "CodeIssueJAXB");
+  }
+
+  /**
+   * Returns the type of sensor data from which CodeIssue DPDs are computed.
+   * @return "CodeIssue".
+   */
+  @Override
+  protected String getSensorDataType() {
+    return "CodeIssue";
   }
 
   
@@ -207,28 +191,4 @@ public class CodeIssueResource extends DailyProjectDataResource {
     return issueData;
   }
 
-  /**
-   * Returns the passed SensorData instance as a String encoding of its XML representation.
-   * 
-   * @param data The SensorData instance.
-   * @return The XML String representation.
-   * @throws Exception If problems occur during translation.
-   */
-  private String makeCodeIssue(CodeIssueDailyProjectData data) throws Exception {
-    JAXBContext codeIssueJAXB = (JAXBContext) this.server.getContext().getAttributes().get(
-        "CodeIssueJAXB");
-    Marshaller marshaller = codeIssueJAXB.createMarshaller();
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-    DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-    Document doc = documentBuilder.newDocument();
-    marshaller.marshal(data, doc);
-    DOMSource domSource = new DOMSource(doc);
-    StringWriter writer = new StringWriter();
-    StreamResult result = new StreamResult(writer);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    transformer.transform(domSource, result);
-    return writer.toString();
-  }
 }
@@ -0,0 +1,165 @@
+package org.hackystat.dailyprojectdata.resource.codeissue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Builds the IssueTypeCounter of each tool in a MultiToolSnapshot. The snapshot of a tool
+ * with fewer instances than the threshold is counted sequentially by the calling thread.
+ * A larger snapshot is partitioned into consecutive chunks, each counted by a task on the
+ * ExecutorService into its own map of counts, and the chunk counts are then merged in order.
+ * The chunks of all of the large snapshots are submitted before any counting begins, so the
+ * tools are counted concurrently as well. Since IssueTypeCounter keeps the types in order of
+ * first occurrence, the parallel path gives exactly the same counters as the sequential one.
+ *
+ * @author Philip Johnson
+ */
+public class IssueTypeAggregator {
+
+  /** The ExecutorService that counts the chunks, or null to count sequentially. */
+  private final ExecutorService executor;
+
+  /** The number of instances at or above which a snapshot is counted in parallel, or 0. */
+  private final int threshold;
+
+  /** The number of instances in each chunk. */
+  private final int chunkSize;
+
+  /** The logger to get errors. */
+  private final Logger logger;
+
+  /**
+   * Creates an aggregator.
+   * @param executor The ExecutorService that counts the chunks, or null to always count
+   * sequentially.
+   * @param threshold The number of instances of one tool at or above which its snapshot is
+   * counted in parallel, or 0 to always count sequentially.
+   * @param chunkSize The number of instances in each chunk.
+   * @param logger The logger to get errors.
+   */
+  public IssueTypeAggregator(ExecutorService executor, int threshold, int chunkSize,
+      Logger logger) {
+    this.executor = executor;
+    this.threshold = threshold;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.logger = logger;
+  }
+
+  /**
+   * Returns the IssueTypeCounter of the snapshot of each of the passed tools.
+   * @param snapshot The snapshot.
+   * @param tools The tools, which need not be in the snapshot.
+   * @return The IssueTypeCounter of each tool, in the same order as tools.
+   * @throws InterruptedException If interrupted while waiting for the chunks to be counted.
+   */
+  public Map<String, IssueTypeCounter> count(MultiToolSnapshot snapshot,
+      Collection<String> tools) throws InterruptedException {
+    // Submit the chunks of every large snapshot.
+    Map<String, List<Future<Map<String, int[]>>>> tool2chunks =
+      new LinkedHashMap<String, List<Future<Map<String, int[]>>>>();
+    for (String tool : tools) {
+      List<SensorData> data = snapshot.getSensorData(tool);
+      if (isParallel(data.size())) {
+        List<Future<Map<String, int[]>>> chunks = new ArrayList<Future<Map<String, int[]>>>();
+        for (int start = 0; start < data.size(); start += this.chunkSize) {
+          int end = Math.min(data.size(), start + this.chunkSize);
+          chunks.add(this.executor.submit(new ChunkCounter(data.subList(start, end))));
+        }
+        tool2chunks.put(tool, chunks);
+      }
+    }
+    // Count the small snapshots here, and merge the chunk counts of the large ones.
+    Map<String, IssueTypeCounter> tool2counter = new LinkedHashMap<String, IssueTypeCounter>();
+    try {
+      for (String tool : tools) {
+        List<Future<Map<String, int[]>>> chunks = tool2chunks.get(tool);
+        if (chunks == null) {
+          tool2counter.put(tool, new IssueTypeCounter(snapshot.getSensorData(tool), this.logger));
+        }
+        else {
+          Map<String, int[]> type2count = new LinkedHashMap<String, int[]>();
+          for (Future<Map<String, int[]>> chunk : chunks) {
+            IssueTypeCounter.addCounts(type2count, getCounts(chunk));
+          }
+          tool2counter.put(tool, new IssueTypeCounter(type2count));
+        }
+      }
+    }
+    finally {
+      // Cancels the remaining chunks if counting failed, and does nothing otherwise.
+      for (List<Future<Map<String, int[]>>> chunks : tool2chunks.values()) {
+        for (Future<Map<String, int[]>> chunk : chunks) {
+          chunk.cancel(true);
+        }
+      }
+    }
+    return tool2counter;
+  }
+
+  /**
+   * Returns true if a snapshot of size instances is counted in parallel.
+   * @param size The number of instances.
+   * @return True if the snapshot is partitioned into chunks.
+   */
+  private boolean isParallel(int size) {
+    return (this.executor != null) && (this.threshold > 0) && (size >= this.threshold)
+        && (size > this.chunkSize);
+  }
+
+  /**
+   * Waits for and returns the counts of a chunk, rethrowing any exception thrown by its task.
+   * @param chunk The chunk's task.
+   * @return The counts of the chunk.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  private static Map<String, int[]> getCounts(Future<Map<String, int[]>> chunk)
+      throws InterruptedException {
+    try {
+      return chunk.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Error counting CodeIssue types", cause);
+    }
+  }
+
+  /**
+   * Counts the issue types of one chunk of a snapshot.
+   */
+  private final class ChunkCounter implements Callable<Map<String, int[]>> {
+    /** The instances of the chunk. */
+    private final List<SensorData> chunk;
+
+    /**
+     * Creates the task.
+     * @param chunk The instances of the chunk.
+     */
+    private ChunkCounter(List<SensorData> chunk) {
+      this.chunk = chunk;
+    }
+
+    /**
+     * Counts the issue types of the chunk.
+     * @return The count of each issue type, in order of first occurrence.
+     */
+    public Map<String, int[]> call() {
+      return IssueTypeCounter.countTypes(this.chunk, IssueTypeAggregator.this.logger);
+    }
+  }
+}
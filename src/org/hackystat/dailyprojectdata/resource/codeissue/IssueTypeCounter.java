@@ -1,6 +1,7 @@
 package org.hackystat.dailyprojectdata.resource.codeissue;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -26,46 +27,88 @@ import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
  * ["NPE", 3]
  * </pre>
  * 
+ * The types are kept in the order in which they first occur, so that counting the instances
+ * in consecutive chunks and merging the chunk counts in order, as IssueTypeAggregator does 
+ * for large snapshots, gives exactly the same counter as counting them all at once.
+ * 
  * @author Philip Johnson
  *
  */
 public class IssueTypeCounter {
   
   /** Maps issue names to their number of occurrences across all sensor data instances. */
-  private Map<String, Integer>type2count = new HashMap<String, Integer>();
+  private final Map<String, int[]> type2count;
   
   /**
    * Constructs the IssueTypeCounter from the passed set of SensorData instances.
    * @param dataSet The snapshot of sensor data instances for a given tool.
    * @param logger The logger to get errors.
    */
-  public IssueTypeCounter (Set<SensorData> dataSet, Logger logger) {
+  public IssueTypeCounter (Collection<SensorData> dataSet, Logger logger) {
+    this.type2count = countTypes(dataSet, logger);
+  }
+  
+  /**
+   * Constructs the IssueTypeCounter from already counted issue types.
+   * @param type2count The count of each issue type, in order of first occurrence.
+   */
+  IssueTypeCounter (Map<String, int[]> type2count) {
+    this.type2count = type2count;
+  }
+  
+  /**
+   * Returns the number of occurrences of each issue type in the passed instances.
+   * @param dataSet The sensor data instances.
+   * @param logger The logger to get errors.
+   * @return The count of each issue type, in order of first occurrence.
+   */
+  static Map<String, int[]> countTypes(Collection<SensorData> dataSet, Logger logger) {
+    Map<String, int[]> type2count = new LinkedHashMap<String, int[]>();
     for (SensorData data : dataSet) {
       for (Property property : data.getProperties().getProperty()) {
         if (property.getKey().startsWith("Type_")) {
           String typeName = null;
-          Integer typeNum = null;
           try {
             typeName = property.getKey().substring(5);
-            typeNum = Integer.parseInt(property.getValue());
+            int typeNum = Integer.parseInt(property.getValue());
             // Now we have the type and value, so initialize our map if necessary.
-            if (type2count.get(typeName) == null) {
-              type2count.put(typeName, 0);
+            int[] count = type2count.get(typeName);
+            if (count == null) {
+              count = new int[1];
+              type2count.put(typeName, count);
             }
             // now increment this type value by the newly found number of occurrences.
-            type2count.put(typeName, typeNum + type2count.get(typeName));
+            count[0] += typeNum;
           }
           catch (Exception e) {
-            logger.info("Problem with: " + typeName + " " + typeNum);
+            logger.info("Problem with: " + typeName + " " + property.getValue());
           }
         }
       }
     }
+    return type2count;
+  }
+  
+  /**
+   * Adds the counts in from to those in into, appending the types not yet in into.
+   * @param into The counts to add to.
+   * @param from The counts to add, which are not changed.
+   */
+  static void addCounts(Map<String, int[]> into, Map<String, int[]> from) {
+    for (Map.Entry<String, int[]> entry : from.entrySet()) {
+      int[] count = into.get(entry.getKey());
+      if (count == null) {
+        into.put(entry.getKey(), new int[] {entry.getValue()[0]});
+      }
+      else {
+        count[0] += entry.getValue()[0];
+      }
+    }
   }
   
   /**
    * Get the set of all types found from processing the sensor data snapshot.
-   * @return The set of CodeIssue types.
+   * @return The set of CodeIssue types, in order of first occurrence.
    */
   public Set<String> getTypes() {
     return type2count.keySet();
@@ -77,8 +120,8 @@ public class IssueTypeCounter {
    * @return The count, or zero if this type was not found.
    */
   public int getCount(String type) {
-    Integer count = type2count.get(type);
-    return (count == null) ? 0 : count;
+    int[] count = type2count.get(type);
+    return (count == null) ? 0 : count[0];
   }
   
   
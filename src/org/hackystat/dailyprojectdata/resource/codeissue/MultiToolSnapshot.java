@@ -1,13 +1,13 @@
 package org.hackystat.dailyprojectdata.resource.codeissue;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
-import java.util.HashSet;
-import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
-import org.hackystat.utilities.tstamp.Tstamp;
 
 /**
  * Provides a mechanism for generating a "snapshot" for each of several tools. 
@@ -17,14 +17,20 @@ import org.hackystat.utilities.tstamp.Tstamp;
  * To use this tool, create an instance, then add() each sensor data instance of interest
  * to it. When finished, you can obtain a snapshot for any given tool, which is the set
  * of sensor data instances associated with that tool with the latest runtime value.
+ * Each snapshot is held as a list in the order in which its instances were added, so that
+ * adding an instance never hashes it.
  * 
  * @author Philip Johnson
  *
  */
 public class MultiToolSnapshot {
   
-  /** Holds a map from tool to a set containing the latest snapshot of sensor data for this tool.*/
-  private Map<String, Set<SensorData>> tool2SensorData = new HashMap<String, Set<SensorData>>();
+  /** Holds a map from tool to a list of the latest snapshot of sensor data for this tool.*/
+  private Map<String, List<SensorData>> tool2SensorData = 
+    new HashMap<String, List<SensorData>>();
+  
+  /** Holds a map from tool to the runtime, in epoch milliseconds, of its stored snapshot. */
+  private Map<String, long[]> tool2Runtime = new HashMap<String, long[]>();
 
   /**
    * Create a MultiToolSnapshot.
@@ -40,29 +46,30 @@ public class MultiToolSnapshot {
    */
   public void add(SensorData data) {
     String tool = data.getTool();
-    // If our data structure does not already have an entry for tool, make one.
-    if (tool2SensorData.get(tool) == null) {
-      tool2SensorData.put(tool, new HashSet<SensorData>());
-    }
+    long newRuntime = EpochTime.toMillis(data.getRuntime());
+    List<SensorData> snapshot = tool2SensorData.get(tool);
     
     // If we don't have any stored sensor data for this tool, then add it and return.
-    if (tool2SensorData.get(tool).isEmpty()) {
-      tool2SensorData.get(tool).add(data);
+    if (snapshot == null) {
+      snapshot = new ArrayList<SensorData>();
+      snapshot.add(data);
+      tool2SensorData.put(tool, snapshot);
+      tool2Runtime.put(tool, new long[] {newRuntime});
       return;
     }
     
     // Otherwise we have stored sensor data for this tool.
-    XMLGregorianCalendar newRuntime = data.getRuntime();
-    XMLGregorianCalendar storedRuntime = getStoredRuntime(tool);
+    long[] storedRuntime = tool2Runtime.get(tool);
 
     // Case 1: new runtime equals stored runtime -> add it. 
-    if (Tstamp.equal(newRuntime, storedRuntime)) {
-      tool2SensorData.get(tool).add(data);
+    if (newRuntime == storedRuntime[0]) {
+      snapshot.add(data);
     }
     // Case 2: new runtime is more recent -> replace with it.
-    else if (Tstamp.greaterThan(newRuntime, storedRuntime)) {
-      tool2SensorData.get(tool).clear();
-      tool2SensorData.get(tool).add(data);
+    else if (newRuntime > storedRuntime[0]) {
+      snapshot.clear();
+      snapshot.add(data);
+      storedRuntime[0] = newRuntime;
     }
     // Case 3: new runtime is older, so don't do anything.
   }
@@ -78,26 +85,11 @@ public class MultiToolSnapshot {
   /**
    * Returns the latest snapshot associated with the specified tool.
    * @param tool The tool name.
-   * @return The snapshot, which could be empty.
+   * @return The snapshot, in the order its instances were added, which could be empty.
    */
-  public Set<SensorData> getSensorData(String tool) {
-    Set<SensorData> snapshot = tool2SensorData.get(tool);
-    return (snapshot == null) ? new HashSet<SensorData>() : snapshot;
-  }
-  
-  
-  
-  /**
-   * Returns the stored runtime associated with Tool.
-   * @param tool The tool whose stored runtime should be returned.
-   * @return The stored runtime, or null if no entries in the map.
-   */
-  private XMLGregorianCalendar getStoredRuntime(String tool) {
-    Set<SensorData> dataSet = tool2SensorData.get(tool);
-    for (SensorData data : dataSet) {
-      return data.getRuntime();
-    }
-    return null;
+  public List<SensorData> getSensorData(String tool) {
+    List<SensorData> snapshot = tool2SensorData.get(tool);
+    return (snapshot == null) ? new ArrayList<SensorData>() : snapshot;
   }
 
 }
@@ -0,0 +1,158 @@
+package org.hackystat.dailyprojectdata.resource.codeissue;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Properties;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that IssueTypeAggregator counts large snapshots in parallel with exactly the same 
+ * result as counting them sequentially, for many randomly generated snapshots.
+ *
+ * @author Philip Johnson
+ */
+public class TestIssueTypeAggregator {
+
+  /** The number of random snapshots checked. */
+  private static final int NUM_TRIALS = 200;
+
+  /** The logger passed to the counters, which ignores the warnings about bad values. */
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+  /** The executor for the parallel counts. */
+  private ExecutorService executor;
+
+  /** Creates the executor. */
+  @Before
+  public void setUp() {
+    this.executor = Executors.newFixedThreadPool(4);
+    this.logger.setLevel(Level.OFF);
+  }
+
+  /** Shuts down the executor. */
+  @After
+  public void tearDown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Tests that every snapshot gives the same types, in the same order, with the same counts,
+   * whatever the chunk size and threshold.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSameAsSequential() throws Exception {
+    Random random = new Random(20080115L);
+    IssueTypeAggregator sequential = new IssueTypeAggregator(null, 0, 1, this.logger);
+    for (int trial = 0; trial < NUM_TRIALS; trial++) {
+      MultiToolSnapshot snapshot = makeSnapshot(random, random.nextInt(2000));
+      int chunkSize = 1 + random.nextInt(300);
+      IssueTypeAggregator parallel = new IssueTypeAggregator(this.executor, 
+          1 + random.nextInt(500), chunkSize, this.logger);
+      ArrayList<String> tools = new ArrayList<String>(snapshot.getTools());
+      tools.add("NoSuchTool");
+      Map<String, IssueTypeCounter> expected = sequential.count(snapshot, tools);
+      Map<String, IssueTypeCounter> actual = parallel.count(snapshot, tools);
+      String message = "Trial " + trial + " chunk " + chunkSize;
+      assertEquals(message, new ArrayList<String>(expected.keySet()), 
+          new ArrayList<String>(actual.keySet()));
+      for (String tool : tools) {
+        IssueTypeCounter expectedCounter = expected.get(tool);
+        IssueTypeCounter actualCounter = actual.get(tool);
+        assertEquals(message + " types of " + tool, 
+            new ArrayList<String>(expectedCounter.getTypes()), 
+            new ArrayList<String>(actualCounter.getTypes()));
+        for (String type : expectedCounter.getTypes()) {
+          assertEquals(message + " " + tool + " " + type, expectedCounter.getCount(type), 
+              actualCounter.getCount(type));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests the counts of a small snapshot that is counted in parallel.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testParallelCounts() throws Exception {
+    MultiToolSnapshot snapshot = new MultiToolSnapshot();
+    for (int i = 0; i < 10; i++) {
+      snapshot.add(makeData("Foo", 0, "Type_JavaDoc", String.valueOf(i), "Type_NPE", "1"));
+    }
+    snapshot.add(makeData("Foo", 0, "Type_Indentation", "bad"));
+    IssueTypeAggregator parallel = new IssueTypeAggregator(this.executor, 2, 3, this.logger);
+    ArrayList<String> tools = new ArrayList<String>();
+    tools.add("Foo");
+    IssueTypeCounter counter = parallel.count(snapshot, tools).get("Foo");
+    assertEquals("Checking types", 2, counter.getTypes().size());
+    assertEquals("Checking JavaDoc", 45, counter.getCount("JavaDoc"));
+    assertEquals("Checking NPE", 10, counter.getCount("NPE"));
+    assertEquals("Checking bad value", 0, counter.getCount("Indentation"));
+  }
+
+  /**
+   * Returns a snapshot of size random CodeIssue instances from a few tools and runs, 
+   * including bad and very large issue counts.
+   * @param random The source of randomness.
+   * @param size The number of instances.
+   * @return The snapshot.
+   * @throws Exception If problems occur.
+   */
+  private static MultiToolSnapshot makeSnapshot(Random random, int size) throws Exception {
+    String[] tools = {"Checkstyle", "PMD", "FindBugs"};
+    String[] values = {"0", "1", "7", "x", "", "2147483647", "-3"};
+    MultiToolSnapshot snapshot = new MultiToolSnapshot();
+    for (int i = 0; i < size; i++) {
+      int numTypes = random.nextInt(4);
+      String[] keysAndValues = new String[numTypes * 2];
+      for (int j = 0; j < numTypes; j++) {
+        keysAndValues[2 * j] = (random.nextInt(10) == 0) ? "Other" 
+            : "Type_" + random.nextInt(1 + random.nextInt(40));
+        keysAndValues[2 * j + 1] = (random.nextInt(4) == 0) 
+            ? values[random.nextInt(values.length)] : String.valueOf(random.nextInt(50));
+      }
+      snapshot.add(makeData(tools[random.nextInt(tools.length)], random.nextInt(2), 
+          keysAndValues));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Returns a CodeIssue instance.
+   * @param tool The tool.
+   * @param run The run, which determines the runtime.
+   * @param keysAndValues The keys and values of the properties, alternately.
+   * @return The instance.
+   * @throws Exception If problems occur.
+   */
+  private static SensorData makeData(String tool, int run, String... keysAndValues) 
+      throws Exception {
+    SensorData data = new SensorData();
+    data.setTool(tool);
+    data.setSensorDataType("CodeIssue");
+    data.setRuntime(Tstamp.makeTimestamp(1200000000000L + run * 60000L));
+    Properties properties = new Properties();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      Property property = new Property();
+      property.setKey(keysAndValues[i]);
+      property.setValue(keysAndValues[i + 1]);
+      properties.getProperty().add(property);
+    }
+    data.setProperties(properties);
+    return data;
+  }
+}
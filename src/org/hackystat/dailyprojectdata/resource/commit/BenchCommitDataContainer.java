@@ -0,0 +1,54 @@
+package org.hackystat.dailyprojectdata.resource.commit;
+
+import java.util.List;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Benchmarks CommitDataContainer on Commit instances from skewed project members, including
+ * the per-member totals computed by the Commit resource.
+ * @author Philip Johnson
+ */
+public class BenchCommitDataContainer extends Benchmark {
+
+  /** The Commit instances. */
+  private List<SensorData> commits;
+
+  /**
+   * Generates the Commit instances.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.commits = new SensorDataWorkload(size).makeCommits(size);
+  }
+
+  /**
+   * Adds the commits to a container and totals them for each member.
+   * @return The sum of the member totals.
+   */
+  @Override
+  public long run() {
+    CommitDataContainer container = new CommitDataContainer();
+    for (SensorData data : this.commits) {
+      container.addCommitData(data);
+    }
+    long result = 0;
+    for (String owner : container.getOwners()) {
+      result += container.getCommits(owner);
+      result += container.getLinesAdded(owner);
+      result += container.getLinesDeleted(owner);
+      result += container.getLinesModified(owner);
+    }
+    return result;
+  }
+
+  /** Releases the Commit instances. */
+  @Override
+  public void tearDown() {
+    this.commits = null;
+  }
+}
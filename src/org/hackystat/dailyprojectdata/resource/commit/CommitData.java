@@ -14,13 +14,37 @@ import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
 public class CommitData {
   /** The wrapped data instance. */
   private final SensorData data;
+  
+  /** The lines added, or null to look them up in the properties when requested. */
+  private final Integer linesAdded;
+  
+  /** The lines deleted, or null to look them up in the properties when requested. */
+  private final Integer linesDeleted;
+  
+  /** The lines modified, or null to look them up in the properties when requested. */
+  private final Integer linesModified;
 
   /**
    * Constructs this object with the specified SensorData instance.
    * @param data the specified data instance.
    */
   public CommitData(SensorData data) {
+    this(data, null, null, null);
+  }
+
+  /**
+   * Constructs this object with the specified SensorData instance and its already parsed 
+   * line counts, so that its properties need not be searched again.
+   * @param data the specified data instance.
+   * @param linesAdded The value of the linesAdded property.
+   * @param linesDeleted The value of the linesDeleted property.
+   * @param linesModified The value of the linesModified property, or 0 if absent.
+   */
+  CommitData(SensorData data, Integer linesAdded, Integer linesDeleted, Integer linesModified) {
     this.data = data;
+    this.linesAdded = linesAdded;
+    this.linesDeleted = linesDeleted;
+    this.linesModified = linesModified;
   }
 
   /**
@@ -36,6 +60,9 @@ public class CommitData {
    * @return the total lines added.
    */
   public int getLinesAdded() {
+    if (this.linesAdded != null) {
+      return this.linesAdded;
+    }
     return Integer.valueOf(this.getCommitProperty("linesAdded").getValue());
   }
 
@@ -44,6 +71,9 @@ public class CommitData {
    * @return the total lines deleted.
    */
   public int getLinesDeleted() {
+    if (this.linesDeleted != null) {
+      return this.linesDeleted;
+    }
     return Integer.valueOf(this.getCommitProperty("linesDeleted").getValue());
   }
 
@@ -53,6 +83,9 @@ public class CommitData {
    * @return the total lines modified
    */
   public int getLinesModified() {
+    if (this.linesModified != null) {
+      return this.linesModified;
+    }
     return Integer.valueOf(this.getCommitProperty("linesModified", "0").getValue());
   }
 
@@ -1,69 +1,95 @@
 package org.hackystat.dailyprojectdata.resource.commit;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
 
 /**
  * The data container that abstracts the data retrieval of Commit information.
- * 
- * To Do: (1) change from a List to a Map[Owner, SensorData]. 
- *   
+ *
+ * The per-owner totals are accumulated as each instance is added, so each owner's totals
+ * are available in constant time, and each instance's properties are scanned only once.
+ *
  * @author aito
- * 
+ *
  */
 public class CommitDataContainer {
-  
+
   /** The list of commit data. */
   private List<CommitData> data = new ArrayList<CommitData>();
 
+  /** The totals for each owner, in the order in which the owners were first added. */
+  private Map<String, OwnerTotals> owner2totals = new LinkedHashMap<String, OwnerTotals>();
+
   /**
    * Adds the specified SensorData instance to this container if it contains the
-   * three Commit properties (linesDeleted, linesAdded, totalLines) and if these property
-   * values are integers. 
+   * linesAdded and linesDeleted Commit properties and if their values are integers.
+   * The optional linesModified property counts as 0 if it is absent or not an integer.
    * @param data the specified data instance.
    */
   public void addCommitData(SensorData data) {
-    if (isValidCommitData(data)) {
-      this.data.add(new CommitData(data));
+    if (data.getProperties() == null) {
+      return;
     }
-  }
-  
-  /**
-   * Returns true if the SensorData instance has the Commit properties, false otherwise.
-   * Note that linesModified is an optional property. 
-   * @param data The sensor data instance. 
-   * @return True if the sensor data instance is a Commit instance. 
-   */
-  private boolean isValidCommitData(SensorData data) {
+    // Find the first value of each Commit property in a single scan.
+    String linesAdded = null;
+    String linesDeleted = null;
+    String linesModified = null;
+    for (Property property : data.getProperties().getProperty()) {
+      String key = property.getKey();
+      if ((linesAdded == null) && "linesAdded".equals(key)) {
+        linesAdded = property.getValue();
+      }
+      else if ((linesDeleted == null) && "linesDeleted".equals(key)) {
+        linesDeleted = property.getValue();
+      }
+      else if ((linesModified == null) && "linesModified".equals(key)) {
+        linesModified = property.getValue();
+      }
+    }
+    int added;
+    int deleted;
     try {
-      Integer.valueOf(this.getProperty(data, "linesDeleted"));
-      Integer.valueOf(this.getProperty(data, "linesAdded"));
+      added = Integer.parseInt(linesAdded);
+      deleted = Integer.parseInt(linesDeleted);
+    }
+    catch (NumberFormatException e) {
+      return;
     }
-    catch (Exception e) {
-      return false;
+    int modified = parseOptional(linesModified);
+    this.data.add(new CommitData(data, added, deleted, modified));
+
+    String owner = data.getOwner();
+    OwnerTotals totals = this.owner2totals.get(owner);
+    if (totals == null) {
+      totals = new OwnerTotals();
+      this.owner2totals.put(owner, totals);
     }
-    return true;
+    totals.commits++;
+    totals.linesAdded += added;
+    totals.linesDeleted += deleted;
+    totals.linesModified += modified;
   }
-  
+
   /**
-   * Returns the String value associated with property key.
-   * If no such property exists, returns null.
-   * 
-   * @param data The sensor data instance.
-   * @param propertyName the property name to search for.
-   * @return The property value, or null.
+   * Returns value as an int, or 0 if it is null or not an integer.
+   * @param value The property value, or null.
+   * @return The integer value, or 0.
    */
-  private String getProperty(SensorData data, String propertyName) {
-    List<Property> propertyList = data.getProperties().getProperty();
-    for (Property property : propertyList) {
-      if (propertyName.equals(property.getKey())) {
-        return property.getValue();
-      }
+  private static int parseOptional(String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(value);
+    }
+    catch (NumberFormatException e) {
+      return 0;
     }
-    return null;
   }
 
   /**
@@ -71,13 +97,7 @@ public class CommitDataContainer {
    * @return the list of sensor data owners.
    */
   public List<String> getOwners() {
-    List<String> owners = new ArrayList<String>();
-    for (CommitData data : this.data) {
-      if (!owners.contains(data.getOwner())) {
-        owners.add(data.getOwner());
-      }
-    }
-    return owners;
+    return new ArrayList<String>(this.owner2totals.keySet());
   }
 
   /**
@@ -86,13 +106,8 @@ public class CommitDataContainer {
    * @return the total lines added.
    */
   public int getLinesAdded(String owner) {
-    int totalLinesAdded = 0;
-    for (CommitData data : this.data) {
-      if (data.getOwner().equals(owner)) {
-        totalLinesAdded += data.getLinesAdded();
-      }
-    }
-    return totalLinesAdded;
+    OwnerTotals totals = this.owner2totals.get(owner);
+    return (totals == null) ? 0 : totals.linesAdded;
   }
 
   /**
@@ -101,29 +116,19 @@ public class CommitDataContainer {
    * @return the total lines deleted.
    */
   public int getLinesDeleted(String owner) {
-    int totalLinesDeleted = 0;
-    for (CommitData data : this.data) {
-      if (data.getOwner().equals(owner)) {
-        totalLinesDeleted += data.getLinesDeleted();
-      }
-    }
-    return totalLinesDeleted;
+    OwnerTotals totals = this.owner2totals.get(owner);
+    return (totals == null) ? 0 : totals.linesDeleted;
   }
-  
+
   /**
    * Returns the total lines modified by the specified owner.
-   * Not all CM systems track lines modified. SVN does not, Perforce does. 
+   * Not all CM systems track lines modified. SVN does not, Perforce does.
    * @param owner The specified owner.
    * @return The total lines modified.
    */
   public int getLinesModified(String owner) {
-    int totalLinesModified = 0;
-    for (CommitData data : this.data) {
-      if (data.getOwner().equals(owner)) {
-        totalLinesModified += data.getLinesModified();
-      }
-    }
-    return totalLinesModified;
+    OwnerTotals totals = this.owner2totals.get(owner);
+    return (totals == null) ? 0 : totals.linesModified;
   }
 
 
@@ -133,13 +138,8 @@ public class CommitDataContainer {
    * @return the total commits.
    */
   public int getCommits(String owner) {
-    int numCommits = 0;
-    for (CommitData data : this.data) {
-      if (data.getOwner().equals(owner)) {
-        numCommits++;
-      }
-    }
-    return numCommits;
+    OwnerTotals totals = this.owner2totals.get(owner);
+    return (totals == null) ? 0 : totals.commits;
   }
 
   /**
@@ -150,4 +150,18 @@ public class CommitDataContainer {
   public List<CommitData> getData() {
     return new ArrayList<CommitData>(this.data);
   }
+
+  /**
+   * The running totals of one owner's commits.
+   */
+  private static final class OwnerTotals {
+    /** The number of commits. */
+    private int commits;
+    /** The lines added. */
+    private int linesAdded;
+    /** The lines deleted. */
+    private int linesDeleted;
+    /** The lines modified. */
+    private int linesModified;
+  }
 }
@@ -2,33 +2,22 @@ package org.hackystat.dailyprojectdata.resource.commit;
 
 import static org.hackystat.dailyprojectdata.server.ServerProperties.SENSORBASE_FULLHOST_KEY;
 
-import java.io.StringWriter;
+import java.util.List;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.hackystat.dailyprojectdata.resource.commit.jaxb.CommitDailyProjectData;
 import org.hackystat.dailyprojectdata.resource.commit.jaxb.MemberData;
-import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdRepresentation;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdResource;
 import org.hackystat.sensorbase.client.SensorBaseClient;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
 import org.hackystat.utilities.tstamp.Tstamp;
 import org.restlet.Context;
-import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.resource.Representation;
-import org.restlet.resource.Variant;
-import org.w3c.dom.Document;
 
 /**
  * Implements the Resource for processing GET
@@ -39,7 +28,7 @@ import org.w3c.dom.Document;
  * @author jsakuda
  * @author austen
  */
-public class CommitResource extends DailyProjectDataResource {
+public class CommitResource extends DpdResource {
   /**
    * The standard constructor.
    * 
@@ -52,94 +41,61 @@ public class CommitResource extends DailyProjectDataResource {
   }
 
   /**
-   * Returns an CoverageDailyProjectData instance representing the Coverage
-   * associated with the Project data, or null if not authorized.
-   * @param variant The representational variant requested.
-   * @return The representation.
+   * Returns the representation of the Commit DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param refs The refs to the sensor data for the day.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
    */
   @Override
-  public Representation represent(Variant variant) {
+  protected DpdRepresentation makeDpd(SensorBaseClient client, XMLGregorianCalendar startTime,
+      List<SensorDataRef> refs) throws Exception {
     Logger logger = this.server.getLogger();
-    logger.fine("Commit DPD: Starting");
-    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
-      try {
-        // [1] get the SensorBaseClient for the user making this request.
-        SensorBaseClient client = super.getSensorBaseClient();
-        // [2] Check the front side cache and return if the DPD is found and is OK to access.
-        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, uriString);
-        if ((cachedDpd != null) && client.inProject(uriUser, project)) {
-          return super.getStringRepresentation(cachedDpd);
-        }
-        // [2] get a SensorDataIndex of all Coverage data for this Project on
-        // the requested day.
-        XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
-        XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
-        logger.fine("Commit DPD: Requesting index: " + uriUser + " " + project);
-        SensorDataIndex index = client.getProjectSensorData(this.uriUser, this.project,
-            startTime, endTime, "Commit");
-        logger.fine("Commit DPD: Got index: " + index.getSensorDataRef().size() + " instances");
+    // [1] Add all of the appropriate data to the data container.
+    CommitDataContainer container = new CommitDataContainer();
+    for (SensorData data : fetchSensorData(client, refs)) {
+      container.addCommitData(data);
+    }
+    logger.fine("Commit DPD: retrieved instances, now building the DPD instance.");
 
-        // [3] Add all of the appropriate data to the data container.
-        CommitDataContainer container = new CommitDataContainer();
-        for (SensorDataRef ref : index.getSensorDataRef()) {
-          container.addCommitData(client.getSensorData(ref));
-        }
-        logger.fine("Commit DPD: retrieved instances, now building the DPD instance.");
+    // [2] Get the aggregate data for each project member.
+    String sensorBaseHost = this.server.getServerProperties().get(SENSORBASE_FULLHOST_KEY);
+    CommitDailyProjectData commitData = new CommitDailyProjectData();
+    for (String owner : container.getOwners()) {
+      MemberData memberData = new MemberData();
+      memberData.setMemberUri(sensorBaseHost + "users/" + owner);
+      memberData.setCommits(container.getCommits(owner));
+      memberData.setLinesAdded(container.getLinesAdded(owner));
+      memberData.setLinesDeleted(container.getLinesDeleted(owner));
+      memberData.setLinesModified(container.getLinesModified(owner));
+      commitData.getMemberData().add(memberData);
+    }
 
-        // [4] Get the aggregate data for each project member.
-        String sensorBaseHost = this.server.getServerProperties().get(SENSORBASE_FULLHOST_KEY);
-        CommitDailyProjectData commitData = new CommitDailyProjectData();
-        for (String owner : container.getOwners()) {
-          MemberData memberData = new MemberData();
-          memberData.setMemberUri(sensorBaseHost + "users/" + owner);
-          memberData.setCommits(container.getCommits(owner));
-          memberData.setLinesAdded(container.getLinesAdded(owner));
-          memberData.setLinesDeleted(container.getLinesDeleted(owner));
-          memberData.setLinesModified(container.getLinesModified(owner));
-          commitData.getMemberData().add(memberData);
-        }
+    commitData.setStartTime(startTime);
+    commitData.setOwner(this.uriUser);
+    commitData.setProject(this.project);
+    return super.makeRepresentation(commitData, "CommitJAXB");
+  }
 
-        commitData.setStartTime(startTime);
-        commitData.setOwner(this.uriUser);
-        commitData.setProject(this.project);
-        String xmlData = this.makeCommit(commitData);
-        if (!Tstamp.isYesterdayOrLater(startTime)) {
-          this.server.getFrontSideCache().put(uriUser, project, uriString, xmlData);
-        }
-        logRequest("Commit");
-        return super.getStringRepresentation(xmlData);
-      }
-      catch (Exception e) {
-        setStatusError("Error creating Commit DPD.", e);
-        return null;
-      }
-    }
-    return null;
+  /**
+   * Returns the type of sensor data from which Commit DPDs are computed.
+   * @return "Commit".
+   */
+  @Override
+  protected String getSensorDataType() {
+    return "Commit";
   }
 
   /**
-   * Returns the passed SensorData instance as a String encoding of its XML
-   * representation.
-   * 
-   * @param data The SensorData instance.
-   * @return The XML String representation.
-   * @throws Exception If problems occur during translation.
+   * Commit DPDs are cached only for days before yesterday, since commit data for a day
+   * may be sent on the following day.
+   * @param startTime The start of the day.
+   * @return True if the DPD for that day may be cached.
    */
-  private String makeCommit(CommitDailyProjectData data) throws Exception {
-    JAXBContext codeIssueJAXB = (JAXBContext) this.server.getContext().getAttributes().get(
-        "CommitJAXB");
-    Marshaller marshaller = codeIssueJAXB.createMarshaller();
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-    DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-    Document doc = documentBuilder.newDocument();
-    marshaller.marshal(data, doc);
-    DOMSource domSource = new DOMSource(doc);
-    StringWriter writer = new StringWriter();
-    StreamResult result = new StreamResult(writer);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    transformer.transform(domSource, result);
-    return writer.toString();
+  @Override
+  protected boolean isCacheable(XMLGregorianCalendar startTime) {
+    return !Tstamp.isYesterdayOrLater(startTime);
   }
+
 }
@@ -88,6 +88,18 @@ public class TestCommitDataContainer {
         .contains("kagawaa@hawaii.edu"));
   }
 
+  /** Tests that instances whose line counts are not integers are ignored. */
+  @Test
+  public void testInvalidData() {
+    String runtimeString = Tstamp.makeTimestamp(new Date().getTime()).toString();
+    this.data.addCommitData(TestCommitData.createData(runtimeString, runtimeString,
+        userAaron, "C:\\foo6.java", "many", "33"));
+    assertEquals("Checking invalid data ignored", 1, this.data.getCommits(this.userAaron));
+    assertEquals("Checking lines added", 99, this.data.getLinesAdded(this.userAaron));
+    assertEquals("Checking absent linesModified", 0, this.data.getLinesModified(this.userAaron));
+    assertEquals("Checking unknown owner", 0, this.data.getLinesAdded("Non-ExistentUser"));
+  }
+
   /** Tests if the all data entries are returned. */
   @Test
   public void testGetData() {
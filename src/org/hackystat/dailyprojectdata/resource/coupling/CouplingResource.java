@@ -1,36 +1,21 @@
 package org.hackystat.dailyprojectdata.resource.coupling;
 
-import java.io.StringWriter;
 import java.math.BigInteger;
 import java.util.List;
-import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
-import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdRepresentation;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdResource;
 import org.hackystat.dailyprojectdata.resource.coupling.jaxb.CouplingDailyProjectData;
 import org.hackystat.dailyprojectdata.resource.coupling.jaxb.CouplingData;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
-import org.hackystat.utilities.tstamp.Tstamp;
 import org.restlet.Context;
-import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.resource.Representation;
-import org.restlet.resource.Variant;
-import org.w3c.dom.Document;
 
 /**
  * Implements the Resource for processing GET
@@ -39,7 +24,7 @@ import org.w3c.dom.Document;
  * 
  * @author Philip Johnson
  */
-public class CouplingResource extends DailyProjectDataResource {
+public class CouplingResource extends DpdResource {
   
   private String type;
   
@@ -59,103 +44,73 @@ public class CouplingResource extends DailyProjectDataResource {
   }
 
   /**
-   * Returns a CouplingDailyProjectData instance representing the Coupling
-   * associated with each URI for the Project data, or null if not authorized.
-   * Authenticated user must be the uriUser, or Admin, or project member. 
-   * 
-   * @param variant The representational variant requested.
-   * @return The representation.
+   * Returns the tool and type of this request, which are logged after its type.
+   * @return The parameters.
    */
   @Override
-  public Representation represent(Variant variant) {
-    Logger logger = this.server.getLogger();
-    logger.fine("Coupling DPD: Starting");
-    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
-      try {
-        // [1] get the SensorBaseClient for the user making this request.
-        SensorBaseClient client = super.getSensorBaseClient();
-        // [2] Check the front side cache and return if the DPD is found and is OK to access.
-        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, uriString);
-        if ((cachedDpd != null) && client.inProject(uriUser, project)) {
-          return super.getStringRepresentation(cachedDpd);
-        }
-        // [2] Get the Snapshot containing the last sent FileMetric data for this Project.
-        XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
-        XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
-        logger.fine("Coupling DPD: Requesting index: " + uriUser + " " + project);
-        SensorDataIndex snapshot = (this.tool == null) ?
-            // Get the latest snapshot from any tool.
-            client.getProjectSensorDataSnapshot(this.uriUser, this.project, startTime, endTime, 
-            "Coupling") :
-              // Get the latest snapshot from the specified tool.
-              client.getProjectSensorDataSnapshot(this.uriUser, this.project, startTime, endTime, 
-                  "Coupling", this.tool);
+  protected String[] getLogParameters() {
+    return new String[] {this.tool, this.type};
+  }
 
-        logger.fine("Coupling DPD: Got index: " + 
-            snapshot.getSensorDataRef().size() + " instances. Now retrieving instances.");
-        // [3] create and return the CouplingDailyProjectData instance.
-        CouplingDailyProjectData couplingDpd = new CouplingDailyProjectData();
-        couplingDpd.setOwner(uriUser);
-        couplingDpd.setProject(project);
-        couplingDpd.setStartTime(startTime);
-        couplingDpd.setType(this.type);
-        
-        if (!snapshot.getSensorDataRef().isEmpty()) {
-          for (SensorDataRef ref : snapshot.getSensorDataRef()) {
-            SensorData data = client.getSensorData(ref);
-            couplingDpd.setOwner(data.getOwner());
-            couplingDpd.setTool(data.getTool());
-            Integer afferent = getIntegerProperty(data, "Afferent");
-            Integer efferent = getIntegerProperty(data, "Efferent");
-            if ((afferent != null) && (efferent != null)) { //NOPMD
-              CouplingData couplingData = new CouplingData();
-              couplingData.setUri(data.getResource());
-              couplingData.setAfferent(BigInteger.valueOf(afferent));
-              couplingData.setEfferent(BigInteger.valueOf(efferent));
-              couplingDpd.getCouplingData().add(couplingData);
-            }
-          }
-        }
-        String xmlData = makeCouplingMetric(couplingDpd);
-        if (!Tstamp.isTodayOrLater(startTime)) {
-          this.server.getFrontSideCache().put(uriUser, project, uriString, xmlData);
+  /**
+   * Returns the representation of the Coupling DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param refs The refs to the sensor data for the day.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
+   */
+  @Override
+  protected DpdRepresentation makeDpd(SensorBaseClient client, XMLGregorianCalendar startTime,
+      List<SensorDataRef> refs) throws Exception {
+    // Create and return the CouplingDailyProjectData instance.
+    CouplingDailyProjectData couplingDpd = new CouplingDailyProjectData();
+    couplingDpd.setOwner(uriUser);
+    couplingDpd.setProject(project);
+    couplingDpd.setStartTime(startTime);
+    couplingDpd.setType(this.type);
+
+    if (!refs.isEmpty()) {
+      for (SensorData data : fetchSnapshotData(client, startTime, this.tool, refs)) {
+        couplingDpd.setOwner(data.getOwner());
+        couplingDpd.setTool(data.getTool());
+        Integer afferent = getIntegerProperty(data, "Afferent");
+        Integer efferent = getIntegerProperty(data, "Efferent");
+        if ((afferent != null) && (efferent != null)) { //NOPMD
+          CouplingData couplingData = new CouplingData();
+          couplingData.setUri(data.getResource());
+          couplingData.setAfferent(BigInteger.valueOf(afferent));
+          couplingData.setEfferent(BigInteger.valueOf(efferent));
+          couplingDpd.getCouplingData().add(couplingData);
         }
-        logRequest("Coupling", this.tool, this.type);
-        return super.getStringRepresentation(xmlData);
-      } 
-      catch (Exception e) {
-        setStatusError("Error creating Coupling DPD.", e);
-        return null;
       }
     }
-    return null;
+    return super.makeRepresentation(couplingDpd, "CouplingJAXB");
   }
 
   /**
-   * Returns the passed SensorData instance as a String encoding of its XML
-   * representation.
-   * 
-   * @param data The SensorData instance.
-   * @return The XML String representation.
-   * @throws Exception If problems occur during translation.
+   * Returns the type of sensor data from which Coupling DPDs are computed.
+   * @return "Coupling".
+   */
+  @Override
+  protected String getSensorDataType() {
+    return "Coupling";
+  }
+
+  /**
+   * Returns the refs to the latest snapshot of Coupling data sent during each day, from
+   * the requested tool if any.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @return One list of refs for each day.
+   * @throws Exception If problems occur retrieving the snapshots.
    */
-  private String makeCouplingMetric(CouplingDailyProjectData data) throws Exception {
-    JAXBContext complexityJAXB = (JAXBContext) this.server.getContext().getAttributes().get(
-        "CouplingJAXB");
-    Marshaller marshaller = complexityJAXB.createMarshaller();
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-    DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-    Document doc = documentBuilder.newDocument();
-    marshaller.marshal(data, doc);
-    DOMSource domSource = new DOMSource(doc);
-    StringWriter writer = new StringWriter();
-    StreamResult result = new StreamResult(writer);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    transformer.transform(domSource, result);
-    return writer.toString();
+  @Override
+  protected List<List<SensorDataRef>> getRefsByDay(SensorBaseClient client,
+      List<XMLGregorianCalendar> days) throws Exception {
+    return getSnapshotRefsByDay(client, days, this.tool);
   }
+
   
   /**
    * Returns the string value associated with the specified property key. If no
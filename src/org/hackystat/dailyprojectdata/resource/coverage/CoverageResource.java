@@ -1,35 +1,21 @@
 package org.hackystat.dailyprojectdata.resource.coverage;
 
-import java.io.StringWriter;
 import java.util.List;
 import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.hackystat.dailyprojectdata.resource.coverage.jaxb.ConstructData;
 import org.hackystat.dailyprojectdata.resource.coverage.jaxb.CoverageDailyProjectData;
-import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdRepresentation;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdResource;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
-import org.hackystat.utilities.tstamp.Tstamp;
 import org.restlet.Context;
-import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.resource.Representation;
-import org.restlet.resource.Variant;
-import org.w3c.dom.Document;
 
 /**
  * Implements the Resource for processing GET
@@ -40,7 +26,7 @@ import org.w3c.dom.Document;
  * @author jsakuda
  * @author austen
  */
-public class CoverageResource extends DailyProjectDataResource {
+public class CoverageResource extends DpdResource {
   private final String granularity;
 
   /**
@@ -56,107 +42,84 @@ public class CoverageResource extends DailyProjectDataResource {
   }
 
   /**
-   * Returns an CoverageDailyProjectData instance representing the Coverage
-   * associated with the Project data for the given day and granularity.
-   * @param variant The representational variant requested.
-   * @return The representation.
+   * Returns the granularity of this request, which is logged after its type.
+   * @return The parameter.
    */
   @Override
-  public Representation represent(Variant variant) {
+  protected String[] getLogParameters() {
+    return new String[] {this.granularity};
+  }
+
+  /**
+   * Returns the representation of the Coverage DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param refs The refs to the sensor data for the day.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
+   */
+  @Override
+  protected DpdRepresentation makeDpd(SensorBaseClient client, XMLGregorianCalendar startTime,
+      List<SensorDataRef> refs) throws Exception {
     Logger logger = this.server.getLogger();
-    logger.fine("Coverage DPD: Starting");
-    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
-      try {
-        // [1] get the SensorBaseClient for the user making this request.
-        SensorBaseClient client = super.getSensorBaseClient();
-        // [2] Check the front side cache and return if the DPD is found and is OK to access.
-        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, uriString);
-        if ((cachedDpd != null) && client.inProject(uriUser, project)) {
-          return super.getStringRepresentation(cachedDpd);
-        }
-        // [2] Get the latest snapshot of Coverage data for this Project on the requested day.
-        XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
-        XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
-        logger.fine("Coverage DPD: Requesting index: " + uriUser + " " + project);
-        SensorDataIndex snapshot = 
-          client.getProjectSensorDataSnapshot(this.uriUser, this.project, startTime, endTime, 
-              "Coverage");
-        logger.fine("Coverage DPD: Got index: " + snapshot.getSensorDataRef().size() 
-            + " instances");
-        // [3] Create the Coverage DPD.
-        CoverageDailyProjectData coverageData = new CoverageDailyProjectData();
-        coverageData.setProject(this.project);
-        coverageData.setStartTime(startTime);
-        coverageData.setGranularity(this.granularity);
-        
-        // [4] If data, then add ConstructData instances for required granularity.
-        if (!snapshot.getSensorDataRef().isEmpty()) {
-          logger.fine("There is data to process");
-          // Add a ConstructData instance if this sensor data contains the appropriate granularity.
-          for (SensorDataRef ref : snapshot.getSensorDataRef()) {
-            SensorData data = client.getSensorData(ref);
-            logger.fine ("Sensor Data: " + data);
-            coverageData.setOwner(data.getOwner()); 
-            coverageData.setTool(data.getTool()); 
-            String coveredKey = this.granularity.toLowerCase() + "_Covered";
-            String uncoveredKey = this.granularity.toLowerCase() + "_Uncovered";
-            logger.fine("Covered: " + coveredKey + " " + this.getProperty(data, coveredKey));
-            logger.fine("Uncovered: " + uncoveredKey + " " + this.getProperty(data, coveredKey));
-            Integer covered = this.getCoverageValue(data, coveredKey);
-            Integer uncovered = this.getCoverageValue(data, uncoveredKey);
-            logger.fine("Covered num: " + covered);
-            logger.fine("Uncovered num: " + uncovered);
-            if ((covered != null) && (uncovered != null)) { //NOPMD
-              ConstructData construct = new ConstructData();
-              construct.setName(data.getResource());
-              construct.setNumCovered(covered);
-              construct.setNumUncovered(uncovered);
-              coverageData.getConstructData().add(construct);
-            }
-          }
-        }
-        logger.fine("Coverage DPD: Finished processing instances.");
-        // Now return the CoverageDPD instance. 
-        String xmlData = this.makeCoverage(coverageData);
-        if (!Tstamp.isTodayOrLater(startTime)) {
-          this.server.getFrontSideCache().put(uriUser, project, uriString, xmlData);
+    // [1] Create the Coverage DPD.
+    CoverageDailyProjectData coverageData = new CoverageDailyProjectData();
+    coverageData.setProject(this.project);
+    coverageData.setStartTime(startTime);
+    coverageData.setGranularity(this.granularity);
+
+    // [2] If data, then add ConstructData instances for required granularity.
+    if (!refs.isEmpty()) {
+      logger.fine("There is data to process");
+      // Add a ConstructData instance if this sensor data contains the appropriate granularity.
+      for (SensorData data : fetchSensorData(client, refs)) {
+        logger.fine ("Sensor Data: " + data);
+        coverageData.setOwner(data.getOwner()); 
+        coverageData.setTool(data.getTool()); 
+        String coveredKey = this.granularity.toLowerCase() + "_Covered";
+        String uncoveredKey = this.granularity.toLowerCase() + "_Uncovered";
+        logger.fine("Covered: " + coveredKey + " " + this.getProperty(data, coveredKey));
+        logger.fine("Uncovered: " + uncoveredKey + " " + this.getProperty(data, coveredKey));
+        Integer covered = this.getCoverageValue(data, coveredKey);
+        Integer uncovered = this.getCoverageValue(data, uncoveredKey);
+        logger.fine("Covered num: " + covered);
+        logger.fine("Uncovered num: " + uncovered);
+        if ((covered != null) && (uncovered != null)) { //NOPMD
+          ConstructData construct = new ConstructData();
+          construct.setName(data.getResource());
+          construct.setNumCovered(covered);
+          construct.setNumUncovered(uncovered);
+          coverageData.getConstructData().add(construct);
         }
-        logRequest("Coverage", this.granularity);
-        return super.getStringRepresentation(xmlData);
-      }
-      catch (Exception e) {
-        setStatusError("Error creating Coverage DPD.", e);
-        return null;
       }
     }
-    return null;
+    logger.fine("Coverage DPD: Finished processing instances.");
+    // Now return the CoverageDPD instance. 
+    return super.makeRepresentation(coverageData, "CoverageJAXB");
   }
 
   /**
-   * Returns the passed SensorData instance as a String encoding of its XML
-   * representation.
-   * 
-   * @param data The SensorData instance.
-   * @return The XML String representation.
-   * @throws Exception If problems occur during translation.
+   * Returns the type of sensor data from which Coverage DPDs are computed.
+   * @return "Coverage".
    */
-  private String makeCoverage(CoverageDailyProjectData data) throws Exception {
-    JAXBContext codeIssueJAXB = (JAXBContext) this.server.getContext().getAttributes().get(
-        "CoverageJAXB");
-    Marshaller marshaller = codeIssueJAXB.createMarshaller();
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-    DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-    Document doc = documentBuilder.newDocument();
-    marshaller.marshal(data, doc);
-    DOMSource domSource = new DOMSource(doc);
-    StringWriter writer = new StringWriter();
-    StreamResult result = new StreamResult(writer);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    transformer.transform(domSource, result);
-    return writer.toString();
+  @Override
+  protected String getSensorDataType() {
+    return "Coverage";
   }
+
+  /**
+   * Returns the refs to the latest snapshot of Coverage data sent during each day.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @return One list of refs for each day.
+   * @throws Exception If problems occur retrieving the snapshots.
+   */
+  @Override
+  protected List<List<SensorDataRef>> getRefsByDay(SensorBaseClient client,
+      List<XMLGregorianCalendar> days) throws Exception {
+    return getSnapshotRefsByDay(client, days, null);
+  }
+
   
   /**
    * Returns the string value associated with the specified property key. If no
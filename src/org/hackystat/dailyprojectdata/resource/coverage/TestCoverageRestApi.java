@@ -5,6 +5,7 @@ import static org.junit.Assert.assertEquals;
 import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.hackystat.dailyprojectdata.client.DailyProjectDataClient;
+import org.hackystat.dailyprojectdata.client.DailyProjectDataClientException;
 import org.hackystat.dailyprojectdata.resource.coverage.jaxb.CoverageDailyProjectData;
 import org.hackystat.dailyprojectdata.test.DailyProjectDataTestHelper;
 import org.hackystat.sensorbase.client.SensorBaseClient;
@@ -82,4 +83,19 @@ public class TestCoverageRestApi extends DailyProjectDataTestHelper {
     // Now delete the user too.
     client.deleteUser(user);
   }
+
+  /**
+   * Test that a range of coverage DPDs cannot be requested without a granularity, since
+   * GET {host}/coverage/{user}/Default/{start}/{end} names the single day DPD of start 
+   * with granularity end.
+   * 
+   * @throws Exception If problems occur.
+   */
+  @Test(expected = DailyProjectDataClientException.class)
+  public void testGetCoveragesWithoutGranularity() throws Exception {
+    DailyProjectDataClient dpdClient = new DailyProjectDataClient(
+        getDailyProjectDataHostName(), user, user);
+    XMLGregorianCalendar start = Tstamp.makeTimestamp("2007-10-29");
+    dpdClient.getCoverages(user, PROJECT, start, Tstamp.incrementDays(start, 1), null);
+  }
 }
@@ -0,0 +1,230 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.hackystat.dailyprojectdata.frontsidecache.FrontSideCache;
+import org.hackystat.dailyprojectdata.metrics.RequestTrace;
+import org.hackystat.dailyprojectdata.server.MarshallerPool;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.MediaType;
+import org.restlet.resource.OutputRepresentation;
+
+/**
+ * A representation of a DPD that marshals its JAXB instance directly to the response stream
+ * when it is written, rather than first building the XML as a DOM and then as a String.
+ * <p>
+ * If a front side cache entry has been set, the first complete write also keeps a copy of
+ * the bytes it writes, and once the write is complete decodes them into the String that is
+ * put in the cache. While the entry is made, that write therefore holds two full size copies
+ * of the XML besides whatever the response buffers: the bytes and the String. Later writes 
+ * keep no copy. A write that fails part way through (for example, because the client 
+ * disconnected) is not cached.
+ * <p>
+ * The DPD instance must not be modified once the representation is created, so that the
+ * representation can be written concurrently to the responses of coalesced requests.
+ *
+ * @author Philip Johnson
+ */
+public class DpdRepresentation extends OutputRepresentation {
+
+  /** The DPD instance. */
+  private final Object data;
+
+  /** The Marshallers for the DPD instance's class. */
+  private final MarshallerPool marshallers;
+
+  /** The name of the JAXBContext of the Marshallers, or null if unknown. */
+  private final String contextName;
+
+  /** The front side cache to copy the XML into, or null if not cacheable. */
+  private FrontSideCache cache = null;
+
+  /** The owner of the project, for the cache entry. */
+  private String user;
+
+  /** The project, for the cache entry. */
+  private String project;
+
+  /** The URI naming the DPD, for the cache entry. */
+  private String uri;
+
+  /** Set once the XML has been copied into the cache. */
+  private final AtomicBoolean cached = new AtomicBoolean(false);
+
+  /**
+   * Creates a TEXT/XML, UTF-8 representation of data.
+   * @param data The DPD instance.
+   * @param marshallers The Marshallers for the DPD instance's class.
+   */
+  public DpdRepresentation(Object data, MarshallerPool marshallers) {
+    this(data, marshallers, null);
+  }
+
+  /**
+   * Creates a TEXT/XML, UTF-8 representation of data that records the name of the
+   * JAXBContext that marshals it, so that the DPD instance can be kept in the DpdStore.
+   * @param data The DPD instance.
+   * @param marshallers The Marshallers for the DPD instance's class.
+   * @param contextName The name of the JAXBContext of the Marshallers, such as "DevTimeJAXB".
+   */
+  public DpdRepresentation(Object data, MarshallerPool marshallers, String contextName) {
+    super(MediaType.TEXT_XML);
+    setCharacterSet(CharacterSet.UTF_8);
+    this.data = data;
+    this.marshallers = marshallers;
+    this.contextName = contextName;
+  }
+
+  /**
+   * Returns the DPD instance.
+   * @return The DPD, which must not be modified.
+   */
+  Object getData() {
+    return this.data;
+  }
+
+  /**
+   * Returns the name of the JAXBContext that marshals the DPD instance.
+   * @return The context name, or null if unknown.
+   */
+  String getContextName() {
+    return this.contextName;
+  }
+
+  /**
+   * Arranges for the XML to be put in the front side cache the first time that it is
+   * completely written. Must be called before the representation is shared.
+   * @param cache The front side cache.
+   * @param user The project owner.
+   * @param project The project.
+   * @param uri The URI naming the DPD.
+   */
+  void setCacheEntry(FrontSideCache cache, String user, String project, String uri) {
+    this.cache = cache;
+    this.user = user;
+    this.project = project;
+    this.uri = uri;
+  }
+
+  /**
+   * Marshals the DPD to outputStream, copying it into the front side cache if that has
+   * been requested and not yet done.
+   * @param outputStream The response stream.
+   * @throws IOException If problems occur during marshalling or writing.
+   */
+  @Override
+  public void write(OutputStream outputStream) throws IOException {
+    if ((this.cache == null) || this.cached.get()) {
+      marshal(outputStream);
+      return;
+    }
+    TeeOutputStream tee = new TeeOutputStream(outputStream);
+    marshal(tee);
+    if (this.cached.compareAndSet(false, true)) {
+      // Decodes straight from the copy's buffer, so no third copy of the bytes is made.
+      this.cache.put(this.user, this.project, this.uri, tee.copy.toString("UTF-8"));
+    }
+  }
+
+  /**
+   * Returns the XML for the DPD as a String. The front side cache is not updated.
+   * @return The XML.
+   * @throws IOException If problems occur during marshalling.
+   */
+  public String getXml() throws IOException {
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+      marshal(bytes);
+      return bytes.toString("UTF-8");
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.MARSHAL);
+    }
+  }
+
+  /**
+   * Returns the XML for the DPD as a String, copying it into the front side cache if that 
+   * has been requested and not yet done, as writing the representation would.
+   * @return The XML.
+   * @throws IOException If problems occur during marshalling.
+   */
+  String render() throws IOException {
+    String xml = getXml();
+    if ((this.cache != null) && this.cached.compareAndSet(false, true)) {
+      RequestTrace trace = RequestTrace.begin();
+      try {
+        this.cache.put(this.user, this.project, this.uri, xml);
+      }
+      finally {
+        RequestTrace.end(trace, RequestTrace.Span.CACHE_PUT);
+      }
+    }
+    return xml;
+  }
+
+  /**
+   * Marshals the DPD as UTF-8 to outputStream.
+   * @param outputStream The stream.
+   * @throws IOException If problems occur during marshalling.
+   */
+  private void marshal(OutputStream outputStream) throws IOException {
+    try {
+      Marshaller marshaller = this.marshallers.acquire();
+      marshaller.marshal(this.data, outputStream);
+      this.marshallers.release(marshaller);
+    }
+    catch (JAXBException e) {
+      IOException ioe = new IOException("Error marshalling DPD: " + e.getMessage());
+      ioe.initCause(e);
+      throw ioe;
+    }
+  }
+
+  /**
+   * Writes to the response stream while keeping a copy of everything written.
+   */
+  private static final class TeeOutputStream extends FilterOutputStream {
+    /** The copy of the bytes written. */
+    private final ByteArrayOutputStream copy = new ByteArrayOutputStream(4096);
+
+    /**
+     * Creates the tee.
+     * @param out The response stream.
+     */
+    TeeOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    /**
+     * Writes b to the response stream and the copy.
+     * @param b The byte.
+     * @throws IOException If the response stream cannot be written.
+     */
+    @Override
+    public void write(int b) throws IOException {
+      this.out.write(b);
+      this.copy.write(b);
+    }
+
+    /**
+     * Writes len bytes of b from off to the response stream and the copy.
+     * @param b The bytes.
+     * @param off The offset of the first byte to write.
+     * @param len The number of bytes to write.
+     * @throws IOException If the response stream cannot be written.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.out.write(b, off, len);
+      this.copy.write(b, off, len);
+    }
+  }
+}
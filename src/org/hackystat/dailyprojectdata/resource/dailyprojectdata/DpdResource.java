@@ -0,0 +1,827 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.dailyprojectdata.dpdstore.DpdStore;
+import org.hackystat.dailyprojectdata.frontsidecache.FrontSideCache;
+import org.hackystat.dailyprojectdata.metrics.DpdMetrics;
+import org.hackystat.dailyprojectdata.metrics.RequestMetrics;
+import org.hackystat.dailyprojectdata.metrics.RequestTrace;
+import org.hackystat.dailyprojectdata.metrics.ServerMetrics;
+import org.hackystat.dailyprojectdata.resource.snapshot.SnapshotMemo;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.hackystat.utilities.stacktrace.StackTrace;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.restlet.Context;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Reference;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Variant;
+
+/**
+ * An abstract superclass for the DailyProjectData resources that compute DPDs, which 
+ * supplies the pipeline that serves every DPD request. 
+ * This includes:
+ * <ul>
+ * <li> Fetches the SensorData instances named by a SensorDataIndex.
+ * <li> Shares DPD computations among identical concurrent requests.
+ * <li> Computes DPDs for a single day or for a range of days, using the front side cache
+ * and the DPD store.
+ * </ul>
+ * Concrete DPD resources supply only the sensor data type they are built from 
+ * (getSensorDataType), and the construction of a DPD for one day from that day's sensor data
+ * refs (makeDpd). Resources whose refs are not simply the sensor data of that type sent 
+ * during the day, such as snapshots, override getRefsByDay; those whose recent DPDs may 
+ * still change override isCacheable; and those with further template parameters return 
+ * them from getLogParameters. Everything else, including the front side cache, the DPD 
+ * store, coalescing, fetching, metrics, and logging, is done by represent and handleGet, 
+ * once for all DPD types. 
+ * <p>
+ * A range request supplies an 'end' template parameter in addition to 'timestamp', and 
+ * returns a DailyProjectDatas document containing one DPD for each day from timestamp 
+ * through end, inclusive. 
+ * <p>
+ * Every GET of a DPD is recorded in the server's metrics. Those that send an X-DPD-Trace 
+ * header are also traced: the breakdown of their time into index retrieval, sensor data 
+ * fetching, aggregation, marshalling, and cache puts is returned in the X-DPD-Trace response
+ * header, logged, and summarized in the metrics. To return the header, their DPD is 
+ * marshalled to a String before the response is sent. If a sample interval is configured, 
+ * a sample of the other requests is traced too; their DPDs are still streamed, so their 
+ * traces, which are only logged and summarized, do not include the marshalling. 
+ * 
+ * @author Philip Johnson
+ *
+ */
+public abstract class DpdResource extends DailyProjectDataResource {
+  
+  /** To be retrieved from the URL as the 'end' template parameter of range requests, or null. */
+  protected String endTimestamp = null; 
+  
+  /** The header that asks for a request to be traced, and that returns the trace. */
+  public static final String TRACE_HEADER = "X-DPD-Trace";
+  
+  /** The name of the request and response attribute holding the HTTP headers. */
+  private static final String HEADERS_ATTRIBUTE = "org.restlet.http.headers";
+
+  /** The maximum number of days in a range request. */
+  protected static final int MAX_RANGE_DAYS = 366;
+  
+  /** Whether the authenticated user is in the project, once checked for a memoized snapshot. */
+  private Boolean inProject = null;
+  
+  /**
+   * The standard constructor.
+   * @param context The context.
+   * @param request The request object.
+   * @param response The response object.
+   */
+  public DpdResource(Context context, Request request, Response response) {
+    super(context, request, response);
+    this.endTimestamp = (String) request.getAttributes().get("end");
+  }
+
+  /**
+   * Returns the representation of this resource's DPD, or of its DPDs for each day of a 
+   * range request, or null if not authorized. Authenticated user must be the uriUser, or 
+   * Admin, or project member. 
+   * @param variant The representational variant requested.
+   * @return The representation. 
+   */
+  @Override
+  public Representation represent(Variant variant) {
+    String dpdType = getDpdType();
+    this.server.getLogger().fine(dpdType + " DPD: Starting");
+    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
+      try {
+        // [1] get the SensorBaseClient for the user making this request.
+        final SensorBaseClient client = getSensorBaseClient();
+        // Requests for a range of days return a DPD for each day.
+        if (this.endTimestamp != null) {
+          return getStringRepresentation(computeRange(client, dpdType));
+        }
+        // [2] Check the front side cache and return if the DPD is found and is OK to access.
+        String cacheKey = getCacheKey(Tstamp.makeTimestamp(this.timestamp));
+        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, cacheKey);
+        if ((cachedDpd != null) && isInProject(client)) {
+          return getStringRepresentation(cachedDpd);
+        }
+        // [3] Compute the DPD, sharing the result of an identical request in progress.
+        Representation dpd = computeShared(client, new Callable<Representation>() {
+          public Representation call() throws Exception {
+            return computeDpd(client);
+          }
+        });
+        logRequest(dpdType, getLogParameters());
+        return dpd;
+      }
+      catch (Exception e) {
+        setStatusError("Error creating " + dpdType + " DPD.", e);
+        return null;
+      }
+    }
+    return null;
+  }
+  
+  /**
+   * Returns the template parameters of this request that are logged after its type, such
+   * as the tool. 
+   * @return The parameters, which are none unless overridden.
+   */
+  protected String[] getLogParameters() {
+    return new String[0];
+  }
+  
+  /**
+   * Handles a GET request, recording its latency, the SensorBase calls made for it, and 
+   * whether it succeeded in the server's metrics for its request type. If the request asks
+   * for a trace, its DPD is marshalled before returning, so that the trace returned in the 
+   * response header includes the marshalling. A sampled trace is only logged, and its DPD 
+   * is streamed as usual. 
+   */
+  @Override
+  public void handleGet() {
+    ServerMetrics serverMetrics = this.server.getMetrics();
+    DpdMetrics metrics = serverMetrics.getDpdMetrics(getRequestType());
+    boolean traceRequested = isTraceRequested();
+    RequestTrace trace = (traceRequested || serverMetrics.shouldTrace()) ? 
+        new RequestTrace(this.requestStartTime) : null;
+    RequestMetrics request = metrics.start(trace);
+    RequestMetrics previous = RequestMetrics.setCurrent(request);
+    boolean success = false;
+    try {
+      super.handleGet();
+      if (trace != null) {
+        String line;
+        if (traceRequested) {
+          renderEntity();
+          line = trace.format(System.nanoTime(), request);
+          addResponseHeader(TRACE_HEADER, line);
+        }
+        else {
+          line = trace.format(System.nanoTime(), request);
+        }
+        this.server.getLogger().info("Trace " + getRequestType() + " " + uriUser + " " + 
+            project + " " + timestamp + ": " + line);
+      }
+      success = getResponse().getStatus().isSuccess();
+    }
+    finally {
+      RequestMetrics.setCurrent(previous);
+      metrics.finish(request, (System.nanoTime() - this.requestStartTime) / 1000, success);
+    }
+  }
+  
+  /**
+   * Returns the type of this request for the server's metrics: the DPD type, such as 
+   * "DevTime", followed by "Range" for range requests.
+   * @return The request type.
+   */
+  private String getRequestType() {
+    return (this.endTimestamp == null) ? getDpdType() : getDpdType() + "Range";
+  }
+  
+  /**
+   * Returns true if the request has an X-DPD-Trace header.
+   * @return True if a trace is requested.
+   */
+  private boolean isTraceRequested() {
+    Form headers = (Form) getRequest().getAttributes().get(HEADERS_ATTRIBUTE);
+    return (headers != null) && (headers.getFirstValue(TRACE_HEADER, true) != null);
+  }
+  
+  /**
+   * Adds a header to the response.
+   * @param name The name of the header.
+   * @param value The value of the header.
+   */
+  private void addResponseHeader(String name, String value) {
+    Form headers = (Form) getResponse().getAttributes().get(HEADERS_ATTRIBUTE);
+    if (headers == null) {
+      headers = new Form();
+      getResponse().getAttributes().put(HEADERS_ATTRIBUTE, headers);
+    }
+    headers.add(name, value);
+  }
+  
+  /**
+   * Replaces a response entity that would marshal its DPD as it is written with the XML of
+   * the DPD, putting it in the front side cache if that has been arranged.
+   */
+  private void renderEntity() {
+    Representation entity = getResponse().getEntity();
+    if (entity instanceof DpdRepresentation) {
+      try {
+        getResponse().setEntity(getStringRepresentation(((DpdRepresentation) entity).render()));
+      }
+      catch (IOException e) {
+        setStatusError("Error marshalling DPD.", e);
+      }
+    }
+  }
+  
+  /**
+   * Returns the SensorData instances named by refs, in the same order as refs. 
+   * The instances are retrieved by the server's SensorDataFetcher, which fetches them 
+   * concurrently and in batches where the SensorBase allows. 
+   * @param client The SensorBaseClient used to retrieve the instances.
+   * @param refs The references to the SensorData instances, typically from a SensorDataIndex.
+   * @return The SensorData instances, in index order. 
+   * @throws SensorBaseClientException If any instance could not be retrieved, or if the 
+   * fetch timed out. 
+   */
+  protected List<SensorData> fetchSensorData(SensorBaseClient client, List<SensorDataRef> refs)
+      throws SensorBaseClientException {
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      return this.server.getSensorDataFetcher().getSensorData(client, 
+          getRequest().getChallengeResponse(), refs);
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.FETCH);
+    }
+  }
+  
+  /**
+   * Returns the type of sensor data from which this DPD is computed, such as "DevEvent". 
+   * Used by the default implementation of getRefsByDay. 
+   * @return The sensor data type.
+   */
+  protected abstract String getSensorDataType();
+  
+  /**
+   * Returns the representation of this resource's DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day. 
+   * @param refs The sensor data refs for that day, as returned by getRefsByDay.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
+   */
+  protected abstract DpdRepresentation makeDpd(SensorBaseClient client, 
+      XMLGregorianCalendar startTime, List<SensorDataRef> refs) throws Exception;
+  
+  /**
+   * Returns a representation that marshals data to the response as it is written, using 
+   * pooled Marshallers for the JAXBContext stored in the server context under contextName.
+   * @param data The DPD instance, which must not be modified afterwards.
+   * @param contextName The name of the JAXBContext attribute, such as "DevTimeJAXB".
+   * @return The representation of the DPD.
+   */
+  protected DpdRepresentation makeRepresentation(Object data, String contextName) {
+    return new DpdRepresentation(data, this.server.getMarshallerPool(contextName), contextName);
+  }
+  
+  /**
+   * Returns true if the DPD for the day beginning at startTime may be put in the 
+   * front side cache.  By default, DPDs for days before today are cacheable.
+   * @param startTime The start of the day.
+   * @return True if the DPD for that day may be cached.
+   */
+  protected boolean isCacheable(XMLGregorianCalendar startTime) {
+    return !Tstamp.isTodayOrLater(startTime);
+  }
+  
+  /**
+   * Returns the sensor data refs needed to compute the DPD for each of the passed days, 
+   * which are in increasing order but need not be consecutive.
+   * By default, makes a single index request for all data of getSensorDataType() from the 
+   * first day through the last, and splits it by day. 
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @return One list of refs for each day, in the same order as days.
+   * @throws Exception If problems occur retrieving the index.
+   */
+  protected List<List<SensorDataRef>> getRefsByDay(SensorBaseClient client, 
+      List<XMLGregorianCalendar> days) throws Exception {
+    XMLGregorianCalendar endTime = Tstamp.incrementDays(days.get(days.size() - 1), 1);
+    SensorDataIndex index = getIndex(client, days.get(0), endTime);
+    return splitByDay(index.getSensorDataRef(), days, false);
+  }
+  
+  /**
+   * Returns, for each of the passed days, the refs in the latest snapshot of 
+   * getSensorDataType() data sent during that day. One snapshot request is made per day,
+   * except for the days before today whose snapshot is held by the server's SnapshotMemo.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @param tool The tool whose snapshots are requested, or null for any tool.
+   * @return One list of refs for each day, in the same order as days.
+   * @throws SensorBaseClientException If a snapshot could not be retrieved. 
+   */
+  protected List<List<SensorDataRef>> getSnapshotRefsByDay(SensorBaseClient client, 
+      List<XMLGregorianCalendar> days, String tool) throws SensorBaseClientException {
+    String type = getSensorDataType();
+    List<List<SensorDataRef>> byDay = new ArrayList<List<SensorDataRef>>(days.size());
+    SnapshotMemo memo = this.server.getSnapshotMemo();
+    for (XMLGregorianCalendar startTime : days) {
+      if (isCacheable(startTime)) {
+        SnapshotMemo.Entry entry = memo.get(uriUser, project, type, tool, 
+            EpochTime.toMillis(startTime));
+        if ((entry != null) && isInProject(client)) {
+          byDay.add(entry.getRefs());
+          continue;
+        }
+      }
+      XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
+      SensorDataIndex snapshot;
+      RequestTrace trace = RequestTrace.begin();
+      try {
+        snapshot = (tool == null) ?
+            client.getProjectSensorDataSnapshot(uriUser, project, startTime, endTime, type) :
+              client.getProjectSensorDataSnapshot(uriUser, project, startTime, endTime, type, 
+                  tool);
+      }
+      finally {
+        RequestTrace.end(trace, RequestTrace.Span.INDEX);
+      }
+      RequestMetrics.recordSensorBaseCall(0);
+      this.server.getLogger().fine(String.format("%s snapshot: Got %d instances for %s", type,
+          snapshot.getSensorDataRef().size(), startTime));
+      byDay.add(snapshot.getSensorDataRef());
+    }
+    return byDay;
+  }
+  
+  /**
+   * Returns the SensorData instances named by refs, the refs of the snapshot of the day 
+   * beginning at startTime returned by getSnapshotRefsByDay. The instances are taken from 
+   * the server's SnapshotMemo if it holds that snapshot, and otherwise are fetched and, if
+   * the day is before today, added to the memo.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param tool The tool of the snapshot, or null for any tool.
+   * @param refs The refs of the snapshot.
+   * @return The instances, in the same order as refs. 
+   * @throws SensorBaseClientException If any instance could not be retrieved. 
+   */
+  protected List<SensorData> fetchSnapshotData(SensorBaseClient client, 
+      XMLGregorianCalendar startTime, String tool, List<SensorDataRef> refs) 
+      throws SensorBaseClientException {
+    SnapshotMemo memo = this.server.getSnapshotMemo();
+    String type = getSensorDataType();
+    long day = EpochTime.toMillis(startTime);
+    List<SensorData> data = memo.getData(uriUser, project, type, tool, day, refs);
+    if (data == null) {
+      data = fetchSensorData(client, refs);
+      if (isCacheable(startTime)) {
+        memo.put(uriUser, project, type, tool, day, refs, data);
+      }
+    }
+    return data;
+  }
+  
+  /**
+   * Returns true if the authenticated user is in the project, checking only once per request.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @return True if the authenticated user is in the project.
+   * @throws SensorBaseClientException If the project could not be checked.
+   */
+  private boolean isInProject(SensorBaseClient client) throws SensorBaseClientException {
+    if (this.inProject == null) {
+      this.inProject = Boolean.valueOf(client.inProject(uriUser, project));
+      RequestMetrics.recordSensorBaseCall(0);
+    }
+    return this.inProject.booleanValue();
+  }
+  
+  /**
+   * Returns, for each of the passed days, the refs to all getSensorDataType() data sent 
+   * between the start of the project and the end of that day. One index request is made.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @return One list of refs for each day, in the same order as days.
+   * @throws SensorBaseClientException If the project or index could not be retrieved. 
+   */
+  protected List<List<SensorDataRef>> getProjectToDateRefsByDay(SensorBaseClient client, 
+      List<XMLGregorianCalendar> days) throws SensorBaseClientException {
+    XMLGregorianCalendar projectStartTime;
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      projectStartTime = client.getProject(uriUser, project).getStartTime();
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.INDEX);
+    }
+    RequestMetrics.recordSensorBaseCall(0);
+    XMLGregorianCalendar endTime = Tstamp.incrementDays(days.get(days.size() - 1), 1);
+    SensorDataIndex index = getIndex(client, projectStartTime, endTime);
+    return splitByDay(index.getSensorDataRef(), days, true);
+  }
+  
+  /**
+   * Returns the index of all data of getSensorDataType() for this project between 
+   * startTime and endTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the interval. 
+   * @param endTime The end of the interval.
+   * @return The index.
+   * @throws SensorBaseClientException If the index could not be retrieved. 
+   */
+  protected SensorDataIndex getIndex(SensorBaseClient client, XMLGregorianCalendar startTime,
+      XMLGregorianCalendar endTime) throws SensorBaseClientException {
+    String type = getSensorDataType();
+    this.server.getLogger().fine(String.format("%s index: Requesting: %s %s %s %s", type, 
+        uriUser, project, startTime, endTime));
+    SensorDataIndex index;
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      index = client.getProjectSensorData(uriUser, project, startTime, endTime, type);
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.INDEX);
+    }
+    RequestMetrics.recordSensorBaseCall(0);
+    this.server.getLogger().fine(String.format("%s index: Got %d instances", type, 
+        index.getSensorDataRef().size()));
+    return index;
+  }
+  
+  /**
+   * Splits refs into one list per day in a single pass.  Each day runs from its start time 
+   * in days for 24 hours. If cumulative is false, each list holds the refs whose timestamps 
+   * fall within that day. If cumulative is true, each list holds all of the refs whose 
+   * timestamps precede the end of that day, which suits DPDs that describe the state of the 
+   * project as of that day. 
+   * @param refs The refs, in any order.
+   * @param days The start times of the days, in increasing order.
+   * @param cumulative True if each day includes the refs from all earlier times.
+   * @return One list of refs per day, in the same order as days.
+   */
+  protected static List<List<SensorDataRef>> splitByDay(List<SensorDataRef> refs, 
+      List<XMLGregorianCalendar> days, boolean cumulative) {
+    int numDays = days.size();
+    long[] starts = new long[numDays];
+    long[] ends = new long[numDays];
+    for (int i = 0; i < numDays; i++) {
+      starts[i] = days.get(i).toGregorianCalendar().getTimeInMillis();
+      ends[i] = Tstamp.incrementDays(days.get(i), 1).toGregorianCalendar().getTimeInMillis();
+    }
+    List<List<SensorDataRef>> byDay = new ArrayList<List<SensorDataRef>>(numDays);
+    for (int i = 0; i < numDays; i++) {
+      byDay.add(new ArrayList<SensorDataRef>());
+    }
+    for (SensorDataRef ref : refs) {
+      long time = ref.getTimestamp().toGregorianCalendar().getTimeInMillis();
+      // The first day that ends after this ref.
+      int day = Arrays.binarySearch(ends, time);
+      day = (day >= 0) ? day + 1 : -(day + 1);
+      if (day >= numDays) {
+        continue;
+      }
+      // When cumulative, a ref preceding this day's start still belongs to this day onward.
+      if (cumulative || (time >= starts[day])) {
+        byDay.get(day).add(ref);
+      }
+    }
+    if (cumulative) {
+      List<SensorDataRef> runningTotal = new ArrayList<SensorDataRef>();
+      for (int i = 0; i < numDays; i++) {
+        runningTotal.addAll(byDay.get(i));
+        byDay.set(i, new ArrayList<SensorDataRef>(runningTotal));
+      }
+    }
+    return byDay;
+  }
+  
+  /**
+   * Computes the DPD for the day specified by this request. If it is cacheable, the DPD is
+   * taken from the DPD store if it is there, and is otherwise computed and added to it; 
+   * either way, the returned representation puts its XML in the front side cache when it 
+   * is first written. 
+   * @param client The SensorBaseClient for the authenticated user.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
+   */
+  protected DpdRepresentation computeDpd(SensorBaseClient client) throws Exception {
+    XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
+    boolean cacheable = isCacheable(startTime);
+    DpdRepresentation dpd = cacheable ? getStoredDpd(client, startTime) : null;
+    if (dpd == null) {
+      List<SensorDataRef> refs = 
+        getRefsByDay(client, Collections.singletonList(startTime)).get(0);
+      dpd = makeTracedDpd(client, startTime, refs);
+      if (cacheable) {
+        storeDpd(startTime, dpd);
+      }
+    }
+    if (cacheable) {
+      dpd.setCacheEntry(this.server.getFrontSideCache(), uriUser, project, 
+          getCacheKey(startTime));
+    }
+    return dpd;
+  }
+  
+  /**
+   * Returns the representation of the DPD for the day beginning at startTime from the 
+   * server's DpdStore, or null if the store is disabled or does not hold it, or if the 
+   * authenticated user is not in the project. The store is checked before the project, so 
+   * that a DPD that is not stored costs no SensorBase call.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @return The representation of the stored DPD, or null.
+   * @throws SensorBaseClientException If the project could not be checked.
+   */
+  private DpdRepresentation getStoredDpd(SensorBaseClient client, 
+      XMLGregorianCalendar startTime) throws SensorBaseClientException {
+    DpdStore store = this.server.getDpdStore();
+    if (store == null) {
+      return null;
+    }
+    DpdStore.Entry entry = store.get(getDpdType(), uriUser, project, 
+        EpochTime.toMillis(startTime), getDpdParameters());
+    if ((entry == null) || !isInProject(client)) {
+      return null;
+    }
+    return makeRepresentation(entry.getData(), entry.getContextName());
+  }
+  
+  /**
+   * Adds the DPD for the day beginning at startTime to the server's DpdStore, if it is 
+   * enabled. Errors are logged, since the DPD can still be returned.
+   * @param startTime The start of the day. 
+   * @param dpd The representation of the DPD.
+   */
+  private void storeDpd(XMLGregorianCalendar startTime, DpdRepresentation dpd) {
+    DpdStore store = this.server.getDpdStore();
+    if ((store == null) || (dpd.getContextName() == null)) {
+      return;
+    }
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      store.put(getDpdType(), uriUser, project, EpochTime.toMillis(startTime), 
+          getDpdParameters(), dpd.getContextName(), dpd.getData());
+    }
+    catch (Exception e) {
+      this.server.getLogger().warning("Error during DPD store add: " + StackTrace.toString(e));
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.CACHE_PUT);
+    }
+  }
+  
+  /**
+   * Calls makeDpd, tracing it as aggregation.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day. 
+   * @param refs The sensor data refs for that day, as returned by getRefsByDay.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
+   */
+  private DpdRepresentation makeTracedDpd(SensorBaseClient client, 
+      XMLGregorianCalendar startTime, List<SensorDataRef> refs) throws Exception {
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      return makeDpd(client, startTime, refs);
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.AGGREGATE);
+    }
+  }
+  
+  /**
+   * Returns the type of DPD computed by this resource, such as "DevTime", which is its 
+   * class name without the "Resource" suffix. 
+   * @return The DPD type.
+   */
+  private String getDpdType() {
+    String name = getClass().getSimpleName();
+    return name.endsWith("Resource") ? name.substring(0, name.length() - 8) : name;
+  }
+  
+  /**
+   * Returns the template parameters of this request other than the user, project, and 
+   * timestamps, such as the tool or size metric, as name=value pairs sorted by name and 
+   * joined by '&'. A single day request and a range request for the same DPD therefore 
+   * have the same parameters.
+   * @return The parameters, which are empty if there are none.
+   */
+  private String getDpdParameters() {
+    Map<String, String> params = new TreeMap<String, String>();
+    for (Map.Entry<String, Object> attribute : getRequest().getAttributes().entrySet()) {
+      String name = attribute.getKey();
+      // Attributes set by Restlet itself have qualified names, such as org.restlet.http.headers.
+      if ((attribute.getValue() instanceof String) && (name.indexOf('.') < 0) 
+          && !"user".equals(name) && !"project".equals(name) && !"timestamp".equals(name)
+          && !"end".equals(name)) {
+        params.put(name, (String) attribute.getValue());
+      }
+    }
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      builder.append((builder.length() == 0) ? "" : "&");
+      builder.append(param.getKey()).append('=').append(param.getValue());
+    }
+    return builder.toString();
+  }
+  
+  /**
+   * Computes the DPDs for each day from the 'timestamp' through the 'end' day of this request,
+   * and returns them in a DailyProjectDatas document.  Days whose DPD is in the front side
+   * cache are served from it, then days whose DPD is in the DPD store, and the refs for all 
+   * of the remaining days are obtained with one call to getRefsByDay. Each stored or newly 
+   * computed, cacheable DPD is added to the front side cache under the key of the equivalent 
+   * single day request, and each newly computed one is also added to the DPD store. 
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param requestType The type of DPD request, such as "Commit", for logging.
+   * @return The XML representation of the DPDs.
+   * @throws Exception If the authenticated user is not in the project, if the range is
+   * invalid, or if problems occur computing a DPD.
+   */
+  protected String computeRange(SensorBaseClient client, String requestType) throws Exception {
+    boolean isMember = client.inProject(uriUser, project);
+    RequestMetrics.recordSensorBaseCall(0);
+    if (!isMember) {
+      throw new SensorBaseClientException(String.format(
+          "Authenticated user (%s) isn't in project (%s) owned by %s", authUser, project, 
+          uriUser));
+    }
+    this.inProject = Boolean.TRUE;
+    XMLGregorianCalendar startDay = Tstamp.makeTimestamp(this.timestamp);
+    XMLGregorianCalendar endDay = Tstamp.makeTimestamp(this.endTimestamp);
+    List<XMLGregorianCalendar> days = new ArrayList<XMLGregorianCalendar>();
+    for (XMLGregorianCalendar day = startDay; !Tstamp.greaterThan(day, endDay); 
+         day = Tstamp.incrementDays(day, 1)) {
+      days.add(day);
+      if (days.size() > MAX_RANGE_DAYS) {
+        throw new IllegalArgumentException("Ranges are limited to " + MAX_RANGE_DAYS + " days");
+      }
+    }
+    if (days.isEmpty()) {
+      throw new IllegalArgumentException("The end day precedes the start day");
+    }
+    // [1] Get the DPDs that are already cached or stored, noting the days that are not. 
+    FrontSideCache cache = this.server.getFrontSideCache();
+    String[] dpds = new String[days.size()];
+    String[] dayKeys = new String[days.size()];
+    List<Integer> missing = new ArrayList<Integer>();
+    for (int i = 0; i < days.size(); i++) {
+      dayKeys[i] = getCacheKey(days.get(i));
+      dpds[i] = cache.get(uriUser, project, dayKeys[i]);
+      if ((dpds[i] == null) && isCacheable(days.get(i))) {
+        DpdRepresentation stored = getStoredDpd(client, days.get(i));
+        if (stored != null) {
+          dpds[i] = stored.getXml();
+          putInCache(cache, dayKeys[i], dpds[i]);
+        }
+      }
+      if (dpds[i] == null) {
+        missing.add(i);
+      }
+    }
+    // [2] Compute the missing DPDs from a single retrieval of their refs.
+    if (!missing.isEmpty()) {
+      List<XMLGregorianCalendar> missingDays = new ArrayList<XMLGregorianCalendar>();
+      for (Integer i : missing) {
+        missingDays.add(days.get(i));
+      }
+      List<List<SensorDataRef>> refsByDay = getRefsByDay(client, missingDays);
+      for (int j = 0; j < missing.size(); j++) {
+        int i = missing.get(j);
+        DpdRepresentation dpd = makeTracedDpd(client, days.get(i), refsByDay.get(j));
+        dpds[i] = dpd.getXml();
+        if (isCacheable(days.get(i))) {
+          putInCache(cache, dayKeys[i], dpds[i]);
+          storeDpd(days.get(i), dpd);
+        }
+      }
+    }
+    // [3] Assemble the DailyProjectDatas document.
+    StringBuilder builder = new StringBuilder(100 + (dpds.length * 1000));
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+    builder.append("<DailyProjectDatas Owner=\"").append(escape(uriUser));
+    builder.append("\" Project=\"").append(escape(project));
+    builder.append("\" StartTime=\"").append(startDay);
+    builder.append("\" EndTime=\"").append(endDay).append("\">");
+    for (String dpd : dpds) {
+      builder.append(dpd.startsWith("<?xml") ? dpd.substring(dpd.indexOf("?>") + 2) : dpd);
+    }
+    builder.append("</DailyProjectDatas>");
+    logRequest(requestType, this.endTimestamp, String.valueOf(missing.size()), "computed");
+    return builder.toString();
+  }
+  
+  /**
+   * Puts the XML of a DPD in the front side cache, tracing it as a cache put.
+   * @param cache The front side cache.
+   * @param key The key of the DPD, as returned by getCacheKey.
+   * @param xml The XML of the DPD.
+   */
+  private void putInCache(FrontSideCache cache, String key, String xml) {
+    RequestTrace trace = RequestTrace.begin();
+    try {
+      cache.put(uriUser, project, key, xml);
+    }
+    finally {
+      RequestTrace.end(trace, RequestTrace.Span.CACHE_PUT);
+    }
+  }
+  
+  /**
+   * Returns the key of the DPD of the given day in the front side cache.
+   * @param day The day.
+   * @return The key of that day's DPD in the front side cache.
+   * @see #makeCacheKey(Reference, String, XMLGregorianCalendar)
+   */
+  protected String getCacheKey(XMLGregorianCalendar day) {
+    String timestamps = (this.endTimestamp == null) ? "/" + this.timestamp : 
+      "/" + this.timestamp + "/" + this.endTimestamp;
+    return makeCacheKey(getRequest().getResourceRef(), timestamps, day);
+  }
+  
+  /**
+   * Returns the key in the front side cache of the DPD of the given day requested by ref: 
+   * the normalized path and query of the single day request for that day equivalent to ref, 
+   * with its timestamp written as Tstamp.makeTimestamp(long) writes it. Requests for the same 
+   * day that name this server by another host, order their query parameters differently, or 
+   * write the timestamp differently, with or without milliseconds or in another time zone, 
+   * and the range requests including that day, therefore all share one entry.
+   * @param ref The URI of the request.
+   * @param timestamps The timestamps in the path of ref, such as "/{timestamp}" or 
+   * "/{timestamp}/{end}".
+   * @param day The day.
+   * @return The key of that day's DPD in the front side cache.
+   */
+  protected static String makeCacheKey(Reference ref, String timestamps, 
+      XMLGregorianCalendar day) {
+    String normalized = Tstamp.makeTimestamp(EpochTime.toMillis(day)).toString();
+    return getNormalizedUri(ref).replaceFirst(Pattern.quote(timestamps), 
+        Matcher.quoteReplacement("/" + normalized));
+  }
+  
+  /**
+   * Escapes the characters that may not appear in an XML attribute value.
+   * @param value The attribute value.
+   * @return The escaped value.
+   */
+  private static String escape(String value) {
+    return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+  }
+  
+  /**
+   * Returns the DPD representation computed by computation. If an identical request (one 
+   * with the same normalized URI) is already computing its DPD, and the authenticated user 
+   * is in the project, then waits for and returns that request's result instead. 
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param computation Computes the DPD representation for this request.
+   * @return The DPD representation.
+   * @throws Exception If the computation fails.
+   */
+  protected Representation computeShared(final SensorBaseClient client, 
+      Callable<Representation> computation) throws Exception {
+    Callable<Boolean> accessCheck = new Callable<Boolean>() {
+      public Boolean call() throws Exception {
+        Boolean isMember = Boolean.valueOf(client.inProject(uriUser, project));
+        RequestMetrics.recordSensorBaseCall(0);
+        return isMember;
+      }
+    };
+    return this.server.getRequestCoalescer().execute(getNormalizedUri(), computation, 
+        accessCheck);
+  }
+  
+  /**
+   * Returns the path and query of this request's URI, with the query parameters sorted so 
+   * that requests differing only in parameter order are treated as identical. 
+   * @return The normalized URI.
+   */
+  protected String getNormalizedUri() {
+    return getNormalizedUri(getRequest().getResourceRef());
+  }
+  
+  /**
+   * Returns the path and query of ref, with the query parameters sorted. 
+   * @param ref The URI.
+   * @return The normalized URI.
+   */
+  private static String getNormalizedUri(Reference ref) {
+    String query = ref.getQuery();
+    if ((query == null) || (query.length() == 0)) {
+      return ref.getPath();
+    }
+    String[] params = query.split("&");
+    Arrays.sort(params);
+    StringBuffer normalized = new StringBuffer(ref.getPath()).append('?');
+    for (int i = 0; i < params.length; i++) {
+      normalized.append((i == 0) ? "" : "&").append(params[i]);
+    }
+    return normalized.toString();
+  }
+
+}
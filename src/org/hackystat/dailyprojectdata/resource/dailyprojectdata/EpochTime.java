@@ -0,0 +1,164 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Provides conversions between XMLGregorianCalendar timestamps and epoch milliseconds, so 
+ * that the classes that compare or bucket many timestamps can work with primitive longs and
+ * use XMLGregorianCalendar only where the SensorBase and JAXB require it. 
+ * <p>
+ * Converting a timestamp with toMillis() reads its fields and allocates no Calendar. The 
+ * local day containing the most recently converted time is cached, so that startOfDay() and 
+ * millisOfDay() for times on the same day need no Calendar either.
+ * 
+ * @author Philip Johnson
+ */
+public final class EpochTime {
+  
+  /** The number of milliseconds in a minute. */
+  public static final long MILLIS_PER_MINUTE = 60L * 1000L;
+  
+  /** The number of milliseconds in a day without a daylight saving time change. */
+  public static final long MILLIS_PER_DAY = 24L * 60L * MILLIS_PER_MINUTE;
+  
+  /** The local day containing the time most recently passed to getDay(), or null. */
+  private static volatile LocalDay lastDay = null;
+  
+  /** Prevents instantiation. */
+  private EpochTime() {
+    // Do nothing.
+  }
+  
+  /**
+   * Returns the timestamp as milliseconds since the epoch. Timestamps without a time zone are
+   * interpreted in the default time zone, as XMLGregorianCalendar.toGregorianCalendar() does.
+   * @param timestamp The timestamp.
+   * @return The epoch milliseconds.
+   */
+  public static long toMillis(XMLGregorianCalendar timestamp) {
+    int year = timestamp.getYear();
+    int month = timestamp.getMonth();
+    int day = timestamp.getDay();
+    int hour = timestamp.getHour();
+    int minute = timestamp.getMinute();
+    int second = timestamp.getSecond();
+    int timezone = timestamp.getTimezone();
+    if ((year <= 0) || (month == DatatypeConstants.FIELD_UNDEFINED) 
+        || (day == DatatypeConstants.FIELD_UNDEFINED) 
+        || (hour == DatatypeConstants.FIELD_UNDEFINED) 
+        || (minute == DatatypeConstants.FIELD_UNDEFINED) 
+        || (second == DatatypeConstants.FIELD_UNDEFINED) 
+        || (timezone == DatatypeConstants.FIELD_UNDEFINED)) {
+      return timestamp.toGregorianCalendar().getTimeInMillis();
+    }
+    int millisecond = timestamp.getMillisecond();
+    if (millisecond == DatatypeConstants.FIELD_UNDEFINED) {
+      millisecond = 0;
+    }
+    long minutes = ((daysSinceEpoch(year, month, day) * 24L) + hour) * 60L + minute - timezone;
+    return (minutes * 60L + second) * 1000L + millisecond;
+  }
+  
+  /**
+   * Returns the timestamp for the given epoch milliseconds. 
+   * @param millis The epoch milliseconds.
+   * @return The timestamp.
+   */
+  public static XMLGregorianCalendar toTimestamp(long millis) {
+    return Tstamp.makeTimestamp(millis);
+  }
+  
+  /**
+   * Returns the first millisecond of the local day containing millis, in the default time zone.
+   * @param millis The epoch milliseconds.
+   * @return The start of the day.
+   */
+  public static long startOfDay(long millis) {
+    return getDay(millis).start;
+  }
+  
+  /**
+   * Returns the local time of day of millis, in milliseconds since midnight, in the default 
+   * time zone. This is the time shown on a clock, so on days with a daylight saving time
+   * change it is not the time elapsed since the start of the day.
+   * @param millis The epoch milliseconds.
+   * @return The time of day, from 0 to MILLIS_PER_DAY - 1.
+   */
+  public static long millisOfDay(long millis) {
+    LocalDay day = getDay(millis);
+    if (day.uniformOffset) {
+      return millis - day.start;
+    }
+    long local = millis + TimeZone.getDefault().getOffset(millis);
+    long result = local % MILLIS_PER_DAY;
+    return (result < 0) ? result + MILLIS_PER_DAY : result;
+  }
+  
+  /**
+   * Returns the local day containing millis, computing and caching it if it is not the last
+   * day returned.
+   * @param millis The epoch milliseconds.
+   * @return The day.
+   */
+  private static LocalDay getDay(long millis) {
+    LocalDay day = lastDay;
+    if ((day == null) || (millis < day.start) || (millis >= day.end)) {
+      day = new LocalDay(millis);
+      lastDay = day;
+    }
+    return day;
+  }
+  
+  /**
+   * Returns the number of days from 1970-01-01 to the given date in the proleptic Gregorian
+   * calendar. 
+   * @param year The year.
+   * @param month The month, from 1 to 12.
+   * @param day The day of the month.
+   * @return The number of days, negative for earlier dates.
+   */
+  private static long daysSinceEpoch(int year, int month, int day) {
+    // Count years from March, so that the leap day is the last day of the year.
+    long y = (month <= 2) ? year - 1 : year;
+    long era = ((y >= 0) ? y : y - 399) / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+  
+  /**
+   * The bounds of a local day in the default time zone.
+   */
+  private static final class LocalDay {
+    /** The first millisecond of the day. */
+    private final long start;
+    /** The first millisecond of the next day. */
+    private final long end;
+    /** True if the UTC offset is the same throughout the day. */
+    private final boolean uniformOffset;
+    
+    /**
+     * Computes the local day containing millis.
+     * @param millis The epoch milliseconds.
+     */
+    LocalDay(long millis) {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(millis);
+      calendar.set(Calendar.HOUR_OF_DAY, 0);
+      calendar.set(Calendar.MINUTE, 0);
+      calendar.set(Calendar.SECOND, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+      this.start = calendar.getTimeInMillis();
+      calendar.add(Calendar.DAY_OF_MONTH, 1);
+      this.end = calendar.getTimeInMillis();
+      TimeZone zone = calendar.getTimeZone();
+      this.uniformOffset = ((this.end - this.start) == MILLIS_PER_DAY) 
+          && (zone.getOffset(this.start) == zone.getOffset(this.end - 1));
+    }
+  }
+}
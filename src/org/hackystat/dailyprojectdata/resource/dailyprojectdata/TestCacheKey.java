@@ -0,0 +1,53 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+import org.restlet.data.Reference;
+
+/**
+ * Tests that equivalent requests for a day's DPD share one front side cache key.
+ * @author Philip Johnson
+ */
+public class TestCacheKey {
+
+  /** The path of the DPD requests, up to the timestamp. */
+  private static final String PATH = "/dailyprojectdata/codeissue/joe@hackystat.org/Default/";
+
+  /**
+   * Checks that the key ignores the host, the timestamp format, and the parameter order, as
+   * the DpdPrecomputer and other clients may differ in each.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testEquivalentRequests() throws Exception {
+    XMLGregorianCalendar day = Tstamp.makeTimestamp("2008-01-15T00:00:00.000-10:00");
+    String utc = "2008-01-15T10:00:00Z";
+    String precomputed = getKey("http://localhost:9877" + PATH + day + "?Tool=PMD&Type=X",
+        "/" + day, day);
+    String client = getKey("http://dpd.example.org:9877" + PATH + utc + "?Type=X&Tool=PMD",
+        "/" + utc, Tstamp.makeTimestamp(utc));
+    assertEquals("Checking equivalent", precomputed, client);
+    String range = getKey("http://localhost:9877" + PATH + utc + "/2008-01-17T10:00:00Z"
+        + "?Tool=PMD&Type=X", "/" + utc + "/2008-01-17T10:00:00Z", day);
+    assertEquals("Checking range", precomputed, range);
+    String other = getKey("http://localhost:9877" + PATH + day + "?Tool=PMD&Type=Y",
+        "/" + day, day);
+    assertFalse("Checking other type", precomputed.equals(other));
+  }
+
+  /**
+   * Returns the cache key of the DPD of day requested by uri.
+   * @param uri The request URI.
+   * @param timestamps The timestamps in the path of uri.
+   * @param day The day.
+   * @return The cache key.
+   */
+  private static String getKey(String uri, String timestamps, XMLGregorianCalendar day) {
+    return DpdResource.makeCacheKey(new Reference(uri), timestamps, day);
+  }
+}
@@ -0,0 +1,55 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+
+import javax.xml.bind.JAXBContext;
+
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.DevTimeDailyProjectData;
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.MemberData;
+import org.hackystat.dailyprojectdata.resource.devtime.jaxb.ObjectFactory;
+import org.hackystat.dailyprojectdata.server.MarshallerPool;
+import org.junit.Test;
+
+/**
+ * Tests the streaming DPD representation.
+ * @author Philip Johnson
+ */
+public class TestDpdRepresentation {
+
+  /**
+   * Checks that writing the representation produces the same XML as getXml, and that the
+   * XML unmarshals to an equivalent DPD.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testWrite() throws Exception {
+    JAXBContext context = JAXBContext.newInstance(ObjectFactory.class);
+    DevTimeDailyProjectData devTime = new DevTimeDailyProjectData();
+    devTime.setOwner("joe@hackystat.org");
+    devTime.setProject("Default");
+    devTime.setUriPattern("**");
+    devTime.setTotalDevTime(BigInteger.valueOf(15));
+    MemberData memberData = new MemberData();
+    memberData.setMemberUri("http://localhost/sensorbase/users/joe@hackystat.org");
+    memberData.setDevTime(BigInteger.valueOf(15));
+    devTime.getMemberData().add(memberData);
+
+    MarshallerPool pool = new MarshallerPool(context);
+    DpdRepresentation dpd = new DpdRepresentation(devTime, pool);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    dpd.write(out);
+    String xml = out.toString("UTF-8");
+    assertEquals("Checking write matches getXml", dpd.getXml(), xml);
+    assertEquals("Checking marshaller reused", 1, pool.getCreated());
+
+    DevTimeDailyProjectData result = (DevTimeDailyProjectData) context.createUnmarshaller()
+        .unmarshal(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals("Checking owner", "joe@hackystat.org", result.getOwner());
+    assertEquals("Checking total", 15, result.getTotalDevTime().intValue());
+    assertEquals("Checking members", 1, result.getMemberData().size());
+  }
+}
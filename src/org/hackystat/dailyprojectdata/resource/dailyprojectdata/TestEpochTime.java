@@ -0,0 +1,55 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests the EpochTime conversions. 
+ * @author Philip Johnson
+ */
+public class TestEpochTime {
+  
+  /**
+   * Tests that toMillis agrees with XMLGregorianCalendar.toGregorianCalendar().
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testToMillis() throws Exception {
+    String[] tstamps = {"2008-01-15T00:00:00", "2008-02-29T23:59:59.999", 
+        "2007-10-30T02:00:00.123-10:00", "1969-12-31T23:59:59Z", "2000-03-01T12:30:00+05:30",
+        "2100-02-28T08:00:00-08:00"};
+    for (String tstamp : tstamps) {
+      XMLGregorianCalendar timestamp = Tstamp.makeTimestamp(tstamp);
+      assertEquals("Checking " + tstamp, timestamp.toGregorianCalendar().getTimeInMillis(), 
+          EpochTime.toMillis(timestamp));
+    }
+    long now = System.currentTimeMillis();
+    assertEquals("Checking round trip", now, EpochTime.toMillis(EpochTime.toTimestamp(now)));
+  }
+  
+  /**
+   * Tests the day boundaries, including repeated lookups on the cached day.
+   */
+  @Test
+  public void testDays() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.set(2008, Calendar.JANUARY, 15, 0, 0, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    long start = calendar.getTimeInMillis();
+    calendar.set(Calendar.HOUR_OF_DAY, 13);
+    calendar.set(Calendar.MINUTE, 45);
+    long afternoon = calendar.getTimeInMillis();
+    for (int i = 0; i < 2; i++) {
+      assertEquals("Checking start of day", start, EpochTime.startOfDay(afternoon));
+      assertEquals("Checking time of day", (13 * 60 + 45) * EpochTime.MILLIS_PER_MINUTE, 
+          EpochTime.millisOfDay(afternoon));
+      assertEquals("Checking midnight", 0, EpochTime.millisOfDay(start));
+      assertEquals("Checking previous day", start - EpochTime.MILLIS_PER_DAY, 
+          EpochTime.startOfDay(start - 1));
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package org.hackystat.dailyprojectdata.resource.dailyprojectdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests the splitting of sensor data refs by day used by range requests.
+ * @author Philip Johnson
+ */
+public class TestSplitByDay {
+
+  /**
+   * Checks that refs are assigned to the day containing them, that refs outside of the days 
+   * are dropped, and that non-consecutive days are handled.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSplitByDay() throws Exception {
+    List<SensorDataRef> refs = makeRefs();
+    List<XMLGregorianCalendar> days = new ArrayList<XMLGregorianCalendar>();
+    days.add(Tstamp.makeTimestamp("2007-04-29"));
+    days.add(Tstamp.makeTimestamp("2007-04-30"));
+    days.add(Tstamp.makeTimestamp("2007-05-02"));
+    List<List<SensorDataRef>> byDay = DpdResource.splitByDay(refs, days, false);
+    assertEquals("Checking days", 3, byDay.size());
+    assertEquals("Checking 04-29", 1, byDay.get(0).size());
+    assertEquals("Checking 04-30", 2, byDay.get(1).size());
+    assertEquals("Checking 05-02", 1, byDay.get(2).size());
+  }
+  
+  /**
+   * Checks that cumulative splitting includes all refs up to the end of each day.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testCumulativeSplitByDay() throws Exception {
+    List<SensorDataRef> refs = makeRefs();
+    List<XMLGregorianCalendar> days = new ArrayList<XMLGregorianCalendar>();
+    days.add(Tstamp.makeTimestamp("2007-04-30"));
+    days.add(Tstamp.makeTimestamp("2007-05-02"));
+    List<List<SensorDataRef>> byDay = DpdResource.splitByDay(refs, days, true);
+    assertEquals("Checking through 04-30", 4, byDay.get(0).size());
+    assertEquals("Checking through 05-02", 6, byDay.get(1).size());
+  }
+  
+  /**
+   * Returns refs on 04-28, 04-29, 04-30 (two), 05-01, and 05-02, out of order.
+   * @return The refs.
+   * @throws Exception If problems occur.
+   */
+  private List<SensorDataRef> makeRefs() throws Exception {
+    List<SensorDataRef> refs = new ArrayList<SensorDataRef>();
+    refs.add(makeRef("2007-05-01T12:00:00"));
+    refs.add(makeRef("2007-04-30T02:00:00"));
+    refs.add(makeRef("2007-04-28T10:00:00"));
+    refs.add(makeRef("2007-04-29T23:55:00"));
+    refs.add(makeRef("2007-05-02T00:00:00"));
+    refs.add(makeRef("2007-04-30T23:59:59"));
+    return refs;
+  }
+  
+  /**
+   * Returns a ref with the given timestamp.
+   * @param tstamp The timestamp.
+   * @return The ref.
+   * @throws Exception If problems occur.
+   */
+  private SensorDataRef makeRef(String tstamp) throws Exception {
+    SensorDataRef ref = new SensorDataRef();
+    ref.setTimestamp(Tstamp.makeTimestamp(tstamp));
+    return ref;
+  }
+}
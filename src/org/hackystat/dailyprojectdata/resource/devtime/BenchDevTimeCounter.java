@@ -0,0 +1,83 @@
+package org.hackystat.dailyprojectdata.resource.devtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Benchmarks DevTimeCounter on a day's DevEvent timestamps, given as XMLGregorianCalendars
+ * in the "calendar" variant and as epoch milliseconds in the "millis" variant.
+ * @author Philip Johnson
+ */
+public class BenchDevTimeCounter extends Benchmark {
+
+  /** The DevEvent timestamps. */
+  private List<XMLGregorianCalendar> timestamps;
+
+  /** The DevEvent timestamps in epoch milliseconds. */
+  private long[] millis;
+
+  /** The start of the day of the DevEvents, in epoch milliseconds. */
+  private long dayStart;
+
+  /**
+   * Returns the timestamp representations compared.
+   * @return The variants.
+   */
+  @Override
+  public String[] getVariants() {
+    return new String[] {"calendar", "millis"};
+  }
+
+  /**
+   * Generates the DevEvent timestamps.
+   * @param size The number of DevEvents.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.timestamps = new ArrayList<XMLGregorianCalendar>(size);
+    SensorDataWorkload workload = new SensorDataWorkload(size);
+    this.dayStart = workload.getDayStart();
+    for (SensorData data : workload.makeDevEvents(size)) {
+      this.timestamps.add(data.getTimestamp());
+    }
+    this.millis = new long[size];
+    for (int i = 0; i < size; i++) {
+      this.millis[i] = EpochTime.toMillis(this.timestamps.get(i));
+    }
+  }
+
+  /**
+   * Counts the DevTime of all of the timestamps.
+   * @return The DevTime.
+   */
+  @Override
+  public long run() {
+    if ("millis".equals(getVariant())) {
+      DevTimeCounter counter = new DevTimeCounter(this.dayStart);
+      for (long timestamp : this.millis) {
+        counter.addDevEvent(timestamp);
+      }
+      return counter.getDevTimeMinutes();
+    }
+    DevTimeCounter counter = new DevTimeCounter();
+    for (XMLGregorianCalendar timestamp : this.timestamps) {
+      counter.addDevEvent(timestamp);
+    }
+    return counter.getDevTimeMinutes();
+  }
+
+  /** Releases the timestamps. */
+  @Override
+  public void tearDown() {
+    this.timestamps = null;
+    this.millis = null;
+  }
+}
@@ -0,0 +1,58 @@
+package org.hackystat.dailyprojectdata.resource.devtime;
+
+import java.util.List;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Benchmarks MemberDevTimeCounter on a day's DevEvents from skewed project members,
+ * including the conversion of timestamps to epoch milliseconds and the per-member totals 
+ * computed by the DevTime resource.
+ * @author Philip Johnson
+ */
+public class BenchMemberDevTimeCounter extends Benchmark {
+
+  /** The DevEvents. */
+  private List<SensorData> devEvents;
+
+  /** The start of the day of the DevEvents, in epoch milliseconds. */
+  private long dayStart;
+
+  /**
+   * Generates the DevEvents.
+   * @param size The number of DevEvents.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    SensorDataWorkload workload = new SensorDataWorkload(size);
+    this.devEvents = workload.makeDevEvents(size);
+    this.dayStart = workload.getDayStart();
+  }
+
+  /**
+   * Counts the DevTime of each member and the total.
+   * @return The sum of the member and total DevTimes.
+   */
+  @Override
+  public long run() {
+    MemberDevTimeCounter counter = new MemberDevTimeCounter(this.dayStart);
+    for (SensorData data : this.devEvents) {
+      counter.addMemberDevEvent(data.getOwner(), EpochTime.toMillis(data.getTimestamp()));
+    }
+    long result = counter.getTotalDevTime().longValue();
+    for (String member : counter.getMembers()) {
+      result += counter.getMemberDevTime(member).longValue();
+    }
+    return result;
+  }
+
+  /** Releases the DevEvents. */
+  @Override
+  public void tearDown() {
+    this.devEvents = null;
+  }
+}
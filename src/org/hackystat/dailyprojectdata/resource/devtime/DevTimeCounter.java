@@ -4,6 +4,8 @@ import java.math.BigInteger;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
+
 /**
  * Provides a facility for counting up the DevTime associated with a series of timestamps
  * associated with DevEvent sensor data.  
@@ -17,16 +19,51 @@ import javax.xml.datatype.XMLGregorianCalendar;
  * a timestamp.  The client is responsible for assuring that all of the timestamps are associated
  * with the same day. 
  * 
+ * Timestamps given as epoch milliseconds are instead placed by the time elapsed since the 
+ * start of the day passed to the constructor, which is their time of day in the offset of that
+ * start.  A day with a daylight saving time change thus has 276 or 300 intervals rather 
+ * than 288, and its DevTime ranges up to 1380 or 1500 minutes. 
+ * 
+ * The intervals are held as a bitset of five longs, so adding a DevEvent sets one bit and 
+ * the DevTime is counted with Long.bitCount. 
+ * 
  * @author Philip Johnson
  */
 public class DevTimeCounter {
   
-  /** Array of five minute intervals, initialized to false, indicating zero DevTime. */
-  private boolean[] devTimeArray = new boolean[288];
+  /** The number of five minute intervals in a day. */
+  private static final int INTERVALS = 288;
+  
+  /** The number of five minute intervals in a day that gains an hour. */
+  private static final int MAX_INTERVALS = 300;
+  
+  /** The number of minutes in an interval. */
+  private static final int INTERVAL_MINUTES = 5;
+  
+  /** The number of milliseconds in an interval. */
+  private static final long INTERVAL_MILLIS = EpochTime.MILLIS_PER_DAY / INTERVALS;
+  
+  /** Indicates that no start of the day was given. */
+  private static final long NO_DAY_START = Long.MIN_VALUE;
+  
+  /** One bit per five minute interval, initialized to zero, indicating zero DevTime. */
+  private final long[] intervals = new long[(MAX_INTERVALS + 63) / 64];
+  
+  /** The start of the day in epoch milliseconds, or NO_DAY_START. */
+  private final long dayStart;
   
   /** Create a new DevTimeCounter, initialized to zero DevTime. */
   public DevTimeCounter () {
-    // Do nothing
+    this(NO_DAY_START);
+  }
+  
+  /**
+   * Create a new DevTimeCounter, initialized to zero DevTime, for DevEvents given as epoch 
+   * milliseconds.
+   * @param dayStart The start of the day, in epoch milliseconds. 
+   */
+  public DevTimeCounter (long dayStart) {
+    this.dayStart = dayStart;
   }
   
   /**
@@ -39,25 +76,57 @@ public class DevTimeCounter {
     int minutes = timestamp.getMinute();
     int seconds = timestamp.getSecond();
     int totalSeconds = seconds + (minutes * 60) + (hours * 60 * 60);
-    int binSize = (60 * 60 * 24) / 288;
-    int index = (totalSeconds / binSize);
-    devTimeArray[index] = true;
+    setInterval(totalSeconds / (INTERVAL_MINUTES * 60));
+  }
+  
+  /**
+   * Update the DevTimeCounter with a new DevEvent, given as epoch milliseconds.  Its five 
+   * minute interval, counted from the start of the day, will now count as DevTime (if it 
+   * didn't already).  DevEvents outside the day are ignored. 
+   * @param timestamp The timestamp to add, in epoch milliseconds. 
+   * @throws IllegalStateException If this counter was created without the start of the day.
+   */
+  public void addDevEvent(long timestamp) {
+    if (this.dayStart == NO_DAY_START) {
+      throw new IllegalStateException("No start of the day for epoch millisecond DevEvents");
+    }
+    long elapsed = timestamp - this.dayStart;
+    if ((elapsed >= 0) && (elapsed < MAX_INTERVALS * INTERVAL_MILLIS)) {
+      setInterval((int) (elapsed / INTERVAL_MILLIS));
+    }
+  }
+  
+  /**
+   * Marks the interval with the given index as DevTime. 
+   * @param index The index of the interval, from 0 to 299.
+   */
+  private void setInterval(int index) {
+    this.intervals[index >>> 6] |= 1L << index;
+  }
+  
+  /**
+   * Returns the total DevTime (in minutes, as a multiple of five) associated with this
+   * DevTimeCounter.
+   * @return The total DevTime, from 0 to 1440 (5 * 288), or to 1500 on a day that gains 
+   * an hour. 
+   */
+  public int getDevTimeMinutes() {
+    int count = 0;
+    for (long word : this.intervals) {
+      count += Long.bitCount(word);
+    }
+    return count * INTERVAL_MINUTES;
   }
   
   /**
    * Returns the total DevTime (in minutes, as a multiple of five) associated with this
    * DevTimeCounter.
    * Returns a BigInteger because that's what the XML wants.  
-   * @return The total DevTime, from 0 to 1440 (5 * 288). 
+   * @return The total DevTime, from 0 to 1440 (5 * 288), or to 1500 on a day that gains 
+   * an hour. 
    */
   public BigInteger getDevTime() {
-    int devTime = 0;
-    for (int index = 0; index < 288; index++) {
-      if (devTimeArray[index]) {
-        devTime += 5;
-      }
-    }
-    return BigInteger.valueOf(devTime);
+    return BigInteger.valueOf(getDevTimeMinutes());
   }
   
 
@@ -10,7 +10,8 @@ import javax.xml.datatype.XMLGregorianCalendar;
 
 /**
  * An abstraction that collects the DevTime associated with a set of Project Members.
- * Implemented using a map of Members to DevTimeCounter instances.  
+ * Implemented using a map of Members to DevTimeCounter instances, each of which holds 
+ * its member's five minute intervals as a bitset.  
  * @author Philip Johnson
  *
  */
@@ -19,9 +20,20 @@ public class MemberDevTimeCounter {
   /** The map of member emails to their DevTimeCounter. */ 
   private Map<String, DevTimeCounter> member2devtime = new HashMap<String, DevTimeCounter>();
   
+  /** The start of the day in epoch milliseconds, or null if not given. */
+  private final Long dayStart;
+  
   /** Create a new MemberDevTimeCounter. */
   public MemberDevTimeCounter() {
-    // does nothing. 
+    this.dayStart = null;
+  }
+  
+  /**
+   * Create a new MemberDevTimeCounter for DevEvents given as epoch milliseconds. 
+   * @param dayStart The start of the day, in epoch milliseconds. 
+   */
+  public MemberDevTimeCounter(long dayStart) {
+    this.dayStart = dayStart;
   }
 
   /**
@@ -30,22 +42,43 @@ public class MemberDevTimeCounter {
    * @param timestamp The timestamp associated with the DevEvent associated with the member. 
    */
   public void addMemberDevEvent(String member, XMLGregorianCalendar timestamp) {
-    if (!member2devtime.containsKey(member)) {
-      member2devtime.put(member, new DevTimeCounter());
+    getCounter(member).addDevEvent(timestamp);
+  }
+  
+  /**
+   * Updates this abstraction with the DevEvent associated with the Project member, 
+   * whose timestamp is given as epoch milliseconds. Requires the start of the day. 
+   * @param member The member. 
+   * @param timestamp The timestamp of the DevEvent, in epoch milliseconds. 
+   */
+  public void addMemberDevEvent(String member, long timestamp) {
+    getCounter(member).addDevEvent(timestamp);
+  }
+  
+  /**
+   * Returns the DevTimeCounter of member, creating it if necessary. 
+   * @param member The member.
+   * @return The member's DevTimeCounter.
+   */
+  private DevTimeCounter getCounter(String member) {
+    DevTimeCounter counter = member2devtime.get(member);
+    if (counter == null) {
+      counter = (this.dayStart == null) ? new DevTimeCounter() : new DevTimeCounter(this.dayStart);
+      member2devtime.put(member, counter);
     }
-    member2devtime.get(member).addDevEvent(timestamp);
+    return counter;
   }
   
   /**
-   * Return the aggregate DevTime for all members. 
+   * Return the aggregate DevTime for all members, which is the sum of their DevTimes. 
    * @return The total DevTime. 
    */
   public BigInteger getTotalDevTime() {
-    BigInteger totalDevTime = BigInteger.valueOf(0);
+    int totalDevTime = 0;
     for (DevTimeCounter counter : member2devtime.values()) {
-      totalDevTime = totalDevTime.add(counter.getDevTime());
+      totalDevTime += counter.getDevTimeMinutes();
     }
-    return totalDevTime;
+    return BigInteger.valueOf(totalDevTime);
   }
   
   /**
@@ -54,12 +87,8 @@ public class MemberDevTimeCounter {
    * @return The member's devtime. 
    */
   public BigInteger getMemberDevTime(String member) {
-    if (member2devtime.containsKey(member)) {
-      return member2devtime.get(member).getDevTime();
-    }
-    else {
-      return BigInteger.valueOf(0);
-    }
+    DevTimeCounter counter = member2devtime.get(member);
+    return (counter == null) ? BigInteger.valueOf(0) : counter.getDevTime();
   }
   
   /**
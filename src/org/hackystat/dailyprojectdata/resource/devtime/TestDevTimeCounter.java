@@ -41,4 +41,50 @@ public class TestDevTimeCounter  {
     counter.addDevEvent(tstamp6);
     assertEquals("Test sixth", BigInteger.valueOf(20), counter.getDevTime());
   }
+  
+  /**
+   * Test the epoch milliseconds entry point of the DevTimeCounter abstraction.
+   * @throws Exception If problems occur.
+   */
+  @Test public void testDevTimeCounterMillis() throws Exception {
+    String[] tstamps = {"2007-08-01T00:00:00", "2007-08-01T00:04:59", "2007-08-01T00:05:00",
+        "2007-08-01T00:05:01", "2007-08-01T00:10:00", "2007-08-01T23:59:59"};
+    int[] devTimes = {5, 5, 10, 10, 15, 20};
+    DevTimeCounter counter = new DevTimeCounter(Tstamp.makeTimestamp("2007-08-01T00:00:00")
+        .toGregorianCalendar().getTimeInMillis());
+    for (int i = 0; i < tstamps.length; i++) {
+      XMLGregorianCalendar tstamp = Tstamp.makeTimestamp(tstamps[i]);
+      counter.addDevEvent(tstamp.toGregorianCalendar().getTimeInMillis());
+      assertEquals("Test " + tstamps[i], BigInteger.valueOf(devTimes[i]), counter.getDevTime());
+    }
+  }
+  
+  /**
+   * Test that epoch millisecond DevEvents are placed by the time elapsed since the start of 
+   * the day, whatever this server's default time zone. On 2007-11-04 US Eastern time gained 
+   * an hour, so 1:30 occurred twice and the day lasted 25 hours. 
+   * @throws Exception If problems occur.
+   */
+  @Test public void testDaylightSavingTime() throws Exception {
+    DevTimeCounter counter = new DevTimeCounter(getMillis("2007-11-04T00:00:00.000-04:00"));
+    counter.addDevEvent(getMillis("2007-11-04T01:30:00.000-04:00"));
+    assertEquals("Test first 1:30", 5, counter.getDevTimeMinutes());
+    counter.addDevEvent(getMillis("2007-11-04T01:30:00.000-05:00"));
+    assertEquals("Test second 1:30", 10, counter.getDevTimeMinutes());
+    counter.addDevEvent(getMillis("2007-11-04T23:59:00.000-05:00"));
+    assertEquals("Test last interval", 15, counter.getDevTimeMinutes());
+    counter.addDevEvent(getMillis("2007-11-05T00:00:00.000-05:00"));
+    counter.addDevEvent(getMillis("2007-11-03T23:59:00.000-04:00"));
+    assertEquals("Test other days", 15, counter.getDevTimeMinutes());
+  }
+  
+  /**
+   * Returns the epoch milliseconds of a timestamp. 
+   * @param tstamp The timestamp string.
+   * @return The epoch milliseconds.
+   * @throws Exception If tstamp is not a timestamp.
+   */
+  private static long getMillis(String tstamp) throws Exception {
+    return Tstamp.makeTimestamp(tstamp).toGregorianCalendar().getTimeInMillis();
+  }
 }
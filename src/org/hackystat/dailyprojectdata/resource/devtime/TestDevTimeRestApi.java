@@ -2,6 +2,8 @@ package org.hackystat.dailyprojectdata.resource.devtime;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+
 import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.hackystat.dailyprojectdata.client.DailyProjectDataClient;
@@ -56,6 +58,37 @@ public class TestDevTimeRestApi extends DailyProjectDataTestHelper {
     assertEquals("Checking MemberData size", 1, devTime.getMemberData().size());
   }
   
+  /**
+   * Test that GET {host}/devtime/{user}/default/{start}/{end} returns one DPD per day,
+   * each equal to the DPD for the corresponding single day request.
+   * @throws Exception If problems occur.
+   */
+  @Test public void getDevTimeRange() throws Exception {
+    SensorDatas batchData = new SensorDatas();
+    batchData.getSensorData().add(makeDevEvent("2007-04-30T02:00:00", user));
+    batchData.getSensorData().add(makeDevEvent("2007-04-30T02:10:00", user));
+    batchData.getSensorData().add(makeDevEvent("2007-04-29T23:55:00", user));
+    batchData.getSensorData().add(makeDevEvent("2007-05-01T00:01:00", user));
+    SensorBaseClient.registerUser(getSensorBaseHostName(), user);
+    SensorBaseClient client = new SensorBaseClient(getSensorBaseHostName(), user, user);
+    client.authenticate();
+    client.putSensorDataBatch(batchData);
+    
+    DailyProjectDataClient dpdClient = new DailyProjectDataClient(getDailyProjectDataHostName(), 
+        user, user);
+    dpdClient.authenticate(); 
+    List<DevTimeDailyProjectData> devTimes = dpdClient.getDevTimes(user, "Default", 
+        Tstamp.makeTimestamp("2007-04-29"), Tstamp.makeTimestamp("2007-05-01"));
+    assertEquals("Checking number of days", 3, devTimes.size());
+    assertEquals("Checking day 1", 5, devTimes.get(0).getTotalDevTime().intValue());
+    assertEquals("Checking day 2", 10, devTimes.get(1).getTotalDevTime().intValue());
+    assertEquals("Checking day 3", 5, devTimes.get(2).getTotalDevTime().intValue());
+    DevTimeDailyProjectData devTime = dpdClient.getDevTime(user, "Default", 
+        Tstamp.makeTimestamp("2007-04-30"));
+    assertEquals("Checking single day", devTime.getTotalDevTime(), 
+        devTimes.get(1).getTotalDevTime());
+  }
+  
   /**
    * Creates a sample SensorData DevEvent instance given a timestamp and a user. 
    * @param tstampString The timestamp as a string
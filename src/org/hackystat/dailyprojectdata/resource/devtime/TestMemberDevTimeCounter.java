@@ -34,4 +34,30 @@ public class TestMemberDevTimeCounter  {
     assertEquals("Test fourth", BigInteger.valueOf(5), counter.getMemberDevTime(member2));
     assertEquals("Test fifth", 2, counter.getMembers().size());
   }
+  
+  /**
+   * Test the epoch milliseconds entry point on a day that lost an hour: on 2007-03-11 US 
+   * Eastern time went from 1:59 to 3:00, so the day lasted 23 hours. 
+   * @throws Exception If problems occur.
+   */
+  @Test public void testDaylightSavingTime() throws Exception {
+    long start = getMillis("2007-03-11T00:00:00.000-05:00");
+    MemberDevTimeCounter counter = new MemberDevTimeCounter(start);
+    counter.addMemberDevEvent("member1", getMillis("2007-03-11T01:58:00.000-05:00"));
+    counter.addMemberDevEvent("member1", getMillis("2007-03-11T03:01:00.000-04:00"));
+    counter.addMemberDevEvent("member2", getMillis("2007-03-11T23:59:00.000-04:00"));
+    assertEquals("Test member1", BigInteger.valueOf(10), counter.getMemberDevTime("member1"));
+    assertEquals("Test member2", BigInteger.valueOf(5), counter.getMemberDevTime("member2"));
+    assertEquals("Test total", BigInteger.valueOf(15), counter.getTotalDevTime());
+  }
+  
+  /**
+   * Returns the epoch milliseconds of a timestamp. 
+   * @param tstamp The timestamp string.
+   * @return The epoch milliseconds.
+   * @throws Exception If tstamp is not a timestamp.
+   */
+  private static long getMillis(String tstamp) throws Exception {
+    return Tstamp.makeTimestamp(tstamp).toGregorianCalendar().getTimeInMillis();
+  }
 }
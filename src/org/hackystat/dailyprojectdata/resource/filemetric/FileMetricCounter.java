@@ -5,13 +5,13 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.client.SensorBaseClientException;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
 import org.hackystat.utilities.time.period.Day;
-import org.hackystat.utilities.tstamp.Tstamp;
 
 /**
  * Provides a facility for counting the FileMetrics associated with a
@@ -27,7 +27,8 @@ import org.hackystat.utilities.tstamp.Tstamp;
 public class FileMetricCounter {
 
   private String lastTool;
-  private XMLGregorianCalendar lastTime;
+  /** The runtime of the last run, in epoch milliseconds. */
+  private long lastTime;
   private List<SensorData> fileMetrics;
   private SensorBaseClient sbClient;
   private long totalLines;
@@ -40,7 +41,7 @@ public class FileMetricCounter {
   public FileMetricCounter(SensorBaseClient client) {
     this.lastTool = "";
     Day first = Day.getInstance(1000, 0, 1); // pick a very early Day
-    this.lastTime = Tstamp.makeTimestamp(first);
+    this.lastTime = first.getFirstTickOfTheDay();
     this.fileMetrics = new ArrayList<SensorData>();
     this.sbClient = client;
     this.totalLines = 0;
@@ -56,9 +57,8 @@ public class FileMetricCounter {
   public void add(SensorDataRef ref) {
     try {
       SensorData data = sbClient.getSensorData(ref);
-      XMLGregorianCalendar refTime = data.getRuntime();
-      if (Tstamp.equal(lastTime, refTime)) {
-        data = sbClient.getSensorData(ref);
+      long refTime = EpochTime.toMillis(data.getRuntime());
+      if (lastTime == refTime) {
         if (lastTool.equals(data.getTool())) {
           // only add data from the same tool.
           List<Property> props = data.getProperties().getProperty();
@@ -72,7 +72,7 @@ public class FileMetricCounter {
         }
 
       } 
-      else if (Tstamp.greaterThan(refTime, lastTime)) {
+      else if (refTime > lastTime) {
         // newer time so replace everything
         lastTime = refTime;
         fileMetrics = new ArrayList<SensorData>();
@@ -112,7 +112,7 @@ public class FileMetricCounter {
    * @return The last time a size counting tool was run.
    */
   public XMLGregorianCalendar getLastTime() {
-    return lastTime;
+    return EpochTime.toTimestamp(lastTime);
   }
 
   /**
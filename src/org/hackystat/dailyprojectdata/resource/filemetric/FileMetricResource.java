@@ -1,34 +1,19 @@
 package org.hackystat.dailyprojectdata.resource.filemetric;
 
-import java.io.StringWriter;
 import java.util.List;
-import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdRepresentation;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdResource;
 import org.hackystat.dailyprojectdata.resource.filemetric.jaxb.FileData;
 import org.hackystat.dailyprojectdata.resource.filemetric.jaxb.FileMetricDailyProjectData;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
-import org.hackystat.utilities.tstamp.Tstamp;
 import org.restlet.Context;
-import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.resource.Representation;
-import org.restlet.resource.Variant;
-import org.w3c.dom.Document;
 
 /**
  * Implements the Resource for processing GET
@@ -37,7 +22,7 @@ import org.w3c.dom.Document;
  * 
  * @author Cam Moore, Philip Johnson
  */
-public class FileMetricResource extends DailyProjectDataResource {
+public class FileMetricResource extends DpdResource {
   
   private String sizeMetric;
   
@@ -57,104 +42,74 @@ public class FileMetricResource extends DailyProjectDataResource {
   }
 
   /**
-   * Returns an FileMetricDailyProjectData instance representing the FileMetric
-   * associated with the sizeMetric for the Project data, or null if not authorized.
-   * Authenticated user must be the uriUser, or Admin, or project member. 
-   * 
-   * @param variant The representational variant requested.
-   * @return The representation.
+   * Returns the tool and sizeMetric of this request, which are logged after its type.
+   * @return The parameters.
    */
   @Override
-  public Representation represent(Variant variant) {
-    Logger logger = this.server.getLogger();
-    logger.fine("FileMetric DPD: Starting");
-    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
-      try {
-        // [1] get the SensorBaseClient for the user making this request.
-        SensorBaseClient client = super.getSensorBaseClient();
-        // [2] Check the front side cache and return if the DPD is found and is OK to access.
-        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, uriString);
-        if ((cachedDpd != null) && client.inProject(uriUser, project)) {
-          return super.getStringRepresentation(cachedDpd);
-        }
-        // [2] Get the Snapshot containing the last sent FileMetric data for this Project.
-        XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
-        XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
-        logger.fine("FileMetric DPD: Requesting index: " + uriUser + " " + project);
-        SensorDataIndex snapshot = (this.tool == null) ?
-            // Get the latest snapshot from any tool.
-            client.getProjectSensorDataSnapshot(this.uriUser, this.project, startTime, endTime, 
-            "FileMetric") :
-              // Get the latest snapshot from the specified tool.
-              client.getProjectSensorDataSnapshot(this.uriUser, this.project, startTime, endTime, 
-                  "FileMetric", this.tool);
+  protected String[] getLogParameters() {
+    return new String[] {this.tool, this.sizeMetric};
+  }
 
-        logger.fine("FileMetric DPD: Got index: " + 
-            snapshot.getSensorDataRef().size() + " instances. Now retrieving instances.");
-        // [3] create and return the FileMetricDailyProjectData instance.
-        double total = 0;
-        FileMetricDailyProjectData fileDpd = new FileMetricDailyProjectData();
-        fileDpd.setOwner(uriUser);
-        fileDpd.setProject(project);
-        fileDpd.setStartTime(startTime);
-        fileDpd.setSizeMetric(this.sizeMetric);
-        
-        if (!snapshot.getSensorDataRef().isEmpty()) {
-          for (SensorDataRef ref : snapshot.getSensorDataRef()) {
-            SensorData data = client.getSensorData(ref);
-            fileDpd.setOwner(data.getOwner());
-            fileDpd.setTool(data.getTool());
-            Double value = getNumberProperty(data, this.sizeMetric);
-            if (value != null) { //NOPMD
-              FileData fileData = new FileData();
-              fileData.setFileUri(data.getResource());
-              fileData.setSizeMetricValue(value);
-              fileDpd.getFileData().add(fileData);
-              total += value;
-            }
-          }
-        }
-        fileDpd.setTotal(total);
-        String xmlData = makeFileMetric(fileDpd);
-        if (!Tstamp.isTodayOrLater(startTime)) {
-          this.server.getFrontSideCache().put(uriUser, project, uriString, xmlData);
+  /**
+   * Returns the representation of the FileMetric DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param refs The refs to the sensor data for the day.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
+   */
+  @Override
+  protected DpdRepresentation makeDpd(SensorBaseClient client, XMLGregorianCalendar startTime,
+      List<SensorDataRef> refs) throws Exception {
+    // Create and return the FileMetricDailyProjectData instance.
+    double total = 0;
+    FileMetricDailyProjectData fileDpd = new FileMetricDailyProjectData();
+    fileDpd.setOwner(uriUser);
+    fileDpd.setProject(project);
+    fileDpd.setStartTime(startTime);
+    fileDpd.setSizeMetric(this.sizeMetric);
+
+    if (!refs.isEmpty()) {
+      for (SensorData data : fetchSnapshotData(client, startTime, this.tool, refs)) {
+        fileDpd.setOwner(data.getOwner());
+        fileDpd.setTool(data.getTool());
+        Double value = getNumberProperty(data, this.sizeMetric);
+        if (value != null) { //NOPMD
+          FileData fileData = new FileData();
+          fileData.setFileUri(data.getResource());
+          fileData.setSizeMetricValue(value);
+          fileDpd.getFileData().add(fileData);
+          total += value;
         }
-        logRequest("FileMetric", this.tool, this.sizeMetric);
-        return super.getStringRepresentation(xmlData);
-      } 
-      catch (Exception e) {
-        setStatusError("Error creating Coverage DPD.", e);
-        return null;
       }
     }
-    return null;
+    fileDpd.setTotal(total);
+    return super.makeRepresentation(fileDpd, "FileMetricJAXB");
   }
 
   /**
-   * Returns the passed SensorData instance as a String encoding of its XML
-   * representation.
-   * 
-   * @param data The SensorData instance.
-   * @return The XML String representation.
-   * @throws Exception If problems occur during translation.
+   * Returns the type of sensor data from which FileMetric DPDs are computed.
+   * @return "FileMetric".
+   */
+  @Override
+  protected String getSensorDataType() {
+    return "FileMetric";
+  }
+
+  /**
+   * Returns the refs to the latest snapshot of FileMetric data sent during each day, from
+   * the requested tool if any.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @return One list of refs for each day.
+   * @throws Exception If problems occur retrieving the snapshots.
    */
-  private String makeFileMetric(FileMetricDailyProjectData data) throws Exception {
-    JAXBContext fileMetricJAXB = (JAXBContext) this.server.getContext().getAttributes().get(
-        "FileMetricJAXB");
-    Marshaller marshaller = fileMetricJAXB.createMarshaller();
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-    DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-    Document doc = documentBuilder.newDocument();
-    marshaller.marshal(data, doc);
-    DOMSource domSource = new DOMSource(doc);
-    StringWriter writer = new StringWriter();
-    StreamResult result = new StreamResult(writer);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    transformer.transform(domSource, result);
-    return writer.toString();
+  @Override
+  protected List<List<SensorDataRef>> getRefsByDay(SensorBaseClient client,
+      List<XMLGregorianCalendar> days) throws Exception {
+    return getSnapshotRefsByDay(client, days, this.tool);
   }
+
   
   /**
    * Returns a Double as the value of key in data, or null if not found. Also null if
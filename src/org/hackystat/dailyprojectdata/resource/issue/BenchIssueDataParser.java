@@ -0,0 +1,105 @@
+package org.hackystat.dailyprojectdata.resource.issue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Benchmarks IssueDataParser on Issue instances with several recorded changes each,
+ * resolving each issue's state at the end of the workload day as the Issue resource does.
+ * The "scan" variant scans the properties once per key, as the parser did before it parsed
+ * each instance into an IssueHistory; the "history" variant looks up a pre-parsed 
+ * IssueHistory, as the Issue resources do through the IssueStateIndex.
+ * @author Philip Johnson
+ */
+public class BenchIssueDataParser extends Benchmark {
+
+  /** The Issue instances. */
+  private List<SensorData> issues;
+
+  /** The parser. */
+  private IssueDataParser parser;
+
+  /** The pre-parsed histories of the instances. */
+  private List<IssueHistory> histories;
+
+  /** The time at which the issues' state is resolved. */
+  private XMLGregorianCalendar endTime;
+
+  /**
+   * Returns the lookup methods compared.
+   * @return The variants.
+   */
+  @Override
+  public String[] getVariants() {
+    return new String[] {"scan", "parse", "history"};
+  }
+
+  /**
+   * Generates the Issue instances.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.issues = new SensorDataWorkload(size).makeIssues(size);
+    this.parser = new IssueDataParser(Logger.getLogger(getClass().getName()));
+    this.endTime = Tstamp.incrementDays(Tstamp.makeTimestamp(SensorDataWorkload.DAY), 1);
+    this.histories = new ArrayList<IssueHistory>(size);
+    for (SensorData data : this.issues) {
+      this.histories.add(this.parser.getIssueHistory(data, 0));
+    }
+  }
+
+  /**
+   * Resolves the state of each issue, and counts the open ones.
+   * @return The number of open issues.
+   */
+  @Override
+  public long run() {
+    long result = 0;
+    if ("history".equals(getVariant())) {
+      long endMillis = this.endTime.toGregorianCalendar().getTimeInMillis();
+      for (IssueHistory history : this.histories) {
+        if (this.parser.isOpenStatus(history.getIssueData(endMillis).getStatus())) {
+          result++;
+        }
+      }
+      return result;
+    }
+    boolean scan = "scan".equals(getVariant());
+    for (SensorData data : this.issues) {
+      String status = null;
+      if (scan) {
+        // Resolve all five keys, as getIssueDpd did.
+        for (String key : IssueHistory.STATE_KEYS) {
+          String value = this.parser.getValueWithKeyWhen(data, key, this.endTime);
+          if (IssueDataParser.STATUS_PROPERTY_KEY.equals(key)) {
+            status = value;
+          }
+        }
+      }
+      else {
+        status = this.parser.getIssueDpd(data, this.endTime).getStatus();
+      }
+      if (this.parser.isOpenStatus(status)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /** Releases the Issue instances. */
+  @Override
+  public void tearDown() {
+    this.issues = null;
+    this.histories = null;
+  }
+}
@@ -59,34 +59,39 @@ public class IssueDataParser {
    * @return the IssueData.
    */
   public IssueData getIssueDpd(SensorData issueSensorData, final XMLGregorianCalendar timestamp) {
-    IssueData issueDpd = new IssueData();
+    // Parse the history once rather than scanning the properties once per key.
+    return this.getIssueHistory(issueSensorData, 0).getIssueData(timestamp);
+  }
 
-    //get id
+  /**
+   * Parse the state history of the issue into time-sorted arrays, so that its state at any 
+   * time can be looked up by binary search without parsing the sensordata again.
+   * @param issueSensorData the given sensordata.
+   * @param fetchedAt the time, in milliseconds, at which the sensordata was retrieved.
+   * @return the IssueHistory.
+   */
+  public IssueHistory getIssueHistory(SensorData issueSensorData, long fetchedAt) {
+    List<String> stateKeys = Arrays.asList(IssueHistory.STATE_KEYS);
+    Integer id = null;
+    for (Property property : issueSensorData.getProperties().getProperty()) {
+      if (id == null && ID_PROPERTY_KEY.equals(property.getKey())) {
+        id = Integer.valueOf(property.getValue());
+      }
+    }
+    IssueHistory history = new IssueHistory(id, fetchedAt);
     for (Property property : issueSensorData.getProperties().getProperty()) {
-      if (ID_PROPERTY_KEY.equals(property.getKey())) {
-        issueDpd.setId(Integer.valueOf(property.getValue()));
-        break;
+      if (stateKeys.contains(property.getKey())) {
+        try {
+          long time = extractTimestamp(property.getValue()).toGregorianCalendar()
+              .getTimeInMillis();
+          history.addTransition(property.getKey(), time, extractValue(property.getValue()));
+        }
+        catch (Exception e) {
+          logger.warning("Error when extracting timestamp from [" + property.getValue() + "]");
+        }
       }
     }
-    
-    //get latest type
-    issueDpd.setType(this.getValueWithKeyWhen(issueSensorData, TYPE_PROPERTY_KEY, timestamp));
-    
-    //get latest status
-    issueDpd.setStatus(this.getValueWithKeyWhen(issueSensorData, STATUS_PROPERTY_KEY, timestamp));
-    
-    //get latest priority
-    issueDpd.setPriority(
-        this.getValueWithKeyWhen(issueSensorData, PRIORITY_PROPERTY_KEY, timestamp));
-    
-    //get latest milestone
-    issueDpd.setMilestone(
-        this.getValueWithKeyWhen(issueSensorData, MILESTONE_PROPERTY_KEY, timestamp));
-    
-    //get latest owner
-    issueDpd.setOwner(this.getValueWithKeyWhen(issueSensorData, OWNER_PROPERTY_KEY, timestamp));
-    
-    return issueDpd;
+    return history;
   }
 
   /**
@@ -0,0 +1,184 @@
+package org.hackystat.dailyprojectdata.resource.issue;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.dailyprojectdata.resource.issue.jaxb.IssueData;
+
+/**
+ * The parsed history of one Issue instance: its id, and the time-ordered values of its Type,
+ * Status, Priority, Milestone, and Owner properties. The timestamps are held as epoch 
+ * milliseconds in sorted arrays, so the state of the issue at any time is found by binary 
+ * search, without re-parsing the instance's timestamped property values.
+ * @author Philip Johnson
+ */
+public class IssueHistory {
+
+  /** The keys whose values are tracked over time. */
+  static final String[] STATE_KEYS = {IssueDataParser.TYPE_PROPERTY_KEY, 
+    IssueDataParser.STATUS_PROPERTY_KEY, IssueDataParser.PRIORITY_PROPERTY_KEY, 
+    IssueDataParser.MILESTONE_PROPERTY_KEY, IssueDataParser.OWNER_PROPERTY_KEY};
+
+  /** The issue id, or null if the instance has none. */
+  private final Integer id;
+  
+  /** The time, in milliseconds, at which the instance was retrieved from the SensorBase. */
+  private final long fetchedAt;
+  
+  /** The transitions of each key, in time order. */
+  private final Map<String, Transitions> key2transitions = new HashMap<String, Transitions>();
+  
+  /**
+   * Creates an empty history. 
+   * @param id The issue id, or null. 
+   * @param fetchedAt The time at which the instance was retrieved.
+   */
+  IssueHistory(Integer id, long fetchedAt) {
+    this.id = id;
+    this.fetchedAt = fetchedAt;
+  }
+
+  /**
+   * Records that key took value at time. Transitions must be added in the order in which they
+   * appear in the instance's properties. 
+   * @param key The property key.
+   * @param time The time of the transition, in milliseconds.
+   * @param value The new value.
+   */
+  void addTransition(String key, long time, String value) {
+    Transitions transitions = this.key2transitions.get(key);
+    if (transitions == null) {
+      transitions = new Transitions();
+      this.key2transitions.put(key, transitions);
+    }
+    transitions.add(time, value);
+  }
+
+  /**
+   * Returns the issue id. 
+   * @return The id, or null if the instance has none.
+   */
+  public Integer getId() {
+    return this.id;
+  }
+  
+  /**
+   * Returns the time at which the instance was retrieved from the SensorBase. 
+   * @return The time in milliseconds.
+   */
+  public long getFetchedAt() {
+    return this.fetchedAt;
+  }
+  
+  /**
+   * Returns the value of key at the given time: the value of the latest transition at or 
+   * before time, or the first such transition in property order if several have that time.
+   * @param key The property key.
+   * @param time The time, in milliseconds.
+   * @return The value, or null if key had no value at that time.
+   */
+  public String getValue(String key, long time) {
+    Transitions transitions = this.key2transitions.get(key);
+    return (transitions == null) ? null : transitions.getValue(time);
+  }
+  
+  /**
+   * Returns the state of the issue at the given time. 
+   * @param time The time, in milliseconds.
+   * @return The IssueData.
+   */
+  public IssueData getIssueData(long time) {
+    IssueData issueData = new IssueData();
+    if (this.id != null) {
+      issueData.setId(this.id);
+    }
+    issueData.setType(getValue(IssueDataParser.TYPE_PROPERTY_KEY, time));
+    issueData.setStatus(getValue(IssueDataParser.STATUS_PROPERTY_KEY, time));
+    issueData.setPriority(getValue(IssueDataParser.PRIORITY_PROPERTY_KEY, time));
+    issueData.setMilestone(getValue(IssueDataParser.MILESTONE_PROPERTY_KEY, time));
+    issueData.setOwner(getValue(IssueDataParser.OWNER_PROPERTY_KEY, time));
+    return issueData;
+  }
+  
+  /**
+   * Returns the state of the issue at the given time. 
+   * @param time The time.
+   * @return The IssueData.
+   */
+  public IssueData getIssueData(XMLGregorianCalendar time) {
+    return getIssueData(time.toGregorianCalendar().getTimeInMillis());
+  }
+  
+  /**
+   * The transitions of one key, as parallel arrays of times and values sorted by time.
+   * Transitions with the same time stay in the order in which they were added.
+   */
+  private static final class Transitions {
+    /** The times, in milliseconds. */
+    private long[] times = new long[2];
+    /** The values. */
+    private String[] values = new String[2];
+    /** The number of transitions. */
+    private int size = 0;
+    
+    /**
+     * Inserts a transition after all transitions with the same or an earlier time. Since
+     * properties are usually recorded in time order, this is typically an append.
+     * @param time The time.
+     * @param value The value.
+     */
+    void add(long time, String value) {
+      if (this.size == this.times.length) {
+        long[] newTimes = new long[this.size * 2];
+        String[] newValues = new String[this.size * 2];
+        System.arraycopy(this.times, 0, newTimes, 0, this.size);
+        System.arraycopy(this.values, 0, newValues, 0, this.size);
+        this.times = newTimes;
+        this.values = newValues;
+      }
+      int index = this.size;
+      while ((index > 0) && (this.times[index - 1] > time)) {
+        this.times[index] = this.times[index - 1];
+        this.values[index] = this.values[index - 1];
+        index--;
+      }
+      this.times[index] = time;
+      this.values[index] = value;
+      this.size++;
+    }
+    
+    /**
+     * Returns the value of the first of the latest transitions at or before time. 
+     * @param time The time.
+     * @return The value, or null if there are no transitions at or before time.
+     */
+    String getValue(long time) {
+      int end = firstIndexAfter(time);
+      if (end == 0) {
+        return null;
+      }
+      // The first transition with the same time as the latest one wins.
+      return this.values[firstIndexAfter(this.times[end - 1] - 1)];
+    }
+    
+    /**
+     * Returns the index of the first transition later than time, or size if there is none.
+     * @param time The time.
+     * @return The index.
+     */
+    private int firstIndexAfter(long time) {
+      int low = 0;
+      int high = this.size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (this.times[mid] <= time) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
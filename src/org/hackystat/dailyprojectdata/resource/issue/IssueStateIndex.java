@@ -0,0 +1,112 @@
+package org.hackystat.dailyprojectdata.resource.issue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.dailyprojectdata.server.SensorDataFetcher;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.restlet.data.ChallengeResponse;
+
+/**
+ * Holds the parsed history of each Issue instance of one project, keyed by the href of the
+ * instance, so that the Issue and IssueChange DPDs for any day are computed by looking up the
+ * state of each issue rather than by retrieving and re-parsing its entire history.
+ * <p>
+ * The index is updated incrementally. An instance is retrieved from the SensorBase only if it
+ * is not yet in the index, or if a lookup asks for its state at a time later than the time at
+ * which it was last retrieved, since the sensor updates an Issue instance in place as the 
+ * issue changes. Thus the DPDs for a range of past days retrieve each instance only once, 
+ * while the DPD for today always sees the latest data. Clearing the project's cache with
+ * DELETE {host}/cache/{user}/{project} also clears its index.
+ * @author Philip Johnson
+ */
+public class IssueStateIndex {
+
+  /** The history of each Issue instance, keyed by its href. */
+  private final Map<String, IssueHistory> href2history = new HashMap<String, IssueHistory>();
+  
+  /** Parses the Issue instances. */
+  private final IssueDataParser parser;
+  
+  /**
+   * Creates an empty index. 
+   * @param logger The logger for parse warnings.
+   */
+  public IssueStateIndex(Logger logger) {
+    this.parser = new IssueDataParser(logger);
+  }
+  
+  /**
+   * Returns the histories of the Issue instances named by refs, in the same order as refs, 
+   * retrieving the instances that are not in the index or whose history may have changed 
+   * since they were retrieved. The instances are retrieved without holding the lock on this 
+   * index, so a slow retrieval for one request does not hold up lookups for the others.
+   * @param refs The refs to the Issue instances.
+   * @param time The latest time at which the state of the issues will be looked up.
+   * @param fetcher Retrieves the instances.
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials The credentials of the user making this request, or null.
+   * @return The histories.
+   * @throws SensorBaseClientException If the instances could not be retrieved.
+   */
+  public List<IssueHistory> getHistories(List<SensorDataRef> refs, 
+      XMLGregorianCalendar time, SensorDataFetcher fetcher, SensorBaseClient client, 
+      ChallengeResponse credentials) throws SensorBaseClientException {
+    long timeMillis = time.toGregorianCalendar().getTimeInMillis();
+    List<SensorDataRef> staleRefs = new ArrayList<SensorDataRef>();
+    List<IssueHistory> histories = new ArrayList<IssueHistory>(refs.size());
+    synchronized (this) {
+      for (SensorDataRef ref : refs) {
+        IssueHistory history = this.href2history.get(ref.getHref());
+        if ((history == null) || (history.getFetchedAt() < timeMillis)) {
+          staleRefs.add(ref);
+        }
+        histories.add(history);
+      }
+    }
+    if (staleRefs.isEmpty()) {
+      return histories;
+    }
+    long fetchedAt = System.currentTimeMillis();
+    List<SensorData> dataList = fetcher.getSensorData(client, credentials, staleRefs);
+    if (dataList.size() != staleRefs.size()) {
+      throw new SensorBaseClientException(String.format(
+          "Retrieved %d Issue instances for %d refs", dataList.size(), staleRefs.size()));
+    }
+    Map<String, IssueHistory> fetched = new HashMap<String, IssueHistory>();
+    for (int i = 0; i < staleRefs.size(); i++) {
+      fetched.put(staleRefs.get(i).getHref(), 
+          this.parser.getIssueHistory(dataList.get(i), fetchedAt));
+    }
+    synchronized (this) {
+      // Another request may have retrieved the same instance meanwhile; keep the newer one.
+      for (Map.Entry<String, IssueHistory> entry : fetched.entrySet()) {
+        IssueHistory current = this.href2history.get(entry.getKey());
+        if ((current == null) || (current.getFetchedAt() < entry.getValue().getFetchedAt())) {
+          this.href2history.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    for (int i = 0; i < refs.size(); i++) {
+      IssueHistory history = fetched.get(refs.get(i).getHref());
+      if (history != null) {
+        histories.set(i, history);
+      }
+    }
+    return histories;
+  }
+  
+  /**
+   * Returns the number of Issue instances in this index. 
+   * @return The number of instances.
+   */
+  public synchronized int size() {
+    return this.href2history.size();
+  }
+}
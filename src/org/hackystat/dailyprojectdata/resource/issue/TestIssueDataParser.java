@@ -112,6 +112,35 @@ public class TestIssueDataParser {
     assertEquals("Testing owner of data2 when 2nd update.", testUser2, issueData2T2.getOwner());
   }
 
+  
+  /**
+   * Test that the parsed history agrees with a scan of the properties when the properties are
+   * not in time order and several values of a key have the same time.
+   * @throws Exception if error when making XMLGregorianCalendar timestamps.
+   */
+  @Test public void testUnorderedHistory() throws Exception {
+    SensorData data = makeIssueSensorData(testDataOwner, 
+        new String[][]{testData1T2, testData2T1, testData1T1}, 
+        new XMLGregorianCalendar[]{testTime2, testTime1, testTime1});
+    XMLGregorianCalendar[] times = {Tstamp.makeTimestamp("2009-07-20T10:00:00"), testTime1, 
+        Tstamp.makeTimestamp("2009-07-21T00:00:00"), testTime2};
+    for (XMLGregorianCalendar time : times) {
+      IssueData issueData = parser.getIssueDpd(data, time);
+      assertEquals("Testing type at " + time, 
+          parser.getValueWithKeyWhen(data, IssueDataParser.TYPE_PROPERTY_KEY, time), 
+          issueData.getType());
+      assertEquals("Testing status at " + time, 
+          parser.getValueWithKeyWhen(data, IssueDataParser.STATUS_PROPERTY_KEY, time), 
+          issueData.getStatus());
+      assertEquals("Testing milestone at " + time, 
+          parser.getValueWithKeyWhen(data, IssueDataParser.MILESTONE_PROPERTY_KEY, time), 
+          issueData.getMilestone());
+    }
+    assertEquals("Testing first of tied values.", ENHANCEMENT, 
+        parser.getIssueDpd(data, testTime1).getType());
+    assertEquals("Testing value before any update.", null, 
+        parser.getIssueDpd(data, times[0]).getStatus());
+  }
 
   /**
    * Make the issue sensordata. 
@@ -0,0 +1,156 @@
+package org.hackystat.dailyprojectdata.resource.issue;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.dailyprojectdata.resource.issue.jaxb.IssueData;
+import org.hackystat.dailyprojectdata.server.SensorDataFetcher;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+import org.restlet.data.ChallengeResponse;
+
+/**
+ * Tests that IssueStateIndex returns the same issue states as IssueDataParser, and retrieves
+ * Issue instances only when they are new or may have changed.
+ * @author Philip Johnson
+ */
+public class TestIssueStateIndex {
+
+  /** The parser. */
+  private final IssueDataParser parser = new IssueDataParser(Logger.getLogger("IssueDpdTester"));
+  
+  /** The first issue. */
+  private final SensorData data1;
+  
+  /** The second issue. */
+  private final SensorData data2;
+  
+  /** The time of the first update of each issue. */
+  private final XMLGregorianCalendar time1;
+  
+  /** The time of the second update of each issue. */
+  private final XMLGregorianCalendar time2;
+  
+  /**
+   * Creates the test data. 
+   * @throws Exception If the timestamps cannot be created.
+   */
+  public TestIssueStateIndex() throws Exception {
+    TestIssueDataParser parserTest = new TestIssueDataParser();
+    this.time1 = parserTest.testTime1;
+    this.time2 = parserTest.testTime2;
+    XMLGregorianCalendar[] times = new XMLGregorianCalendar[] {this.time1, this.time2};
+    this.data1 = TestIssueDataParser.makeIssueSensorData(TestIssueDataParser.testDataOwner, 
+        new String[][] {TestIssueDataParser.testData1T1, TestIssueDataParser.testData1T2}, times);
+    this.data2 = TestIssueDataParser.makeIssueSensorData(TestIssueDataParser.testDataOwner, 
+        new String[][] {TestIssueDataParser.testData2T1, TestIssueDataParser.testData2T2}, times);
+  }
+  
+  /**
+   * Tests lookups and incremental retrieval.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testIndex() throws Exception {
+    CountingFetcher fetcher = new CountingFetcher();
+    IssueStateIndex index = new IssueStateIndex(Logger.getLogger("IssueDpdTester"));
+    List<SensorDataRef> refs = new ArrayList<SensorDataRef>();
+    refs.add(makeRef("1"));
+    
+    // The first lookup retrieves the first issue.
+    List<IssueHistory> histories = index.getHistories(refs, this.time2, fetcher, null, null);
+    assertEquals("Checking first retrieval", 1, fetcher.fetched);
+    assertIssueData(this.data1, histories.get(0));
+    
+    // A lookup at an earlier time retrieves only the new issue.
+    refs.add(makeRef("2"));
+    histories = index.getHistories(refs, this.time1, fetcher, null, null);
+    assertEquals("Checking incremental retrieval", 2, fetcher.fetched);
+    assertEquals("Checking index size", 2, index.size());
+    assertIssueData(this.data1, histories.get(0));
+    assertIssueData(this.data2, histories.get(1));
+    
+    // A lookup at a time after the last retrieval retrieves both issues again.
+    XMLGregorianCalendar tomorrow = Tstamp.incrementDays(Tstamp.makeTimestamp(), 1);
+    index.getHistories(refs, tomorrow, fetcher, null, null);
+    assertEquals("Checking refresh", 4, fetcher.fetched);
+  }
+  
+  /**
+   * Checks that a retrieval returning fewer instances than refs is reported as an error.
+   * @throws Exception If problems occur.
+   */
+  @Test(expected = SensorBaseClientException.class)
+  public void testMissingInstance() throws Exception {
+    SensorDataFetcher fetcher = new SensorDataFetcher() {
+      public List<SensorData> getSensorData(SensorBaseClient client, 
+          ChallengeResponse credentials, List<SensorDataRef> refs) {
+        return new ArrayList<SensorData>();
+      }
+    };
+    IssueStateIndex index = new IssueStateIndex(Logger.getLogger("IssueDpdTester"));
+    List<SensorDataRef> refs = new ArrayList<SensorDataRef>();
+    refs.add(makeRef("1"));
+    index.getHistories(refs, this.time1, fetcher, null, null);
+  }
+  
+  /**
+   * Checks that history gives the same state as a scan of the parser at each update time.
+   * @param data The Issue instance.
+   * @param history Its history.
+   */
+  private void assertIssueData(SensorData data, IssueHistory history) {
+    for (XMLGregorianCalendar time : new XMLGregorianCalendar[] {this.time1, this.time2}) {
+      IssueData actual = history.getIssueData(time);
+      assertEquals("Checking id", this.parser.getIssueDpd(data, time).getId(), actual.getId());
+      for (String key : IssueHistory.STATE_KEYS) {
+        assertEquals("Checking " + key, this.parser.getValueWithKeyWhen(data, key, time), 
+            history.getValue(key, time.toGregorianCalendar().getTimeInMillis()));
+      }
+    }
+  }
+  
+  /**
+   * Makes a ref with the given href. 
+   * @param href The href.
+   * @return The ref.
+   */
+  private static SensorDataRef makeRef(String href) {
+    SensorDataRef ref = new SensorDataRef();
+    ref.setHref(href);
+    return ref;
+  }
+  
+  /**
+   * Returns the first issue for href "1" and the second for any other, counting the instances
+   * retrieved.
+   */
+  private class CountingFetcher implements SensorDataFetcher {
+    /** The number of instances retrieved. */
+    private int fetched = 0;
+    
+    /**
+     * Returns the issues named by refs. 
+     * @param client Ignored.
+     * @param credentials Ignored.
+     * @param refs The refs.
+     * @return The issues.
+     */
+    public List<SensorData> getSensorData(SensorBaseClient client, 
+        ChallengeResponse credentials, List<SensorDataRef> refs) {
+      List<SensorData> dataList = new ArrayList<SensorData>();
+      for (SensorDataRef ref : refs) {
+        dataList.add("1".equals(ref.getHref()) ? data1 : data2);
+        this.fetched++;
+      }
+      return dataList;
+    }
+  }
+}
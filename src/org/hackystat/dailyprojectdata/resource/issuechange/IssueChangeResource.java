@@ -1,35 +1,23 @@
 package org.hackystat.dailyprojectdata.resource.issuechange;
 
-import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.logging.Logger;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
+import java.util.List;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdRepresentation;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DpdResource;
 import org.hackystat.dailyprojectdata.resource.issue.IssueDataParser;
+import org.hackystat.dailyprojectdata.resource.issue.IssueHistory;
 import org.hackystat.dailyprojectdata.resource.issue.jaxb.IssueData;
 import org.hackystat.dailyprojectdata.resource.issuechange.jaxb.ChangedItem;
 import org.hackystat.dailyprojectdata.resource.issuechange.jaxb.IssueChangeDailyProjectData;
 import org.hackystat.dailyprojectdata.resource.issuechange.jaxb.IssueChangeData;
 import org.hackystat.sensorbase.client.SensorBaseClient;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
 import org.hackystat.utilities.tstamp.Tstamp;
 import org.restlet.Context;
-import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.resource.Representation;
-import org.restlet.resource.Variant;
-import org.w3c.dom.Document;
 
 /**
  * Implements the Resource for processing GET {host}/issue/{user}/{project}/{starttime} requests.
@@ -37,7 +25,7 @@ import org.w3c.dom.Document;
  * connected to this service. 
  * @author Shaoxuan Zhang
  */
-public class IssueChangeResource extends DailyProjectDataResource {
+public class IssueChangeResource extends DpdResource {
 
   //private String status;
   
@@ -53,91 +41,89 @@ public class IssueChangeResource extends DailyProjectDataResource {
   }
 
   /**
-   * Returns an IssueDailyProjectData instance representing the Issue associated with the 
-   * Project data, or null if not authorized. 
-   * Authenticated user must be the uriUser, or Admin, or project member. 
-   * @param variant The representational variant requested.
-   * @return The representation. 
+   * Returns the representation of the IssueChange DPD for the day beginning at startTime.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param startTime The start of the day.
+   * @param refs The refs to the sensor data for the day.
+   * @return The representation of the DPD.
+   * @throws Exception If problems occur computing the DPD.
    */
   @Override
-  public Representation represent(Variant variant) {
-    Logger logger = this.server.getLogger();
-    logger.fine("Issue DPD: Starting");
-    if (variant.getMediaType().equals(MediaType.TEXT_XML)) {
-      try {
-        // [1] get the SensorBaseClient for the user making this request.
-        SensorBaseClient client = super.getSensorBaseClient();
-        // [2] Check the front side cache and return if the DPD is found and is OK to access.
-        String cachedDpd = this.server.getFrontSideCache().get(uriUser, project, uriString);
-        if ((cachedDpd != null) && client.inProject(uriUser, project)) {
-          return super.getStringRepresentation(cachedDpd);
+  protected DpdRepresentation makeDpd(SensorBaseClient client, XMLGregorianCalendar startTime,
+      List<SensorDataRef> refs) throws Exception {
+    XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
+    // [1] prepare the IssueDailyProjectData
+    IssueChangeDailyProjectData issueDpd = new IssueChangeDailyProjectData();
+    issueDpd.setOwner(uriUser);
+    issueDpd.setProject(project);
+    issueDpd.setStartTime(startTime);
+    // [2] parse Issue SensorData. 
+    int openedIssue = 0;
+    int reopenedIssue = 0;
+    int closedIssue = 0;
+    IssueDataParser parser = new IssueDataParser(this.server.getLogger());
+    List<IssueHistory> histories = this.server.getIssueStateIndex(uriUser, project).getHistories(
+        refs, endTime, this.server.getSensorDataFetcher(), client, 
+        getRequest().getChallengeResponse());
+    long startMillis = startTime.toGregorianCalendar().getTimeInMillis();
+    long endMillis = endTime.toGregorianCalendar().getTimeInMillis();
+    for (IssueHistory history : histories) {
+      IssueData issueDataStart = history.getIssueData(startMillis);
+      IssueData issueDataEnd = history.getIssueData(endMillis);
+      IssueChangeData changeData = this.generateChangeData(issueDataStart, issueDataEnd);
+      if (changeData == null) {
+        continue;
+      }
+      if (issueDataEnd.getStatus() == null) {
+        issueDpd.getIssueChangeData().add(changeData);
+        continue;
+      }
+      boolean isOpenEnd = parser.isOpenStatus(issueDataEnd.getStatus());
+      if (issueDataStart.getStatus() == null) {
+        openedIssue++;
+        if (!isOpenEnd) {
+          closedIssue++;
         }
-        // [2] get a SensorDataIndex of all Issue data for this Project on the requested day.
-        XMLGregorianCalendar startTime = Tstamp.makeTimestamp(this.timestamp);
-        XMLGregorianCalendar endTime = Tstamp.incrementDays(startTime, 1);
-        logger.fine("Issue DPD: Requesting index: " + uriUser + " " + project);
-        
-        XMLGregorianCalendar projectStartTime = client.getProject(uriUser, project).getStartTime();
-        
-        SensorDataIndex index = client.getProjectSensorData(uriUser, project, projectStartTime, 
-            endTime, "Issue");
-        logger.fine("Issue DPD: Got index: " + index.getSensorDataRef().size() + " instances");
-        // [3] prepare the IssueDailyProjectData
-        IssueChangeDailyProjectData issueDpd = new IssueChangeDailyProjectData();
-        issueDpd.setOwner(uriUser);
-        issueDpd.setProject(project);
-        issueDpd.setStartTime(startTime);
-        // [4] parse Issue SensorData. 
-        int openedIssue = 0;
-        int reopenedIssue = 0;
-        int closedIssue = 0;
-        IssueDataParser parser = new IssueDataParser(this.server.getLogger());
-        for (SensorDataRef ref : index.getSensorDataRef()) {
-          IssueData issueDataStart = parser.getIssueDpd(client.getSensorData(ref), startTime);
-          IssueData issueDataEnd = parser.getIssueDpd(client.getSensorData(ref), endTime);
-          IssueChangeData changeData = this.generateChangeData(issueDataStart, issueDataEnd);
-          if (changeData == null) {
-            continue;
-          }
-          if (issueDataEnd.getStatus() == null) {
-            issueDpd.getIssueChangeData().add(changeData);
-            continue;
-          }
-          boolean isOpenEnd = parser.isOpenStatus(issueDataEnd.getStatus());
-          if (issueDataStart.getStatus() == null) {
-            openedIssue++;
-            if (!isOpenEnd) {
-              closedIssue++;
-            }
-          }
-          else {
-            boolean isOpenStart = parser.isOpenStatus(issueDataStart.getStatus());
-            if (isOpenStart && !isOpenEnd) {
-              closedIssue++;
-            }
-            else if (!isOpenStart && isOpenEnd) {
-              reopenedIssue++;
-            }
-          }
-          issueDpd.getIssueChangeData().add(changeData);
+      }
+      else {
+        boolean isOpenStart = parser.isOpenStatus(issueDataStart.getStatus());
+        if (isOpenStart && !isOpenEnd) {
+          closedIssue++;
         }
-        // [5] finish the IssueDailyProjectData and send.
-        issueDpd.setOpened(openedIssue);
-        issueDpd.setReopened(reopenedIssue);
-        issueDpd.setClosed(closedIssue);
-        String xmlData = makeIssues(issueDpd);
-        if (!Tstamp.isTodayOrLater(startTime)) {
-          this.server.getFrontSideCache().put(uriUser, project, uriString, xmlData);
+        else if (!isOpenStart && isOpenEnd) {
+          reopenedIssue++;
         }
-        logRequest("Issue");
-        return super.getStringRepresentation(xmlData);
-      }
-      catch (Exception e) {
-        setStatusError("Error creating Issue DPD.", e);
-        return null;
       }
+      issueDpd.getIssueChangeData().add(changeData);
     }
-    return null;
+    // [3] finish the IssueDailyProjectData and send.
+    issueDpd.setOpened(openedIssue);
+    issueDpd.setReopened(reopenedIssue);
+    issueDpd.setClosed(closedIssue);
+    return super.makeRepresentation(issueDpd, "IssueJAXB");
+  }
+
+  /**
+   * Returns the type of sensor data from which IssueChange DPDs are computed.
+   * @return "Issue".
+   */
+  @Override
+  protected String getSensorDataType() {
+    return "Issue";
+  }
+
+  /**
+   * Returns the refs to all Issue data sent from the start of the project through each day,
+   * since the state of each issue on a day depends on all of its earlier history.
+   * @param client The SensorBaseClient for the authenticated user.
+   * @param days The start times of the days.
+   * @return One list of refs for each day.
+   * @throws Exception If problems occur retrieving the index.
+   */
+  @Override
+  protected List<List<SensorDataRef>> getRefsByDay(SensorBaseClient client,
+      List<XMLGregorianCalendar> days) throws Exception {
+    return getProjectToDateRefsByDay(client, days);
   }
 
   /**
@@ -200,27 +186,4 @@ public class IssueChangeResource extends DailyProjectDataResource {
     return false;
   }
 
-  /**
-   * Returns the passed SensorData instance as a String encoding of its XML representation.
-   * @param data The SensorData instance. 
-   * @return The XML String representation.
-   * @throws Exception If problems occur during translation. 
-   */
-  private String makeIssues (IssueChangeDailyProjectData data) throws Exception {
-    JAXBContext devTimeJAXB = 
-      (JAXBContext)this.server.getContext().getAttributes().get("IssueJAXB");
-    Marshaller marshaller = devTimeJAXB.createMarshaller(); 
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    dbf.setNamespaceAware(true);
-    DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-    Document doc = documentBuilder.newDocument();
-    marshaller.marshal(data, doc);
-    DOMSource domSource = new DOMSource(doc);
-    StringWriter writer = new StringWriter();
-    StreamResult result = new StreamResult(writer);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    transformer.transform(domSource, result);
-    return writer.toString();
-  }
 }
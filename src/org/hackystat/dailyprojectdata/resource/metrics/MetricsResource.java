@@ -0,0 +1,266 @@
+package org.hackystat.dailyprojectdata.resource.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.hackystat.dailyprojectdata.dpdstore.DpdStore;
+import org.hackystat.dailyprojectdata.frontsidecache.FrontSideCache;
+import org.hackystat.dailyprojectdata.frontsidecache.MemoryCache;
+import org.hackystat.dailyprojectdata.metrics.DpdMetrics;
+import org.hackystat.dailyprojectdata.metrics.Histogram;
+import org.hackystat.dailyprojectdata.metrics.RequestTrace;
+import org.hackystat.dailyprojectdata.metrics.ServerMetrics;
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.resource.snapshot.SnapshotMemo;
+import org.hackystat.dailyprojectdata.server.Authenticator;
+import org.hackystat.dailyprojectdata.server.MarshallerPool;
+import org.hackystat.dailyprojectdata.server.RequestCoalescer;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.restlet.Context;
+import org.restlet.data.MediaType;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Variant;
+
+import static org.hackystat.dailyprojectdata.server.ServerProperties.ADMIN_EMAIL_KEY;
+
+/**
+ * This resource responds to requests of form:
+ * <pre>GET {host}/metrics</pre>
+ * with a Metrics element describing the requests handled since the server started. 
+ * It contains one Dpd element per request type, such as "DevTime" or "DevTimeRange", whose
+ * attributes give the number of requests, failures, and requests in progress, the mean, 
+ * 50th, 90th, 99th, and 99.9th percentile, and maximum latencies in microseconds, and the 
+ * total, median, 99th percentile, and maximum SensorBase calls and bytes per request. 
+ * If some of its requests were traced, it contains a Span element for each kind of span,
+ * giving the mean, median, 99th percentile, and maximum microseconds that a traced request
+ * spent in it. 
+ * Further elements give the hits and misses of the front side cache and the other caches, 
+ * and the state of the authenticator and the thread pools.
+ * <p>
+ * Since these describe the users and internals of the server, only the admin account 
+ * configured by dailyprojectdata.admin.email may read them; other users get a 403.
+ * 
+ * @author Philip Johnson
+ */
+public class MetricsResource extends DailyProjectDataResource {
+
+  /**
+   * The default constructor.
+   * @param context The context.
+   * @param request The request.
+   * @param response The response. 
+   */
+  public MetricsResource(Context context, Request request, Response response) {
+    super(context, request, response);
+  }
+
+  /**
+   * Returns the current metrics of this server, or null if the authenticated user is not 
+   * the admin.
+   * @param variant The representational variant requested.
+   * @return The representation. 
+   */
+  @Override
+  public Representation represent(Variant variant) {
+    String admin = this.server.getServerProperties().get(ADMIN_EMAIL_KEY);
+    if (!this.authUser.equals(admin)) {
+      String msg = String.format("Authenticated user (%s) is not the admin", this.authUser);
+      this.server.getLogger().info(msg);
+      getResponse().setStatus(Status.CLIENT_ERROR_FORBIDDEN, msg);
+      return null;
+    }
+    if (!variant.getMediaType().equals(MediaType.TEXT_XML)) {
+      return null;
+    }
+    ServerMetrics metrics = this.server.getMetrics();
+    StringBuilder builder = new StringBuilder(4000);
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+    builder.append("<Metrics");
+    appendAttribute(builder, "Start", Tstamp.makeTimestamp(metrics.getStartTime()));
+    builder.append('>');
+    for (DpdMetrics dpd : metrics.getAllDpdMetrics()) {
+      Histogram latency = dpd.getLatency();
+      builder.append("<Dpd");
+      appendAttribute(builder, "Type", dpd.getType());
+      appendAttribute(builder, "Requests", latency.getCount());
+      appendAttribute(builder, "Errors", dpd.getErrors());
+      appendAttribute(builder, "InFlight", dpd.getInFlight());
+      appendAttribute(builder, "MeanMicros", Math.round(latency.getMean()));
+      appendAttribute(builder, "P50Micros", latency.getValueAtPercentile(50));
+      appendAttribute(builder, "P90Micros", latency.getValueAtPercentile(90));
+      appendAttribute(builder, "P99Micros", latency.getValueAtPercentile(99));
+      appendAttribute(builder, "P999Micros", latency.getValueAtPercentile(99.9));
+      appendAttribute(builder, "MaxMicros", latency.getMax());
+      appendPerRequest(builder, "SensorBaseCalls", dpd.getSensorBaseCalls());
+      appendPerRequest(builder, "SensorBaseBytes", dpd.getSensorBaseBytes());
+      appendSpans(builder, dpd);
+    }
+    appendCaches(builder);
+    appendAuthenticator(builder);
+    appendExecutor(builder, "Fetch", this.server.getFetchExecutor());
+    appendExecutor(builder, "Aggregation", this.server.getAggregationExecutor());
+    builder.append("</Metrics>");
+    return super.getStringRepresentation(builder.toString());
+  }
+
+  /**
+   * Appends the Traced attribute and Span elements of a Dpd element, and closes it.
+   * @param builder The builder of the Dpd element, after its last attribute.
+   * @param dpd The metrics of the request type.
+   */
+  private static void appendSpans(StringBuilder builder, DpdMetrics dpd) {
+    long traced = dpd.getSpan(RequestTrace.Span.INDEX).getCount();
+    appendAttribute(builder, "Traced", traced);
+    if (traced == 0) {
+      builder.append("/>");
+      return;
+    }
+    builder.append('>');
+    for (RequestTrace.Span span : RequestTrace.Span.values()) {
+      Histogram histogram = dpd.getSpan(span);
+      builder.append("<Span");
+      appendAttribute(builder, "Name", span.getLabel());
+      appendAttribute(builder, "MeanMicros", Math.round(histogram.getMean()));
+      appendAttribute(builder, "P50Micros", histogram.getValueAtPercentile(50));
+      appendAttribute(builder, "P99Micros", histogram.getValueAtPercentile(99));
+      appendAttribute(builder, "MaxMicros", histogram.getMax());
+      builder.append("/>");
+    }
+    builder.append("</Dpd>");
+  }
+
+  /**
+   * Appends the FrontSideCache, MemoryCache, RequestCoalescer, MarshallerPool, SnapshotMemo,
+   * and DpdStore elements.
+   * @param builder The builder of the Metrics element.
+   */
+  private void appendCaches(StringBuilder builder) {
+    FrontSideCache frontSideCache = this.server.getFrontSideCache();
+    builder.append("<FrontSideCache");
+    appendAttribute(builder, "Hits", frontSideCache.getHits());
+    appendAttribute(builder, "Misses", frontSideCache.getMisses());
+    appendAttribute(builder, "HitRatio", 
+        getRatio(frontSideCache.getHits(), frontSideCache.getMisses()));
+    builder.append("/>");
+    MemoryCache memoryCache = frontSideCache.getMemoryCache();
+    builder.append("<MemoryCache");
+    appendAttribute(builder, "Entries", memoryCache.size());
+    appendAttribute(builder, "Bytes", memoryCache.getBytes());
+    appendAttribute(builder, "MaxBytes", memoryCache.getMaxBytes());
+    appendAttribute(builder, "Stripes", memoryCache.getStripes());
+    appendAttribute(builder, "Hits", memoryCache.getHits());
+    appendAttribute(builder, "Misses", memoryCache.getMisses());
+    appendAttribute(builder, "Evictions", memoryCache.getEvictions());
+    builder.append("/>");
+    RequestCoalescer<Representation> coalescer = this.server.getRequestCoalescer();
+    builder.append("<RequestCoalescer");
+    appendAttribute(builder, "Computations", coalescer.getComputations());
+    appendAttribute(builder, "Shared", coalescer.getShared());
+    appendAttribute(builder, "InFlight", coalescer.getInFlight());
+    builder.append("/>");
+    for (Map.Entry<String, MarshallerPool> entry : 
+        this.server.getMarshallerPools().entrySet()) {
+      builder.append("<MarshallerPool");
+      appendAttribute(builder, "Context", entry.getKey());
+      appendAttribute(builder, "Created", entry.getValue().getCreated());
+      builder.append("/>");
+    }
+    SnapshotMemo memo = this.server.getSnapshotMemo();
+    builder.append("<SnapshotMemo");
+    appendAttribute(builder, "Snapshots", memo.size());
+    appendAttribute(builder, "Instances", memo.getNumberOfInstances());
+    appendAttribute(builder, "Hits", memo.getHits());
+    appendAttribute(builder, "Misses", memo.getMisses());
+    builder.append("/>");
+    DpdStore store = this.server.getDpdStore();
+    if (store != null) {
+      builder.append("<DpdStore");
+      appendAttribute(builder, "Dpds", store.size());
+      appendAttribute(builder, "Segments", store.getNumberOfSegments());
+      appendAttribute(builder, "Bytes", store.getNumberOfBytes());
+      appendAttribute(builder, "Hits", store.getHits());
+      appendAttribute(builder, "Misses", store.getMisses());
+      builder.append("/>");
+    }
+  }
+
+  /**
+   * Appends the Authenticator element.
+   * @param builder The builder of the Metrics element.
+   */
+  private void appendAuthenticator(StringBuilder builder) {
+    Authenticator authenticator = this.server.getAuthenticator();
+    builder.append("<Authenticator");
+    appendAttribute(builder, "Users", authenticator.getCredentialCache().size());
+    appendAttribute(builder, "Hits", authenticator.getCredentialCache().getHits());
+    appendAttribute(builder, "Misses", authenticator.getCredentialCache().getMisses());
+    appendAttribute(builder, "Evictions", authenticator.getCredentialCache().getEvictions());
+    appendAttribute(builder, "Checks", authenticator.getRegistrationChecks().getComputations());
+    appendAttribute(builder, "SharedChecks", authenticator.getRegistrationChecks().getShared());
+    appendAttribute(builder, "Clients", authenticator.getNumberOfClients());
+    builder.append("/>");
+  }
+
+  /**
+   * Appends an Executor element giving the number of busy threads and queued tasks of a
+   * thread pool.
+   * @param builder The builder of the Metrics element.
+   * @param name The name of the pool.
+   * @param executor The pool.
+   */
+  private static void appendExecutor(StringBuilder builder, String name, 
+      ExecutorService executor) {
+    if (!(executor instanceof ThreadPoolExecutor)) {
+      return;
+    }
+    ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+    builder.append("<Executor");
+    appendAttribute(builder, "Name", name);
+    appendAttribute(builder, "Threads", pool.getPoolSize());
+    appendAttribute(builder, "Active", pool.getActiveCount());
+    appendAttribute(builder, "Queued", pool.getQueue().size());
+    appendAttribute(builder, "Completed", pool.getCompletedTaskCount());
+    builder.append("/>");
+  }
+
+  /**
+   * Appends the total, median, 99th percentile, and maximum of a per-request histogram.
+   * @param builder The builder of an element, after its name or an attribute.
+   * @param name The name of the total attribute, which prefixes the others.
+   * @param histogram The histogram.
+   */
+  private static void appendPerRequest(StringBuilder builder, String name, 
+      Histogram histogram) {
+    appendAttribute(builder, name, histogram.getSum());
+    appendAttribute(builder, name + "P50", histogram.getValueAtPercentile(50));
+    appendAttribute(builder, name + "P99", histogram.getValueAtPercentile(99));
+    appendAttribute(builder, name + "Max", histogram.getMax());
+  }
+
+  /**
+   * Appends an attribute. The values are numbers, timestamps, and class names, which need
+   * no escaping.
+   * @param builder The builder of an element, after its name or an attribute.
+   * @param name The name of the attribute.
+   * @param value The value of the attribute.
+   */
+  private static void appendAttribute(StringBuilder builder, String name, Object value) {
+    builder.append(' ').append(name).append("=\"").append(value).append('"');
+  }
+
+  /**
+   * Returns hits / (hits + misses) to three decimal places.
+   * @param hits The number of hits.
+   * @param misses The number of misses.
+   * @return The ratio, which is 0 if there were no lookups.
+   */
+  private static String getRatio(long hits, long misses) {
+    double ratio = (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+    return String.format(Locale.ENGLISH, "%.3f", ratio);
+  }
+}
@@ -0,0 +1,38 @@
+package org.hackystat.dailyprojectdata.resource.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.hackystat.dailyprojectdata.test.DailyProjectDataTestHelper;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.junit.Test;
+import org.restlet.Client;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+
+/**
+ * Tests the Metrics REST API.
+ * 
+ * @author Philip Johnson
+ */
+public class TestMetricsRestApi extends DailyProjectDataTestHelper {
+
+  /**
+   * Test that GET {host}/metrics is refused to an authenticated user who is not the admin.
+   * 
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testNonAdmin() throws Exception {
+    String user = "TestDpdMetrics@hackystat.org";
+    SensorBaseClient.registerUser(getSensorBaseHostName(), user);
+    Request request = new Request(Method.GET, getDailyProjectDataHostName() + "metrics");
+    request.setChallengeResponse(new ChallengeResponse(ChallengeScheme.HTTP_BASIC, user, user));
+    Response response = new Client(Protocol.HTTP).handle(request);
+    assertEquals("Checking forbidden", Status.CLIENT_ERROR_FORBIDDEN, response.getStatus());
+  }
+}
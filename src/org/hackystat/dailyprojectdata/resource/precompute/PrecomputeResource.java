@@ -0,0 +1,114 @@
+package org.hackystat.dailyprojectdata.resource.precompute;
+
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.DailyProjectDataResource;
+import org.hackystat.dailyprojectdata.server.DpdPrecomputer;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.restlet.Context;
+import org.restlet.data.MediaType;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Variant;
+
+import static org.hackystat.dailyprojectdata.server.ServerProperties.PRECOMPUTE_USER_KEY;
+
+/**
+ * This resource responds to requests of form:
+ * <pre>GET {host}/precompute</pre>
+ * with the progress of the current or last nightly precomputation of DPDs, as a
+ * Precompute element whose attributes give the number of configured DPDs, whether a run
+ * is in progress, the day of the run, the number of DPDs requested, completed, and failed 
+ * by it, the number of runs so far, and the times of the run and the next scheduled run.
+ * <p>
+ * It also responds to 
+ * <pre>POST {host}/precompute</pre>
+ * by starting a run for yesterday, unless one is already in progress. In this case, the 
+ * authorized user must be the user configured to precompute DPDs. 
+ * 
+ * @author Philip Johnson
+ */
+public class PrecomputeResource extends DailyProjectDataResource {
+
+  /**
+   * The default constructor.
+   * @param context The context.
+   * @param request The request.
+   * @param response The response. 
+   */
+  public PrecomputeResource(Context context, Request request, Response response) {
+    super(context, request, response);
+  }
+
+  /**
+   * Returns the progress of the current or last precomputation.
+   * @param variant The representational variant requested.
+   * @return The representation. 
+   */
+  @Override
+  public Representation represent(Variant variant) {
+    if (!variant.getMediaType().equals(MediaType.TEXT_XML)) {
+      return null;
+    }
+    DpdPrecomputer precomputer = this.server.getPrecomputer();
+    StringBuilder builder = new StringBuilder(300);
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+    builder.append("<Precompute Dpds=\"").append(precomputer.getDpds().size());
+    builder.append("\" Running=\"").append(precomputer.isRunning());
+    builder.append("\" Runs=\"").append(precomputer.getNumberOfRuns());
+    if (precomputer.getRunDay() != null) {
+      builder.append("\" Day=\"").append(precomputer.getRunDay());
+    }
+    builder.append("\" Requested=\"").append(precomputer.getNumberRequested());
+    builder.append("\" Completed=\"").append(precomputer.getNumberCompleted());
+    builder.append("\" Failed=\"").append(precomputer.getNumberFailed());
+    appendTime(builder, "RunStart", precomputer.getRunStart());
+    appendTime(builder, "RunEnd", precomputer.getRunEnd());
+    appendTime(builder, "NextRun", precomputer.getNextRun());
+    builder.append("\"/>");
+    return super.getStringRepresentation(builder.toString());
+  }
+
+  /**
+   * Appends a time attribute, unless the time is 0.
+   * @param builder The builder of the Precompute element, after the value of an attribute.
+   * @param name The name of the attribute.
+   * @param time The time in epoch milliseconds, or 0.
+   */
+  private static void appendTime(StringBuilder builder, String name, long time) {
+    if (time != 0) {
+      builder.append("\" ").append(name).append("=\"").append(Tstamp.makeTimestamp(time));
+    }
+  }
+
+  /**
+   * Starts a run for yesterday. Returns 200 if the run was started, and an error if the 
+   * authorized user is not the precompute user or if a run is already in progress. 
+   * @param entity Ignored.
+   */
+  @Override
+  public void acceptRepresentation(Representation entity) {
+    String precomputeUser = this.server.getServerProperties().get(PRECOMPUTE_USER_KEY);
+    if (!this.authUser.equals(precomputeUser)) {
+      setStatusError(String.format("Authenticated user (%s) is not the precompute user", 
+          this.authUser));
+      return;
+    }
+    if (!this.server.getPrecomputer().startRun()) {
+      setStatusError("A precompute run is already in progress");
+      return;
+    }
+    this.server.getLogger().info("Precompute run started by " + this.authUser);
+    getResponse().setStatus(Status.SUCCESS_OK);
+  }
+
+  /**
+   * Indicate the POST method is supported.
+   * 
+   * @return True.
+   */
+  @Override
+  public boolean allowPost() {
+    return true;
+  }
+}
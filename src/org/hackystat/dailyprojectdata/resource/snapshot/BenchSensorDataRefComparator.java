@@ -0,0 +1,88 @@
+package org.hackystat.dailyprojectdata.resource.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Benchmarks sorting the refs of a day of FileMetric data newest first, as the snapshot does
+ * for each bucket. The "tstamp" variant compares XMLGregorianCalendars with Tstamp, as the 
+ * comparator did before it compared epoch milliseconds; the "comparator" variant uses 
+ * Collections.sort() with SensorDataRefComparator; the "sort" variant uses 
+ * SensorDataRefComparator.sort(), which converts each timestamp once.
+ * @author Philip Johnson
+ */
+public class BenchSensorDataRefComparator extends Benchmark {
+
+  /** Compares refs newest first using Tstamp. */
+  private static final Comparator<SensorDataRef> TSTAMP_DESCENDING = 
+    new Comparator<SensorDataRef>() {
+    public int compare(SensorDataRef o1, SensorDataRef o2) {
+      if (Tstamp.lessThan(o1.getTimestamp(), o2.getTimestamp())) {
+        return 1;
+      }
+      return Tstamp.greaterThan(o1.getTimestamp(), o2.getTimestamp()) ? -1 : 0;
+    }
+  };
+
+  /** The refs, in SensorBase order. */
+  private List<SensorDataRef> refs;
+
+  /**
+   * Returns the sorting methods compared.
+   * @return The variants.
+   */
+  @Override
+  public String[] getVariants() {
+    return new String[] {"tstamp", "comparator", "sort"};
+  }
+
+  /**
+   * Generates the refs.
+   * @param size The number of refs.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.refs = new ArrayList<SensorDataRef>(size);
+    for (SensorData data : new SensorDataWorkload(size).makeFileMetrics(size, "joe")) {
+      SensorDataRef ref = new SensorDataRef();
+      ref.setTimestamp(data.getTimestamp());
+      ref.setHref(data.getResource());
+      this.refs.add(ref);
+    }
+  }
+
+  /**
+   * Sorts a copy of the refs.
+   * @return A hash of the order of the sorted refs.
+   */
+  @Override
+  public long run() {
+    List<SensorDataRef> sorted = new ArrayList<SensorDataRef>(this.refs);
+    String variant = getVariant();
+    if ("tstamp".equals(variant)) {
+      Collections.sort(sorted, TSTAMP_DESCENDING);
+    }
+    else if ("comparator".equals(variant)) {
+      Collections.sort(sorted, new SensorDataRefComparator(false));
+    }
+    else {
+      SensorDataRefComparator.sort(sorted, false);
+    }
+    return sorted.get(0).hashCode() + sorted.get(sorted.size() - 1).hashCode();
+  }
+
+  /** Releases the refs. */
+  @Override
+  public void tearDown() {
+    this.refs = null;
+  }
+}
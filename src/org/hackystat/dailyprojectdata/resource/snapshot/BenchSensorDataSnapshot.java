@@ -0,0 +1,103 @@
+package org.hackystat.dailyprojectdata.resource.snapshot;
+
+import java.util.List;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDatas;
+import org.hackystat.sensorbase.server.Server;
+import org.hackystat.sensorbase.server.ServerProperties;
+import org.hackystat.utilities.time.period.Day;
+
+/**
+ * Benchmarks SensorDataSnapshot against an in-process SensorBase holding FileMetric data
+ * from several runs of skewed tools. Since every run of the snapshot retrieves its data over
+ * HTTP, this benchmark includes the SensorBase round trips, and its workloads are limited to
+ * sizes that can be stored in the test SensorBase in reasonable time.
+ * @author Philip Johnson
+ */
+public class BenchSensorDataSnapshot extends Benchmark {
+
+  /** The user owning the project and its data. */
+  private static final String USER = "BenchSnapshot@hackystat.org";
+
+  /** The number of instances sent to the SensorBase in each batch. */
+  private static final int BATCH_SIZE = 1000;
+
+  /** The SensorBase host, once it has been started. */
+  private static String host = null;
+
+  /** The client for USER. */
+  private SensorBaseClient client;
+
+  /** The day of the snapshot. */
+  private Day day;
+
+  /**
+   * Returns the workload sizes, which are smaller than the default.
+   * @return The sizes.
+   */
+  @Override
+  public int[] getSizes() {
+    return new int[] {1000, 10000};
+  }
+
+  /**
+   * Starts the SensorBase if necessary, and stores the FileMetric instances in it.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    startSensorBase();
+    this.client = new SensorBaseClient(host, USER, USER);
+    this.client.deleteSensorData(USER);
+    List<SensorData> fileMetrics = new SensorDataWorkload(size).makeFileMetrics(size, USER);
+    for (int start = 0; start < size; start += BATCH_SIZE) {
+      SensorDatas batch = new SensorDatas();
+      batch.getSensorData().addAll(fileMetrics.subList(start, Math.min(size, start + BATCH_SIZE)));
+      this.client.putSensorDataBatch(batch);
+    }
+    this.day = Day.getInstance("15-Jan-2008");
+  }
+
+  /**
+   * Builds the snapshot.
+   * @return The number of instances in the snapshot.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public long run() throws Exception {
+    SensorDataSnapshot snapshot = new SensorDataSnapshot(this.client, USER, "Default",
+        "FileMetric", this.day, 30);
+    long result = 0;
+    for (SensorData data : snapshot) {
+      result += data.getResource().length();
+    }
+    return result;
+  }
+
+  /**
+   * Deletes the FileMetric instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void tearDown() throws Exception {
+    this.client.deleteSensorData(USER);
+  }
+
+  /**
+   * Starts a test SensorBase and registers USER, if not already done.
+   * @throws Exception If problems occur.
+   */
+  private static synchronized void startSensorBase() throws Exception {
+    if (host == null) {
+      ServerProperties properties = new ServerProperties();
+      properties.setTestProperties();
+      host = Server.newInstance(properties).getHostName();
+      SensorBaseClient.registerUser(host, USER);
+    }
+  }
+}
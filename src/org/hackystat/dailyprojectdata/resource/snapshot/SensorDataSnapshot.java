@@ -1,20 +1,17 @@
 package org.hackystat.dailyprojectdata.resource.snapshot;
 
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import javax.xml.datatype.DatatypeConstants;
-import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.client.SensorBaseClientException;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
 import org.hackystat.utilities.time.period.Day;
-import org.hackystat.utilities.tstamp.Tstamp;
 
 /**
  * This class is deprecated, you should use the SensorBase REST API to retrieve snapshots. 
@@ -65,8 +62,11 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
   /** The bucket size in minutes. */
   private int bucketSize = 30;
 
-  /** The runtime for this snapshot used to determine if older data has been seen. */
-  private XMLGregorianCalendar snapshotRuntime = null;
+  /** 
+   * The runtime for this snapshot, in epoch milliseconds, used to determine if older data has 
+   * been seen. Long.MIN_VALUE until the first instance is added. 
+   */
+  private long snapshotRuntime = Long.MIN_VALUE;
 
   /** Holds sensor data associated with the latest snapshot. */
   private Set<SensorData> latestSnapshot = new HashSet<SensorData>();
@@ -74,11 +74,11 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
   /** The last bucket that was processed. */
   private SnapshotBucket prevBucket = null;
 
-  /** Start of the snapshot day. */
-  private XMLGregorianCalendar startOfDay;
+  /** Start of the snapshot day, in epoch milliseconds. */
+  private long startOfDay;
 
-  /** End of the snapshot day. */
-  private XMLGregorianCalendar endOfDay;
+  /** End of the snapshot day, in epoch milliseconds. */
+  private long endOfDay;
 
   /** The number of buckets retrieved to create the snapshot. */
   private int bucketsRetrieved = 0;
@@ -150,10 +150,8 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
    * @param day The day to use at when setting the start and end of day.
    */
   private void setUpStartEndDay(Day day) {
-    long lastTickOfTheDay = day.getLastTickOfTheDay();
-    long firstTickOfTheDay = day.getFirstTickOfTheDay();
-    this.startOfDay = Tstamp.makeTimestamp(firstTickOfTheDay);
-    this.endOfDay = Tstamp.makeTimestamp(lastTickOfTheDay);
+    this.startOfDay = day.getFirstTickOfTheDay();
+    this.endOfDay = day.getLastTickOfTheDay();
   }
 
   /**
@@ -182,7 +180,7 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
 
       List<SensorDataRef> sensorDataRefList = index.getSensorDataRef();
       // sort the list by timestamps, newest first
-      Collections.sort(sensorDataRefList, new SensorDataRefComparator(false));
+      SensorDataRefComparator.sort(sensorDataRefList, false);
       for (SensorDataRef sensorDataRef : sensorDataRefList) {
         if (this.seenOlderData) {
           // stop iterating, older data found
@@ -227,7 +225,7 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
 
       List<SensorDataRef> sensorDataRefList = index.getSensorDataRef();
       // sort the list by timestamps, newest first
-      Collections.sort(sensorDataRefList, new SensorDataRefComparator(false));
+      SensorDataRefComparator.sort(sensorDataRefList, false);
       for (SensorDataRef sensorDataRef : sensorDataRefList) {
         if (this.seenOlderData) {
           // stop iterating, older data found
@@ -253,19 +251,18 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
   private SnapshotBucket getNextBucket() {
     if (this.prevBucket == null) {
       // return first bucket, which starts at the end of the day
-      XMLGregorianCalendar startTime = this.getStartTime(this.endOfDay);
+      long startTime = this.getStartTime(this.endOfDay);
       SnapshotBucket snapshotBucket = new SnapshotBucket(startTime, this.endOfDay);
       this.prevBucket = snapshotBucket;
       this.bucketsRetrieved++;
       return snapshotBucket;
     }
-    else if (this.prevBucket.getStartTime().compare(this.startOfDay) == DatatypeConstants.GREATER) {
+    else if (this.prevBucket.getStartMillis() > this.startOfDay) {
       // previous bucket did not start at the beginning of the day so,
       // more buckets can still be obtained
       // decrement old start time by 1 millisecond to prevent overlap
-      XMLGregorianCalendar newEndTime = Tstamp.incrementMilliseconds(
-          this.prevBucket.getStartTime(), -1);
-      XMLGregorianCalendar newStartTime = this.getStartTime(newEndTime);
+      long newEndTime = this.prevBucket.getStartMillis() - 1;
+      long newStartTime = this.getStartTime(newEndTime);
 
       SnapshotBucket snapshotBucket = new SnapshotBucket(newStartTime, newEndTime);
       this.prevBucket = snapshotBucket;
@@ -279,14 +276,14 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
   /**
    * Gets the start time for a bucket based on the end time of the bucket.
    * 
-   * @param bucketEnd The end time for the bucket.
+   * @param bucketEnd The end time for the bucket, in epoch milliseconds.
    * @return Returns the bucket end time minus the given bucket size or the start of the day if
    *         subtracting the bucket size overshoots the beginning of the day.
    */
-  private XMLGregorianCalendar getStartTime(XMLGregorianCalendar bucketEnd) {
-    XMLGregorianCalendar startTime = Tstamp.incrementMinutes(bucketEnd, -this.bucketSize);
+  private long getStartTime(long bucketEnd) {
+    long startTime = bucketEnd - this.bucketSize * EpochTime.MILLIS_PER_MINUTE;
 
-    if (startTime.compare(this.startOfDay) == DatatypeConstants.LESSER) {
+    if (startTime < this.startOfDay) {
       // calculated start time is before the start of the day
       // set start time to the start of the day so the remaining data is still retrieved
       startTime = this.startOfDay;
@@ -300,14 +297,14 @@ public class SensorDataSnapshot implements Iterable<SensorData> {
    * @param data The data to be added to the sensor data collection if it meets all criteria.
    */
   private void addData(SensorData data) {
-    XMLGregorianCalendar runtime = data.getRuntime();
+    long runtime = EpochTime.toMillis(data.getRuntime());
 
-    if (this.snapshotRuntime == null) {
+    if (this.snapshotRuntime == Long.MIN_VALUE) {
       // first entry, use that runtime as the snapshot runtime
       this.snapshotRuntime = runtime;
     }
 
-    if (runtime.compare(this.snapshotRuntime) == DatatypeConstants.LESSER) {
+    if (runtime < this.snapshotRuntime) {
       // new runtime is less than the snapshot runtime, this is older data
       this.seenOlderData = true;
     }
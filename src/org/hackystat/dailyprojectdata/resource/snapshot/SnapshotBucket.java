@@ -2,27 +2,48 @@ package org.hackystat.dailyprojectdata.resource.snapshot;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
+
 /**
  * Represents a "bucket" of time that the snapshot uses to query for data.
+ * The bounds are held as epoch milliseconds, and converted to timestamps only for the query.
  * 
  * @author jsakuda
  */
 class SnapshotBucket {
-  /** Start time of the bucket. */
-  private XMLGregorianCalendar startTime;
+  /** Start time of the bucket, in epoch milliseconds. */
+  private long startMillis;
 
-  /** End time of the bucket. */
-  private XMLGregorianCalendar endTime;
+  /** End time of the bucket, in epoch milliseconds. */
+  private long endMillis;
 
   /**
    * Creates a new bucket of time.
    * 
-   * @param startTime The start of the bucket.
-   * @param endTime The end of the bucket.
+   * @param startMillis The start of the bucket.
+   * @param endMillis The end of the bucket.
+   */
+  SnapshotBucket(long startMillis, long endMillis) {
+    this.startMillis = startMillis;
+    this.endMillis = endMillis;
+  }
+
+  /**
+   * Gets the start time in epoch milliseconds.
+   * 
+   * @return Returns the start time.
+   */
+  long getStartMillis() {
+    return this.startMillis;
+  }
+
+  /**
+   * Gets the end time in epoch milliseconds.
+   * 
+   * @return Returns the end time.
    */
-  SnapshotBucket(XMLGregorianCalendar startTime, XMLGregorianCalendar endTime) {
-    this.startTime = startTime;
-    this.endTime = endTime;
+  long getEndMillis() {
+    return this.endMillis;
   }
 
   /**
@@ -31,7 +52,7 @@ class SnapshotBucket {
    * @return Returns the start time.
    */
   XMLGregorianCalendar getStartTime() {
-    return this.startTime;
+    return EpochTime.toTimestamp(this.startMillis);
   }
 
   /**
@@ -40,6 +61,6 @@ class SnapshotBucket {
    * @return Returns the end time.
    */
   XMLGregorianCalendar getEndTime() {
-    return this.endTime;
+    return EpochTime.toTimestamp(this.endMillis);
   }
 }
@@ -0,0 +1,295 @@
+package org.hackystat.dailyprojectdata.resource.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+
+/**
+ * Holds the refs and SensorData instances of recently computed snapshots, keyed by project
+ * owner, project, sensor data type, tool, and day, so that the DPDs built from the same
+ * snapshot, such as the FileMetric and Complexity DPDs, retrieve it from the SensorBase only
+ * once.
+ * <p>
+ * The memo is bounded by the total number of SensorData instances it holds. When adding a
+ * snapshot would exceed the bound, the least recently used snapshots are discarded; a snapshot
+ * larger than the bound is never held. Only snapshots of days before today should be added,
+ * since later data may still change them. Clearing the DPD cache with
+ * DELETE {host}/cache/{user} or DELETE {host}/cache/{user}/{project} also clears the
+ * corresponding snapshots.
+ * @author Philip Johnson
+ */
+public class SnapshotMemo {
+
+  /** The snapshots, in order from least to most recently used. */
+  private final LinkedHashMap<Key, Entry> snapshots = new LinkedHashMap<Key, Entry>(16, 0.75f,
+      true);
+
+  /** The maximum total number of instances held, or 0 if the memo is disabled. */
+  private final int maxInstances;
+
+  /** The total number of instances held. */
+  private int numInstances = 0;
+
+  /** The number of lookups that found a snapshot. */
+  private long hits = 0;
+
+  /** The number of lookups that did not find a snapshot. */
+  private long misses = 0;
+
+  /**
+   * Creates an empty memo.
+   * @param maxInstances The maximum total number of SensorData instances held, or 0 to
+   * disable the memo.
+   */
+  public SnapshotMemo(int maxInstances) {
+    this.maxInstances = Math.max(0, maxInstances);
+  }
+
+  /**
+   * Returns the snapshot of the specified day, or null if it is not held.
+   * @param owner The project owner.
+   * @param project The project name.
+   * @param sdt The sensor data type.
+   * @param tool The tool, or null if the snapshot is of all tools.
+   * @param day The start of the day, in epoch milliseconds.
+   * @return The snapshot, or null.
+   */
+  public synchronized Entry get(String owner, String project, String sdt, String tool,
+      long day) {
+    Entry entry = this.snapshots.get(new Key(owner, project, sdt, tool, day));
+    if (entry == null) {
+      this.misses++;
+    }
+    else {
+      this.hits++;
+    }
+    return entry;
+  }
+
+  /**
+   * Returns the instances of the snapshot of the specified day if it is held and its refs
+   * name the same instances as refs, or null otherwise. Unlike get, this does not count
+   * as a lookup.
+   * @param owner The project owner.
+   * @param project The project name.
+   * @param sdt The sensor data type.
+   * @param tool The tool, or null if the snapshot is of all tools.
+   * @param day The start of the day, in epoch milliseconds.
+   * @param refs The refs of the snapshot.
+   * @return The instances, in the same order as refs, or null.
+   */
+  public synchronized List<SensorData> getData(String owner, String project, String sdt,
+      String tool, long day, List<SensorDataRef> refs) {
+    Entry entry = this.snapshots.get(new Key(owner, project, sdt, tool, day));
+    return ((entry == null) || !entry.hasRefs(refs)) ? null : entry.getData();
+  }
+
+  /**
+   * Adds the snapshot of the specified day, replacing any snapshot already held for it, and
+   * discards the least recently used snapshots as required to stay within the bound.
+   * @param owner The project owner.
+   * @param project The project name.
+   * @param sdt The sensor data type.
+   * @param tool The tool, or null if the snapshot is of all tools.
+   * @param day The start of the day, in epoch milliseconds.
+   * @param refs The refs of the snapshot.
+   * @param data The instances named by refs, in the same order.
+   */
+  public synchronized void put(String owner, String project, String sdt, String tool,
+      long day, List<SensorDataRef> refs, List<SensorData> data) {
+    if ((this.maxInstances == 0) || (data.size() > this.maxInstances)) {
+      return;
+    }
+    Entry old = this.snapshots.put(new Key(owner, project, sdt, tool, day),
+        new Entry(refs, data));
+    if (old != null) {
+      this.numInstances -= old.getData().size();
+    }
+    this.numInstances += data.size();
+    Iterator<Entry> iterator = this.snapshots.values().iterator();
+    while (this.numInstances > this.maxInstances) {
+      this.numInstances -= iterator.next().getData().size();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Discards the snapshots of all projects owned by owner.
+   * @param owner The project owner.
+   */
+  public synchronized void clear(String owner) {
+    clear(owner, null);
+  }
+
+  /**
+   * Discards the snapshots of the specified project.
+   * @param owner The project owner.
+   * @param project The project name, or null to discard those of all of owner's projects.
+   */
+  public synchronized void clear(String owner, String project) {
+    for (Iterator<Map.Entry<Key, Entry>> i = this.snapshots.entrySet().iterator();
+         i.hasNext();) {
+      Map.Entry<Key, Entry> mapEntry = i.next();
+      Key key = mapEntry.getKey();
+      if (key.owner.equals(owner) && ((project == null) || key.project.equals(project))) {
+        this.numInstances -= mapEntry.getValue().getData().size();
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of snapshots held.
+   * @return The number of snapshots.
+   */
+  public synchronized int size() {
+    return this.snapshots.size();
+  }
+
+  /**
+   * Returns the total number of SensorData instances held.
+   * @return The number of instances.
+   */
+  public synchronized int getNumberOfInstances() {
+    return this.numInstances;
+  }
+
+  /**
+   * Returns the number of lookups with get that found a snapshot.
+   * @return The number of hits.
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Returns the number of lookups with get that did not find a snapshot.
+   * @return The number of misses.
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * The refs and instances of one snapshot.
+   */
+  public static final class Entry {
+    /** The refs. */
+    private final List<SensorDataRef> refs;
+    /** The instances named by refs. */
+    private final List<SensorData> data;
+
+    /**
+     * Copies the refs and instances of a snapshot.
+     * @param refs The refs.
+     * @param data The instances named by refs, in the same order.
+     */
+    private Entry(List<SensorDataRef> refs, List<SensorData> data) {
+      this.refs = Collections.unmodifiableList(new ArrayList<SensorDataRef>(refs));
+      this.data = Collections.unmodifiableList(new ArrayList<SensorData>(data));
+    }
+
+    /**
+     * Returns the refs of the snapshot.
+     * @return The unmodifiable refs.
+     */
+    public List<SensorDataRef> getRefs() {
+      return this.refs;
+    }
+
+    /**
+     * Returns the instances of the snapshot, in the same order as its refs.
+     * @return The unmodifiable instances.
+     */
+    public List<SensorData> getData() {
+      return this.data;
+    }
+
+    /**
+     * Returns true if refs name the same instances, in the same order, as this snapshot's refs.
+     * @param refs The refs.
+     * @return True if the refs match.
+     */
+    private boolean hasRefs(List<SensorDataRef> refs) {
+      if (refs == this.refs) {
+        return true;
+      }
+      if (refs.size() != this.refs.size()) {
+        return false;
+      }
+      for (int i = 0; i < refs.size(); i++) {
+        if (!refs.get(i).getHref().equals(this.refs.get(i).getHref())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Identifies the snapshot of one day of one type of data of one project.
+   */
+  private static final class Key {
+    /** The project owner. */
+    private final String owner;
+    /** The project name. */
+    private final String project;
+    /** The sensor data type. */
+    private final String sdt;
+    /** The tool, or null. */
+    private final String tool;
+    /** The start of the day in epoch milliseconds. */
+    private final long day;
+
+    /**
+     * Creates the key.
+     * @param owner The project owner.
+     * @param project The project name.
+     * @param sdt The sensor data type.
+     * @param tool The tool, or null.
+     * @param day The start of the day in epoch milliseconds.
+     */
+    private Key(String owner, String project, String sdt, String tool, long day) {
+      this.owner = owner;
+      this.project = project;
+      this.sdt = sdt;
+      this.tool = tool;
+      this.day = day;
+    }
+
+    /**
+     * Returns true if obj is a Key for the same snapshot.
+     * @param obj The other object.
+     * @return True if equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return (this.day == other.day) && this.owner.equals(other.owner)
+          && this.project.equals(other.project) && this.sdt.equals(other.sdt)
+          && ((this.tool == null) ? (other.tool == null) : this.tool.equals(other.tool));
+    }
+
+    /**
+     * Returns the hash code of this key.
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+      int hash = this.owner.hashCode();
+      hash = 31 * hash + this.project.hashCode();
+      hash = 31 * hash + this.sdt.hashCode();
+      hash = 31 * hash + ((this.tool == null) ? 0 : this.tool.hashCode());
+      return 31 * hash + (int) (this.day ^ (this.day >>> 32));
+    }
+  }
+}
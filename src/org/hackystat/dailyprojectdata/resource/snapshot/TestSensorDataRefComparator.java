@@ -2,6 +2,9 @@ package org.hackystat.dailyprojectdata.resource.snapshot;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
@@ -60,4 +63,25 @@ public class TestSensorDataRefComparator {
     assertEquals("ref1 should be equal to itself", 0, comparator.compare(this.ref1, this.ref1));
   }
 
+  /** Tests sorting a list of data refs, keeping refs with the same timestamp in order. */
+  @Test
+  public void testSort() {
+    SensorDataRef ref3 = new SensorDataRef();
+    ref3.setTimestamp(this.ref1.getTimestamp());
+    List<SensorDataRef> refs = new ArrayList<SensorDataRef>();
+    refs.add(this.ref1);
+    refs.add(this.ref2);
+    refs.add(ref3);
+    
+    SensorDataRefComparator.sort(refs, false);
+    assertSame("ref2 should be first", this.ref2, refs.get(0));
+    assertSame("ref1 should be second", this.ref1, refs.get(1));
+    assertSame("ref3 should be third", ref3, refs.get(2));
+    
+    SensorDataRefComparator.sort(refs, true);
+    assertSame("ref1 should be first", this.ref1, refs.get(0));
+    assertSame("ref3 should be second", ref3, refs.get(1));
+    assertSame("ref2 should be third", this.ref2, refs.get(2));
+  }
+
 }
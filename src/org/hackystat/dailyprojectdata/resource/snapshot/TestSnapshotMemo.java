@@ -0,0 +1,114 @@
+package org.hackystat.dailyprojectdata.resource.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.junit.Test;
+
+/**
+ * Tests the lookup, eviction, and clearing of snapshots in SnapshotMemo.
+ *
+ * @author Philip Johnson
+ */
+public class TestSnapshotMemo {
+
+  /** The owner of the projects. */
+  private static final String OWNER = "TestSnapshotMemo@hackystat.org";
+
+  /** The sensor data type. */
+  private static final String SDT = "FileMetric";
+
+  /** Tests that snapshots are found only under their own key, and only for matching refs. */
+  @Test
+  public void testLookup() {
+    SnapshotMemo memo = new SnapshotMemo(100);
+    List<SensorDataRef> refs = makeRefs("a", 3);
+    List<SensorData> data = makeData(3);
+    memo.put(OWNER, "Default", SDT, "SCLC", 0, refs, data);
+    assertNotNull("Checking hit", memo.get(OWNER, "Default", SDT, "SCLC", 0));
+    assertEquals("Checking refs", 3, memo.get(OWNER, "Default", SDT, "SCLC", 0).getRefs().size());
+    assertNull("Checking other tool", memo.get(OWNER, "Default", SDT, null, 0));
+    assertNull("Checking other day", memo.get(OWNER, "Default", SDT, "SCLC", 1));
+    assertNull("Checking other sdt", memo.get(OWNER, "Default", "Coupling", "SCLC", 0));
+    assertEquals("Checking hits", 2, memo.getHits());
+    assertEquals("Checking misses", 3, memo.getMisses());
+    assertSame("Checking data", data.get(2),
+        memo.getData(OWNER, "Default", SDT, "SCLC", 0, makeRefs("a", 3)).get(2));
+    assertNull("Checking changed refs",
+        memo.getData(OWNER, "Default", SDT, "SCLC", 0, makeRefs("b", 3)));
+    assertNull("Checking fewer refs",
+        memo.getData(OWNER, "Default", SDT, "SCLC", 0, makeRefs("a", 2)));
+  }
+
+  /** Tests that the least recently used snapshots are evicted to stay within the bound. */
+  @Test
+  public void testEviction() {
+    SnapshotMemo memo = new SnapshotMemo(10);
+    memo.put(OWNER, "Default", SDT, null, 0, makeRefs("a", 4), makeData(4));
+    memo.put(OWNER, "Default", SDT, null, 1, makeRefs("b", 4), makeData(4));
+    memo.get(OWNER, "Default", SDT, null, 0);
+    memo.put(OWNER, "Default", SDT, null, 2, makeRefs("c", 4), makeData(4));
+    assertEquals("Checking size", 2, memo.size());
+    assertEquals("Checking instances", 8, memo.getNumberOfInstances());
+    assertNotNull("Checking recently used", memo.get(OWNER, "Default", SDT, null, 0));
+    assertNull("Checking evicted", memo.get(OWNER, "Default", SDT, null, 1));
+    memo.put(OWNER, "Default", SDT, null, 3, makeRefs("d", 11), makeData(11));
+    assertNull("Checking too large", memo.get(OWNER, "Default", SDT, null, 3));
+    memo.put(OWNER, "Default", SDT, null, 0, makeRefs("a", 1), makeData(1));
+    assertEquals("Checking replaced", 5, memo.getNumberOfInstances());
+    SnapshotMemo disabled = new SnapshotMemo(0);
+    disabled.put(OWNER, "Default", SDT, null, 0, makeRefs("a", 0), makeData(0));
+    assertEquals("Checking disabled", 0, disabled.size());
+  }
+
+  /** Tests that snapshots are cleared by owner and by project. */
+  @Test
+  public void testClear() {
+    SnapshotMemo memo = new SnapshotMemo(100);
+    memo.put(OWNER, "Default", SDT, null, 0, makeRefs("a", 2), makeData(2));
+    memo.put(OWNER, "Other", SDT, null, 0, makeRefs("b", 2), makeData(2));
+    memo.put("other@hackystat.org", "Default", SDT, null, 0, makeRefs("c", 2), makeData(2));
+    memo.clear(OWNER, "Default");
+    assertEquals("Checking project clear", 2, memo.size());
+    assertNotNull("Checking other project", memo.get(OWNER, "Other", SDT, null, 0));
+    memo.clear(OWNER);
+    assertEquals("Checking owner clear", 1, memo.size());
+    assertEquals("Checking instances", 2, memo.getNumberOfInstances());
+  }
+
+  /**
+   * Returns refs with distinct hrefs.
+   * @param prefix The prefix of the hrefs.
+   * @param size The number of refs.
+   * @return The refs.
+   */
+  private static List<SensorDataRef> makeRefs(String prefix, int size) {
+    List<SensorDataRef> refs = new ArrayList<SensorDataRef>();
+    for (int i = 0; i < size; i++) {
+      SensorDataRef ref = new SensorDataRef();
+      ref.setHref("http://localhost/sensorbase/sensordata/" + prefix + i);
+      refs.add(ref);
+    }
+    return refs;
+  }
+
+  /**
+   * Returns empty instances.
+   * @param size The number of instances.
+   * @return The instances.
+   */
+  private static List<SensorData> makeData(int size) {
+    List<SensorData> data = new ArrayList<SensorData>();
+    for (int i = 0; i < size; i++) {
+      data.add(new SensorData());
+    }
+    return data;
+  }
+}
@@ -0,0 +1,51 @@
+package org.hackystat.dailyprojectdata.resource.unittest;
+
+import java.util.List;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.benchmark.SensorDataWorkload;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Benchmarks UnitTestCounter on UnitTest instances from skewed project members.
+ * @author Philip Johnson
+ */
+public class BenchUnitTestCounter extends Benchmark {
+
+  /** The UnitTest instances. */
+  private List<SensorData> unitTests;
+
+  /**
+   * Generates the UnitTest instances.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.unitTests = new SensorDataWorkload(size).makeUnitTests(size);
+  }
+
+  /**
+   * Counts the passes and failures of each member.
+   * @return The total number of passes and failures.
+   */
+  @Override
+  public long run() {
+    UnitTestCounter counter = new UnitTestCounter();
+    for (SensorData data : this.unitTests) {
+      counter.add(data);
+    }
+    long result = 0;
+    for (String member : counter.getMembers()) {
+      result += counter.getPassCount(member).longValue();
+      result += counter.getFailCount(member).longValue();
+    }
+    return result;
+  }
+
+  /** Releases the UnitTest instances. */
+  @Override
+  public void tearDown() {
+    this.unitTests = null;
+  }
+}
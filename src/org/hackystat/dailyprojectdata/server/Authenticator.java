@@ -1,99 +1,296 @@
 package org.hackystat.dailyprojectdata.server;
 
-import java.util.HashMap;
-
-import java.util.Map;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
 
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.restlet.Context;
 import org.restlet.Guard;
+import org.restlet.data.ChallengeResponse;
 import org.restlet.data.ChallengeScheme;
 import org.restlet.data.Request;
 
 /**
- * Performs authentication of each HTTP request using HTTP Basic authentication. 
- * Checks user/password credentials by pinging SensorBase, then caching authentic 
- * user/password combinations.  If a cached user/password combo does not match the 
- * current user/password combo, then the SensorBase is pinged again (because maybe
- * the user has changed their password recently). 
+ * Performs authentication of each HTTP request using HTTP Basic authentication.
+ * Checks user/password credentials by pinging SensorBase, then caching authentic
+ * user/password combinations in a CredentialCache for a limited time.  If a cached
+ * user/password combo does not match the current user/password combo, then the SensorBase
+ * is pinged again (because maybe the user has changed their password recently).
+ * Concurrent checks of the same user/password combo share a single ping.
+ * <p>
+ * Because DPD resources will always want to communicate with the underlying SensorBase, this
+ * Authenticator also keeps a SensorBaseClient for each authenticated user, which resources
+ * retrieve with getSensorBaseClient.  This keeps the user password info in this class, while 
+ * making the SensorBaseClient instance available to the service. A user's client is replaced
+ * when a request, whose password this Guard has just verified, carries another password than
+ * the one the client was created with, which happens once the user changes their password. 
+ * <p>
+ * When caching is enabled, each client caches sensor data in the JCS cache named after its 
+ * user. JCS keeps a single cache region per name in the JVM, so a client that replaces one 
+ * after a password change takes over the cache of the one it replaces, with its contents, 
+ * rather than opening a second cache over the same files (see 
+ * <https://issues.apache.org/jira/browse/JCS-31>). Since that cache cannot be closed, 
+ * clients are then never dropped. When caching is disabled, only the maxClients most 
+ * recently used clients are kept; a client that has been dropped is created again the next 
+ * time its user makes a request.
  * <p>
- * Because DPD resources will always want to communicate with the underlying SensorBase, this 
- * Authenticator also creates a map of user-to-SensorBaseClient instances which can be retrieved
- * from the server context.  This keeps the user password info in this class, while making the 
- * SensorBaseClient instance available to the service. 
+ * No lock is held while the SensorBase is pinged or a client is created, so requests of
+ * other users never wait for them. Concurrent client creations for the same user are shared,
+ * whatever passwords the requests carry, so that a user never has two clients at once.
  * @author Philip Johnson
  */
 public class Authenticator extends Guard {
-  
-  /** A singleton map containing previously verified credentials. */
-  private static Map<String, String> credentials = new HashMap<String, String>();
-  
-  /** A singleton map containing SensorBaseClient instances, one per credentialed user. */
-  private static Map<String, SensorBaseClient> userClientMap = 
-    new HashMap<String, SensorBaseClient>();
-  
+
+  /** Lets followers share the leader's result, since the key identifies what is computed. */
+  private static final Callable<Boolean> SAME_KEY = new Callable<Boolean>() {
+    public Boolean call() {
+      return Boolean.TRUE;
+    }
+  };
+
+  /** Salts the keys of the checks in progress, so that they do not reveal passwords. */
+  private static final byte[] CHECK_KEY_SALT = CredentialCache.makeSalt();
+
+  /** The previously verified credentials. */
+  private final CredentialCache credentials;
+
+  /** The SensorBaseClients of authenticated users, least recently used first. */
+  private final LinkedHashMap<String, UserClient> userClients =
+    new LinkedHashMap<String, UserClient>(16, 0.75f, true);
+
+  /** The maximum number of SensorBaseClients kept when caching is disabled. */
+  private final int maxClients;
+
+  /** Shares each SensorBase check among the concurrent requests with the same credentials. */
+  private final RequestCoalescer<Boolean> registrationChecks = new RequestCoalescer<Boolean>();
+
+  /** Shares each client creation among the concurrent requests of the same user. */
+  private final RequestCoalescer<UserClient> clientCreations =
+    new RequestCoalescer<UserClient>();
+
   /** The sensorbase host, such as "http://localhost:9876/sensorbase/". */
   private String sensorBaseHost;
-  
-  /** The key to be used to retrieve the sensorbaseclient map from the server context. */
-  public static final String AUTHENTICATOR_SENSORBASECLIENTS_KEY = "authenticator.clients";
+
+  /** The server properties, which say whether client caching is enabled. */
+  private ServerProperties properties;
+
+  /** The logger. */
+  private Logger logger;
 
   /**
    * Initializes this Guard to do HTTP Basic authentication.
-   * Puts the credentials map in the server context so that Resources can get the 
-   * password associated with the uriUser for their own invocations to the SensorBase. 
    * @param context The server context.
    * @param sensorBaseHost The host, such as 'http://localhost:9876/sensorbase/'.
+   * @param properties The server properties.
+   * @param logger The logger.
    */
-  public Authenticator (Context context, String sensorBaseHost) {
+  public Authenticator (Context context, String sensorBaseHost, ServerProperties properties,
+      Logger logger) {
     super(context, ChallengeScheme.HTTP_BASIC,  "DailyProjectData");
     this.sensorBaseHost = sensorBaseHost;
-    context.getAttributes().put(AUTHENTICATOR_SENSORBASECLIENTS_KEY, userClientMap);
+    this.properties = properties;
+    this.logger = logger;
+    this.credentials = new CredentialCache(properties.getAuthCacheSeconds() * 1000L,
+        properties.getAuthCacheUsers());
+    this.maxClients = properties.getAuthClients();
   }
-  
+
   /**
    * Returns true if the passed credentials are OK.
-   * @param request Ignored. 
+   * @param request Ignored.
    * @param identifier The account name.
-   * @param secretCharArray The password. 
+   * @param secretCharArray The password.
    * @return If the credentials are valid.
    */
-  @Override public boolean checkSecret(Request request, 
-      String identifier, char[] secretCharArray) {
-    /*
-     * I am synchronizing here on a static (class-wide) variable for two reasons:
-     * (1) JCS write-through caching fails when multiple threads access the same back-end file:
-     * <https://issues.apache.org/jira/browse/JCS-31>. Thus, it is vitally important to ensure
-     * that only one instance of a SensorBaseClient for any given user is created.
-     * (2) I do not know if Restlet allows multiple Authenticator instances.  Thus, I am 
-     * synchronizing on a class-wide variable just in case. 
-     * This synchronization creates a bottleneck on every request, but the benefits of reliable
-     * caching should outweigh this potential performance hit under high loads. 
-     */
-    synchronized (userClientMap) {
-      String secret = new String(secretCharArray);
-      // Return true if the user/password credentials are in the cache.
-      if (credentials.containsKey(identifier) && secret.equals(credentials.get(identifier))) {
-        return true;
-      }
-      // Otherwise we check the credentials with the SensorBase.
-      boolean isRegistered = SensorBaseClient.isRegistered(sensorBaseHost, identifier, secret);
-      if (isRegistered) {
-        // Credentials are good, so save them and create a sensorbase client for this user.
-        credentials.put(identifier, secret);
-        SensorBaseClient client = new SensorBaseClient(sensorBaseHost, identifier, secret);
-        // Set timeout to 60 minutes.
-        client.setTimeout(1000 * 60 * 60);
-        // Get the ServerProperties instance so we can determine if caching is enabled.
-        Server server = (Server) getContext().getAttributes().get("DailyProjectDataServer");
-        ServerProperties props = server.getServerProperties();
-        if (props.isCacheEnabled()) {
-          client.enableCaching(identifier, "dailyprojectdata", props.getCacheMaxLife(), props
-              .getCacheCapacity());
+  @Override public boolean checkSecret(Request request,
+      final String identifier, char[] secretCharArray) {
+    final String secret = new String(secretCharArray);
+    // Return true if the user/password credentials are in the cache.
+    if (this.credentials.matches(identifier, secret)) {
+      return true;
+    }
+    // Otherwise we check the credentials with the SensorBase.
+    try {
+      return this.registrationChecks.execute(makeCheckKey(identifier, secret),
+          new Callable<Boolean>() {
+        public Boolean call() throws Exception {
+          return Boolean.valueOf(checkRegistration(identifier, secret));
         }
-        userClientMap.put(identifier, client);
-      }
+      }, SAME_KEY).booleanValue();
+    }
+    catch (Exception e) {
+      this.logger.warning("Error authenticating " + identifier + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Checks the credentials with the SensorBase and, if they are good, remembers them and
+   * makes sure there is a SensorBaseClient for them.
+   * @param identifier The account name.
+   * @param secret The password.
+   * @return True if the user is registered with that password.
+   * @throws Exception If the client cannot be created.
+   */
+  private boolean checkRegistration(String identifier, String secret) throws Exception {
+    boolean isRegistered = SensorBaseClient.isRegistered(this.sensorBaseHost, identifier, secret);
+    if (isRegistered) {
+      this.credentials.put(identifier, secret);
+      getUserClient(identifier, secret);
+    }
     return isRegistered;
+  }
+
+  /**
+   * Returns the SensorBaseClient of the authenticated user of a request.
+   * @param credentials The credentials of the request, which have been checked by this Guard.
+   * @return The SensorBaseClient instance.
+   */
+  public SensorBaseClient getSensorBaseClient(ChallengeResponse credentials) {
+    try {
+      return getUserClient(credentials.getIdentifier(),
+          new String(credentials.getSecret())).client;
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not create SensorBaseClient for " +
+          credentials.getIdentifier(), e);
+    }
+  }
+
+  /**
+   * Returns the client of the user, creating it if there is none, or if the password of the
+   * request differs from the one the client was created with.
+   * @param identifier The account name.
+   * @param secret The password of the request, which must have been verified.
+   * @return The client.
+   * @throws Exception If the client cannot be created.
+   */
+  private UserClient getUserClient(final String identifier, final String secret)
+      throws Exception {
+    UserClient userClient = findUserClient(identifier, secret);
+    if (userClient != null) {
+      return userClient;
+    }
+    return this.clientCreations.execute(identifier, new Callable<UserClient>() {
+      public UserClient call() {
+        UserClient current = findUserClient(identifier, secret);
+        if (current != null) {
+          return current;
+        }
+        UserClient userClient = new UserClient(makeClient(identifier, secret), secret);
+        synchronized (userClients) {
+          if (userClients.put(identifier, userClient) != null) {
+            logger.info("Replaced the SensorBaseClient of " + identifier + 
+                " after a password change.");
+          }
+          if (!properties.isCacheEnabled()) {
+            Iterator<UserClient> eldest = userClients.values().iterator();
+            while (userClients.size() > maxClients) {
+              eldest.next();
+              eldest.remove();
+            }
+          }
+        }
+        return userClient;
+      }
+    }, SAME_KEY);
+  }
+
+  /**
+   * Returns the user's client, unless there is none or it was created with another password
+   * than the request's. The password of the request has been verified by this Guard, so it
+   * is the user's current password, whether or not verified credentials are remembered.
+   * @param identifier The account name.
+   * @param secret The password of the request.
+   * @return The client, or null.
+   */
+  private UserClient findUserClient(String identifier, String secret) {
+    UserClient userClient;
+    synchronized (this.userClients) {
+      userClient = this.userClients.get(identifier);
+    }
+    return ((userClient == null) || !userClient.credential.matches(secret)) ? null : userClient;
+  }
+
+  /**
+   * Creates a SensorBaseClient for the given credentials, caching its sensor data in the 
+   * user's cache if caching is enabled.
+   * @param identifier The account name.
+   * @param secret The password.
+   * @return The client.
+   */
+  private SensorBaseClient makeClient(String identifier, String secret) {
+    SensorBaseClient client = new SensorBaseClient(this.sensorBaseHost, identifier, secret);
+    // Set timeout to 60 minutes.
+    client.setTimeout(1000 * 60 * 60);
+    if (this.properties.isCacheEnabled()) {
+      client.enableCaching(identifier, "dailyprojectdata", this.properties.getCacheMaxLife(),
+          this.properties.getCacheCapacity());
+    }
+    return client;
+  }
+
+  /**
+   * Returns the key identifying the checks of a user/password combo, which includes a salted
+   * hash of the password rather than the password itself.
+   * @param identifier The account name.
+   * @param secret The password.
+   * @return The key.
+   */
+  private static String makeCheckKey(String identifier, String secret) {
+    StringBuilder key = new StringBuilder(identifier).append('\n');
+    for (byte b : CredentialCache.hash(CHECK_KEY_SALT, secret)) {
+      key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns the cache of verified credentials.
+   * @return The CredentialCache.
+   */
+  public CredentialCache getCredentialCache() {
+    return this.credentials;
+  }
+
+  /**
+   * Returns the coalescer of the SensorBase checks, whose computations are the number of
+   * checks made, and whose shared count is the number of requests that waited for another's.
+   * @return The RequestCoalescer.
+   */
+  public RequestCoalescer<Boolean> getRegistrationChecks() {
+    return this.registrationChecks;
+  }
+
+  /**
+   * Returns the number of SensorBaseClients currently kept.
+   * @return The number of clients.
+   */
+  public int getNumberOfClients() {
+    synchronized (this.userClients) {
+      return this.userClients.size();
+    }
+  }
+
+  /**
+   * A user's SensorBaseClient, with a salted hash of the password it was created with.
+   */
+  private static class UserClient {
+    /** The client. */
+    private final SensorBaseClient client;
+    /** The password the client was created with. */
+    private final CredentialCache.Credential credential;
+
+    /**
+     * Creates a UserClient.
+     * @param client The client.
+     * @param secret The password the client was created with.
+     */
+    UserClient(SensorBaseClient client, String secret) {
+      this.client = client;
+      this.credential = new CredentialCache.Credential(secret, Long.MAX_VALUE);
     }
   }
 }
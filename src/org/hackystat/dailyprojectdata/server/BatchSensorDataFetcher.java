@@ -0,0 +1,374 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hackystat.dailyprojectdata.metrics.RequestMetrics;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.restlet.Client;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Reference;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.StringRepresentation;
+
+/**
+ * A SensorDataFetcher that retrieves SensorData instances in batches using the SensorBase
+ * batch call:
+ * <pre>POST {sensorbase}sensordata/batch</pre>
+ * The request entity is a SensorDataIndex listing the refs to retrieve, and the response entity
+ * is a SensorDatas containing the corresponding instances.  The response is parsed 
+ * incrementally as it arrives, one SensorData element at a time, rather than building the 
+ * entire document. DTDs and external entities are not processed.
+ * <p>
+ * Not all SensorBases provide the batch call, so it is only used when a batch size is 
+ * configured.  When the SensorBase responds that the call does not exist, with a 405, or 
+ * with a 404 while it still answers a ping at the same host, this fetcher uses its fallback
+ * fetcher for a while, then tries the batch call 
+ * again, waiting twice as long after each refusal, up to an hour, so that a SensorBase without
+ * the call costs one failed call an hour, and one that refused it only briefly, such as while
+ * a proxy was misrouting, soon has it used again. Any other failure, including a 404 from a 
+ * host that is not a SensorBase, is an error of the request. The fallback is also used when the 
+ * credentials of the requesting user are not available, and when the SensorBase is reached by
+ * a protocol other than HTTP or HTTPS. 
+ * <p>
+ * The batch calls are made by a Restlet Client shared by all requests, whose HTTP connector,
+ * like that of the per-user SensorBaseClients, keeps its connections in the JVM's pool of
+ * keep-alive connections. 
+ * 
+ * @author Philip Johnson
+ */
+public class BatchSensorDataFetcher extends ConcurrentSensorDataFetcher {
+  
+  /** The milliseconds to wait after the first refusal of the batch call before trying again. */
+  private static final long MIN_RETRY_MILLIS = 60 * 1000L;
+  
+  /** The longest wait after a refusal of the batch call before trying again, in milliseconds. */
+  private static final long MAX_RETRY_MILLIS = 60 * 60 * 1000L;
+  
+  /** The URI of the batch call, such as "http://localhost:9876/sensorbase/sensordata/batch". */
+  private String batchUri;
+  
+  /** The URI of the SensorBase ping, such as "http://localhost:9876/sensorbase/ping". */
+  private String pingUri;
+  
+  /** The maximum number of refs sent in a single batch call. */
+  private int batchSize;
+  
+  /** The fetcher to use when the batch call is not available. */
+  private SensorDataFetcher fallback;
+  
+  /** The time before which the batch call is not tried, after the SensorBase refused it. */
+  private volatile long retryTime = 0;
+  
+  /** The wait after the last refusal of the batch call, or 0 if the last call succeeded. */
+  private volatile long retryMillis = 0;
+  
+  /** The wait after the first refusal of the batch call. */
+  private long minRetryMillis = MIN_RETRY_MILLIS;
+  
+  /** The Restlet Client used to make the batch calls. */
+  private Client client;
+  
+  /** Marshals the request and unmarshals the response. */
+  private JAXBContext sensorDataJAXB;
+  
+  /** Creates the incremental parser for batch responses. */
+  private XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+  
+  /** The logger. */
+  private Logger logger;
+  
+  /**
+   * Creates a new BatchSensorDataFetcher.
+   * @param sensorBaseHost The SensorBase host, such as "http://localhost:9876/sensorbase/".
+   * @param batchSize The maximum number of refs sent in a single batch call.
+   * @param executor The thread pool shared by all requests.
+   * @param parallelism The maximum number of batch calls outstanding for a single request.
+   * @param timeout The number of milliseconds allowed to retrieve all instances of a request.
+   * @param fallback The fetcher to use if the batch call is not available. 
+   * @param logger The logger.
+   * @throws Exception If the JAXBContext for SensorData cannot be created. 
+   */
+  public BatchSensorDataFetcher(String sensorBaseHost, int batchSize, ExecutorService executor,
+      int parallelism, long timeout, SensorDataFetcher fallback, Logger logger) throws Exception {
+    super(executor, parallelism, timeout);
+    String host = sensorBaseHost.endsWith("/") ? sensorBaseHost : sensorBaseHost + "/";
+    this.batchUri = host + "sensordata/batch";
+    this.pingUri = host + "ping";
+    this.batchSize = batchSize;
+    this.fallback = fallback;
+    this.logger = logger;
+    if (this.batchUri.startsWith("http://") || this.batchUri.startsWith("https://")) {
+      this.client = new Client(this.batchUri.startsWith("https://") ? Protocol.HTTPS : 
+        Protocol.HTTP);
+      this.client.getContext().getParameters().add("readTimeout", String.valueOf(timeout));
+    }
+    else {
+      this.logger.warning("Batch calls are not made to " + this.batchUri + 
+          ". Fetching sensor data one instance at a time.");
+    }
+    this.sensorDataJAXB = JAXBContext.newInstance(
+        org.hackystat.sensorbase.resource.sensordata.jaxb.ObjectFactory.class);
+    this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+  
+  /**
+   * Returns the SensorData instances named by refs, in the same order as refs. 
+   * Uses the batch call if it is available and credentials are supplied, otherwise the fallback.
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials The credentials of the user making this request, or null. 
+   * @param refs The references to the SensorData instances. 
+   * @return The SensorData instances, in index order. 
+   * @throws SensorBaseClientException If any instance could not be retrieved.
+   */
+  @Override
+  public List<SensorData> getSensorData(SensorBaseClient client, ChallengeResponse credentials,
+      List<SensorDataRef> refs) throws SensorBaseClientException {
+    if (!isBatchSupported() || (credentials == null) || refs.size() <= 1) {
+      return this.fallback.getSensorData(client, credentials, refs);
+    }
+    try {
+      return super.getSensorData(client, credentials, refs);
+    }
+    catch (BatchNotSupportedException e) {
+      return this.fallback.getSensorData(client, credentials, refs);
+    }
+  }
+  
+  /**
+   * Returns true if this fetcher is using the batch call. 
+   * @return False if the SensorBase cannot be sent the batch call, or has recently indicated
+   * that it does not support it.
+   */
+  public boolean isBatchSupported() {
+    return (this.client != null) && (System.currentTimeMillis() >= this.retryTime);
+  }
+  
+  /**
+   * Sets the wait after the first refusal of the batch call, which is otherwise a minute.
+   * @param millis The wait in milliseconds.
+   */
+  void setMinRetryMillis(long millis) {
+    this.minRetryMillis = millis;
+  }
+  
+  /**
+   * Stops using the batch call for a while after the SensorBase refused it, unless a
+   * concurrent call has already done so.
+   */
+  private synchronized void suspendBatch() {
+    long now = System.currentTimeMillis();
+    if (now < this.retryTime) {
+      return;
+    }
+    this.retryMillis = (this.retryMillis == 0) ? this.minRetryMillis : 
+      Math.min(2 * this.retryMillis, MAX_RETRY_MILLIS);
+    this.retryTime = now + this.retryMillis;
+    this.logger.warning("SensorBase does not support " + this.batchUri + 
+        ". Fetching sensor data one instance at a time for " + (this.retryMillis / 1000) + 
+        " seconds.");
+  }
+  
+  /**
+   * Returns the maximum number of refs sent in a single batch call.
+   * @return The batch size.
+   */
+  @Override
+  protected int getChunkSize() {
+    return this.batchSize;
+  }
+
+  /**
+   * Retrieves the instances named by chunk with a single batch call. 
+   * @param client Ignored.
+   * @param credentials The credentials of the user making this request.
+   * @param chunk The refs to retrieve.
+   * @return The SensorData instances. 
+   * @throws SensorBaseClientException If the batch call fails. 
+   */
+  @Override
+  protected List<SensorData> getChunk(SensorBaseClient client, ChallengeResponse credentials,
+      List<SensorDataRef> chunk) throws SensorBaseClientException {
+    Response response = null;
+    int requestLength = 0;
+    try {
+      SensorDataIndex index = new SensorDataIndex();
+      index.getSensorDataRef().addAll(chunk);
+      Marshaller marshaller = this.sensorDataJAXB.createMarshaller();
+      StringWriter writer = new StringWriter();
+      marshaller.marshal(index, writer);
+      requestLength = writer.getBuffer().length();
+      Request request = new Request(Method.POST, new Reference(this.batchUri), 
+          new StringRepresentation(writer.toString(), MediaType.TEXT_XML));
+      request.setChallengeResponse(credentials);
+      response = this.client.handle(request);
+    }
+    catch (Exception e) {
+      throw new SensorBaseClientException("Error making sensor data batch call", e);
+    }
+    Status status = response.getStatus();
+    if (Status.CLIENT_ERROR_METHOD_NOT_ALLOWED.equals(status) || 
+        (Status.CLIENT_ERROR_NOT_FOUND.equals(status) && isSensorBase())) {
+      RequestMetrics.recordSensorBaseCall(requestLength);
+      suspendBatch();
+      throw new BatchNotSupportedException();
+    }
+    if (!status.isSuccess()) {
+      RequestMetrics.recordSensorBaseCall(requestLength);
+      throw new SensorBaseClientException(status);
+    }
+    CountingInputStream stream = null;
+    try {
+      stream = new CountingInputStream(response.getEntity().getStream());
+      List<SensorData> dataList = parseSensorDatas(stream);
+      this.retryMillis = 0;
+      return dataList;
+    }
+    catch (Exception e) {
+      throw new SensorBaseClientException("Error parsing sensor data batch response", e);
+    }
+    finally {
+      RequestMetrics.recordSensorBaseCall(requestLength + 
+          ((stream == null) ? 0 : stream.getCount()));
+    }
+  }
+  
+  /**
+   * Returns true if a SensorBase answers a ping at the host the batch call is sent to, so 
+   * that a 404 from the batch call means that the SensorBase lacks the call, rather than 
+   * that the host is wrong. 
+   * @return True if the host is a SensorBase.
+   */
+  private boolean isSensorBase() {
+    try {
+      Response response = this.client.handle(new Request(Method.GET, 
+          new Reference(this.pingUri)));
+      return response.getStatus().isSuccess() && (response.getEntity() != null) 
+        && "SensorBase".equals(response.getEntity().getText());
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+  
+  /**
+   * Parses a SensorDatas document, unmarshalling one SensorData element at a time.
+   * @param stream The stream containing the document.
+   * @return The SensorData instances in the document.
+   * @throws Exception If the document cannot be parsed.
+   */
+  private List<SensorData> parseSensorDatas(InputStream stream) throws Exception {
+    List<SensorData> dataList = new ArrayList<SensorData>();
+    Unmarshaller unmarshaller = this.sensorDataJAXB.createUnmarshaller();
+    XMLStreamReader reader = this.inputFactory.createXMLStreamReader(stream);
+    try {
+      while (reader.hasNext()) {
+        if ((reader.getEventType() == XMLStreamConstants.START_ELEMENT) && 
+            "SensorData".equals(reader.getLocalName())) {
+          // Unmarshalling consumes the element, leaving the reader just past its end tag.
+          dataList.add(unmarshaller.unmarshal(reader, SensorData.class).getValue());
+        }
+        else {
+          reader.next();
+        }
+      }
+    }
+    finally {
+      reader.close();
+      stream.close();
+    }
+    return dataList;
+  }
+  
+  /**
+   * Counts the bytes read from a response, for the request's metrics.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    /** The number of bytes read. */
+    private long count = 0;
+
+    /**
+     * Creates a stream that counts the bytes read from in.
+     * @param in The response stream.
+     */
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    /**
+     * Reads a byte.
+     * @return The byte, or -1 at the end of the stream.
+     * @throws IOException If the read fails.
+     */
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        this.count++;
+      }
+      return b;
+    }
+
+    /**
+     * Reads up to len bytes into buffer.
+     * @param buffer The buffer.
+     * @param offset The offset of the first byte read in buffer.
+     * @param len The maximum number of bytes read.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException If the read fails.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int len) throws IOException {
+      int n = super.read(buffer, offset, len);
+      if (n > 0) {
+        this.count += n;
+      }
+      return n;
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     * @return The count.
+     */
+    long getCount() {
+      return this.count;
+    }
+  }
+  
+  /**
+   * Thrown by getChunk when the SensorBase does not provide the batch call, so that 
+   * getSensorData can retry the request with the fallback fetcher.
+   */
+  private static class BatchNotSupportedException extends SensorBaseClientException {
+    /** For serialization. */
+    private static final long serialVersionUID = 1L;
+
+    /** Creates the exception. */
+    BatchNotSupportedException() {
+      super("SensorBase does not support the sensor data batch call");
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.hackystat.dailyprojectdata.benchmark.Benchmark;
+import org.hackystat.dailyprojectdata.resource.filemetric.jaxb.FileData;
+import org.hackystat.dailyprojectdata.resource.filemetric.jaxb.FileMetricDailyProjectData;
+import org.hackystat.dailyprojectdata.resource.filemetric.jaxb.ObjectFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Compares the former per-request marshalling path (a new Marshaller, a DOM document, and a
+ * Transformer into a String) with pooled Marshallers writing directly to a stream, and a new
+ * Unmarshaller per DPD with a reused one, for FileMetric DPDs with size FileData elements.
+ *
+ * @author Philip Johnson
+ */
+public class BenchMarshallerPool extends Benchmark {
+
+  /** The JAXBContext for FileMetric DPDs. */
+  private final JAXBContext context;
+
+  /** The pool of Marshallers. */
+  private final MarshallerPool pool;
+
+  /** The reused Unmarshaller. */
+  private final Unmarshaller unmarshaller;
+
+  /** The DPD. */
+  private FileMetricDailyProjectData dpd;
+
+  /** The XML of the DPD. */
+  private String xml;
+
+  /**
+   * Creates the JAXBContext, pool, and reused Unmarshaller.
+   * @throws Exception If the JAXBContext cannot be created.
+   */
+  public BenchMarshallerPool() throws Exception {
+    this.context = JAXBContext.newInstance(ObjectFactory.class);
+    this.pool = new MarshallerPool(this.context);
+    this.unmarshaller = this.context.createUnmarshaller();
+  }
+
+  /**
+   * Returns the marshalling and unmarshalling paths compared.
+   * @return The variants.
+   */
+  @Override
+  public String[] getVariants() {
+    return new String[] {"marshalDom", "marshalPool", "unmarshalNew", "unmarshalReuse"};
+  }
+
+  /**
+   * Returns the numbers of FileData elements in the DPDs.
+   * @return The sizes.
+   */
+  @Override
+  public int[] getSizes() {
+    return new int[] {10, 1000, 20000};
+  }
+
+  /**
+   * Builds a FileMetric DPD with size FileData elements, and its XML.
+   * @param size The number of FileData elements.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public void setUp(int size) throws Exception {
+    this.dpd = new FileMetricDailyProjectData();
+    this.dpd.setOwner("joe@hackystat.org");
+    this.dpd.setProject("Default");
+    this.dpd.setSizeMetric("TotalLines");
+    this.dpd.setTool("SCLC");
+    this.dpd.setUriPattern("**");
+    double total = 0;
+    for (int i = 0; i < size; i++) {
+      FileData fileData = new FileData();
+      fileData.setFileUri("file://C:/svn/hackystat/src/org/hackystat/module" + (i % 50)
+          + "/File" + i + ".java");
+      fileData.setSizeMetricValue(i % 700);
+      total += i % 700;
+      this.dpd.getFileData().add(fileData);
+    }
+    this.dpd.setTotal(total);
+    this.xml = marshalWithDom();
+  }
+
+  /**
+   * Marshals or unmarshals the DPD once, using the path named by the variant.
+   * @return The length of the XML, or the hash code of the unmarshalled DPD.
+   * @throws Exception If problems occur.
+   */
+  @Override
+  public long run() throws Exception {
+    String variant = getVariant();
+    if ("marshalDom".equals(variant)) {
+      return marshalWithDom().length();
+    }
+    if ("marshalPool".equals(variant)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(this.xml.length());
+      Marshaller marshaller = this.pool.acquire();
+      marshaller.marshal(this.dpd, out);
+      this.pool.release(marshaller);
+      return out.size();
+    }
+    if ("unmarshalNew".equals(variant)) {
+      return this.context.createUnmarshaller().unmarshal(new StringReader(this.xml)).hashCode();
+    }
+    return this.unmarshaller.unmarshal(new StringReader(this.xml)).hashCode();
+  }
+
+  /** Releases the DPD. */
+  @Override
+  public void tearDown() {
+    this.dpd = null;
+    this.xml = null;
+  }
+
+  /**
+   * Marshals the DPD the way the resources did before Marshallers were pooled.
+   * @return The XML.
+   * @throws Exception If problems occur.
+   */
+  private String marshalWithDom() throws Exception {
+    Marshaller marshaller = this.context.createMarshaller();
+    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    dbf.setNamespaceAware(true);
+    Document doc = dbf.newDocumentBuilder().newDocument();
+    marshaller.marshal(this.dpd, doc);
+    StringWriter writer = new StringWriter();
+    TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc),
+        new StreamResult(writer));
+    return writer.toString();
+  }
+}
@@ -0,0 +1,201 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hackystat.dailyprojectdata.metrics.RequestMetrics;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.restlet.data.ChallengeResponse;
+
+/**
+ * A SensorDataFetcher that splits the list of refs into chunks and retrieves the chunks 
+ * concurrently.  Chunks are retrieved on a thread pool shared by all requests, with at most
+ * a fixed number of chunks outstanding for any one request.  If the entire list is not 
+ * retrieved within the timeout, the outstanding work is cancelled and an exception is thrown.
+ * <p>
+ * Subclasses define the chunk size and how a single chunk is retrieved. 
+ * 
+ * @author Philip Johnson
+ */
+public abstract class ConcurrentSensorDataFetcher implements SensorDataFetcher {
+  
+  /** The thread pool shared by all requests. */
+  private ExecutorService executor;
+  
+  /** The maximum number of chunks outstanding for a single call to getSensorData. */
+  private int parallelism;
+  
+  /** The number of milliseconds allowed for a single call to getSensorData. */
+  private long timeout;
+  
+  /**
+   * Creates a new ConcurrentSensorDataFetcher.
+   * @param executor The thread pool shared by all requests.
+   * @param parallelism The maximum number of chunks outstanding for a single request.
+   * @param timeout The number of milliseconds allowed to retrieve all chunks of a request.
+   */
+  protected ConcurrentSensorDataFetcher(ExecutorService executor, int parallelism, 
+      long timeout) {
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.timeout = timeout;
+  }
+  
+  /**
+   * Returns the maximum number of refs retrieved by a single call to getChunk.
+   * @return The chunk size, at least one.
+   */
+  protected abstract int getChunkSize();
+  
+  /**
+   * Returns the SensorData instances named by chunk, in any order. 
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials The credentials of the user making this request, or null. 
+   * @param chunk The refs to retrieve, no more than getChunkSize() of them. 
+   * @return The SensorData instances.
+   * @throws SensorBaseClientException If the chunk could not be retrieved.
+   */
+  protected abstract List<SensorData> getChunk(SensorBaseClient client, 
+      ChallengeResponse credentials, List<SensorDataRef> chunk) throws SensorBaseClientException;
+  
+  /**
+   * Returns the SensorData instances named by refs, in the same order as refs. 
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials The credentials of the user making this request, or null. 
+   * @param refs The references to the SensorData instances. 
+   * @return The SensorData instances, in index order. 
+   * @throws SensorBaseClientException If any chunk could not be retrieved, or if the request
+   * timed out. 
+   */
+  public List<SensorData> getSensorData(final SensorBaseClient client, 
+      final ChallengeResponse credentials, final List<SensorDataRef> refs) 
+      throws SensorBaseClientException {
+    final SensorData[] results = new SensorData[refs.size()];
+    final int chunkSize = getChunkSize();
+    final int numChunks = (results.length + chunkSize - 1) / chunkSize;
+    int numWorkers = Math.min(this.parallelism, numChunks);
+    // Not worth handing off to the thread pool if we can only fetch one chunk at a time anyway.
+    if (numWorkers <= 1) {
+      for (int chunk = 0; chunk < numChunks; chunk++) {
+        fillChunk(client, credentials, refs, results, chunk * chunkSize, chunkSize);
+      }
+      return Arrays.asList(results);
+    }
+    // Each worker repeatedly claims the next unfetched chunk until the list is exhausted.
+    final AtomicInteger nextChunk = new AtomicInteger(0);
+    // Workers count their SensorBase calls against the request that submitted them.
+    final RequestMetrics metrics = RequestMetrics.getCurrent();
+    CompletionService<Void> completion = new ExecutorCompletionService<Void>(this.executor);
+    List<Future<Void>> workers = new ArrayList<Future<Void>>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      workers.add(completion.submit(new Callable<Void>() {
+        public Void call() throws SensorBaseClientException {
+          RequestMetrics previous = RequestMetrics.setCurrent(metrics);
+          try {
+            int chunk = nextChunk.getAndIncrement();
+            while ((chunk < numChunks) && !Thread.currentThread().isInterrupted()) {
+              fillChunk(client, credentials, refs, results, chunk * chunkSize, chunkSize);
+              chunk = nextChunk.getAndIncrement();
+            }
+            return null;
+          }
+          finally {
+            RequestMetrics.setCurrent(previous);
+          }
+        }
+      }));
+    }
+    long deadline = System.currentTimeMillis() + this.timeout;
+    try {
+      for (int i = 0; i < numWorkers; i++) {
+        long remaining = deadline - System.currentTimeMillis();
+        Future<Void> done = completion.poll(Math.max(0L, remaining), TimeUnit.MILLISECONDS);
+        if (done == null) {
+          throw new SensorBaseClientException(String.format(
+              "Timed out after %d ms fetching %d sensor data instances", this.timeout, 
+              results.length));
+        }
+        done.get();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SensorBaseClientException("Interrupted while fetching sensor data", e);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof SensorBaseClientException) {
+        throw (SensorBaseClientException) e.getCause();
+      }
+      throw new SensorBaseClientException("Error fetching sensor data", e.getCause());
+    }
+    finally {
+      // Stops any workers still running after a failure or timeout. No-op on success.
+      for (Future<Void> worker : workers) {
+        worker.cancel(true);
+      }
+    }
+    return Arrays.asList(results);
+  }
+  
+  /**
+   * Retrieves one chunk of refs and stores the instances into results at their index positions.
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials The credentials of the user making this request, or null. 
+   * @param refs All of the refs for this request.
+   * @param results The array holding the SensorData instance for each ref.
+   * @param start The index of the first ref in this chunk.
+   * @param chunkSize The maximum number of refs in a chunk.
+   * @throws SensorBaseClientException If the chunk could not be retrieved, or did not include
+   * an instance for every ref in the chunk.
+   */
+  private void fillChunk(SensorBaseClient client, ChallengeResponse credentials, 
+      List<SensorDataRef> refs, SensorData[] results, int start, int chunkSize) 
+      throws SensorBaseClientException {
+    int end = Math.min(start + chunkSize, results.length);
+    List<SensorDataRef> chunk = refs.subList(start, end);
+    List<SensorData> chunkData = getChunk(client, credentials, chunk);
+    if (chunk.size() == 1 && chunkData.size() == 1) {
+      results[start] = chunkData.get(0);
+      return;
+    }
+    // Chunk results may come back in any order, so match them to refs by owner and timestamp.
+    Map<String, SensorData> key2data = new HashMap<String, SensorData>();
+    for (SensorData data : chunkData) {
+      key2data.put(makeKey(data.getOwner(), data.getTimestamp().toGregorianCalendar()
+          .getTimeInMillis()), data);
+    }
+    for (int i = start; i < end; i++) {
+      SensorDataRef ref = refs.get(i);
+      SensorData data = key2data.get(makeKey(ref.getOwner(), 
+          ref.getTimestamp().toGregorianCalendar().getTimeInMillis()));
+      if (data == null) {
+        throw new SensorBaseClientException("No sensor data returned for " + ref.getHref());
+      }
+      results[i] = data;
+    }
+  }
+  
+  /**
+   * Returns a string that uniquely identifies a SensorData instance.
+   * @param owner The owner of the instance.
+   * @param timestamp The timestamp of the instance, in milliseconds.
+   * @return The key.
+   */
+  private static String makeKey(String owner, long timestamp) {
+    return owner + "/" + timestamp;
+  }
+}
@@ -0,0 +1,228 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the user/password combinations recently verified with the SensorBase, so that
+ * most requests can be authenticated without a call to the SensorBase. Lookups take no lock.
+ * <p>
+ * Passwords are never kept: each entry holds a random salt and the SHA-256 hash of the salt
+ * and the password, which is enough to recognize the password when it is presented again.
+ * An entry expires after the time to live, so that a changed or revoked password stops being
+ * accepted within that time. Once there are more than maxUsers entries, the expired ones are
+ * removed, and then arbitrary ones until a tenth of the limit is free again, so that the cost
+ * of trimming is shared among many insertions.
+ *
+ * @author Philip Johnson
+ */
+public class CredentialCache {
+
+  /** The number of bytes of salt in each entry. */
+  private static final int SALT_BYTES = 16;
+
+  /** Generates the salts. */
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  /** The verified credentials, keyed by user. */
+  private final ConcurrentMap<String, Credential> credentials =
+    new ConcurrentHashMap<String, Credential>();
+
+  /** The number of milliseconds for which a verified password is accepted. */
+  private final long ttl;
+
+  /** The maximum number of users whose credentials are remembered. */
+  private final int maxUsers;
+
+  /** The number of lookups that found a matching password. */
+  private final AtomicLong hits = new AtomicLong(0);
+
+  /** The number of lookups that did not. */
+  private final AtomicLong misses = new AtomicLong(0);
+
+  /** The number of entries removed to stay within maxUsers. */
+  private final AtomicLong evictions = new AtomicLong(0);
+
+  /**
+   * Creates a new, empty CredentialCache.
+   * @param ttl The number of milliseconds for which a verified password is accepted, or 0 to
+   * remember nothing.
+   * @param maxUsers The maximum number of users whose credentials are remembered.
+   */
+  public CredentialCache(long ttl, int maxUsers) {
+    this.ttl = ttl;
+    this.maxUsers = Math.max(1, maxUsers);
+  }
+
+  /**
+   * Returns true if secret is the password last verified for identifier, and it has not
+   * expired.
+   * @param identifier The user.
+   * @param secret The password.
+   * @return True if the credentials are known to be good.
+   */
+  public boolean matches(String identifier, String secret) {
+    Credential credential = this.credentials.get(identifier);
+    if (credential != null) {
+      if (System.currentTimeMillis() >= credential.expires) {
+        this.credentials.remove(identifier, credential);
+      }
+      else if (credential.matches(secret)) {
+        this.hits.incrementAndGet();
+        return true;
+      }
+    }
+    this.misses.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Remembers that secret has just been verified as the password of identifier.
+   * @param identifier The user.
+   * @param secret The password.
+   */
+  public void put(String identifier, String secret) {
+    if (this.ttl <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Credential credential = new Credential(secret, now + this.ttl);
+    this.credentials.put(identifier, credential);
+    if (this.credentials.size() > this.maxUsers) {
+      trim(now, credential);
+    }
+  }
+
+  /**
+   * Forgets the credentials of identifier.
+   * @param identifier The user.
+   */
+  public void remove(String identifier) {
+    this.credentials.remove(identifier);
+  }
+
+  /**
+   * Returns the number of users whose credentials are remembered, including expired ones not
+   * yet removed.
+   * @return The number of users.
+   */
+  public int size() {
+    return this.credentials.size();
+  }
+
+  /**
+   * Returns the number of lookups that found a matching password.
+   * @return The number of hits.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that found no matching password.
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  /**
+   * Returns the number of unexpired entries removed to stay within the size limit.
+   * @return The number of evictions.
+   */
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  /**
+   * Removes the expired entries, and then arbitrary ones other than keep until a tenth of 
+   * the limit is free.
+   * @param now The current time.
+   * @param keep The entry just added.
+   */
+  private void trim(long now, Credential keep) {
+    for (Iterator<Credential> i = this.credentials.values().iterator(); i.hasNext();) {
+      if (now >= i.next().expires) {
+        i.remove();
+      }
+    }
+    int target = this.maxUsers - this.maxUsers / 10;
+    for (Iterator<Credential> i = this.credentials.values().iterator();
+        i.hasNext() && (this.credentials.size() > target);) {
+      if (i.next() != keep) {
+        i.remove();
+        this.evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Returns the SHA-256 hash of salt followed by the UTF-8 encoding of secret.
+   * @param salt The salt.
+   * @param secret The secret.
+   * @return The hash.
+   */
+  static byte[] hash(byte[] salt, String secret) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(salt);
+      return digest.digest(secret.getBytes("UTF-8"));
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 is not available", e);
+    }
+  }
+
+  /**
+   * Returns a new random salt.
+   * @return The salt.
+   */
+  static byte[] makeSalt() {
+    byte[] salt = new byte[SALT_BYTES];
+    synchronized (RANDOM) {
+      RANDOM.nextBytes(salt);
+    }
+    return salt;
+  }
+
+  /**
+   * A salted hash of a password, which can recognize the password without storing it.
+   */
+  static class Credential {
+    /** The salt. */
+    private final byte[] salt;
+    /** The hash of the salt and the password. */
+    private final byte[] hash;
+    /** The time at which this credential expires. */
+    private final long expires;
+
+    /**
+     * Hashes secret with a new salt.
+     * @param secret The password.
+     * @param expires The time at which this credential expires.
+     */
+    Credential(String secret, long expires) {
+      this.salt = makeSalt();
+      this.hash = hash(this.salt, secret);
+      this.expires = expires;
+    }
+
+    /**
+     * Returns true if secret is the password this credential was made from.
+     * @param secret The password.
+     * @return True if it matches.
+     */
+    boolean matches(String secret) {
+      return MessageDigest.isEqual(this.hash, hash(this.salt, secret));
+    }
+  }
+}
@@ -0,0 +1,456 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.restlet.Client;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+
+/**
+ * Computes yesterday's DPDs for a configured list of (DPD type, owner, project) shortly after
+ * each midnight, so that they are in the FrontSideCache before anyone asks for them. Since
+ * the DPDs of past days never change, the first request for them is otherwise the only one
+ * that pays for their computation. Commit data for a day may still arrive on the following 
+ * day, so Commit DPDs are cached only for days before yesterday; for them, each run computes 
+ * the day before yesterday instead, which has just become cacheable.
+ * <p>
+ * Each configured DPD is a URI relative to this server's host, without the timestamp, such
+ * as "devtime/joe@hackystat.org/Default" or "filemetric/joe@hackystat.org/Default/TotalLines".
+ * The timestamp of yesterday is inserted after the project, and the DPD is requested over
+ * HTTP with the configured credentials, which must be those of a member of each project.
+ * Requesting the DPD, rather than computing it directly, means it is computed, coalesced, and
+ * cached exactly as it would be for a client. The FrontSideCache key of a DPD is its path and
+ * sorted query with the timestamp written in one format, so clients benefit whatever host 
+ * name, timestamp format, and parameter order they use.
+ * <p>
+ * At most numThreads DPDs are computed at once, and the requests are started no faster
+ * than requestsPerMinute, which together bound the load placed on the SensorBase.
+ * The progress of the current or last run is available from the getters.
+ *
+ * @author Philip Johnson
+ */
+public class DpdPrecomputer {
+
+  /** The DPD types cached only for days before yesterday, as CommitResource.isCacheable says. */
+  private static final List<String> LATE_TYPES = Arrays.asList("commit");
+
+  /** The host of this server, such as "http://localhost:9877/dailyprojectdata/". */
+  private final String dpdHost;
+
+  /** The DPD URIs, without timestamps. */
+  private final List<String> dpds;
+
+  /** The credentials used for the requests. */
+  private final ChallengeResponse credentials;
+
+  /** The minimum number of milliseconds between the starts of requests, or 0. */
+  private final long requestInterval;
+
+  /** The number of minutes after midnight at which each run starts. */
+  private final int delayMinutes;
+
+  /** The logger. */
+  private final Logger logger;
+
+  /** The HTTP client. */
+  private final Client client = new Client(Protocol.HTTP);
+
+  /** Starts the runs. */
+  private final ScheduledExecutorService scheduler;
+
+  /** Makes the requests of a run. */
+  private final ExecutorService workers;
+
+  /** True while a run is in progress. */
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  /** The number of runs started. */
+  private final AtomicLong numRuns = new AtomicLong(0);
+
+  /** The number of DPDs requested by the current or last run. */
+  private final AtomicInteger numRequested = new AtomicInteger(0);
+
+  /** The number of DPDs computed by the current or last run. */
+  private final AtomicInteger numCompleted = new AtomicInteger(0);
+
+  /** The number of DPDs that could not be computed by the current or last run. */
+  private final AtomicInteger numFailed = new AtomicInteger(0);
+
+  /** The day of the current or last run, or null. */
+  private volatile XMLGregorianCalendar runDay = null;
+
+  /** The start of the current or last run in epoch milliseconds, or 0. */
+  private volatile long runStart = 0;
+
+  /** The end of the last run in epoch milliseconds, or 0 if none has finished. */
+  private volatile long runEnd = 0;
+
+  /** The time of the next scheduled run in epoch milliseconds, or 0 if none is scheduled. */
+  private volatile long nextRun = 0;
+
+  /**
+   * Creates a precomputer, which does nothing until started.
+   * @param dpdHost The host of this server, such as "http://localhost:9877/dailyprojectdata/".
+   * @param dpds The DPD URIs, without timestamps. Malformed URIs are logged and ignored.
+   * @param user The user whose credentials are used for the requests.
+   * @param password The password of user.
+   * @param numThreads The maximum number of DPDs computed at once.
+   * @param requestsPerMinute The maximum number of DPD requests started per minute, or 0
+   * for no limit.
+   * @param delayMinutes The number of minutes after midnight at which each run starts.
+   * @param logger The logger.
+   */
+  public DpdPrecomputer(String dpdHost, List<String> dpds, String user, String password,
+      int numThreads, int requestsPerMinute, int delayMinutes, Logger logger) {
+    this.dpdHost = dpdHost.endsWith("/") ? dpdHost : dpdHost + "/";
+    this.logger = logger;
+    this.dpds = new ArrayList<String>();
+    for (String dpd : dpds) {
+      if (dpd.split("\\?")[0].split("/").length < 3) {
+        logger.warning("Ignoring precompute DPD without type, owner, and project: " + dpd);
+      }
+      else {
+        this.dpds.add(dpd);
+      }
+    }
+    this.credentials = new ChallengeResponse(ChallengeScheme.HTTP_BASIC, user, password);
+    this.requestInterval = (requestsPerMinute > 0) ? 60000L / requestsPerMinute : 0;
+    this.delayMinutes = delayMinutes;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(makeThreadFactory("scheduler"));
+    this.workers = Executors.newFixedThreadPool(Math.max(1, numThreads),
+        makeThreadFactory("worker"));
+  }
+
+  /**
+   * Schedules the nightly runs, if any DPDs are configured.
+   */
+  public void start() {
+    if (this.dpds.isEmpty()) {
+      this.logger.info("No DPDs configured for precomputation.");
+      return;
+    }
+    scheduleNextRun();
+  }
+
+  /**
+   * Stops the scheduled runs and any run in progress.
+   */
+  public void shutdown() {
+    this.nextRun = 0;
+    this.scheduler.shutdownNow();
+    this.workers.shutdownNow();
+  }
+
+  /**
+   * Starts a run for yesterday in the background, unless a run is already in progress.
+   * @return True if the run was started.
+   */
+  public boolean startRun() {
+    if (this.running.get()) {
+      return false;
+    }
+    this.scheduler.execute(new Runnable() {
+      public void run() {
+        runYesterday();
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Requests each configured DPD for the specified day, or for the day before it if its type
+   * is not cached until the day after next, and waits for them to be computed.
+   * @param day The start of the day.
+   * @return False if a run was already in progress, so that this one was not made.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public boolean run(XMLGregorianCalendar day) throws InterruptedException {
+    if (!this.running.compareAndSet(false, true)) {
+      return false;
+    }
+    try {
+      this.numRuns.incrementAndGet();
+      this.runDay = day;
+      this.runStart = System.currentTimeMillis();
+      this.numRequested.set(0);
+      this.numCompleted.set(0);
+      this.numFailed.set(0);
+      this.logger.info(String.format("Precomputing %d DPDs for %s", this.dpds.size(), day));
+      List<Future<?>> requests = new ArrayList<Future<?>>();
+      long nextStart = System.currentTimeMillis();
+      for (String dpd : this.dpds) {
+        // Start the requests no faster than the rate limit.
+        long now = System.currentTimeMillis();
+        if (nextStart > now) {
+          Thread.sleep(nextStart - now);
+        }
+        nextStart = Math.max(now, nextStart) + this.requestInterval;
+        final String uri = this.dpdHost + makeUri(dpd, getDay(dpd, day));
+        this.numRequested.incrementAndGet();
+        requests.add(this.workers.submit(new Runnable() {
+          public void run() {
+            request(uri);
+          }
+        }));
+      }
+      for (Future<?> request : requests) {
+        try {
+          request.get();
+        }
+        catch (ExecutionException e) {
+          // request() handles its own errors, so this is unexpected.
+          this.numFailed.incrementAndGet();
+          this.logger.warning("Precompute error: " + e.getCause());
+        }
+      }
+      this.logger.info(String.format("Precomputed DPDs for %s: %d completed, %d failed", day,
+          this.numCompleted.get(), this.numFailed.get()));
+      return true;
+    }
+    finally {
+      this.runEnd = System.currentTimeMillis();
+      this.running.set(false);
+    }
+  }
+
+  /**
+   * Requests the DPD with the specified URI, counting it as completed or failed.
+   * @param uri The URI of the DPD.
+   */
+  private void request(String uri) {
+    try {
+      Request request = new Request(Method.GET, uri);
+      request.setChallengeResponse(this.credentials);
+      Response response = this.client.handle(request);
+      // Read the whole DPD, since it is put in the FrontSideCache once it is written.
+      if (response.getEntity() != null) {
+        response.getEntity().getText();
+      }
+      if (response.getStatus().isSuccess()) {
+        this.numCompleted.incrementAndGet();
+      }
+      else {
+        this.numFailed.incrementAndGet();
+        this.logger.warning(String.format("Precompute of %s failed: %d %s", uri,
+            response.getStatus().getCode(), response.getStatus().getDescription()));
+      }
+    }
+    catch (Exception e) {
+      this.numFailed.incrementAndGet();
+      this.logger.warning(String.format("Precompute of %s failed: %s", uri, e));
+    }
+  }
+
+  /**
+   * Runs the DPDs for yesterday, logging any problem.
+   */
+  private void runYesterday() {
+    long today = EpochTime.startOfDay(System.currentTimeMillis());
+    try {
+      run(Tstamp.incrementDays(Tstamp.makeTimestamp(today), -1));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (RuntimeException e) {
+      this.logger.warning("Precompute run failed: " + e);
+    }
+  }
+
+  /**
+   * Schedules the next nightly run, which schedules the one after it when it is done.
+   */
+  private void scheduleNextRun() {
+    long now = System.currentTimeMillis();
+    long delay = getMillisUntilNextRun(now, this.delayMinutes);
+    this.nextRun = now + delay;
+    this.scheduler.schedule(new Runnable() {
+      public void run() {
+        try {
+          runYesterday();
+        }
+        finally {
+          if (!scheduler.isShutdown()) {
+            scheduleNextRun();
+          }
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the number of milliseconds from now until delayMinutes after the next midnight,
+   * or after the last midnight if that is still to come.
+   * @param now The current time in epoch milliseconds.
+   * @param delayMinutes The number of minutes after midnight.
+   * @return The number of milliseconds until the next run.
+   */
+  static long getMillisUntilNextRun(long now, int delayMinutes) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(EpochTime.startOfDay(now));
+    calendar.add(Calendar.MINUTE, delayMinutes);
+    if (calendar.getTimeInMillis() <= now) {
+      calendar.setTimeInMillis(EpochTime.startOfDay(now));
+      calendar.add(Calendar.DATE, 1);
+      calendar.add(Calendar.MINUTE, delayMinutes);
+    }
+    return calendar.getTimeInMillis() - now;
+  }
+
+  /**
+   * Returns the day for which the DPD is computed by the run for the specified day: that day,
+   * or the day before it for the DPD types whose DPDs are cached only for days before 
+   * yesterday.
+   * @param dpd The DPD URI without a timestamp, such as "commit/joe@hackystat.org/Default".
+   * @param day The start of the day of the run.
+   * @return The start of the day of the DPD.
+   */
+  static XMLGregorianCalendar getDay(String dpd, XMLGregorianCalendar day) {
+    String type = dpd.substring(0, dpd.indexOf('/')).toLowerCase(Locale.ENGLISH);
+    return LATE_TYPES.contains(type) ? Tstamp.incrementDays(day, -1) : day;
+  }
+
+  /**
+   * Returns the URI of the DPD for the specified day, relative to the host, by inserting
+   * the timestamp after the project.
+   * @param dpd The DPD URI without a timestamp, such as "codeissue/joe@hackystat.org/Default"
+   * or "codeissue/joe@hackystat.org/Default?Tool=PMD".
+   * @param day The start of the day.
+   * @return The URI, such as "codeissue/joe@hackystat.org/Default/{timestamp}?Tool=PMD".
+   */
+  static String makeUri(String dpd, XMLGregorianCalendar day) {
+    int query = dpd.indexOf('?');
+    String path = (query < 0) ? dpd : dpd.substring(0, query);
+    String[] segments = path.split("/", 4);
+    StringBuilder uri = new StringBuilder();
+    uri.append(segments[0]).append('/').append(segments[1]).append('/').append(segments[2]);
+    uri.append('/').append(day);
+    if (segments.length > 3) {
+      uri.append('/').append(segments[3]);
+    }
+    if (query >= 0) {
+      uri.append(dpd.substring(query));
+    }
+    return uri.toString();
+  }
+
+  /**
+   * Returns a factory of daemon threads, so that they never prevent the JVM from exiting.
+   * @param name The name of the threads, such as "worker".
+   * @return The ThreadFactory.
+   */
+  private static ThreadFactory makeThreadFactory(final String name) {
+    return new ThreadFactory() {
+      private final AtomicInteger threadNum = new AtomicInteger(0);
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "dpd-precompute-" + name + "-"
+            + threadNum.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * Returns the configured DPD URIs.
+   * @return The DPD URIs, without timestamps.
+   */
+  public List<String> getDpds() {
+    return new ArrayList<String>(this.dpds);
+  }
+
+  /**
+   * Returns true if a run is in progress.
+   * @return True if running.
+   */
+  public boolean isRunning() {
+    return this.running.get();
+  }
+
+  /**
+   * Returns the number of runs started since this server started.
+   * @return The number of runs.
+   */
+  public long getNumberOfRuns() {
+    return this.numRuns.get();
+  }
+
+  /**
+   * Returns the number of DPDs requested so far by the current or last run.
+   * @return The number of DPDs requested.
+   */
+  public int getNumberRequested() {
+    return this.numRequested.get();
+  }
+
+  /**
+   * Returns the number of DPDs computed so far by the current or last run.
+   * @return The number of DPDs computed.
+   */
+  public int getNumberCompleted() {
+    return this.numCompleted.get();
+  }
+
+  /**
+   * Returns the number of DPDs that could not be computed by the current or last run.
+   * @return The number of failures.
+   */
+  public int getNumberFailed() {
+    return this.numFailed.get();
+  }
+
+  /**
+   * Returns the day of the current or last run.
+   * @return The start of the day, or null if there has been no run.
+   */
+  public XMLGregorianCalendar getRunDay() {
+    return this.runDay;
+  }
+
+  /**
+   * Returns the start of the current or last run.
+   * @return The start in epoch milliseconds, or 0 if there has been no run.
+   */
+  public long getRunStart() {
+    return this.runStart;
+  }
+
+  /**
+   * Returns the end of the last run.
+   * @return The end in epoch milliseconds, or 0 if no run has finished.
+   */
+  public long getRunEnd() {
+    return this.runEnd;
+  }
+
+  /**
+   * Returns the time of the next scheduled run.
+   * @return The time in epoch milliseconds, or 0 if no run is scheduled.
+   */
+  public long getNextRun() {
+    return this.nextRun;
+  }
+}
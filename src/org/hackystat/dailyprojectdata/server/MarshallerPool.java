@@ -0,0 +1,99 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+/**
+ * A pool of UTF-8 Marshallers for one JAXBContext.  Creating a Marshaller is expensive
+ * relative to marshalling a small DPD, and Marshallers are not thread-safe, so each
+ * marshalling thread acquires a Marshaller from the pool and releases it when done.
+ * <p>
+ * The pool never blocks: if no idle Marshaller is available a new one is created, and
+ * Marshallers released while the pool already holds its maximum number of idle instances
+ * are discarded.
+ *
+ * @author Philip Johnson
+ */
+public class MarshallerPool {
+
+  /** The default maximum number of idle Marshallers retained. */
+  public static final int DEFAULT_MAX_IDLE = 32;
+
+  /** The context that creates the Marshallers. */
+  private final JAXBContext context;
+
+  /** The maximum number of idle Marshallers retained. */
+  private final int maxIdle;
+
+  /** The idle Marshallers. */
+  private final Queue<Marshaller> idle = new ConcurrentLinkedQueue<Marshaller>();
+
+  /** The number of idle Marshallers, since ConcurrentLinkedQueue.size() is not constant time. */
+  private final AtomicInteger idleCount = new AtomicInteger(0);
+
+  /** The number of Marshallers created. */
+  private final AtomicLong created = new AtomicLong(0);
+
+  /**
+   * Creates a pool retaining up to DEFAULT_MAX_IDLE idle Marshallers.
+   * @param context The context that creates the Marshallers.
+   */
+  public MarshallerPool(JAXBContext context) {
+    this(context, DEFAULT_MAX_IDLE);
+  }
+
+  /**
+   * Creates a pool retaining up to maxIdle idle Marshallers.
+   * @param context The context that creates the Marshallers.
+   * @param maxIdle The maximum number of idle Marshallers retained.
+   */
+  public MarshallerPool(JAXBContext context, int maxIdle) {
+    this.context = context;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Returns an idle Marshaller, or a new one if none is idle. The caller has exclusive use of
+   * it until it is passed to release.
+   * @return A Marshaller whose encoding is UTF-8.
+   * @throws JAXBException If a new Marshaller cannot be created.
+   */
+  public Marshaller acquire() throws JAXBException {
+    Marshaller marshaller = this.idle.poll();
+    if (marshaller != null) {
+      this.idleCount.decrementAndGet();
+      return marshaller;
+    }
+    this.created.incrementAndGet();
+    marshaller = this.context.createMarshaller();
+    marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+    return marshaller;
+  }
+
+  /**
+   * Returns marshaller to the pool. Marshallers that failed part way through marshalling
+   * should not be released, since their state is unknown.
+   * @param marshaller A Marshaller obtained from acquire.
+   */
+  public void release(Marshaller marshaller) {
+    if (this.idleCount.incrementAndGet() > this.maxIdle) {
+      this.idleCount.decrementAndGet();
+      return;
+    }
+    this.idle.offer(marshaller);
+  }
+
+  /**
+   * Returns the number of Marshallers created by this pool.
+   * @return The creation count.
+   */
+  public long getCreated() {
+    return this.created.get();
+  }
+}
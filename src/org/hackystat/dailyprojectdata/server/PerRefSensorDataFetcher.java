@@ -0,0 +1,57 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.hackystat.dailyprojectdata.metrics.RequestMetrics;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.restlet.data.ChallengeResponse;
+
+/**
+ * A SensorDataFetcher that retrieves each SensorData instance with its own 
+ * SensorBaseClient.getSensorData call, with several calls in flight at once. 
+ * This works with every SensorBase, and is the fallback when the batch call is not available.
+ * 
+ * @author Philip Johnson
+ */
+public class PerRefSensorDataFetcher extends ConcurrentSensorDataFetcher {
+
+  /**
+   * Creates a new PerRefSensorDataFetcher.
+   * @param executor The thread pool shared by all requests.
+   * @param parallelism The maximum number of fetches outstanding for a single request.
+   * @param timeout The number of milliseconds allowed to retrieve all instances of a request.
+   */
+  public PerRefSensorDataFetcher(ExecutorService executor, int parallelism, long timeout) {
+    super(executor, parallelism, timeout);
+  }
+
+  /**
+   * Each ref is fetched individually.
+   * @return One.
+   */
+  @Override
+  protected int getChunkSize() {
+    return 1;
+  }
+
+  /**
+   * Returns the single SensorData instance named by chunk.
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials Ignored.
+   * @param chunk A list containing one ref.
+   * @return A list containing the corresponding instance. 
+   * @throws SensorBaseClientException If the instance could not be retrieved.
+   */
+  @Override
+  protected List<SensorData> getChunk(SensorBaseClient client, ChallengeResponse credentials,
+      List<SensorDataRef> chunk) throws SensorBaseClientException {
+    SensorData data = client.getSensorData(chunk.get(0));
+    RequestMetrics.recordSensorBaseCall(0);
+    return Collections.singletonList(data);
+  }
+}
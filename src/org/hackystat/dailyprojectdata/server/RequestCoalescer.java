@@ -0,0 +1,118 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent computations so that only one of them runs.  The first
+ * caller for a given key (the "leader") runs its computation in its own thread; callers that
+ * arrive with the same key while the leader is still running (the "followers") wait for and
+ * share the leader's result instead of recomputing it.  Once the leader finishes, the key is
+ * released, so later callers start a new computation (which will typically be answered by
+ * the FrontSideCache instead).
+ * <p>
+ * Sharing a result is only safe if the follower is entitled to it, so each follower must
+ * pass an access check before it waits.  Followers that fail the check, or whose leader
+ * failed, run their own computation, so that they see exactly the result or error they
+ * would have seen without coalescing.
+ *
+ * @author Philip Johnson
+ * @param <V> The type of the computed values.
+ */
+public class RequestCoalescer<V> {
+
+  /** The computations currently in progress, keyed by request. */
+  private final ConcurrentMap<String, FutureTask<V>> inFlight =
+    new ConcurrentHashMap<String, FutureTask<V>>();
+
+  /** The number of computations that were run. */
+  private final AtomicLong computations = new AtomicLong(0);
+
+  /** The number of callers that shared another caller's result. */
+  private final AtomicLong shared = new AtomicLong(0);
+
+  /**
+   * Returns the result of computation, or the result of the identical computation currently
+   * in progress for key if there is one and accessCheck returns true.
+   * @param key Identifies the computation, such as a normalized request URI.
+   * @param computation Computes the value.
+   * @param accessCheck Returns true if this caller may receive the result computed for
+   * another caller. Called only if there is a computation in progress for key.
+   * @return The computed value.
+   * @throws Exception If computation (or accessCheck) throws an exception.
+   */
+  public V execute(String key, Callable<V> computation, Callable<Boolean> accessCheck)
+  throws Exception {
+    FutureTask<V> task = new FutureTask<V>(computation);
+    FutureTask<V> leader = this.inFlight.putIfAbsent(key, task);
+    if (leader == null) {
+      try {
+        this.computations.incrementAndGet();
+        task.run();
+        return getResult(task);
+      }
+      finally {
+        this.inFlight.remove(key, task);
+      }
+    }
+    if (accessCheck.call().booleanValue()) {
+      try {
+        V value = leader.get();
+        this.shared.incrementAndGet();
+        return value;
+      }
+      catch (ExecutionException e) { //NOPMD
+        // The leader failed, possibly for reasons specific to the leader. Compute our own.
+      }
+    }
+    this.computations.incrementAndGet();
+    return computation.call();
+  }
+
+  /**
+   * Returns the number of computations that were run.
+   * @return The computation count.
+   */
+  public long getComputations() {
+    return this.computations.get();
+  }
+
+  /**
+   * Returns the number of callers that received another caller's result.
+   * @return The shared count.
+   */
+  public long getShared() {
+    return this.shared.get();
+  }
+
+  /**
+   * Returns the number of computations currently in progress.
+   * @return The in-flight count.
+   */
+  public int getInFlight() {
+    return this.inFlight.size();
+  }
+
+  /**
+   * Returns the value computed by task, rethrowing the exception it threw, if any.
+   * @param task A task that has been run.
+   * @return The value.
+   * @throws Exception If the task threw an exception.
+   */
+  private V getResult(FutureTask<V> task) throws Exception {
+    try {
+      return task.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw (Exception) cause;
+    }
+  }
+}
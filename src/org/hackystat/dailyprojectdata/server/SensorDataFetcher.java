@@ -0,0 +1,32 @@
+package org.hackystat.dailyprojectdata.server;
+
+import java.util.List;
+
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.restlet.data.ChallengeResponse;
+
+/**
+ * Retrieves the SensorData instances named by a list of SensorDataRefs from the SensorBase. 
+ * DPD resources obtain the SensorDataFetcher for this service from the Server, which selects
+ * an implementation when it starts up.  
+ * 
+ * @author Philip Johnson
+ */
+public interface SensorDataFetcher {
+
+  /**
+   * Returns the SensorData instances named by refs, in the same order as refs. 
+   * @param client The SensorBaseClient for the user making this request.
+   * @param credentials The credentials of the user making this request, or null if not
+   * available. Implementations that talk to the SensorBase directly use them for 
+   * authentication.
+   * @param refs The references to the SensorData instances, typically from a SensorDataIndex.
+   * @return The SensorData instances, in index order. 
+   * @throws SensorBaseClientException If any instance could not be retrieved. 
+   */
+  List<SensorData> getSensorData(SensorBaseClient client, ChallengeResponse credentials, 
+      List<SensorDataRef> refs) throws SensorBaseClientException;
+}
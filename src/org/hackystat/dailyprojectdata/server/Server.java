@@ -1,17 +1,31 @@
 package org.hackystat.dailyprojectdata.server;
 
 import static org.hackystat.dailyprojectdata.server.ServerProperties.CONTEXT_ROOT_KEY;
+import static org.hackystat.dailyprojectdata.server.ServerProperties.DPDSTORE_DIR_KEY;
 import static org.hackystat.dailyprojectdata.server.ServerProperties.HOSTNAME_KEY;
 import static org.hackystat.dailyprojectdata.server.ServerProperties.LOGGING_LEVEL_KEY;
 import static org.hackystat.dailyprojectdata.server.ServerProperties.PORT_KEY;
+import static org.hackystat.dailyprojectdata.server.ServerProperties.PRECOMPUTE_PASSWORD_KEY;
+import static org.hackystat.dailyprojectdata.server.ServerProperties.PRECOMPUTE_USER_KEY;
 import static org.hackystat.dailyprojectdata.server.ServerProperties.SENSORBASE_FULLHOST_KEY;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.xml.bind.JAXBContext;
 
+import org.hackystat.dailyprojectdata.dpdstore.DpdStore;
 import org.hackystat.dailyprojectdata.frontsidecache.FrontSideCache;
+import org.hackystat.dailyprojectdata.metrics.ServerMetrics;
 import org.hackystat.dailyprojectdata.resource.build.BuildResource;
 import org.hackystat.dailyprojectdata.resource.cache.CacheResource;
 import org.hackystat.dailyprojectdata.resource.codeissue.CodeIssueResource;
@@ -22,8 +36,12 @@ import org.hackystat.dailyprojectdata.resource.coverage.CoverageResource;
 import org.hackystat.dailyprojectdata.resource.devtime.DevTimeResource;
 import org.hackystat.dailyprojectdata.resource.filemetric.FileMetricResource;
 import org.hackystat.dailyprojectdata.resource.issue.IssueResource;
+import org.hackystat.dailyprojectdata.resource.issue.IssueStateIndex;
+import org.hackystat.dailyprojectdata.resource.snapshot.SnapshotMemo;
 import org.hackystat.dailyprojectdata.resource.issuechange.IssueChangeResource;
+import org.hackystat.dailyprojectdata.resource.metrics.MetricsResource;
 import org.hackystat.dailyprojectdata.resource.ping.PingResource;
+import org.hackystat.dailyprojectdata.resource.precompute.PrecomputeResource;
 import org.hackystat.dailyprojectdata.resource.unittest.UnitTestResource;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.utilities.logger.HackystatLogger;
@@ -34,6 +52,7 @@ import org.restlet.Guard;
 import org.restlet.Restlet;
 import org.restlet.Router;
 import org.restlet.data.Protocol;
+import org.restlet.resource.Representation;
 
 /**
  * Sets up the HTTP Server process and dispatching to the associated resources. 
@@ -55,6 +74,42 @@ public class Server extends Application {
   private ServerProperties properties;
   
   private FrontSideCache frontSideCache;
+  
+  /** The thread pool, shared by all requests, used to fetch sensor data from the SensorBase. */
+  private ExecutorService fetchExecutor;
+  
+  /** The thread pool, shared by all requests, used to aggregate large DPDs in parallel. */
+  private ExecutorService aggregationExecutor;
+  
+  /** Authenticates requests and keeps the per-user SensorBaseClients. */
+  private Authenticator authenticator;
+  
+  /** Retrieves the sensor data instances named in SensorDataIndexes. */
+  private SensorDataFetcher sensorDataFetcher;
+  
+  /** Shares the DPD computed for a URI among identical concurrent requests. */
+  private RequestCoalescer<Representation> requestCoalescer = 
+    new RequestCoalescer<Representation>();
+  
+  /** The Marshaller pools, keyed by the name of their JAXBContext attribute. */
+  private ConcurrentMap<String, MarshallerPool> marshallerPools = 
+    new ConcurrentHashMap<String, MarshallerPool>();
+  
+  /** The Issue state indexes, keyed by project owner and project name. */
+  private ConcurrentMap<String, IssueStateIndex> issueStateIndexes = 
+    new ConcurrentHashMap<String, IssueStateIndex>();
+  
+  /** The snapshots of past days, shared by the DPDs built from them. */
+  private SnapshotMemo snapshotMemo;
+  
+  /** The persistent store of past days' DPDs, or null if it is disabled. */
+  private DpdStore dpdStore = null;
+  
+  /** Computes yesterday's DPDs each night. */
+  private DpdPrecomputer precomputer;
+  
+  /** The latencies, SensorBase calls, and in-flight counts of the requests of each type. */
+  private ServerMetrics metrics;
 
   /**
    * Creates a new instance of a DailyProjectData HTTP server, listening on the supplied port.
@@ -88,6 +143,7 @@ public class Server extends Application {
     Server server = new Server();
     server.logger = HackystatLogger.getLogger("org.hackystat.dailyprojectdata", "dailyprojectdata");
     server.properties = properties;
+    server.metrics = new ServerMetrics(properties.getTraceSampleInterval());
     server.hostName = "http://" +
                       server.properties.get(HOSTNAME_KEY) + 
                       ":" + 
@@ -101,6 +157,12 @@ public class Server extends Application {
     server.component.getDefaultHost()
       .attach("/" + server.properties.get(CONTEXT_ROOT_KEY), server);
     server.frontSideCache = new FrontSideCache(server);
+    server.fetchExecutor = makeExecutor(properties.getFetchThreads(), "dpd-fetch-");
+    server.aggregationExecutor = makeExecutor(properties.getAggregationThreads(), 
+        "dpd-aggregate-");
+    server.sensorDataFetcher = makeSensorDataFetcher(server);
+    server.snapshotMemo = new SnapshotMemo(properties.getSnapshotMemoInstances());
+    server.dpdStore = makeDpdStore(server);
     
     // Create and store the JAXBContext instances on the server context.
     // They are supposed to be thread safe. 
@@ -160,18 +222,115 @@ public class Server extends Application {
           " NOT AVAILABLE. This service will not run correctly."));
     server.logger.warning("DailyProjectData (Version " + getVersion() + ") now running.");
     server.component.start();
+    
+    // Schedule the nightly precomputation of the configured DPDs, if any.
+    server.precomputer = new DpdPrecomputer(server.hostName, properties.getPrecomputeDpds(), 
+        properties.get(PRECOMPUTE_USER_KEY), properties.get(PRECOMPUTE_PASSWORD_KEY), 
+        properties.getPrecomputeThreads(), properties.getPrecomputeRate(), 
+        properties.getPrecomputeDelayMinutes(), server.logger);
+    server.precomputer.start();
 
     return server;
   }
 
   
+  /**
+   * Stops this server: it stops accepting requests, cancels the nightly precomputation, and 
+   * stops its thread pools and closes the DPD store. Programs that create servers, such as 
+   * tests, call this once they are done with them. 
+   * @throws Exception If problems occur stopping the server.
+   */
+  public void shutdown() throws Exception {
+    this.component.stop();
+    this.precomputer.shutdown();
+    this.fetchExecutor.shutdownNow();
+    this.aggregationExecutor.shutdownNow();
+    if (this.dpdStore != null) {
+      this.dpdStore.close();
+    }
+    this.logger.warning("DailyProjectData stopped.");
+  }
+  
+  /**
+   * Creates a fixed-size thread pool, such as the one used to fetch sensor data instances. 
+   * Its threads are daemons so that they never prevent the JVM from exiting.
+   * @param numThreads The number of threads in the pool.
+   * @param namePrefix The prefix of the names of the threads, such as "dpd-fetch-".
+   * @return The new ExecutorService.
+   */
+  private static ExecutorService makeExecutor(int numThreads, final String namePrefix) {
+    return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private final AtomicInteger threadNum = new AtomicInteger(0);
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + threadNum.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+  
+  /**
+   * Opens the DPD store for this server, if it is enabled. If the store cannot be opened, 
+   * a warning is logged and the server runs without it.
+   * @param server The server.
+   * @return The DpdStore, or null. 
+   */
+  private static DpdStore makeDpdStore(Server server) {
+    ServerProperties properties = server.properties;
+    if (!properties.isDpdStoreEnabled()) {
+      return null;
+    }
+    File dir = new File(properties.get(DPDSTORE_DIR_KEY));
+    try {
+      return new DpdStore(dir, 1024L * properties.getDpdStoreSegmentKb(), 
+          properties.isDpdStoreCompressed(), server.logger);
+    }
+    catch (IOException e) {
+      server.logger.warning("DPD store " + dir + " not available: " + e.getMessage());
+      return null;
+    }
+  }
+  
+  /**
+   * Creates the SensorDataFetcher for this server. Batch calls are used only if enabled by 
+   * setting dailyprojectdata.fetch.batch.size above zero; if the SensorBase turns out not to 
+   * support them, the batch fetcher falls back to fetching one instance per call. 
+   * @param server The server, whose properties and fetch thread pool are used.
+   * @return The SensorDataFetcher.
+   * @throws Exception If problems occur creating the fetcher.
+   */
+  private static SensorDataFetcher makeSensorDataFetcher(Server server) throws Exception {
+    ServerProperties props = server.properties;
+    long timeout = props.getFetchTimeout() * 1000L;
+    SensorDataFetcher perRef = new PerRefSensorDataFetcher(server.fetchExecutor, 
+        props.getFetchParallelism(), timeout);
+    if (props.getFetchBatchSize() == 0) {
+      return perRef;
+    }
+    return new BatchSensorDataFetcher(props.get(SENSORBASE_FULLHOST_KEY), 
+        props.getFetchBatchSize(), server.fetchExecutor, props.getFetchParallelism(), timeout, 
+        perRef, server.logger);
+  }
+  
   /**
    * Starts up the web service.  Control-c to exit. 
    * @param args Ignored. 
    * @throws Exception if problems occur.
    */
   public static void main(final String[] args) throws Exception {
-    Server.newInstance();
+    ServerProperties properties = new ServerProperties();
+    final Server server = Server.newInstance(properties);
+    Runtime.getRuntime().addShutdownHook(new Thread("dpd-shutdown") {
+      @Override
+      public void run() {
+        try {
+          server.shutdown();
+        }
+        catch (Exception e) {
+          server.logger.warning("Error stopping DailyProjectData: " + e.getMessage());
+        }
+      }
+    });
   }
 
   /**
@@ -213,12 +372,48 @@ public class Server extends Application {
     authRouter.attach("/issue/{user}/{project}/{timestamp}", IssueResource.class);
     authRouter.attach("/issue/{user}/{project}/{timestamp}?Status={Status}", IssueResource.class);
     authRouter.attach("/issuechange/{user}/{project}/{timestamp}", IssueChangeResource.class);
+    // Range requests return the DPDs for each day from {timestamp} through {end}.
+    authRouter.attach("/devtime/{user}/{project}/{timestamp}/{end}", DevTimeResource.class);
+    authRouter.attach("/coupling/{user}/{project}/{timestamp}/{end}/{type}", 
+        CouplingResource.class);
+    authRouter.attach("/coupling/{user}/{project}/{timestamp}/{end}/{type}?Tool={tool}", 
+        CouplingResource.class);
+    authRouter.attach("/complexity/{user}/{project}/{timestamp}/{end}/{type}", 
+        ComplexityResource.class);
+    authRouter.attach("/complexity/{user}/{project}/{timestamp}/{end}/{type}?Tool={tool}", 
+        ComplexityResource.class);
+    authRouter.attach("/filemetric/{user}/{project}/{timestamp}/{end}/{sizemetric}", 
+        FileMetricResource.class);
+    authRouter.attach("/filemetric/{user}/{project}/{timestamp}/{end}/{sizemetric}?Tool={tool}",
+        FileMetricResource.class);
+    authRouter.attach("/unittest/{user}/{project}/{timestamp}/{end}", UnitTestResource.class);
+    authRouter.attach("/codeissue/{user}/{project}/{timestamp}/{end}", CodeIssueResource.class);
+    authRouter.attach("/codeissue/{user}/{project}/{timestamp}/{end}?Tool={Tool}&Type={Type}", 
+        CodeIssueResource.class);
+    authRouter.attach("/codeissue/{user}/{project}/{timestamp}/{end}?Tool={Tool}", 
+        CodeIssueResource.class);
+    authRouter.attach("/codeissue/{user}/{project}/{timestamp}/{end}?Type={Type}", 
+        CodeIssueResource.class);
+    authRouter.attach("/coverage/{user}/{project}/{timestamp}/{end}/{granularity}", 
+        CoverageResource.class);
+    authRouter.attach("/build/{user}/{project}/{timestamp}/{end}", BuildResource.class);
+    authRouter.attach("/build/{user}/{project}/{timestamp}/{end}?Type={Type}", 
+        BuildResource.class);
+    authRouter.attach("/commit/{user}/{project}/{timestamp}/{end}", CommitResource.class);
+    authRouter.attach("/issue/{user}/{project}/{timestamp}/{end}", IssueResource.class);
+    authRouter.attach("/issue/{user}/{project}/{timestamp}/{end}?Status={Status}", 
+        IssueResource.class);
+    authRouter.attach("/issuechange/{user}/{project}/{timestamp}/{end}", 
+        IssueChangeResource.class);
     authRouter.attach("/cache/{user}/{project}", CacheResource.class);
     authRouter.attach("/cache", CacheResource.class);
+    authRouter.attach("/precompute", PrecomputeResource.class);
+    authRouter.attach("/metrics", MetricsResource.class);
 
     // Here's the Guard that we will place in front of authRouter.
-    Guard guard = new Authenticator(getContext(), 
-        this.getServerProperties().get(SENSORBASE_FULLHOST_KEY));
+    this.authenticator = new Authenticator(getContext(), 
+        this.getServerProperties().get(SENSORBASE_FULLHOST_KEY), this.properties, this.logger);
+    Guard guard = this.authenticator;
     guard.setNext(authRouter);
     
     // Now create our "top-level" router which will allow the Ping URI to proceed without
@@ -275,5 +470,146 @@ public class Server extends Application {
   public FrontSideCache getFrontSideCache() {
     return this.frontSideCache;
   }
+  
+  /**
+   * Returns the thread pool shared by all requests for fetching sensor data instances. 
+   * Its size bounds the number of concurrent SensorBase fetches made by this server.
+   * @return The fetch ExecutorService.
+   */
+  public ExecutorService getFetchExecutor() {
+    return this.fetchExecutor;
+  }
+  
+  /**
+   * Returns the thread pool, shared by all requests, used to aggregate large DPDs in parallel.
+   * @return The aggregation ExecutorService.
+   */
+  public ExecutorService getAggregationExecutor() {
+    return this.aggregationExecutor;
+  }
+  
+  /**
+   * Returns the SensorDataFetcher that resources use to retrieve sensor data instances.
+   * @return The SensorDataFetcher.
+   */
+  public SensorDataFetcher getSensorDataFetcher() {
+    return this.sensorDataFetcher;
+  }
+  
+  /**
+   * Returns the Authenticator, which keeps the SensorBaseClients of authenticated users.
+   * @return The Authenticator.
+   */
+  public Authenticator getAuthenticator() {
+    return this.authenticator;
+  }
+  
+  /**
+   * Returns the RequestCoalescer that shares DPD representations among identical 
+   * concurrent requests.
+   * @return The RequestCoalescer.
+   */
+  public RequestCoalescer<Representation> getRequestCoalescer() {
+    return this.requestCoalescer;
+  }
+  
+  /**
+   * Returns the pool of Marshallers for the JAXBContext stored in this server's context 
+   * under contextName, creating the pool on first use.
+   * @param contextName The name of the JAXBContext attribute, such as "DevTimeJAXB".
+   * @return The MarshallerPool.
+   */
+  public MarshallerPool getMarshallerPool(String contextName) {
+    MarshallerPool pool = this.marshallerPools.get(contextName);
+    if (pool == null) {
+      JAXBContext context = (JAXBContext) getContext().getAttributes().get(contextName);
+      MarshallerPool newPool = new MarshallerPool(context);
+      pool = this.marshallerPools.putIfAbsent(contextName, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+  
+  /**
+   * Returns the Marshaller pools created so far.
+   * @return An unmodifiable view of the pools, keyed by the name of their JAXBContext attribute.
+   */
+  public Map<String, MarshallerPool> getMarshallerPools() {
+    return Collections.unmodifiableMap(this.marshallerPools);
+  }
+  
+  /**
+   * Returns the index of the Issue data of the specified project, creating it on first use.
+   * @param owner The project owner.
+   * @param project The project name.
+   * @return The IssueStateIndex.
+   */
+  public IssueStateIndex getIssueStateIndex(String owner, String project) {
+    String key = owner + "/" + project;
+    IssueStateIndex index = this.issueStateIndexes.get(key);
+    if (index == null) {
+      IssueStateIndex newIndex = new IssueStateIndex(this.logger);
+      index = this.issueStateIndexes.putIfAbsent(key, newIndex);
+      if (index == null) {
+        index = newIndex;
+      }
+    }
+    return index;
+  }
+  
+  /**
+   * Discards the Issue state indexes of all projects owned by owner.
+   * @param owner The project owner.
+   */
+  public void clearIssueStateIndexes(String owner) {
+    for (String key : this.issueStateIndexes.keySet()) {
+      if (key.startsWith(owner + "/")) {
+        this.issueStateIndexes.remove(key);
+      }
+    }
+  }
+  
+  /**
+   * Discards the Issue state index of the specified project.
+   * @param owner The project owner.
+   * @param project The project name.
+   */
+  public void clearIssueStateIndex(String owner, String project) {
+    this.issueStateIndexes.remove(owner + "/" + project);
+  }
+  
+  /**
+   * Returns the memo of snapshots shared by the resources built from snapshots.
+   * @return The SnapshotMemo.
+   */
+  public SnapshotMemo getSnapshotMemo() {
+    return this.snapshotMemo;
+  }
+  
+  /**
+   * Returns the persistent store of the DPDs of past days.
+   * @return The DpdStore, or null if it is disabled.
+   */
+  public DpdStore getDpdStore() {
+    return this.dpdStore;
+  }
+  
+  /**
+   * Returns the DpdPrecomputer that computes yesterday's DPDs each night.
+   * @return The DpdPrecomputer.
+   */
+  public DpdPrecomputer getPrecomputer() {
+    return this.precomputer;
+  }
+  
+  /**
+   * Returns the metrics of the requests handled by this server.
+   * @return The ServerMetrics.
+   */
+  public ServerMetrics getMetrics() {
+    return this.metrics;
+  }
 }
 
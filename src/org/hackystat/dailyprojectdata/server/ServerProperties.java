@@ -2,6 +2,8 @@ package org.hackystat.dailyprojectdata.server;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
@@ -42,6 +44,62 @@ public class ServerProperties {
   public static final String CACHE_CAPACITY = "dailyprojectdata.cache.capacity";
   /** Whether or not the front side cache is enabled. */
   public static final String FRONTSIDECACHE_ENABLED = "dailyprojectdata.cache.frontside.enabled";
+  /** The size in kilobytes of the in-memory tier of the front side cache, or 0 to disable it. */
+  public static final String FRONTSIDECACHE_MEMORY_KB_KEY = 
+    "dailyprojectdata.cache.frontside.memory.kb";
+  /** The number of threads shared by all requests for fetching sensor data instances. */
+  public static final String FETCH_THREADS_KEY = "dailyprojectdata.fetch.threads";
+  /** The maximum number of concurrent sensor data fetches made on behalf of a single request. */
+  public static final String FETCH_PARALLELISM_KEY = "dailyprojectdata.fetch.parallelism";
+  /** The number of seconds allowed for fetching all of the sensor data for a single request. */
+  public static final String FETCH_TIMEOUT_KEY = "dailyprojectdata.fetch.timeout";
+  /** The maximum number of refs per SensorBase batch call, or 0 to disable batching. */
+  public static final String FETCH_BATCH_SIZE_KEY = "dailyprojectdata.fetch.batch.size";
+  /** The number of seconds for which a password verified with the SensorBase is accepted. */
+  public static final String AUTH_CACHE_SECONDS_KEY = "dailyprojectdata.auth.cache.seconds";
+  /** The maximum number of users whose verified passwords are remembered. */
+  public static final String AUTH_CACHE_USERS_KEY = "dailyprojectdata.auth.cache.users";
+  /** The maximum number of per-user SensorBaseClients kept when caching is disabled. */
+  public static final String AUTH_CLIENTS_KEY = "dailyprojectdata.auth.clients";
+  /** The account, normally the SensorBase admin, allowed to read the server's metrics. */
+  public static final String ADMIN_EMAIL_KEY = "dailyprojectdata.admin.email";
+  /** The number of requests per traced request, or 0 to trace only requests that ask. */
+  public static final String TRACE_SAMPLE_INTERVAL_KEY = "dailyprojectdata.trace.sample.interval";
+  /** The maximum number of SensorData instances held in memoized snapshots, or 0 for none. */
+  public static final String SNAPSHOT_MEMO_INSTANCES_KEY = 
+    "dailyprojectdata.snapshot.memo.instances";
+  /** The number of threads shared by all requests for aggregating large DPDs in parallel. */
+  public static final String AGGREGATION_THREADS_KEY = "dailyprojectdata.aggregation.threads";
+  /** The number of CodeIssue instances of one tool at or above which they are counted in 
+   * parallel, or 0 to always count them sequentially. */
+  public static final String CODEISSUE_PARALLEL_THRESHOLD_KEY = 
+    "dailyprojectdata.codeissue.parallel.threshold";
+  /** The number of CodeIssue instances counted by each parallel task. */
+  public static final String CODEISSUE_PARALLEL_CHUNK_KEY = 
+    "dailyprojectdata.codeissue.parallel.chunk";
+  /** The comma-separated DPD URIs, without timestamps, whose DPDs are computed each night. */
+  public static final String PRECOMPUTE_DPDS_KEY = "dailyprojectdata.precompute.dpds";
+  /** The user whose credentials are used to precompute DPDs. */
+  public static final String PRECOMPUTE_USER_KEY = "dailyprojectdata.precompute.user";
+  /** The password of the user whose credentials are used to precompute DPDs. This is a 
+   * secret: it is never logged, and the properties file holding it must be readable only by 
+   * the account running the server. */
+  public static final String PRECOMPUTE_PASSWORD_KEY = "dailyprojectdata.precompute.password";
+  /** The maximum number of DPDs precomputed at once. */
+  public static final String PRECOMPUTE_THREADS_KEY = "dailyprojectdata.precompute.threads";
+  /** The maximum number of DPD precompute requests started per minute, or 0 for no limit. */
+  public static final String PRECOMPUTE_RATE_KEY = "dailyprojectdata.precompute.rate";
+  /** The number of minutes after midnight at which DPDs are precomputed. */
+  public static final String PRECOMPUTE_DELAY_MINUTES_KEY = 
+    "dailyprojectdata.precompute.delay.minutes";
+  /** Whether or not the DPDs of past days are kept in the persistent DPD store. */
+  public static final String DPDSTORE_ENABLED_KEY = "dailyprojectdata.dpdstore.enabled";
+  /** The directory holding the segment files of the DPD store. */
+  public static final String DPDSTORE_DIR_KEY = "dailyprojectdata.dpdstore.dir";
+  /** Whether or not the DPDs in the DPD store are compressed. */
+  public static final String DPDSTORE_COMPRESS_KEY = "dailyprojectdata.dpdstore.compress";
+  /** The size in kilobytes at which the DPD store starts a new segment file. */
+  public static final String DPDSTORE_SEGMENT_KB_KEY = "dailyprojectdata.dpdstore.segment.kb";
   
   private String falseString = "false"; // for PMD.
   
@@ -87,8 +145,33 @@ public class ServerProperties {
     properties.setProperty(TEST_INSTALL_KEY, falseString);
     properties.setProperty(CACHE_ENABLED, "true");
     properties.setProperty(FRONTSIDECACHE_ENABLED, "true");
+    properties.setProperty(FRONTSIDECACHE_MEMORY_KB_KEY, "65536");
     properties.setProperty(CACHE_MAX_LIFE, "365");
     properties.setProperty(CACHE_CAPACITY, "500000");
+    properties.setProperty(FETCH_THREADS_KEY, "16");
+    properties.setProperty(FETCH_PARALLELISM_KEY, "4");
+    properties.setProperty(FETCH_TIMEOUT_KEY, "3600");
+    properties.setProperty(FETCH_BATCH_SIZE_KEY, "0");
+    properties.setProperty(AUTH_CACHE_SECONDS_KEY, "600");
+    properties.setProperty(AUTH_CACHE_USERS_KEY, "10000");
+    properties.setProperty(AUTH_CLIENTS_KEY, "1000");
+    properties.setProperty(ADMIN_EMAIL_KEY, "admin@hackystat.org");
+    properties.setProperty(TRACE_SAMPLE_INTERVAL_KEY, "0");
+    properties.setProperty(SNAPSHOT_MEMO_INSTANCES_KEY, "100000");
+    properties.setProperty(AGGREGATION_THREADS_KEY, 
+        String.valueOf(Runtime.getRuntime().availableProcessors()));
+    properties.setProperty(CODEISSUE_PARALLEL_THRESHOLD_KEY, "20000");
+    properties.setProperty(CODEISSUE_PARALLEL_CHUNK_KEY, "5000");
+    properties.setProperty(PRECOMPUTE_DPDS_KEY, "");
+    properties.setProperty(PRECOMPUTE_USER_KEY, "");
+    properties.setProperty(PRECOMPUTE_PASSWORD_KEY, "");
+    properties.setProperty(PRECOMPUTE_THREADS_KEY, "2");
+    properties.setProperty(PRECOMPUTE_RATE_KEY, "60");
+    properties.setProperty(PRECOMPUTE_DELAY_MINUTES_KEY, "30");
+    properties.setProperty(DPDSTORE_ENABLED_KEY, "true");
+    properties.setProperty(DPDSTORE_DIR_KEY, userHome + "/.hackystat/dailyprojectdata/dpdstore");
+    properties.setProperty(DPDSTORE_COMPRESS_KEY, "true");
+    properties.setProperty(DPDSTORE_SEGMENT_KB_KEY, "65536");
     FileInputStream stream = null;
     try {
       stream = new FileInputStream(propFile);
@@ -129,6 +212,8 @@ public class ServerProperties {
     properties.setProperty(TEST_INSTALL_KEY, "true");
     properties.setProperty(CACHE_ENABLED, falseString);
     properties.setProperty(FRONTSIDECACHE_ENABLED, falseString);
+    properties.setProperty(SNAPSHOT_MEMO_INSTANCES_KEY, "0");
+    properties.setProperty(DPDSTORE_ENABLED_KEY, falseString);
     trimProperties(properties);
   }
   
@@ -214,6 +299,229 @@ public class ServerProperties {
     return capacity;
   }
   
+  /**
+   * Returns the size in kilobytes of the in-memory tier of the front side cache.
+   * Zero indicates that the in-memory tier is disabled. 
+   * If the property has an illegal value, then return the default. 
+   * @return The in-memory front side cache size in kilobytes.
+   */
+  public int getFrontSideCacheMemoryKb() {
+    return getIntProperty(FRONTSIDECACHE_MEMORY_KB_KEY, 65536, 0);
+  }
+  
+  /**
+   * Returns the number of threads shared by all requests for fetching sensor data.
+   * If the property has an illegal value, then return the default. 
+   * @return The size of the server-wide fetch thread pool.
+   */
+  public int getFetchThreads() {
+    return getIntProperty(FETCH_THREADS_KEY, 16, 1);
+  }
+  
+  /**
+   * Returns the maximum number of sensor data fetches that a single request may have 
+   * outstanding at once.
+   * If the property has an illegal value, then return the default. 
+   * @return The per-request fetch parallelism.
+   */
+  public int getFetchParallelism() {
+    return getIntProperty(FETCH_PARALLELISM_KEY, 4, 1);
+  }
+  
+  /**
+   * Returns the number of seconds allowed to fetch all of the sensor data for one request.
+   * If the property has an illegal value, then return the default. 
+   * @return The fetch timeout in seconds.
+   */
+  public int getFetchTimeout() {
+    return getIntProperty(FETCH_TIMEOUT_KEY, 3600, 1);
+  }
+  
+  /**
+   * Returns the maximum number of refs to request in a single SensorBase batch call.
+   * Zero, the default, indicates that batch calls should not be used, since only some 
+   * SensorBases provide them. 
+   * If the property has an illegal value, then return the default. 
+   * @return The batch size.
+   */
+  public int getFetchBatchSize() {
+    return getIntProperty(FETCH_BATCH_SIZE_KEY, 0, 0);
+  }
+  
+  /**
+   * Returns the number of seconds for which a password verified with the SensorBase is 
+   * accepted without checking it again. Zero indicates that every request is checked.
+   * If the property has an illegal value, then return the default. 
+   * @return The number of seconds.
+   */
+  public int getAuthCacheSeconds() {
+    return getIntProperty(AUTH_CACHE_SECONDS_KEY, 600, 0);
+  }
+  
+  /**
+   * Returns the maximum number of users whose verified passwords are remembered.
+   * If the property has an illegal value, then return the default. 
+   * @return The number of users.
+   */
+  public int getAuthCacheUsers() {
+    return getIntProperty(AUTH_CACHE_USERS_KEY, 10000, 1);
+  }
+  
+  /**
+   * Returns the maximum number of per-user SensorBaseClients kept when caching is disabled.
+   * If the property has an illegal value, then return the default. 
+   * @return The number of clients.
+   */
+  public int getAuthClients() {
+    return getIntProperty(AUTH_CLIENTS_KEY, 1000, 1);
+  }
+  
+  /**
+   * Returns the number of requests per traced request: one request in this many has the 
+   * breakdown of its time logged and summarized at /metrics. Zero, the default, indicates 
+   * that only requests asking for a trace are traced.
+   * If the property has an illegal value, then return the default. 
+   * @return The sample interval.
+   */
+  public int getTraceSampleInterval() {
+    return getIntProperty(TRACE_SAMPLE_INTERVAL_KEY, 0, 0);
+  }
+  
+  /**
+   * Returns the maximum total number of SensorData instances held in memoized snapshots, 
+   * or 0 if snapshots are not memoized.
+   * If the property has an illegal value, then return the default. 
+   * @return The maximum number of memoized instances.
+   */
+  public int getSnapshotMemoInstances() {
+    return getIntProperty(SNAPSHOT_MEMO_INSTANCES_KEY, 100000, 0);
+  }
+  
+  /**
+   * Returns the number of threads shared by all requests for aggregating large DPDs.
+   * If the property has an illegal value, then return the number of processors. 
+   * @return The number of aggregation threads.
+   */
+  public int getAggregationThreads() {
+    return getIntProperty(AGGREGATION_THREADS_KEY, 
+        Runtime.getRuntime().availableProcessors(), 1);
+  }
+  
+  /**
+   * Returns the number of CodeIssue instances of one tool at or above which they are 
+   * counted in parallel, or 0 if they are always counted sequentially.
+   * If the property has an illegal value, then return the default. 
+   * @return The parallel CodeIssue threshold.
+   */
+  public int getCodeIssueParallelThreshold() {
+    return getIntProperty(CODEISSUE_PARALLEL_THRESHOLD_KEY, 20000, 0);
+  }
+  
+  /**
+   * Returns the number of CodeIssue instances counted by each parallel task.
+   * If the property has an illegal value, then return the default. 
+   * @return The parallel CodeIssue chunk size.
+   */
+  public int getCodeIssueParallelChunk() {
+    return getIntProperty(CODEISSUE_PARALLEL_CHUNK_KEY, 5000, 1);
+  }
+  
+  /**
+   * Returns the DPD URIs, without timestamps, whose DPDs are computed each night, such as
+   * "devtime/joe@hackystat.org/Default". 
+   * @return The DPD URIs, which is empty if none are configured.
+   */
+  public List<String> getPrecomputeDpds() {
+    List<String> dpds = new ArrayList<String>();
+    String value = get(PRECOMPUTE_DPDS_KEY);
+    if (value != null) {
+      for (String dpd : value.split(",")) {
+        if (dpd.trim().length() > 0) {
+          dpds.add(dpd.trim());
+        }
+      }
+    }
+    return dpds;
+  }
+  
+  /**
+   * Returns the maximum number of DPDs precomputed at once.
+   * If the property has an illegal value, then return the default. 
+   * @return The number of precompute threads.
+   */
+  public int getPrecomputeThreads() {
+    return getIntProperty(PRECOMPUTE_THREADS_KEY, 2, 1);
+  }
+  
+  /**
+   * Returns the maximum number of DPD precompute requests started per minute, or 0 if 
+   * they are not limited.
+   * If the property has an illegal value, then return the default. 
+   * @return The precompute rate.
+   */
+  public int getPrecomputeRate() {
+    return getIntProperty(PRECOMPUTE_RATE_KEY, 60, 0);
+  }
+  
+  /**
+   * Returns the number of minutes after midnight at which DPDs are precomputed.
+   * If the property has an illegal value, then return the default. 
+   * @return The precompute delay in minutes.
+   */
+  public int getPrecomputeDelayMinutes() {
+    return getIntProperty(PRECOMPUTE_DELAY_MINUTES_KEY, 30, 0);
+  }
+  
+  /**
+   * Returns true if the DPDs of past days are kept in the persistent DPD store. 
+   * @return True if the DPD store is enabled.
+   */
+  public boolean isDpdStoreEnabled() {
+    return "True".equalsIgnoreCase(this.properties.getProperty(DPDSTORE_ENABLED_KEY));
+  }
+  
+  /**
+   * Returns true if the DPDs in the DPD store are compressed. 
+   * @return True if stored DPDs are compressed.
+   */
+  public boolean isDpdStoreCompressed() {
+    return "True".equalsIgnoreCase(this.properties.getProperty(DPDSTORE_COMPRESS_KEY));
+  }
+  
+  /**
+   * Returns the size in kilobytes at which the DPD store starts a new segment file.
+   * If the property has an illegal value, then return the default. 
+   * @return The segment size in kilobytes.
+   */
+  public int getDpdStoreSegmentKb() {
+    return getIntProperty(DPDSTORE_SEGMENT_KB_KEY, 65536, 1);
+  }
+  
+  /**
+   * Returns the value of key as an integer.
+   * If the property is missing, not an integer, or less than minValue, then return defaultValue. 
+   * @param key The property key.
+   * @param defaultValue The value to use if the property value is illegal.
+   * @param minValue The smallest legal value. 
+   * @return The property value as an int. 
+   */
+  private int getIntProperty(String key, int defaultValue, int minValue) {
+    String valueString = this.properties.getProperty(key);
+    int value = 0;
+    try {
+      value = Integer.valueOf(valueString);
+    }
+    catch (Exception e) {
+      System.out.println("Illegal " + key + ": " + valueString + ". Using default.");
+      return defaultValue;
+    }
+    if (value < minValue) {
+      System.out.println("Illegal " + key + ": " + valueString + ". Using default.");
+      return defaultValue;
+    }
+    return value;
+  }
+  
   /**
    * Returns a string containing all current properties in alphabetical order.
    * @return A string with the properties.  
@@ -232,7 +540,8 @@ public class ServerProperties {
     StringBuffer buff = new StringBuffer(30);
     buff.append("DailyProjectData Properties:").append(cr);
     for (String key : alphaProps.keySet()) {
-      buff.append(pad).append(key).append(eq).append(get(key)).append(cr);
+      String value = PRECOMPUTE_PASSWORD_KEY.equals(key) ? "********" : get(key);
+      buff.append(pad).append(key).append(eq).append(value).append(cr);
     }
     return buff.toString();
   }
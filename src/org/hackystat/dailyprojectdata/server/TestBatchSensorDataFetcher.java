@@ -0,0 +1,306 @@
+package org.hackystat.dailyprojectdata.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataIndex;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDataRef;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDatas;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.restlet.Component;
+import org.restlet.Restlet;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.StringRepresentation;
+
+/**
+ * Tests the BatchSensorDataFetcher against an in-process stand-in for the SensorBase that 
+ * implements only the sensordata/batch call. 
+ * @author Philip Johnson
+ */
+public class TestBatchSensorDataFetcher {
+  
+  /** The port for the stand-in SensorBase. */
+  private static final int PORT = 9978;
+  
+  /** The stand-in SensorBase host. */
+  private static final String HOST = "http://localhost:" + PORT + "/sensorbase/";
+  
+  /** The user owning the sensor data. */
+  private static final String USER = "TestBatchFetcher@hackystat.org";
+  
+  /** The restlet component hosting the stand-in SensorBase. */
+  private static Component component;
+  
+  /** The stand-in SensorBase. */
+  private static StandInSensorBase sensorBase;
+  
+  /** Marshals and unmarshals sensor data. */
+  private static JAXBContext sensorDataJAXB;
+  
+  /** The thread pool for the fetcher. */
+  private static ExecutorService executor;
+  
+  /** Counts calls to the fallback fetcher. */
+  private AtomicInteger fallbackCalls;
+  
+  /** The fetcher under test. */
+  private BatchSensorDataFetcher fetcher;
+
+  /**
+   * Starts the stand-in SensorBase.
+   * @throws Exception If problems occur. 
+   */
+  @BeforeClass
+  public static void startStandIn() throws Exception {
+    sensorDataJAXB = JAXBContext.newInstance(
+        org.hackystat.sensorbase.resource.sensordata.jaxb.ObjectFactory.class);
+    sensorBase = new StandInSensorBase();
+    component = new Component();
+    component.getServers().add(Protocol.HTTP, PORT);
+    component.getDefaultHost().attach("/sensorbase", sensorBase);
+    component.start();
+    executor = Executors.newFixedThreadPool(4);
+  }
+  
+  /**
+   * Stops the stand-in SensorBase.
+   * @throws Exception If problems occur. 
+   */
+  @AfterClass
+  public static void stopStandIn() throws Exception {
+    component.stop();
+    executor.shutdown();
+  }
+  
+  /**
+   * Creates a new fetcher whose fallback counts its invocations. 
+   * @throws Exception If problems occur. 
+   */
+  @Before
+  public void setUp() throws Exception {
+    sensorBase.batchCalls.set(0);
+    sensorBase.supportsBatch = true;
+    sensorBase.answersPing = true;
+    this.fallbackCalls = new AtomicInteger(0);
+    SensorDataFetcher fallback = new SensorDataFetcher() {
+      public List<SensorData> getSensorData(SensorBaseClient client, 
+          ChallengeResponse credentials, List<SensorDataRef> refs) {
+        fallbackCalls.incrementAndGet();
+        List<SensorData> dataList = new ArrayList<SensorData>();
+        for (SensorDataRef ref : refs) {
+          dataList.add(makeSensorData(ref));
+        }
+        return dataList;
+      }
+    };
+    this.fetcher = new BatchSensorDataFetcher(HOST, 2, executor, 2, 60000, fallback, 
+        Logger.getLogger("org.hackystat.dailyprojectdata"));
+  }
+  
+  /**
+   * Checks that refs are split into batches and the results are returned in index order, 
+   * even though the stand-in returns each batch in reverse order.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testBatchFetch() throws Exception {
+    List<SensorDataRef> refs = makeRefs(5);
+    List<SensorData> dataList = this.fetcher.getSensorData(null, makeCredentials(), refs);
+    assertEquals("Checking size", 5, dataList.size());
+    for (int i = 0; i < refs.size(); i++) {
+      assertTrue("Checking order " + i, 
+          Tstamp.equal(refs.get(i).getTimestamp(), dataList.get(i).getTimestamp()));
+    }
+    assertEquals("Checking batch calls", 3, sensorBase.batchCalls.get());
+    assertEquals("Checking fallback calls", 0, this.fallbackCalls.get());
+    assertTrue("Checking batch supported", this.fetcher.isBatchSupported());
+  }
+  
+  /**
+   * Checks that the fetcher switches to its fallback once the SensorBase reports that 
+   * the batch call does not exist, and does not try it again right away.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testFallback() throws Exception {
+    sensorBase.supportsBatch = false;
+    List<SensorDataRef> refs = makeRefs(4);
+    assertEquals("Checking size", 4, 
+        this.fetcher.getSensorData(null, makeCredentials(), refs).size());
+    assertFalse("Checking batch unsupported", this.fetcher.isBatchSupported());
+    assertEquals("Checking first fallback", 1, this.fallbackCalls.get());
+    int batchCalls = sensorBase.batchCalls.get();
+    this.fetcher.getSensorData(null, makeCredentials(), refs);
+    assertEquals("Checking second fallback", 2, this.fallbackCalls.get());
+    assertEquals("Checking no more batch calls", batchCalls, sensorBase.batchCalls.get());
+  }
+  
+  /**
+   * Checks that the fetcher tries the batch call again once the wait after its refusal ends.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testRetry() throws Exception {
+    this.fetcher.setMinRetryMillis(100);
+    sensorBase.supportsBatch = false;
+    List<SensorDataRef> refs = makeRefs(4);
+    this.fetcher.getSensorData(null, makeCredentials(), refs);
+    assertFalse("Checking batch suspended", this.fetcher.isBatchSupported());
+    sensorBase.supportsBatch = true;
+    Thread.sleep(200);
+    assertTrue("Checking batch resumed", this.fetcher.isBatchSupported());
+    int batchCalls = sensorBase.batchCalls.get();
+    assertEquals("Checking size", 4, 
+        this.fetcher.getSensorData(null, makeCredentials(), refs).size());
+    assertEquals("Checking batch calls", batchCalls + 2, sensorBase.batchCalls.get());
+    assertEquals("Checking fallback calls", 1, this.fallbackCalls.get());
+  }
+  
+  /**
+   * Checks that a 404 from a host that does not answer a SensorBase ping is reported as an 
+   * error, rather than taken to mean that the SensorBase lacks the batch call.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testWrongHost() throws Exception {
+    sensorBase.supportsBatch = false;
+    sensorBase.answersPing = false;
+    try {
+      this.fetcher.getSensorData(null, makeCredentials(), makeRefs(4));
+      fail("Expected a SensorBaseClientException");
+    }
+    catch (SensorBaseClientException e) {
+      assertTrue("Checking batch still supported", this.fetcher.isBatchSupported());
+      assertEquals("Checking fallback calls", 0, this.fallbackCalls.get());
+    }
+  }
+  
+  /**
+   * Checks that the fallback is used when no credentials are available. 
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testNoCredentials() throws Exception {
+    this.fetcher.getSensorData(null, null, makeRefs(3));
+    assertEquals("Checking fallback calls", 1, this.fallbackCalls.get());
+    assertEquals("Checking batch calls", 0, sensorBase.batchCalls.get());
+    assertTrue("Checking batch still supported", this.fetcher.isBatchSupported());
+  }
+  
+  /**
+   * Returns credentials for the test user.
+   * @return The credentials.
+   */
+  private ChallengeResponse makeCredentials() {
+    return new ChallengeResponse(ChallengeScheme.HTTP_BASIC, USER, USER);
+  }
+  
+  /**
+   * Creates refs with distinct timestamps, one second apart.
+   * @param numRefs The number of refs. 
+   * @return The refs. 
+   */
+  private static List<SensorDataRef> makeRefs(int numRefs) {
+    List<SensorDataRef> refs = new ArrayList<SensorDataRef>();
+    long start = 1193770800000L;
+    for (int i = 0; i < numRefs; i++) {
+      XMLGregorianCalendar tstamp = Tstamp.makeTimestamp(start + (i * 1000L));
+      SensorDataRef ref = new SensorDataRef();
+      ref.setOwner(USER);
+      ref.setTimestamp(tstamp);
+      ref.setHref(HOST + "sensordata/" + USER + "/" + tstamp);
+      refs.add(ref);
+    }
+    return refs;
+  }
+  
+  /**
+   * Creates the SensorData instance named by ref. 
+   * @param ref The ref.
+   * @return The SensorData instance. 
+   */
+  private static SensorData makeSensorData(SensorDataRef ref) {
+    SensorData data = new SensorData();
+    data.setOwner(ref.getOwner());
+    data.setTimestamp(ref.getTimestamp());
+    data.setRuntime(ref.getTimestamp());
+    data.setSensorDataType("CodeIssue");
+    data.setTool("Checkstyle");
+    data.setResource("file://foo/bar/baz.java");
+    return data;
+  }
+  
+  /**
+   * A stand-in SensorBase that implements only GET ping and POST sensordata/batch, and that
+   * returns each batch in reverse order.  When supportsBatch is false, the batch call gets a 
+   * 404, and when answersPing is false, so does the ping.
+   */
+  private static class StandInSensorBase extends Restlet {
+    /** The number of batch calls received. */
+    private AtomicInteger batchCalls = new AtomicInteger(0);
+    /** Whether to respond to the batch call. */
+    private volatile boolean supportsBatch = true;
+    /** Whether to respond to the ping. */
+    private volatile boolean answersPing = true;
+    
+    /**
+     * Handles the batch call.
+     * @param request The request.
+     * @param response The response.
+     */
+    @Override
+    public void handle(Request request, Response response) {
+      if (this.answersPing && request.getResourceRef().getPath().endsWith("/ping")) {
+        response.setEntity(new StringRepresentation("SensorBase", MediaType.TEXT_PLAIN));
+        return;
+      }
+      if (!this.supportsBatch || !request.getResourceRef().getPath().endsWith("sensordata/batch")) {
+        response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+        return;
+      }
+      this.batchCalls.incrementAndGet();
+      try {
+        SensorDataIndex index = (SensorDataIndex) sensorDataJAXB.createUnmarshaller()
+          .unmarshal(new StringReader(request.getEntity().getText()));
+        SensorDatas datas = new SensorDatas();
+        List<SensorDataRef> refs = index.getSensorDataRef();
+        for (int i = refs.size() - 1; i >= 0; i--) {
+          datas.getSensorData().add(makeSensorData(refs.get(i)));
+        }
+        StringWriter writer = new StringWriter();
+        sensorDataJAXB.createMarshaller().marshal(datas, writer);
+        response.setEntity(new StringRepresentation(writer.toString(), MediaType.TEXT_XML));
+      }
+      catch (Exception e) {
+        response.setStatus(Status.SERVER_ERROR_INTERNAL, e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.hackystat.dailyprojectdata.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the CredentialCache recognizes verified passwords until they expire, and stays
+ * within its size limit.
+ *
+ * @author Philip Johnson
+ */
+public class TestCredentialCache {
+
+  /** A user. */
+  private static final String USER = "TestCredentialCache@hackystat.org";
+
+  /**
+   * Tests that only the verified password of a user matches.
+   */
+  @Test
+  public void testMatches() {
+    CredentialCache cache = new CredentialCache(60000, 100);
+    assertFalse("Checking unknown user", cache.matches(USER, "secret"));
+    cache.put(USER, "secret");
+    assertTrue("Checking verified password", cache.matches(USER, "secret"));
+    assertFalse("Checking other password", cache.matches(USER, "Secret"));
+    assertFalse("Checking other user", cache.matches("other@hackystat.org", "secret"));
+    cache.put(USER, "changed");
+    assertFalse("Checking old password", cache.matches(USER, "secret"));
+    assertTrue("Checking new password", cache.matches(USER, "changed"));
+    assertEquals("Checking hits", 2, cache.getHits());
+    assertEquals("Checking misses", 4, cache.getMisses());
+    cache.remove(USER);
+    assertFalse("Checking removed", cache.matches(USER, "changed"));
+  }
+
+  /**
+   * Tests that passwords expire after the time to live, and are not remembered at all when it
+   * is zero.
+   * @throws InterruptedException If interrupted while waiting for expiry.
+   */
+  @Test
+  public void testExpiry() throws InterruptedException {
+    CredentialCache cache = new CredentialCache(50, 100);
+    cache.put(USER, "secret");
+    assertTrue("Checking before expiry", cache.matches(USER, "secret"));
+    Thread.sleep(100);
+    assertFalse("Checking after expiry", cache.matches(USER, "secret"));
+    assertEquals("Checking expired entry removed", 0, cache.size());
+
+    cache = new CredentialCache(0, 100);
+    cache.put(USER, "secret");
+    assertFalse("Checking no caching", cache.matches(USER, "secret"));
+  }
+
+  /**
+   * Tests that the number of users remembered stays within the limit.
+   */
+  @Test
+  public void testSizeLimit() {
+    CredentialCache cache = new CredentialCache(60000, 20);
+    for (int i = 0; i < 100; i++) {
+      cache.put("user" + i + "@hackystat.org", "secret" + i);
+      assertTrue("Checking size " + i, cache.size() <= 20);
+      assertTrue("Checking newest " + i, cache.matches("user" + i + "@hackystat.org",
+          "secret" + i));
+    }
+    assertEquals("Checking evictions", 100 - cache.size(), cache.getEvictions());
+  }
+}
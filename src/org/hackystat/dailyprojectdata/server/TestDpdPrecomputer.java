@@ -0,0 +1,100 @@
+package org.hackystat.dailyprojectdata.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.dailyprojectdata.resource.dailyprojectdata.EpochTime;
+import org.hackystat.dailyprojectdata.test.DailyProjectDataTestHelper;
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests the DpdPrecomputer.
+ *
+ * @author Philip Johnson
+ */
+public class TestDpdPrecomputer extends DailyProjectDataTestHelper {
+
+  /** The user for this test case. */
+  private String user = "TestDpdPrecomputer@hackystat.org";
+
+  /**
+   * Tests that the timestamp is inserted after the project.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testMakeUri() throws Exception {
+    XMLGregorianCalendar day = Tstamp.makeTimestamp("2008-01-15");
+    assertEquals("Checking simple", "devtime/joe/Default/" + day, 
+        DpdPrecomputer.makeUri("devtime/joe/Default", day));
+    assertEquals("Checking suffix", "filemetric/joe/Default/" + day + "/TotalLines", 
+        DpdPrecomputer.makeUri("filemetric/joe/Default/TotalLines", day));
+    assertEquals("Checking query", "codeissue/joe/Default/" + day + "?Tool=PMD", 
+        DpdPrecomputer.makeUri("codeissue/joe/Default?Tool=PMD", day));
+  }
+
+  /**
+   * Tests that Commit DPDs are computed for the day before the run's day, since they are not
+   * cached until then.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testGetDay() throws Exception {
+    XMLGregorianCalendar day = Tstamp.makeTimestamp("2008-01-15");
+    assertEquals("Checking devtime", day, DpdPrecomputer.getDay("devtime/joe/Default", day));
+    assertEquals("Checking commit", Tstamp.makeTimestamp("2008-01-14"), 
+        DpdPrecomputer.getDay("commit/joe/Default", day));
+  }
+
+  /**
+   * Tests that runs are scheduled after the next midnight.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testMillisUntilNextRun() throws Exception {
+    long midnight = EpochTime.startOfDay(System.currentTimeMillis());
+    long oneHour = 60 * EpochTime.MILLIS_PER_MINUTE;
+    assertEquals("Checking later today", oneHour, 
+        DpdPrecomputer.getMillisUntilNextRun(midnight, 60));
+    long now = midnight + 2 * oneHour;
+    long next = now + DpdPrecomputer.getMillisUntilNextRun(now, 60);
+    assertEquals("Checking tomorrow", oneHour, next - EpochTime.startOfDay(next));
+    assertTrue("Checking after today", EpochTime.startOfDay(next) > midnight);
+    assertTrue("Checking within a day", next - now <= EpochTime.MILLIS_PER_DAY);
+  }
+
+  /**
+   * Tests that a run requests each DPD and counts those that fail.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testRun() throws Exception {
+    SensorBaseClient.registerUser(getSensorBaseHostName(), user);
+    List<String> dpds = new ArrayList<String>();
+    dpds.add("build/" + user + "/Default");
+    dpds.add("build/" + user + "/NoSuchProject");
+    dpds.add("malformed");
+    DpdPrecomputer precomputer = new DpdPrecomputer(getDailyProjectDataHostName(), dpds, 
+        user, user, 2, 0, 30, Logger.getLogger(getClass().getName()));
+    try {
+      assertEquals("Checking malformed", 2, precomputer.getDpds().size());
+      assertTrue("Checking run", precomputer.run(Tstamp.makeTimestamp("2008-01-15")));
+      assertFalse("Checking not running", precomputer.isRunning());
+      assertEquals("Checking runs", 1, precomputer.getNumberOfRuns());
+      assertEquals("Checking requested", 2, precomputer.getNumberRequested());
+      assertEquals("Checking completed", 1, precomputer.getNumberCompleted());
+      assertEquals("Checking failed", 1, precomputer.getNumberFailed());
+    }
+    finally {
+      precomputer.shutdown();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package org.hackystat.dailyprojectdata.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests that the RequestCoalescer shares one computation among identical concurrent callers.
+ * @author Philip Johnson
+ */
+public class TestRequestCoalescer {
+  
+  /** The key shared by all callers. */
+  private static final String KEY = "/dailyprojectdata/codeissue/user/project/2007-11-01";
+
+  /**
+   * Checks that followers arriving while the leader is running share its result, and that 
+   * followers failing the access check compute their own.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testCoalescing() throws Exception {
+    final RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+    final AtomicInteger runs = new AtomicInteger(0);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<String> computation = new Callable<String>() {
+      public String call() throws Exception {
+        runs.incrementAndGet();
+        release.await(10, TimeUnit.SECONDS);
+        return "dpd";
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    for (int i = 0; i < 6; i++) {
+      // The last caller is not in the project, so it must not receive the shared result.
+      final boolean inProject = (i < 5);
+      results.add(executor.submit(new Callable<String>() {
+        public String call() throws Exception {
+          return coalescer.execute(KEY, computation, new Callable<Boolean>() {
+            public Boolean call() {
+              return Boolean.valueOf(inProject);
+            }
+          });
+        }
+      }));
+      // Make sure the first caller is the leader before the others arrive.
+      while ((i == 0) && (runs.get() < 1)) {
+        Thread.sleep(10);
+      }
+    }
+    // Wait until the uncoalesced caller is running too.
+    while (runs.get() < 2) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(200);
+    release.countDown();
+    for (Future<String> result : results) {
+      assertEquals("Checking result", "dpd", result.get());
+    }
+    executor.shutdown();
+    assertEquals("Checking runs", 2, runs.get());
+    assertEquals("Checking computations", 2, coalescer.getComputations());
+    assertEquals("Checking shared", 4, coalescer.getShared());
+    assertEquals("Checking released", 0, coalescer.getInFlight());
+  }
+  
+  /**
+   * Checks that a leader's exception is thrown to the leader, and that a follower of a failed
+   * leader computes its own result.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testLeaderFailure() throws Exception {
+    final RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<Boolean> yes = new Callable<Boolean>() {
+      public Boolean call() {
+        return Boolean.TRUE;
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<String> leader = executor.submit(new Callable<String>() {
+      public String call() throws Exception {
+        return coalescer.execute(KEY, new Callable<String>() {
+          public String call() throws Exception {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            throw new IllegalStateException("leader failed");
+          }
+        }, yes);
+      }
+    });
+    started.await(10, TimeUnit.SECONDS);
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(200);
+        }
+        catch (InterruptedException e) { //NOPMD
+          // fall through and release the leader.
+        }
+        release.countDown();
+      }
+    } .start();
+    String follower = coalescer.execute(KEY, new Callable<String>() {
+      public String call() {
+        return "follower";
+      }
+    }, yes);
+    assertEquals("Checking follower", "follower", follower);
+    try {
+      leader.get();
+      fail("Leader should have failed");
+    }
+    catch (ExecutionException e) {
+      assertEquals("Checking leader failure", IllegalStateException.class, e.getCause().getClass());
+    }
+    executor.shutdown();
+    assertEquals("Checking shared", 0, coalescer.getShared());
+  }
+}
@@ -1,6 +1,7 @@
 package org.hackystat.dailyprojectdata.test;
 
 import org.hackystat.dailyprojectdata.server.Server;
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
 /**
@@ -30,6 +31,14 @@ public class DailyProjectDataTestHelper {
       org.hackystat.sensorbase.server.Server.newTestInstance();
     DailyProjectDataTestHelper.server = Server.newTestInstance();
   }
+  
+  /**
+   * Stops the DPD server, along with its precomputer and thread pools. 
+   * @throws Exception If problems occur stopping the server. 
+   */
+  @AfterClass public static void stopServer() throws Exception {
+    DailyProjectDataTestHelper.server.shutdown();
+  }
 
   /**
    * Returns the hostname associated with this DPD test server. 